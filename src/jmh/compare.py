@@ -0,0 +1,79 @@
+#!/usr/bin/env python3
+"""Compares a JMH JSON result with a stored baseline and exits with 1 on a regression.
+
+A benchmark regresses when its score is worse than the baseline by more than the threshold and by more than the
+combined score errors of both runs, so noise within the confidence intervals is not reported. Throughput regresses
+when it drops, average time when it grows, and the normalized allocation (-prof gc) when it grows.
+
+    python3 src/jmh/compare.py src/jmh/baseline.json target/jmh-result.json --threshold 0.10
+"""
+import argparse
+import json
+import sys
+
+ALLOCATION_METRIC = "gc.alloc.rate.norm"
+HIGHER_IS_BETTER = {"thrpt": True, "avgt": False, "sample": False, "ss": False}
+
+
+def load(path):
+    with open(path) as file:
+        return {key(result): result for result in json.load(file)}
+
+
+def key(result):
+    params = ",".join(f"{name}={value}" for name, value in sorted(result.get("params", {}).items()))
+    return f"{result['benchmark']}({params})" if params else result["benchmark"]
+
+
+def allocation(result):
+    # Older JMH versions prefix the profiler metrics with a middle dot
+    for name, metric in result.get("secondaryMetrics", {}).items():
+        if name.lstrip("·") == ALLOCATION_METRIC:
+            return metric
+    return None
+
+
+def regression(name, baseline, current, higher_is_better, threshold):
+    base, now = baseline["score"], current["score"]
+    error = abs(baseline.get("scoreError") or 0) + abs(current.get("scoreError") or 0)
+    if base == 0:
+        return None
+    change = (now - base) / base
+    worse = -change if higher_is_better else change
+    if worse > threshold and abs(now - base) > error:
+        return f"{name}: {base:.3f} -> {now:.3f} {current['scoreUnit']} ({change:+.1%})"
+    return None
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("baseline")
+    parser.add_argument("current")
+    parser.add_argument("--threshold", type=float, default=0.10, help="tolerated relative change, 0.10 by default")
+    args = parser.parse_args()
+
+    baseline, current = load(args.baseline), load(args.current)
+    regressions = []
+    for name, result in sorted(current.items()):
+        if name not in baseline:
+            print(f"new       {name}")
+            continue
+        base = baseline[name]
+        found = regression(name, base["primaryMetric"], result["primaryMetric"],
+                           HIGHER_IS_BETTER.get(result["mode"], False), args.threshold)
+        base_allocation, allocation_now = allocation(base), allocation(result)
+        if base_allocation and allocation_now:
+            found = found or regression(name + " allocation", base_allocation, allocation_now, False, args.threshold)
+        if found:
+            regressions.append(found)
+        print(f"{'REGRESSED' if found else 'ok':9} {found or name}")
+    for name in sorted(baseline.keys() - current.keys()):
+        print(f"missing   {name}")
+
+    if regressions:
+        print(f"\n{len(regressions)} regression(s) beyond {args.threshold:.0%}", file=sys.stderr)
+        sys.exit(1)
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,27 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+/**
+ * Walks the phone numbers of a {@link BenchmarkDatabase} in id order and gives each one the opposite of its current
+ * state, so that every conditional update of a benchmark changes a row instead of hitting the conflict path.
+ * The seeded state is active for even ids, each full pass over the rows flips all of them once.
+ * It is not thread safe, a benchmark using it runs with a single thread.
+ */
+final class ActivationToggle {
+    private final long rows;
+    private long updates;
+
+    ActivationToggle(long rows) {
+        this.rows = rows;
+    }
+
+    Toggle next() {
+        long id = updates % rows + 1;
+        boolean flipped = (updates / rows) % 2 == 1;
+        boolean active = (id % 2 == 0) != flipped;
+        updates++;
+        return new Toggle(id, !active);
+    }
+
+    record Toggle(long id, boolean status) {
+    }
+}
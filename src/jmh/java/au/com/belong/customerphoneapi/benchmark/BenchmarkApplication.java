@@ -0,0 +1,115 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import au.com.belong.customerphoneapi.cache.LocalCacheInvalidationBus;
+import au.com.belong.customerphoneapi.cache.PhoneNumberCacheCoherence;
+import au.com.belong.customerphoneapi.cache.PhoneNumberIndex;
+import au.com.belong.customerphoneapi.cache.ResponseBodyCache;
+import au.com.belong.customerphoneapi.configuration.CacheConfiguration;
+import au.com.belong.customerphoneapi.controller.PhoneNumberController;
+import au.com.belong.customerphoneapi.exception.ControllerExceptionHandlerAdvice;
+import au.com.belong.customerphoneapi.repository.DatabaseScheduling;
+import au.com.belong.customerphoneapi.repository.PhoneNumberRepository;
+import au.com.belong.customerphoneapi.service.PhoneNumberChangeFeed;
+import au.com.belong.customerphoneapi.service.PhoneNumberService;
+import au.com.belong.customerphoneapi.service.PhoneNumberServiceImpl;
+import au.com.belong.customerphoneapi.service.RowCountProvider;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+/**
+ * Wires the application layers by hand for the benchmarks, the same way the Spring context does but without starting
+ * it. Spring proxies are not created, so the service is measured without its caches.
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * The object mapper configured like <code>spring.jackson</code> in <code>application.yml</code>.
+     *
+     * @return The object mapper.
+     */
+    static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json()
+                .propertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
+                .build();
+    }
+
+    static PhoneNumberService phoneNumberService(BenchmarkDatabase database, int batchChunkSize) {
+        return phoneNumberService(database, batchChunkSize, false);
+    }
+
+    /**
+     * The service over the given database, optionally committing the concurrent activation changes in groups like
+     * <code>phone-api.group-commit</code> does with its default window and group size.
+     *
+     * @param database       The database.
+     * @param batchChunkSize The phone number ids per update of the batch endpoints.
+     * @param groupCommit    Whether to commit the concurrent activation changes in groups.
+     * @return The service.
+     */
+    static PhoneNumberService phoneNumberService(BenchmarkDatabase database, int batchChunkSize, boolean groupCommit) {
+        PhoneNumberRepository repository = database.getRepository(PhoneNumberRepository.class);
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setAsyncCacheMode(true);
+        return new PhoneNumberServiceImpl(
+                repository,
+                new RowCountProvider(repository::count),
+                new PhoneNumberCacheCoherence(cacheManager, new LocalCacheInvalidationBus()),
+                new PhoneNumberIndex(database.getTemplate().getDatabaseClient(),
+                        new DatabaseScheduling(Schedulers::boundedElastic, Duration.ofSeconds(1)), new SimpleMeterRegistry()),
+                new PhoneNumberChangeFeed(new LocalCacheInvalidationBus(), 1000, 256, PhoneNumberChangeFeed.DISCONNECT,
+                        new SimpleMeterRegistry()),
+                batchChunkSize,
+                1000,
+                Duration.ofMillis(2),
+                100,
+                groupCommit,
+                Duration.ofMillis(2),
+                256);
+    }
+
+    /**
+     * A client bound to the controller, requests go through the WebFlux dispatching, validation and JSON codecs
+     * without a server or a network in between.
+     *
+     * @param service The service behind the controller.
+     * @return The client.
+     */
+    static WebTestClient webTestClient(PhoneNumberService service) {
+        return webTestClient(service, false);
+    }
+
+    /**
+     * A client bound to the controller, optionally with the encoded bodies of the pages and customer lists cached like
+     * <code>phone-api.response-cache</code> does.
+     *
+     * @param service           The service behind the controller.
+     * @param responseBodyCache Whether to cache the encoded bodies.
+     * @return The client.
+     */
+    static WebTestClient webTestClient(PhoneNumberService service, boolean responseBodyCache) {
+        ObjectMapper objectMapper = objectMapper();
+        return WebTestClient.bindToController(new PhoneNumberController(service))
+                .controllerAdvice(new ControllerExceptionHandlerAdvice())
+                .httpMessageCodecs(configurer -> {
+                    configurer.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    configurer.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                    if (responseBodyCache) {
+                        configurer.customCodecs().register(new ResponseBodyCache(new Jackson2JsonEncoder(objectMapper),
+                                CacheConfiguration.CACHED_RESPONSE_TYPES, 64 * 1024 * 1024, 1024 * 1024, new SimpleMeterRegistry()));
+                    }
+                })
+                .build();
+    }
+}
@@ -0,0 +1,83 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.flywaydb.core.Flyway;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.repository.support.R2dbcRepositoryFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * An in-memory H2 database migrated with the application schema migrations and seeded with a configurable volume.
+ * The JDBC connection is held open for seeding and keeps the in-memory database alive, the benchmarks go through R2DBC.
+ */
+public final class BenchmarkDatabase implements AutoCloseable {
+
+    private final Connection connection;
+    private final ConnectionFactory connectionFactory;
+    private final R2dbcEntityTemplate template;
+
+    private BenchmarkDatabase(String name) throws SQLException {
+        String jdbcUrl = "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+        Flyway.configure()
+                .dataSource(jdbcUrl, "sa", "")
+                .locations("classpath:db/migration/schema")
+                .load()
+                .migrate();
+        this.connection = DriverManager.getConnection(jdbcUrl, "sa", "");
+        this.connectionFactory = ConnectionFactories.get(ConnectionFactoryOptions
+                .parse("r2dbc:h2:mem:///" + name + "?options=DB_CLOSE_DELAY=-1")
+                .mutate()
+                .option(ConnectionFactoryOptions.USER, "sa")
+                .option(ConnectionFactoryOptions.PASSWORD, "")
+                .build());
+        this.template = new R2dbcEntityTemplate(connectionFactory);
+    }
+
+    /**
+     * Creates and seeds a database with <code>customers * phonesPerCustomer</code> phone numbers, numbered from 1
+     * in customer order so that every customer owns a contiguous id range.
+     *
+     * @param name              The unique in-memory database name.
+     * @param customers         The number of customers to insert.
+     * @param phonesPerCustomer The number of phone numbers per customer.
+     * @return The seeded database.
+     */
+    public static BenchmarkDatabase create(String name, long customers, int phonesPerCustomer) throws SQLException {
+        BenchmarkDatabase database = new BenchmarkDatabase(name);
+        database.execute("INSERT INTO CUSTOMERS (name) SELECT 'Customer ' || X FROM SYSTEM_RANGE(1, " + customers + ")");
+        database.execute("INSERT INTO PHONE_NUMBERS (phone_number, is_active, customer_id) "
+                + "SELECT '04' || LPAD(CAST(X AS VARCHAR), 8, '0'), MOD(X, 2) = 0, ((X - 1) / " + phonesPerCustomer + ") + 1 "
+                + "FROM SYSTEM_RANGE(1, " + customers * phonesPerCustomer + ")");
+        return database;
+    }
+
+    public void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    public ConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    public R2dbcEntityTemplate getTemplate() {
+        return template;
+    }
+
+    public <T> T getRepository(Class<T> repositoryInterface) {
+        return new R2dbcRepositoryFactory(template).getRepository(repositoryInterface);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        execute("SHUTDOWN");
+        connection.close();
+    }
+}
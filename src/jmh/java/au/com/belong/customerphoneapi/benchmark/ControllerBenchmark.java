@@ -0,0 +1,96 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The endpoints end to end in memory: request mapping, validation, service, repository and the SNAKE_CASE JSON body.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args=ControllerBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ControllerBenchmark {
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    @Param({"1", "50"})
+    private int phonesPerCustomer;
+
+    @Param({"20"})
+    private int size;
+
+    private BenchmarkDatabase database;
+    private WebTestClient webTestClient;
+    private ActivationToggle toggle;
+    private long customers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        customers = rows / phonesPerCustomer;
+        database = BenchmarkDatabase.create("controller", customers, phonesPerCustomer);
+        webTestClient = BenchmarkApplication.webTestClient(BenchmarkApplication.phoneNumberService(database, 500));
+        toggle = new ActivationToggle(customers * phonesPerCustomer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public byte[] getAllFor() {
+        int page = ThreadLocalRandom.current().nextInt(rows / size);
+        return get("/phone-numbers?page=" + page + "&size=" + size);
+    }
+
+    @Benchmark
+    public byte[] getAllForCustomer() {
+        return get("/phone-numbers/customers/" + ThreadLocalRandom.current().nextLong(1, customers + 1));
+    }
+
+    @Benchmark
+    public byte[] updateFor() {
+        ActivationToggle.Toggle next = toggle.next();
+        return webTestClient.patch()
+                .uri("/phone-numbers/{id}/{action}", next.id(), next.status() ? "activation" : "deactivation")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private byte[] get(String uri) {
+        return webTestClient.get()
+                .uri(uri)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .returnResult()
+                .getResponseBody();
+    }
+}
@@ -0,0 +1,94 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import au.com.belong.customerphoneapi.service.PhoneNumberService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single phone number activation changes issued by 1, 8, 64 and 512 concurrent writers, each committed on its own or
+ * committed in groups like <code>phone-api.group-commit</code> does. Every invocation waits for one update of each
+ * writer, the updates per second are reported as the <code>updates</code> secondary result.
+ * A lone writer pays the group commit window on every update, the gain shows from a few concurrent writers on.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args=GroupCommitBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GroupCommitBenchmark {
+    private static final int ROWS = 100_000;
+
+    @Param({"false", "true"})
+    private boolean groupCommit;
+
+    @Param({"1", "8", "64", "512"})
+    private int writers;
+
+    private BenchmarkDatabase database;
+    private PhoneNumberService service;
+    private ActivationToggle toggle;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = BenchmarkDatabase.create("group_commit", ROWS, 1);
+        service = BenchmarkApplication.phoneNumberService(database, 500, groupCommit);
+        toggle = new ActivationToggle(ROWS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    // The toggles of an invocation are distinct phone numbers, so every update changes its row
+    @Benchmark
+    public long updateFor(Updates updates) {
+        List<ActivationToggle.Toggle> toggles = new ArrayList<>(writers);
+        for (int i = 0; i < writers; i++) {
+            toggles.add(toggle.next());
+        }
+        long updated = Flux.fromIterable(toggles)
+                .flatMap(next -> service.updateFor(next.id(), next.status()), writers)
+                .count()
+                .block();
+        updates.updates += updated;
+        return updated;
+    }
+
+    /**
+     * The number of updated phone numbers, as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Updates {
+        public long updates;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            updates = 0;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.repository.PhoneNumberRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the lookups by customer and by phone number with and without the indexes of
+ * <code>V6__create_phone_number_indexes.sql</code>. Note that H2 already backs the <code>customer_id</code> foreign key
+ * with an index of its own, so only the phone number lookup degrades to a table scan without the migration.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args=IndexBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IndexBenchmark {
+    private static final String SELECT_BY_PHONE_NUMBER = "SELECT * FROM PHONE_NUMBERS WHERE phone_number_normalized = :phoneNumber";
+
+    @Param({"1000000"})
+    private int rows;
+
+    @Param({"true", "false"})
+    private boolean indexed;
+
+    private BenchmarkDatabase database;
+    private PhoneNumberRepository repository;
+    private DatabaseClient databaseClient;
+    private long customers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        customers = rows / 10;
+        database = BenchmarkDatabase.create("index_" + indexed, customers, 10);
+        if (!indexed) {
+            database.execute("DROP INDEX IDX_PHONE_NUMBERS_CUSTOMER_ID");
+            database.execute("DROP INDEX UX_PHONE_NUMBERS_PHONE_NUMBER_NORMALIZED");
+        }
+        repository = database.getRepository(PhoneNumberRepository.class);
+        databaseClient = DatabaseClient.create(database.getConnectionFactory());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public List<PhoneNumber> findByCustomerId() {
+        long customerId = ThreadLocalRandom.current().nextLong(1, customers + 1);
+        return repository.findByCustomerId(customerId).collectList().block();
+    }
+
+    @Benchmark
+    public Long findByPhoneNumber() {
+        // Same format as the seeded phone numbers, see BenchmarkDatabase.create
+        String phoneNumber = "04" + String.format("%08d", ThreadLocalRandom.current().nextLong(1, rows + 1L));
+        return databaseClient.sql(SELECT_BY_PHONE_NUMBER)
+                .bind("phoneNumber", phoneNumber)
+                .map(row -> row.get("id", Long.class))
+                .one()
+                .block();
+    }
+}
@@ -0,0 +1,119 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.PageDTO;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encoding and decoding a page of 1,000 phone numbers in each negotiated format, JSON, CBOR and Smile, with and without
+ * the gzip response compression. The average time per page is the score, the size of the encoded page is reported by
+ * <code>decode</code> as its <code>payloadBytes</code> secondary result.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args=MediaTypeBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MediaTypeBenchmark {
+    private static final TypeReference<PageDTO<PhoneNumber>> PAGE_TYPE = new TypeReference<>() {
+    };
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    @Param({"none", "gzip"})
+    private String compression;
+
+    @Param({"1000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private PageDTO<PhoneNumber> page;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper jsonMapper = BenchmarkApplication.objectMapper();
+        objectMapper = switch (format) {
+            case "cbor" -> jsonMapper.copyWith(new CBORFactory());
+            case "smile" -> jsonMapper.copyWith(new SmileFactory());
+            default -> jsonMapper;
+        };
+        List<PhoneNumber> content = LongStream.rangeClosed(1, size)
+                .mapToObj(SerializationBenchmark::phoneNumber)
+                .toList();
+        page = PageDTO.<PhoneNumber>builder()
+                .content(content)
+                .page(0)
+                .size(size)
+                .last(false)
+                .totalPages(1_000_000L / size)
+                .totalRecords(1_000_000L)
+                .build();
+        encoded = encode();
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = "gzip".equals(compression) ? new GZIPOutputStream(bytes) : bytes) {
+            objectMapper.writeValue(out, page);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public PageDTO<PhoneNumber> decode(Payload payload) throws IOException {
+        payload.payloadBytes = encoded.length;
+        InputStream bytes = new ByteArrayInputStream(encoded);
+        try (InputStream in = "gzip".equals(compression) ? new GZIPInputStream(bytes) : bytes) {
+            return objectMapper.readValue(in, PAGE_TYPE);
+        }
+    }
+
+    /**
+     * The size of the encoded page, as it goes over the wire.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Payload {
+        public long payloadBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            payloadBytes = 0;
+        }
+    }
+}
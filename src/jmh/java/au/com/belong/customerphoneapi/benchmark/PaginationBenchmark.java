@@ -0,0 +1,75 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.repository.PhoneNumberRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares fetching the same deep page with LIMIT/OFFSET and with keyset (cursor) pagination.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args=PaginationBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PaginationBenchmark {
+
+    @Param({"1000000"})
+    private int rows;
+
+    @Param({"10000"})
+    private int page;
+
+    @Param({"20"})
+    private int size;
+
+    private BenchmarkDatabase database;
+    private PhoneNumberRepository repository;
+    private long afterId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = BenchmarkDatabase.create("pagination", rows / 10, 10);
+        repository = database.getRepository(PhoneNumberRepository.class);
+        // The id of the last row of the previous page, as a client following next_cursor would send it
+        afterId = (long) page * size;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public List<PhoneNumber> offsetPage() {
+        return repository.findAllBy(PageRequest.of(page, size)).collectList().block();
+    }
+
+    @Benchmark
+    public List<PhoneNumber> cursorPage() {
+        return repository.findAllByIdGreaterThanOrderByIdAsc(afterId, Limit.of(size + 1)).collectList().block();
+    }
+}
@@ -0,0 +1,115 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import au.com.belong.customerphoneapi.CustomerPhoneApiApplication;
+import au.com.belong.customerphoneapi.repository.PhoneNumberRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Flux;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phone number repository of the R2DBC backend, on its bounded database scheduler, against the one of the JDBC
+ * backend, a virtual thread per call, under 1, 16, 256 and 1024 concurrent calls. The application context is started
+ * with <code>phone-api.persistence.backend</code> set, so each backend runs with the pool and the scheduler it has in
+ * production. Every invocation waits for one call of each concurrent caller:
+ * <ul>
+ *     <li>the throughput is the waves of calls per millisecond, times <code>concurrency</code> the calls per
+ *     millisecond;</li>
+ *     <li>the sample time percentiles are the latency of a wave, its p0.99 the p99 latency of the slowest of
+ *     <code>concurrency</code> calls issued together;</li>
+ *     <li>the memory is the allocation per wave, <code>gc.alloc.rate.norm</code> of the GC profiler.</li>
+ * </ul>
+ * The JDBC backend is only built with the <code>java21</code> profile, which needs a Java 21 JDK:
+ *
+ * <pre>
+ * ./mvnw -Pbenchmark,java21 test-compile exec:exec -Dbenchmark.args=PersistenceBackendBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PersistenceBackendBenchmark {
+    private static final int CUSTOMERS = 20_000;
+    private static final int PHONES_PER_CUSTOMER = 5;
+
+    @Param({"r2dbc", "jdbc"})
+    private String backend;
+
+    @Param({"1", "16", "256", "1024"})
+    private int concurrency;
+
+    private BenchmarkDatabase database;
+    private ConfigurableApplicationContext context;
+    private PhoneNumberRepository repository;
+    private ActivationToggle toggle;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        String name = "persistence_" + backend;
+        database = BenchmarkDatabase.create(name, CUSTOMERS, PHONES_PER_CUSTOMER);
+        context = new SpringApplicationBuilder(CustomerPhoneApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.application.env=benchmark",
+                        "spring.r2dbc.url=r2dbc:h2:mem:///" + name + "?options=DB_CLOSE_DELAY=-1",
+                        "spring.flyway.enabled=false",
+                        "phone-api.persistence.backend=" + backend,
+                        "phone-api.persistence.jdbc.url=jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1",
+                        "phone-api.cache-invalidation.bus=local",
+                        "phone-api.access-log.file=./target/logs/benchmark-access.log",
+                        "logging.level.root=WARN")
+                .run();
+        repository = context.getBean(PhoneNumberRepository.class);
+        toggle = new ActivationToggle((long) CUSTOMERS * PHONES_PER_CUSTOMER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        context.close();
+        database.close();
+    }
+
+    @Benchmark
+    public long findByCustomerId() {
+        return Flux.range(0, concurrency)
+                .flatMap(i -> repository.findByCustomerId(ThreadLocalRandom.current().nextLong(1, CUSTOMERS + 1)).count(),
+                        concurrency)
+                .reduce(0L, Long::sum)
+                .block();
+    }
+
+    // The toggles of an invocation are distinct phone numbers, so every update changes its row
+    @Benchmark
+    public long updateActiveWhereId() {
+        List<ActivationToggle.Toggle> toggles = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            toggles.add(toggle.next());
+        }
+        return Flux.fromIterable(toggles)
+                .flatMap(next -> repository.updateActiveWhereId(next.id(), next.status()), concurrency)
+                .count()
+                .block();
+    }
+}
@@ -0,0 +1,72 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import au.com.belong.customerphoneapi.cache.PhoneNumberIndex;
+import au.com.belong.customerphoneapi.dto.PhoneNumberOwnerDTO;
+import au.com.belong.customerphoneapi.repository.DatabaseScheduling;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.scheduler.Schedulers;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The reverse lookups of the in-process phone number index, built from the seeded table once per trial.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args=PhoneNumberIndexBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PhoneNumberIndexBenchmark {
+
+    @Param({"1000000"})
+    private int rows;
+
+    private BenchmarkDatabase database;
+    private PhoneNumberIndex phoneNumberIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = BenchmarkDatabase.create("index", rows / 10, 10);
+        phoneNumberIndex = new PhoneNumberIndex(database.getTemplate().getDatabaseClient(),
+                new DatabaseScheduling(Schedulers::boundedElastic, Duration.ofSeconds(1)), new SimpleMeterRegistry());
+        phoneNumberIndex.rebuild().block();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public PhoneNumberOwnerDTO find() {
+        // Same format as the seeded phone numbers, see BenchmarkDatabase.create
+        return phoneNumberIndex.find("04" + String.format("%08d", ThreadLocalRandom.current().nextLong(1, rows + 1L))).block();
+    }
+
+    @Benchmark
+    public List<PhoneNumberOwnerDTO> findByPrefix() {
+        return phoneNumberIndex.findByPrefix("04" + String.format("%05d", ThreadLocalRandom.current().nextInt(rows / 1000)), 10).block();
+    }
+}
@@ -0,0 +1,108 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import au.com.belong.customerphoneapi.controller.PhoneNumberController;
+import au.com.belong.customerphoneapi.exception.ControllerExceptionHandlerAdvice;
+import au.com.belong.customerphoneapi.filter.RateLimitFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time the rate limit filter adds to a request, with 8 threads calling it at once, i.e. its p99 from the sample
+ * time percentiles, with the lookup of the route by the handler mapping. The requests spread over a read, a write and
+ * an unmapped route:
+ * <ul>
+ *     <li><code>clients=1</code>: every thread takes its tokens from the same buckets, the compare-and-sets
+ *     contend;</li>
+ *     <li><code>clients=1000</code>: the threads mostly hit the buckets of different clients;</li>
+ *     <li><code>limited=false</code>: the buckets never run out, every request takes a token;</li>
+ *     <li><code>limited=true</code>: the buckets are empty after the warmup, nearly every request is rejected.</li>
+ * </ul>
+ * The chain after the filter does nothing and the requests are created once, so only the filter and the exchange of
+ * each call, a fresh response the rejections are written to, are measured.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args=RateLimitFilterBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RateLimitFilterBenchmark {
+    private static final WebFilterChain CHAIN = exchange -> Mono.empty();
+    private static final List<Map.Entry<HttpMethod, String>> REQUESTS = List.of(
+            Map.entry(HttpMethod.GET, "/phone-numbers/customers/1"),
+            Map.entry(HttpMethod.PATCH, "/phone-numbers/2/activation"),
+            Map.entry(HttpMethod.GET, "/actuator/health"));
+
+    @Param({"1", "1000"})
+    private int clients;
+
+    @Param({"false", "true"})
+    private boolean limited;
+
+    private GenericApplicationContext context;
+    private RateLimitFilter filter;
+    private MockServerHttpRequest[] requests;
+
+    @Setup
+    public void setUp() {
+        context = new GenericApplicationContext();
+        context.registerBean(PhoneNumberController.class, () -> new PhoneNumberController(null));
+        context.registerBean(RequestMappingHandlerMapping.class);
+        context.refresh();
+        filter = new RateLimitFilter("X-Api-Key", limited ? 100 : Integer.MAX_VALUE, limited ? 100 : 1_000_000_000,
+                List.of(), clients, context.getBean(RequestMappingHandlerMapping.class),
+                new ControllerExceptionHandlerAdvice(), ServerCodecConfigurer.create());
+
+        requests = new MockServerHttpRequest[clients * REQUESTS.size()];
+        for (int client = 0; client < clients; client++) {
+            for (int request = 0; request < REQUESTS.size(); request++) {
+                requests[client * REQUESTS.size() + request] = MockServerHttpRequest
+                        .method(REQUESTS.get(request).getKey(), REQUESTS.get(request).getValue())
+                        .header("X-Api-Key", "client-" + client)
+                        .build();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    // The route is looked up when the filter is subscribed to, the handler mapping completes at once
+    @Benchmark
+    public void filter() {
+        ServerWebExchange exchange = MockServerWebExchange.from(requests[ThreadLocalRandom.current().nextInt(requests.length)]);
+        filter.filter(exchange, CHAIN).block();
+    }
+}
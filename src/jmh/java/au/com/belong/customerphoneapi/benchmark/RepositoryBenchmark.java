@@ -0,0 +1,83 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.repository.PhoneNumberRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The repository queries behind the endpoints, straight on R2DBC without the service and web layers.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args=RepositoryBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RepositoryBenchmark {
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    @Param({"1", "50"})
+    private int phonesPerCustomer;
+
+    @Param({"20"})
+    private int size;
+
+    private BenchmarkDatabase database;
+    private PhoneNumberRepository repository;
+    private ActivationToggle toggle;
+    private long customers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        customers = rows / phonesPerCustomer;
+        database = BenchmarkDatabase.create("repository", customers, phonesPerCustomer);
+        repository = database.getRepository(PhoneNumberRepository.class);
+        toggle = new ActivationToggle(customers * phonesPerCustomer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public List<PhoneNumber> findAllBy() {
+        int page = ThreadLocalRandom.current().nextInt(rows / size);
+        return repository.findAllBy(PageRequest.of(page, size)).collectList().block();
+    }
+
+    @Benchmark
+    public List<PhoneNumber> findByCustomerId() {
+        return repository.findByCustomerId(ThreadLocalRandom.current().nextLong(1, customers + 1)).collectList().block();
+    }
+
+    @Benchmark
+    public PhoneNumber updateActiveWhereId() {
+        ActivationToggle.Toggle next = toggle.next();
+        return repository.updateActiveWhereId(next.id(), next.status()).block();
+    }
+}
@@ -0,0 +1,149 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.BatchUpdateResultDTO;
+import au.com.belong.customerphoneapi.dto.CursorPageDTO;
+import au.com.belong.customerphoneapi.dto.CustomerPhoneNumbersDTO;
+import au.com.belong.customerphoneapi.dto.PageDTO;
+import au.com.belong.customerphoneapi.dto.PhoneNumberChangeDTO;
+import au.com.belong.customerphoneapi.dto.PhoneNumberOwnerDTO;
+import au.com.belong.customerphoneapi.service.PhoneNumberService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Requests for a hot page and a hot customer with and without the encoded response body cache, i.e. the requests/s and,
+ * from the GC profiler, the allocation per request of the endpoints when the service answers from its caches. The
+ * service returns the same materialized results on every call, the way the Caffeine caches do on a hit, so the
+ * difference is the JSON encoding of the body.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args=ResponseBodyCacheBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ResponseBodyCacheBenchmark {
+
+    @Param({"false", "true"})
+    private boolean responseBodyCache;
+
+    @Param({"20", "1000"})
+    private int size;
+
+    private WebTestClient webTestClient;
+
+    @Setup
+    public void setUp() {
+        List<PhoneNumber> content = LongStream.rangeClosed(1, size)
+                .mapToObj(SerializationBenchmark::phoneNumber)
+                .toList();
+        PageDTO<PhoneNumber> page = PageDTO.<PhoneNumber>builder()
+                .content(content)
+                .page(0)
+                .size(size)
+                .last(false)
+                .totalPages(1_000_000L / size)
+                .totalRecords(1_000_000L)
+                .build();
+        webTestClient = BenchmarkApplication.webTestClient(new CachedResultsService(page, content.subList(0, Math.min(size, 50))),
+                responseBodyCache);
+    }
+
+    @Benchmark
+    public byte[] getAllFor() {
+        return get("/phone-numbers?page=0&size=" + size);
+    }
+
+    @Benchmark
+    public byte[] getAllForCustomer() {
+        return get("/phone-numbers/customers/1");
+    }
+
+    private byte[] get(String uri) {
+        return webTestClient.get()
+                .uri(uri)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .returnResult()
+                .getResponseBody();
+    }
+
+    /**
+     * Answers the page and the customer list from fixed results, the other methods are not benchmarked here.
+     */
+    private record CachedResultsService(PageDTO<PhoneNumber> page, List<PhoneNumber> customerPhoneNumbers)
+            implements PhoneNumberService {
+
+        @Override
+        public Mono<PageDTO<PhoneNumber>> getAllFor(int page, int size) {
+            return Mono.just(this.page);
+        }
+
+        @Override
+        public Flux<PhoneNumber> getAllFor(long customerId) {
+            return Flux.fromIterable(customerPhoneNumbers);
+        }
+
+        @Override
+        public Flux<CustomerPhoneNumbersDTO> getAllFor(List<Long> customerIds) {
+            return Flux.error(new UnsupportedOperationException());
+        }
+
+        @Override
+        public Mono<PageDTO<PhoneNumber>> getAllWithoutTotalFor(int page, int size) {
+            return Mono.error(new UnsupportedOperationException());
+        }
+
+        @Override
+        public Mono<CursorPageDTO<PhoneNumber>> getAllAfter(String after, int size) {
+            return Mono.error(new UnsupportedOperationException());
+        }
+
+        @Override
+        public Flux<PhoneNumberOwnerDTO> searchFor(String number, boolean prefix, int limit) {
+            return Flux.error(new UnsupportedOperationException());
+        }
+
+        @Override
+        public Flux<PhoneNumber> exportAfter(long afterId) {
+            return Flux.error(new UnsupportedOperationException());
+        }
+
+        @Override
+        public Flux<PhoneNumberChangeDTO> changesAfter(String afterEventId) {
+            return Flux.error(new UnsupportedOperationException());
+        }
+
+        @Override
+        public Mono<PhoneNumber> updateFor(long phoneId, boolean status) {
+            return Mono.error(new UnsupportedOperationException());
+        }
+
+        @Override
+        public Flux<BatchUpdateResultDTO> updateFor(List<Long> phoneIds, boolean status) {
+            return Flux.error(new UnsupportedOperationException());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.PageDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * The SNAKE_CASE JSON serialization of the response bodies on its own, no database involved.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args=SerializationBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SerializationBenchmark {
+
+    @Param({"20", "1000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private PageDTO<PhoneNumber> page;
+    private List<PhoneNumber> customerPhoneNumbers;
+
+    @Setup
+    public void setUp() {
+        objectMapper = BenchmarkApplication.objectMapper();
+        List<PhoneNumber> content = LongStream.rangeClosed(1, size)
+                .mapToObj(SerializationBenchmark::phoneNumber)
+                .toList();
+        page = PageDTO.<PhoneNumber>builder()
+                .content(content)
+                .page(0)
+                .size(size)
+                .last(false)
+                .totalPages(1_000_000L / size)
+                .totalRecords(1_000_000L)
+                .build();
+        customerPhoneNumbers = content.subList(0, Math.min(size, 50));
+    }
+
+    @Benchmark
+    public byte[] page() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] customerPhoneNumbers() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(customerPhoneNumbers);
+    }
+
+    static PhoneNumber phoneNumber(long id) {
+        PhoneNumber phoneNumber = new PhoneNumber();
+        phoneNumber.setId(id);
+        phoneNumber.setPhoneNumber("04" + String.format("%08d", id));
+        phoneNumber.setActive(id % 2 == 0);
+        phoneNumber.setCustomerId((id - 1) / 50 + 1);
+        return phoneNumber;
+    }
+}
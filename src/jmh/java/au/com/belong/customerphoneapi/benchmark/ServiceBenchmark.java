@@ -0,0 +1,112 @@
+package au.com.belong.customerphoneapi.benchmark;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.BatchUpdateResultDTO;
+import au.com.belong.customerphoneapi.dto.PageDTO;
+import au.com.belong.customerphoneapi.service.PhoneNumberService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The service operations on a cache miss, i.e. the repository queries plus the paging, conditional update and
+ * cache coherence work of the service.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args=ServiceBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ServiceBenchmark {
+    private static final int BATCH_SIZE = 100;
+    private static final int CONCURRENT_CUSTOMERS = 100;
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    @Param({"1", "50"})
+    private int phonesPerCustomer;
+
+    @Param({"20"})
+    private int size;
+
+    private BenchmarkDatabase database;
+    private PhoneNumberService service;
+    private ActivationToggle toggle;
+    private long customers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        customers = rows / phonesPerCustomer;
+        database = BenchmarkDatabase.create("service", customers, phonesPerCustomer);
+        service = BenchmarkApplication.phoneNumberService(database, 500);
+        toggle = new ActivationToggle(customers * phonesPerCustomer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public PageDTO<PhoneNumber> findAll() {
+        int page = ThreadLocalRandom.current().nextInt(rows / size);
+        return service.getAllFor(page, size).block();
+    }
+
+    @Benchmark
+    public List<PhoneNumber> getAllForCustomer() {
+        return service.getAllFor(ThreadLocalRandom.current().nextLong(1, customers + 1)).collectList().block();
+    }
+
+    // The fan-in of many single customer requests, coalesced into a few queries by the customer loader
+    @Benchmark
+    public List<List<PhoneNumber>> getAllForConcurrentCustomers() {
+        return Flux.range(0, CONCURRENT_CUSTOMERS)
+                .flatMap(i -> service.getAllFor(ThreadLocalRandom.current().nextLong(1, customers + 1)).collectList(), CONCURRENT_CUSTOMERS)
+                .collectList()
+                .block();
+    }
+
+    @Benchmark
+    public PhoneNumber updateFor() {
+        ActivationToggle.Toggle next = toggle.next();
+        return service.updateFor(next.id(), next.status()).block();
+    }
+
+    // Activates a run of phone numbers, half of them are already active, then deactivates the other half again so the
+    // next invocation starts from the seeded state
+    @Benchmark
+    public List<BatchUpdateResultDTO> updateForBatch() {
+        long first = ThreadLocalRandom.current().nextLong(1, rows - BATCH_SIZE);
+        List<Long> phoneIds = new ArrayList<>(BATCH_SIZE);
+        for (long id = first; id < first + BATCH_SIZE; id++) {
+            phoneIds.add(id);
+        }
+        List<BatchUpdateResultDTO> results = service.updateFor(phoneIds, true).collectList().block();
+        service.updateFor(phoneIds.stream().filter(id -> id % 2 != 0).toList(), false).then().block();
+        return results;
+    }
+}
@@ -2,8 +2,10 @@ package au.com.belong.customerphoneapi;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.data.r2dbc.R2dbcRepositoriesAutoConfiguration;
 
-@SpringBootApplication
+// The repositories are enabled by RepositoryConfiguration for the selected persistence backend only
+@SpringBootApplication(exclude = R2dbcRepositoriesAutoConfiguration.class)
 public class CustomerPhoneApiApplication {
 
 	public static void main(String[] args) {
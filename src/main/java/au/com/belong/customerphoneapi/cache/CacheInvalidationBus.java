@@ -0,0 +1,25 @@
+package au.com.belong.customerphoneapi.cache;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Carries activation changes between the nodes of the service, so that each node keeps its local caches coherent.
+ * The implementation is selected with <code>phone-api.cache-invalidation.bus</code>.
+ */
+public interface CacheInvalidationBus {
+
+    /**
+     * Publishes a change made on this node to the other nodes.
+     *
+     * @param event The activation change.
+     */
+    void publish(CacheInvalidationEvent event);
+
+    /**
+     * Registers a consumer of the changes made on the other nodes, every registered consumer receives every change.
+     *
+     * @param subscriber The consumer of a batch of changes in publishing order.
+     */
+    void subscribe(Consumer<List<CacheInvalidationEvent>> subscriber);
+}
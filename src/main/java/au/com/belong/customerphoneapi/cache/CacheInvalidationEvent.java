@@ -0,0 +1,29 @@
+package au.com.belong.customerphoneapi.cache;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * A compact activation change, published to the other nodes so that they can apply it to their local caches.
+ */
+@Value
+@Builder
+public class CacheInvalidationEvent {
+    long phoneId;
+    long customerId;
+    boolean active;
+    // The version of the phone number after the change
+    long rowVersion;
+    // The position of the event in the shared event log, zero until the event is published
+    long version;
+
+    public static CacheInvalidationEvent of(PhoneNumber phone) {
+        return CacheInvalidationEvent.builder()
+                .phoneId(phone.getId())
+                .customerId(phone.getCustomerId())
+                .active(phone.isActive())
+                .rowVersion(phone.getVersion())
+                .build();
+    }
+}
@@ -0,0 +1,25 @@
+package au.com.belong.customerphoneapi.cache;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The bus of a single node deployment, there are no other nodes to notify.
+ */
+@Component
+@ConditionalOnProperty(name = "phone-api.cache-invalidation.bus", havingValue = "local", matchIfMissing = true)
+public class LocalCacheInvalidationBus implements CacheInvalidationBus {
+
+    @Override
+    public void publish(CacheInvalidationEvent event) {
+        // no other nodes
+    }
+
+    @Override
+    public void subscribe(Consumer<List<CacheInvalidationEvent>> subscriber) {
+        // no other nodes
+    }
+}
@@ -0,0 +1,76 @@
+package au.com.belong.customerphoneapi.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Times the lookups of the cached reactive methods, tagged by hit or miss. A hit is an entry that is already loaded,
+ * timed when the lookup returns. A miss, including a lookup that waits for the load of a concurrent caller, is timed
+ * when the loaded value is available. The timers are registered with the cache, so a lookup records without a meter
+ * lookup.
+ */
+public class MeteredCaffeineCache extends CaffeineCache {
+    private final Timer hits;
+    private final Timer misses;
+
+    public MeteredCaffeineCache(String name, AsyncCache<Object, Object> cache, boolean allowNullValues, MeterRegistry meterRegistry) {
+        super(name, cache, allowNullValues);
+        this.hits = timer(name, "hit", meterRegistry);
+        this.misses = timer(name, "miss", meterRegistry);
+    }
+
+    @Override
+    public CompletableFuture<?> retrieve(Object key) {
+        long start = System.nanoTime();
+        CompletableFuture<?> result = super.retrieve(key);
+        if (result == null) {
+            record(misses, start);
+        } else {
+            record(result, start);
+        }
+        return result;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        long start = System.nanoTime();
+        // A load may complete before the lookup returns, the lookup is a miss all the same
+        boolean[] loaded = new boolean[1];
+        CompletableFuture<T> result = super.retrieve(key, () -> {
+            loaded[0] = true;
+            return valueLoader.get();
+        });
+        record(result, loaded[0], start);
+        return result;
+    }
+
+    private void record(CompletableFuture<?> result, long start) {
+        record(result, false, start);
+    }
+
+    private void record(CompletableFuture<?> result, boolean loaded, long start) {
+        if (result.isDone() && !loaded) {
+            record(hits, start);
+        } else {
+            result.whenComplete((value, exception) -> record(misses, start));
+        }
+    }
+
+    private static void record(Timer timer, long start) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer timer(String name, String result, MeterRegistry meterRegistry) {
+        return Timer.builder("phone.api.cache.lookups")
+                .description("Time to look up a cached reactive result, a miss includes the load")
+                .tag("cache", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
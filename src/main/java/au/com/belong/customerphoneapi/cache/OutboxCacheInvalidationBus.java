@@ -0,0 +1,239 @@
+package au.com.belong.customerphoneapi.cache;
+
+import au.com.belong.customerphoneapi.repository.DatabaseScheduling;
+import io.r2dbc.spi.Readable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A cache invalidation bus over an outbox table in the shared database, so it needs no external services.
+ * Published changes are coalesced per phone number and written in batches, and every node polls the events written
+ * by the other nodes since its last poll.
+ * The sequence numbers are taken when the events are inserted, not when they are committed, so an event may show up
+ * after events with a higher sequence number. The numbers skipped by a poll are polled again as gaps for
+ * {@value #GAP_POLLS} polls, after which they are taken for a rolled back insert.
+ * The statements run on the database scheduler like the repository calls.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "phone-api.cache-invalidation.bus", havingValue = "outbox")
+public class OutboxCacheInvalidationBus implements CacheInvalidationBus {
+    private static final long UNKNOWN = -1L;
+    private static final int GAP_POLLS = 30;
+    private static final String SELECT_LAST_VERSION = "SELECT COALESCE(MAX(seq), 0) FROM CACHE_INVALIDATION_EVENTS";
+    private static final String SELECT_EVENTS = "SELECT seq, phone_id, customer_id, is_active, row_version, origin "
+            + "FROM CACHE_INVALIDATION_EVENTS WHERE ";
+    private static final String EVENTS_AFTER = "seq > :after ORDER BY seq LIMIT :limit";
+    private static final String EVENTS_AFTER_OR_IN_GAPS = "(seq > :after OR seq IN (:gaps)) ORDER BY seq LIMIT :limit";
+    // The cutoff is computed by the database, whose clock set created_at
+    private static final String DELETE_EVENTS_BEFORE = "DELETE FROM CACHE_INVALIDATION_EVENTS "
+            + "WHERE created_at < DATEADD(MILLISECOND, -:retentionMillis, CURRENT_TIMESTAMP)";
+
+    private final DatabaseClient databaseClient;
+    private final DatabaseScheduling databaseScheduling;
+    private final int batchSize;
+    private final Duration retention;
+    private final String nodeId = UUID.randomUUID().toString();
+    // Changes not yet written, the latest change of a phone number replaces the previous one
+    private final Map<Long, CacheInvalidationEvent> pending = new ConcurrentHashMap<>();
+    // The highest sequence number polled, and the lower ones not polled yet with the polls left to wait for them,
+    // only used by one poll at a time
+    private long lastSeenVersion = UNKNOWN;
+    private final NavigableMap<Long, Integer> gaps = new TreeMap<>();
+    private final List<Consumer<List<CacheInvalidationEvent>>> subscribers = new CopyOnWriteArrayList<>();
+
+    public OutboxCacheInvalidationBus(DatabaseClient databaseClient,
+                                      DatabaseScheduling databaseScheduling,
+                                      @Value("${phone-api.cache-invalidation.batch-size:500}") int batchSize,
+                                      @Value("${phone-api.cache-invalidation.retention:PT10M}") Duration retention) {
+        this.databaseClient = databaseClient;
+        this.databaseScheduling = databaseScheduling;
+        this.batchSize = batchSize;
+        this.retention = retention;
+    }
+
+    @Override
+    public void publish(CacheInvalidationEvent event) {
+        pending.put(event.getPhoneId(), event);
+    }
+
+    @Override
+    public void subscribe(Consumer<List<CacheInvalidationEvent>> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Writes the pending changes of this node and applies the changes written by the other nodes.
+     *
+     * @return Completes when both directions are done.
+     */
+    @Scheduled(
+            initialDelayString = "${phone-api.cache-invalidation.interval:PT1S}",
+            fixedDelayString = "${phone-api.cache-invalidation.interval:PT1S}")
+    public Mono<Void> synchronize() {
+        return flush().then(poll());
+    }
+
+    /**
+     * Writes the pending changes, one multi-row insert per batch. Failed batches are queued again unless a newer change
+     * of the same phone number was published in the meantime.
+     *
+     * @return Completes when the pending changes are written.
+     */
+    public Mono<Void> flush() {
+        List<CacheInvalidationEvent> events = new ArrayList<>();
+        pending.keySet().forEach(phoneId -> {
+            CacheInvalidationEvent event = pending.remove(phoneId);
+            if (event != null) {
+                events.add(event);
+            }
+        });
+        return Flux.fromIterable(events)
+                .buffer(batchSize)
+                .concatMap(batch -> insert(batch)
+                        .onErrorResume(exception -> {
+                            log.warn("Failed to publish {} cache invalidation events: {}", batch.size(), exception.getMessage());
+                            batch.forEach(event -> pending.putIfAbsent(event.getPhoneId(), event));
+                            return Mono.empty();
+                        }))
+                .then();
+    }
+
+    /**
+     * Applies the changes written by the other nodes since the last poll, and the ones filling its gaps, coalesced to
+     * the latest change per phone number. The first poll only records the current end of the log, a starting node has
+     * nothing cached yet.
+     *
+     * @return Completes when the changes are applied.
+     */
+    public Mono<Void> poll() {
+        if (lastSeenVersion == UNKNOWN) {
+            return databaseScheduling.call(databaseClient.sql(SELECT_LAST_VERSION)
+                            .map(row -> row.get(0, Long.class))
+                            .one())
+                    .doOnNext(version -> lastSeenVersion = version)
+                    .then();
+        }
+        DatabaseClient.GenericExecuteSpec spec = gaps.isEmpty()
+                ? databaseClient.sql(SELECT_EVENTS + EVENTS_AFTER)
+                : databaseClient.sql(SELECT_EVENTS + EVENTS_AFTER_OR_IN_GAPS).bind("gaps", List.copyOf(gaps.keySet()));
+        return databaseScheduling.call(spec.bind("after", lastSeenVersion)
+                        .bind("limit", batchSize)
+                        .map(this::toEventRow)
+                        .all()
+                        .collectList())
+                .doOnNext(rows -> {
+                    List<EventRow> newRows = track(rows);
+                    List<CacheInvalidationEvent> remoteEvents = coalesce(newRows);
+                    if (!remoteEvents.isEmpty()) {
+                        subscribers.forEach(subscriber -> subscriber.accept(remoteEvents));
+                    }
+                })
+                .onErrorResume(exception -> {
+                    log.warn("Failed to poll cache invalidation events: {}", exception.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    // Records the polled sequence numbers and the ones they skipped, and gives up on the gaps waited for long enough
+    private List<EventRow> track(List<EventRow> rows) {
+        gaps.replaceAll((seq, pollsLeft) -> pollsLeft - 1);
+        List<EventRow> newRows = new ArrayList<>(rows.size());
+        for (EventRow row : rows) {
+            long seq = row.event().getVersion();
+            if (gaps.remove(seq) != null) {
+                newRows.add(row);
+            } else if (seq > lastSeenVersion) {
+                for (long skipped = Math.max(lastSeenVersion + 1, seq - batchSize); skipped < seq; skipped++) {
+                    gaps.put(skipped, GAP_POLLS);
+                }
+                lastSeenVersion = seq;
+                newRows.add(row);
+            }
+        }
+        gaps.values().removeIf(pollsLeft -> pollsLeft <= 0);
+        // At most a batch of gaps is kept, the oldest are dropped first
+        while (gaps.size() > batchSize) {
+            gaps.pollFirstEntry();
+        }
+        return newRows;
+    }
+
+    /**
+     * Deletes the events every node had the chance to poll.
+     *
+     * @return The number of deleted events.
+     */
+    @Scheduled(
+            initialDelayString = "${phone-api.cache-invalidation.retention:PT10M}",
+            fixedDelayString = "${phone-api.cache-invalidation.retention:PT10M}")
+    public Mono<Long> purge() {
+        return databaseScheduling.call(databaseClient.sql(DELETE_EVENTS_BEFORE)
+                .bind("retentionMillis", retention.toMillis())
+                .fetch()
+                .rowsUpdated());
+    }
+
+    private Mono<Long> insert(List<CacheInvalidationEvent> batch) {
+        String values = IntStream.range(0, batch.size())
+                .mapToObj(i -> "(:phoneId" + i + ", :customerId" + i + ", :active" + i + ", :rowVersion" + i + ", :origin)")
+                .collect(Collectors.joining(", "));
+        DatabaseClient.GenericExecuteSpec spec = databaseClient
+                .sql("INSERT INTO CACHE_INVALIDATION_EVENTS (phone_id, customer_id, is_active, row_version, origin) VALUES " + values)
+                .bind("origin", nodeId);
+        for (int i = 0; i < batch.size(); i++) {
+            CacheInvalidationEvent event = batch.get(i);
+            spec = spec.bind("phoneId" + i, event.getPhoneId())
+                    .bind("customerId" + i, event.getCustomerId())
+                    .bind("active" + i, event.isActive())
+                    .bind("rowVersion" + i, event.getRowVersion());
+        }
+        return databaseScheduling.call(spec.fetch().rowsUpdated());
+    }
+
+    private List<CacheInvalidationEvent> coalesce(List<EventRow> rows) {
+        Map<Long, CacheInvalidationEvent> latest = new LinkedHashMap<>();
+        rows.stream()
+                .filter(row -> !nodeId.equals(row.origin()))
+                .forEach(row -> {
+                    latest.remove(row.event().getPhoneId());
+                    latest.put(row.event().getPhoneId(), row.event());
+                });
+        return new ArrayList<>(latest.values());
+    }
+
+    private EventRow toEventRow(Readable row) {
+        CacheInvalidationEvent event = CacheInvalidationEvent.builder()
+                .version(row.get("seq", Long.class))
+                .phoneId(row.get("phone_id", Long.class))
+                .customerId(row.get("customer_id", Long.class))
+                .active(Boolean.TRUE.equals(row.get("is_active", Boolean.class)))
+                .rowVersion(row.get("row_version", Long.class))
+                .build();
+        return new EventRow(event, row.get("origin", String.class));
+    }
+
+    private record EventRow(CacheInvalidationEvent event, String origin) {
+    }
+}
@@ -0,0 +1,203 @@
+package au.com.belong.customerphoneapi.cache;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.PageDTO;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps the cached phone number pages and customer lists coherent with activation changes.
+ * It tracks which cached pages contain a given phone number, so an update replaces that phone number in exactly those
+ * pages and in the list of its customer, instead of flushing whole caches or serving stale state until expiry.
+ * Changes made on this node are published on the {@link CacheInvalidationBus} and changes of the other nodes are
+ * applied the same way.
+ */
+@Slf4j
+@Component
+public class PhoneNumberCacheCoherence {
+    public static final String PAGES_CACHE = "phoneNumbers";
+    public static final String CUSTOMERS_CACHE = "customers";
+
+    private final CaffeineCacheManager cacheManager;
+    private final CacheInvalidationBus invalidationBus;
+    // Reverse index of a phone number identifier to the keys of the cached pages that contain it, pruned as the pages
+    // are removed from their cache
+    private final Map<Long, Set<Object>> pageKeysByPhoneId = new ConcurrentHashMap<>();
+    // The number of loads running for each page key, a page key may be loaded again while an evicted load still runs
+    private final Map<Object, Integer> loadingPages = new ConcurrentHashMap<>();
+
+    public PhoneNumberCacheCoherence(CaffeineCacheManager cacheManager, CacheInvalidationBus invalidationBus) {
+        this.cacheManager = cacheManager;
+        this.invalidationBus = invalidationBus;
+        invalidationBus.subscribe(events -> events.forEach(this::apply));
+    }
+
+    /**
+     * The key of a cached page, the same key the default key generator derives from <code>getAllFor(page, size)</code>.
+     *
+     * @param page The page number.
+     * @param size The page size.
+     * @return The cache key of the page.
+     */
+    public static Object pageKey(int page, int size) {
+        return new SimpleKey(page, size);
+    }
+
+    /**
+     * Loads a page to be cached and records its phone numbers. The page is known to be loading before its query starts,
+     * so a change applied while the query runs evicts it instead of leaving the state read before the change cached.
+     *
+     * @param page The page number.
+     * @param size The page size.
+     * @param load The query of the page.
+     * @return The loaded page.
+     */
+    public Mono<PageDTO<PhoneNumber>> loadPage(int page, int size, Mono<PageDTO<PhoneNumber>> load) {
+        Object pageKey = pageKey(page, size);
+        return Mono.defer(() -> {
+            loadingPages.merge(pageKey, 1, Integer::sum);
+            return load.doOnNext(content -> registerPage(page, size, content))
+                    .doFinally(signal -> loadingPages.computeIfPresent(pageKey, (key, loads) -> loads > 1 ? loads - 1 : null));
+        });
+    }
+
+    /**
+     * Records the phone numbers of a page that is about to be cached.
+     *
+     * @param page    The page number.
+     * @param size    The page size.
+     * @param content The page being cached.
+     */
+    public void registerPage(int page, int size, PageDTO<PhoneNumber> content) {
+        Object pageKey = pageKey(page, size);
+        // Added within the compute, so a concurrent removal of the last page of the phone number does not drop it
+        content.getContent().forEach(phone -> pageKeysByPhoneId.compute(phone.getId(), (id, pageKeys) -> {
+            Set<Object> keys = pageKeys != null ? pageKeys : ConcurrentHashMap.<Object>newKeySet();
+            keys.add(pageKey);
+            return keys;
+        }));
+    }
+
+    /**
+     * Drops a page removed from its cache, evicted, expired or invalidated, from the index. The removal listener is
+     * notified after the removal, so a page cached again since is kept.
+     *
+     * @param pageKey The key of the removed page.
+     * @param page    The removed page, null when it was not loaded.
+     * @param cause   Why the page was removed.
+     */
+    public void pageRemoved(Object pageKey, Object page, RemovalCause cause) {
+        if (cause == RemovalCause.REPLACED || !(page instanceof PageDTO<?> removed)
+                || nativeCache(PAGES_CACHE).asMap().containsKey(pageKey)) {
+            return;
+        }
+        removed.getContent().forEach(phone -> unindex(((PhoneNumber) phone).getId(), pageKey));
+    }
+
+    int indexedPhoneNumbers() {
+        return pageKeysByPhoneId.size();
+    }
+
+    private void unindex(long phoneId, Object pageKey) {
+        pageKeysByPhoneId.computeIfPresent(phoneId, (id, pageKeys) -> {
+            pageKeys.remove(pageKey);
+            return pageKeys.isEmpty() ? null : pageKeys;
+        });
+    }
+
+    /**
+     * Applies an activation change made on this node and publishes it to the other nodes.
+     *
+     * @param updated The updated phone number.
+     */
+    public void onUpdated(PhoneNumber updated) {
+        CacheInvalidationEvent event = CacheInvalidationEvent.of(updated);
+        apply(event);
+        invalidationBus.publish(event);
+    }
+
+    /**
+     * Sets the new state of the phone number in the cached pages that contain it and in the cached list of its
+     * customer, unless they hold the same or a newer version of the phone number. Pages that are no longer cached are dropped from the index, entries still loading are evicted since
+     * they may have read the state before the change. The pages are only indexed once loaded, so every page still
+     * loading is evicted, whatever its phone numbers.
+     *
+     * @param event The activation change.
+     */
+    @SuppressWarnings("unchecked")
+    public void apply(CacheInvalidationEvent event) {
+        Set<Object> pageKeys = pageKeysByPhoneId.get(event.getPhoneId());
+        if (pageKeys != null) {
+            pageKeys.stream()
+                    .filter(pageKey -> !replace(PAGES_CACHE, pageKey, page -> replaceIn((PageDTO<PhoneNumber>) page, event)))
+                    .toList()
+                    .forEach(pageKey -> unindex(event.getPhoneId(), pageKey));
+        }
+        loadingPages.keySet().forEach(pageKey -> nativeCache(PAGES_CACHE)
+                .asMap()
+                .computeIfPresent(pageKey, (key, value) -> value.isDone() ? value : null));
+        replace(CUSTOMERS_CACHE, event.getCustomerId(), phones -> replaceIn((List<PhoneNumber>) phones, event));
+    }
+
+    /**
+     * Atomically replaces a completed cache entry with the result of <code>replaceFn</code>.
+     *
+     * @return Whether the entry is still cached.
+     */
+    private boolean replace(String cacheName, Object key, UnaryOperator<Object> replaceFn) {
+        CompletableFuture<Object> replaced = nativeCache(cacheName)
+                .asMap()
+                .computeIfPresent(key, (k, value) -> value.isDone() && !value.isCompletedExceptionally()
+                        ? CompletableFuture.completedFuture(replaceFn.apply(value.join()))
+                        : null);
+        if (replaced == null) {
+            log.debug("Evicted or missing {} cache entry {}", cacheName, key);
+        }
+        return replaced != null;
+    }
+
+    private AsyncCache<Object, Object> nativeCache(String cacheName) {
+        return ((CaffeineCache) cacheManager.getCache(cacheName)).getAsyncCache();
+    }
+
+    private static PageDTO<PhoneNumber> replaceIn(PageDTO<PhoneNumber> page, CacheInvalidationEvent event) {
+        return page.toBuilder()
+                .content(replaceIn(page.getContent(), event))
+                .build();
+    }
+
+    // Cached phone numbers are shared with earlier responses, so the changed one is copied rather than mutated. A change
+    // is only applied over an older version, a late one, polled again over a gap or applied after a newer local change,
+    // does not roll the cached state back
+    private static List<PhoneNumber> replaceIn(List<PhoneNumber> phones, CacheInvalidationEvent event) {
+        return phones.stream()
+                .map(phone -> phone.getId() == event.getPhoneId() && event.getRowVersion() > phone.getVersion()
+                        ? withState(phone, event)
+                        : phone)
+                .toList();
+    }
+
+    // The version is copied too, so the ETags of the cached pages and lists change with the state
+    private static PhoneNumber withState(PhoneNumber phone, CacheInvalidationEvent event) {
+        PhoneNumber changed = new PhoneNumber();
+        changed.setId(phone.getId());
+        changed.setPhoneNumber(phone.getPhoneNumber());
+        changed.setCustomerId(phone.getCustomerId());
+        changed.setActive(event.isActive());
+        changed.setVersion(event.getRowVersion());
+        return changed;
+    }
+}
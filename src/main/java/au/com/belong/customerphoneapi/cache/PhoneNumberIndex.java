@@ -0,0 +1,289 @@
+package au.com.belong.customerphoneapi.cache;
+
+import au.com.belong.customerphoneapi.dto.PhoneNumberOwnerDTO;
+import au.com.belong.customerphoneapi.repository.DatabaseScheduling;
+import au.com.belong.customerphoneapi.repository.Shards;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * An in-process index of the normalized phone numbers to their phone number and customer identifiers, so that
+ * "who owns this number" is answered without a database round trip.
+ * Each number is encoded as a single primitive <code>long</code> key (see {@link #encode(String)}) and the keys are
+ * kept sorted in a plain array next to two arrays of identifiers, i.e. 24 bytes per phone number, 24 MB per million.
+ * A lookup is a binary search, a prefix lookup a binary search followed by a scan of the matching keys.
+ * <br/>
+ * The index is an immutable snapshot replaced as a whole by {@link #rebuild()}. The API never changes the number or
+ * the owner of a phone number, activation changes do not affect the index, so the periodic rebuild only has to pick up
+ * rows written outside of the API. Until the first build completes, or when it failed, the lookups query the table.
+ * The table is read on the database scheduler like the repository calls.
+ */
+@Slf4j
+@Component
+public class PhoneNumberIndex {
+    public static final int MAX_DIGITS = 15;
+    private static final long[] POWERS_OF_TEN = LongStream.iterate(1, power -> power * 10).limit(MAX_DIGITS + 1).toArray();
+    private static final int LENGTH_BITS = 4;
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+    private static final int BYTES_PER_ENTRY = 3 * Long.BYTES;
+    // Ordered by the unique index of V6__create_phone_number_indexes.sql, which is also the order of the encoded keys
+    private static final String SELECT_ENTRIES = "SELECT id, phone_number_normalized, customer_id FROM PHONE_NUMBERS ";
+    private static final String ALL_ENTRIES = SELECT_ENTRIES + "WHERE phone_number_normalized <> '' ORDER BY phone_number_normalized";
+    private static final String ENTRY_OF_NUMBER = SELECT_ENTRIES + "WHERE phone_number_normalized = :digits";
+    private static final String ENTRIES_OF_PREFIX = SELECT_ENTRIES + "WHERE phone_number_normalized LIKE :pattern "
+            + "ORDER BY phone_number_normalized LIMIT :limit";
+
+    private final List<DatabaseClient> databases;
+    private final DatabaseScheduling databaseScheduling;
+    private volatile Snapshot snapshot;
+
+    public PhoneNumberIndex(DatabaseClient databaseClient, DatabaseScheduling databaseScheduling, MeterRegistry meterRegistry) {
+        this(List.of(databaseClient), databaseScheduling, meterRegistry);
+    }
+
+    /**
+     * With the sharded backend, the phone numbers of every shard are indexed.
+     */
+    @Autowired
+    public PhoneNumberIndex(DatabaseClient databaseClient, ObjectProvider<Shards> shards,
+                            DatabaseScheduling databaseScheduling, MeterRegistry meterRegistry) {
+        this(Optional.ofNullable(shards.getIfAvailable()).map(Shards::getDatabaseClients).orElse(List.of(databaseClient)),
+                databaseScheduling, meterRegistry);
+    }
+
+    private PhoneNumberIndex(List<DatabaseClient> databases, DatabaseScheduling databaseScheduling, MeterRegistry meterRegistry) {
+        this.databases = databases;
+        this.databaseScheduling = databaseScheduling;
+        Gauge.builder("phone.number.index.entries", this, index -> index.snapshot == null ? 0 : index.snapshot.size())
+                .description("Phone numbers in the in-process reverse lookup index")
+                .register(meterRegistry);
+        Gauge.builder("phone.number.index.memory", this, index -> index.snapshot == null ? 0 : index.snapshot.bytes())
+                .description("Memory used by the arrays of the in-process reverse lookup index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reduces a phone number to the form stored in <code>phone_number_normalized</code>: digits only, with the +61
+     * country code replaced by the leading zero.
+     *
+     * @param phoneNumber The phone number in any format.
+     * @return The normalized phone number.
+     */
+    public static String normalize(String phoneNumber) {
+        String digits = phoneNumber.replaceAll("[^0-9]", "");
+        return digits.startsWith("61") ? "0" + digits.substring(2) : digits;
+    }
+
+    /**
+     * Encodes a normalized phone number as a <code>long</code>: the digits left aligned to {@link #MAX_DIGITS} digits,
+     * so that leading zeros are kept and keys sort like the digit strings, followed by the number of digits.
+     *
+     * @param digits The normalized phone number, 1 to {@link #MAX_DIGITS} digits.
+     * @return The key of the phone number.
+     */
+    static long encode(String digits) {
+        int length = digits.length();
+        if (length == 0 || length > MAX_DIGITS) {
+            throw new IllegalArgumentException("A phone number has 1 to " + MAX_DIGITS + " digits: " + digits);
+        }
+        return (Long.parseLong(digits) * POWERS_OF_TEN[MAX_DIGITS - length]) << LENGTH_BITS | length;
+    }
+
+    static String decode(long key) {
+        int length = (int) (key & LENGTH_MASK);
+        long value = (key >>> LENGTH_BITS) / POWERS_OF_TEN[MAX_DIGITS - length];
+        String digits = Long.toString(value);
+        return "0".repeat(length - digits.length()) + digits;
+    }
+
+    /**
+     * Finds the owner of a phone number, in the table before the first build of the index after startup.
+     *
+     * @param phoneNumber The phone number in any format.
+     * @return The phone number and its owner, empty when the number is not known.
+     */
+    public Mono<PhoneNumberOwnerDTO> find(String phoneNumber) {
+        String digits = normalize(phoneNumber);
+        long key = encode(digits);
+        Snapshot current = snapshot;
+        if (current != null) {
+            return Mono.justOrEmpty(current.find(key));
+        }
+        return read(ENTRY_OF_NUMBER, Map.of("digits", digits))
+                .next()
+                .map(Entry::owner);
+    }
+
+    /**
+     * Finds the phone numbers starting with the given digits, in number order.
+     *
+     * @param prefix The first digits of the phone numbers in any format.
+     * @param limit  The maximum number of phone numbers to return.
+     * @return The matching phone numbers and their owners.
+     */
+    public Mono<List<PhoneNumberOwnerDTO>> findByPrefix(String prefix, int limit) {
+        String digits = normalize(prefix);
+        Snapshot current = snapshot;
+        if (current != null) {
+            return Mono.just(current.findByPrefix(digits, limit));
+        }
+        if (digits.isEmpty() || digits.length() > MAX_DIGITS) {
+            return Mono.just(List.of());
+        }
+        // Only digits are left, none of them is a wildcard
+        return read(ENTRIES_OF_PREFIX, Map.of("pattern", digits + "%", "limit", limit))
+                .distinct()
+                .take(limit)
+                .map(Entry::owner)
+                .collectList();
+    }
+
+    /**
+     * Reads all the phone numbers and replaces the index with them. Runs at startup and then periodically.
+     *
+     * @return The number of indexed phone numbers.
+     */
+    @Scheduled(fixedDelayString = "${phone-api.phone-number-index.rebuild-interval:PT5M}")
+    public Mono<Integer> rebuild() {
+        return read(ALL_ENTRIES, Map.of())
+                .reduceWith(SnapshotBuilder::new, SnapshotBuilder::add)
+                .map(SnapshotBuilder::build)
+                .doOnNext(built -> {
+                    snapshot = built;
+                    log.info("Indexed {} phone numbers in {} bytes", built.size(), built.bytes());
+                })
+                .map(Snapshot::size);
+    }
+
+    // The shards are read in parallel and merged in key order
+    @SuppressWarnings("unchecked")
+    private Flux<Entry> read(String sql, Map<String, Object> parameters) {
+        Flux<Entry>[] entriesByDatabase = databases.stream()
+                .map(databaseClient -> databaseScheduling.call(databaseClient.sql(sql)
+                        .bindValues(parameters)
+                        .map(row -> new Entry(
+                                encode(row.get("phone_number_normalized", String.class)),
+                                row.get("id", Long.class),
+                                row.get("customer_id", Long.class)))
+                        .all()))
+                .toArray(Flux[]::new);
+        return Flux.mergeComparing(Comparator.comparingLong(Entry::key), entriesByDatabase);
+    }
+
+    private record Entry(long key, long phoneId, long customerId) {
+
+        PhoneNumberOwnerDTO owner() {
+            return PhoneNumberOwnerDTO.of(phoneId, decode(key), customerId);
+        }
+    }
+
+    /**
+     * The sorted keys with the identifiers of each key at the same position.
+     */
+    private record Snapshot(long[] keys, long[] phoneIds, long[] customerIds) {
+
+        int size() {
+            return keys.length;
+        }
+
+        long bytes() {
+            return (long) keys.length * BYTES_PER_ENTRY;
+        }
+
+        PhoneNumberOwnerDTO find(long key) {
+            int position = Arrays.binarySearch(keys, key);
+            return position < 0 ? null : owner(position);
+        }
+
+        List<PhoneNumberOwnerDTO> findByPrefix(String prefix, int limit) {
+            if (prefix.isEmpty() || prefix.length() > MAX_DIGITS) {
+                return List.of();
+            }
+            // All the keys of the numbers starting with the prefix lie between the prefix and the next prefix
+            long scale = POWERS_OF_TEN[MAX_DIGITS - prefix.length()];
+            long from = Long.parseLong(prefix) * scale << LENGTH_BITS;
+            long to = (Long.parseLong(prefix) + 1) * scale << LENGTH_BITS;
+            List<PhoneNumberOwnerDTO> owners = new ArrayList<>(Math.min(limit, 16));
+            for (int position = lowerBound(from); position < keys.length && keys[position] < to && owners.size() < limit; position++) {
+                // A shorter number padded with zeros falls in the range too, e.g. 048 for the prefix 0480
+                if ((keys[position] & LENGTH_MASK) >= prefix.length()) {
+                    owners.add(owner(position));
+                }
+            }
+            return owners;
+        }
+
+        private int lowerBound(long key) {
+            int position = Arrays.binarySearch(keys, key);
+            return position < 0 ? -position - 1 : position;
+        }
+
+        private PhoneNumberOwnerDTO owner(int position) {
+            return PhoneNumberOwnerDTO.of(phoneIds[position], decode(keys[position]), customerIds[position]);
+        }
+    }
+
+    /**
+     * Collects the entries into growing primitive arrays. Each row still allocates an {@link Entry} and the boxed
+     * identifiers read from it, which are garbage once added.
+     */
+    private static final class SnapshotBuilder {
+        private long[] keys = new long[1024];
+        private long[] phoneIds = new long[1024];
+        private long[] customerIds = new long[1024];
+        private int size;
+        private boolean sorted = true;
+
+        SnapshotBuilder add(Entry entry) {
+            // A phone number being moved between shards is read from both
+            if (size > 0 && keys[size - 1] == entry.key() && phoneIds[size - 1] == entry.phoneId()) {
+                return this;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                phoneIds = Arrays.copyOf(phoneIds, size * 2);
+                customerIds = Arrays.copyOf(customerIds, size * 2);
+            }
+            sorted &= size == 0 || keys[size - 1] < entry.key();
+            keys[size] = entry.key();
+            phoneIds[size] = entry.phoneId();
+            customerIds[size] = entry.customerId();
+            size++;
+            return this;
+        }
+
+        Snapshot build() {
+            if (sorted) {
+                return new Snapshot(Arrays.copyOf(keys, size), Arrays.copyOf(phoneIds, size), Arrays.copyOf(customerIds, size));
+            }
+            // Only when the database collation does not order the digit strings like the keys
+            log.warn("Phone numbers were not read in key order, sorting {} entries", size);
+            int[] order = IntStream.range(0, size).boxed()
+                    .sorted(Comparator.comparingLong(position -> keys[position]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            return new Snapshot(
+                    Arrays.stream(order).mapToLong(position -> keys[position]).toArray(),
+                    Arrays.stream(order).mapToLong(position -> phoneIds[position]).toArray(),
+                    Arrays.stream(order).mapToLong(position -> customerIds[position]).toArray());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package au.com.belong.customerphoneapi.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the encoded bodies of the GET responses of the given types, keyed by the path, query and media type of the
+ * request, and writes a cached body straight to the response instead of encoding the same value again. The bytes are
+ * wrapped, not copied, into the buffer written to the response.
+ * An entry is only served while the <code>ETag</code> of the response is the one it was encoded with. The ETag changes
+ * with the version of every phone number in the body, so an activation change, made on this node or on another one,
+ * replaces the entry on the next request instead of serving a stale body. Responses without an ETag are not cached.
+ */
+public class ResponseBodyCache implements HttpMessageWriter<Object> {
+    private final EncoderHttpMessageWriter<Object> delegate;
+    private final Set<ResolvableType> cachedTypes;
+    private final long maxEntrySize;
+    private final Cache<String, Entry> entries;
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * @param encoder       The encoder of the bodies, used on a miss.
+     * @param cachedTypes   The types of the bodies to cache, with their generics.
+     * @param maxSize       The maximum size in bytes of all the cached bodies.
+     * @param maxEntrySize  The maximum size in bytes of a cached body, larger bodies are encoded on every response.
+     * @param meterRegistry The actuator meter registry.
+     */
+    public ResponseBodyCache(Encoder<Object> encoder, Set<ResolvableType> cachedTypes, long maxSize, long maxEntrySize,
+                             MeterRegistry meterRegistry) {
+        this.delegate = new EncoderHttpMessageWriter<>(encoder);
+        this.cachedTypes = cachedTypes;
+        this.maxEntrySize = maxEntrySize;
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(maxSize)
+                .<String, Entry>weigher((key, entry) -> key.length() + entry.body().length)
+                .build();
+        this.hits = counter("hit", meterRegistry);
+        this.misses = counter("miss", meterRegistry);
+    }
+
+    @Override
+    public List<MediaType> getWritableMediaTypes() {
+        return delegate.getWritableMediaTypes();
+    }
+
+    @Override
+    public boolean canWrite(ResolvableType elementType, @Nullable MediaType mediaType) {
+        // Compared with the generics, so that e.g. every List is not taken over from the default writer
+        return cachedTypes.stream().anyMatch(cachedType -> cachedType.isAssignableFrom(elementType))
+                && delegate.canWrite(elementType, mediaType);
+    }
+
+    @Override
+    public Mono<Void> write(Publisher<?> inputStream, ResolvableType elementType, @Nullable MediaType mediaType,
+                            ReactiveHttpOutputMessage message, Map<String, Object> hints) {
+        return delegate.write(inputStream, elementType, mediaType, message, hints);
+    }
+
+    @Override
+    public Mono<Void> write(Publisher<?> inputStream, ResolvableType actualType, ResolvableType elementType,
+                            @Nullable MediaType mediaType, ServerHttpRequest request, ServerHttpResponse response,
+                            Map<String, Object> hints) {
+        String eTag = response.getHeaders().getETag();
+        if (!(inputStream instanceof Mono) || eTag == null || request.getMethod() != HttpMethod.GET) {
+            return delegate.write(inputStream, actualType, elementType, mediaType, request, response, hints);
+        }
+        String key = key(request, mediaType);
+        Entry entry = entries.getIfPresent(key);
+        if (entry != null && entry.eTag().equals(eTag)) {
+            hits.increment();
+            HttpHeaders headers = response.getHeaders();
+            headers.setContentType(entry.contentType());
+            headers.setContentLength(entry.body().length);
+            return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(entry.body())));
+        }
+        misses.increment();
+        return delegate.write(inputStream, actualType, elementType, mediaType, request, new CapturingResponse(response, key, eTag), hints);
+    }
+
+    private static String key(ServerHttpRequest request, @Nullable MediaType mediaType) {
+        String query = request.getURI().getRawQuery();
+        return request.getURI().getRawPath() + (query != null ? "?" + query : "") + " " + mediaType;
+    }
+
+    private static Counter counter(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("phone.api.response.cache")
+                .description("Responses written from an encoded body cached before, or encoded and cached")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record Entry(String eTag, MediaType contentType, byte[] body) {
+    }
+
+    /**
+     * Copies the encoded body into the cache on its way to the response. The encoder writes a single value as one
+     * buffer, joined all the same in case it does not.
+     */
+    private final class CapturingResponse extends ServerHttpResponseDecorator {
+        private final String key;
+        private final String eTag;
+
+        CapturingResponse(ServerHttpResponse delegate, String key, String eTag) {
+            super(delegate);
+            this.key = key;
+            this.eTag = eTag;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return DataBufferUtils.join(body)
+                    .flatMap(joined -> {
+                        byte[] bytes = new byte[joined.readableByteCount()];
+                        joined.read(bytes);
+                        DataBufferUtils.release(joined);
+                        MediaType contentType = getHeaders().getContentType();
+                        if (contentType != null && bytes.length <= maxEntrySize) {
+                            entries.put(key, new Entry(eTag, contentType, bytes));
+                        }
+                        return super.writeWith(Mono.fromSupplier(() -> bufferFactory().wrap(bytes)));
+                    });
+        }
+    }
+}
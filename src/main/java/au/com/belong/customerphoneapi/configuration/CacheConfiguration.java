@@ -1,19 +1,104 @@
 package au.com.belong.customerphoneapi.configuration;
 
+import au.com.belong.customerphoneapi.cache.MeteredCaffeineCache;
+import au.com.belong.customerphoneapi.cache.PhoneNumberCacheCoherence;
+import au.com.belong.customerphoneapi.cache.ResponseBodyCache;
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.PageDTO;
+import au.com.belong.customerphoneapi.metrics.MeteredJackson2JsonEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.cache.Cache;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+import java.util.Set;
 
 @EnableCaching
 @Configuration
 public class CacheConfiguration {
+    /**
+     * The bodies cached by the {@link ResponseBodyCache}: the phone number pages and the phone numbers of a customer.
+     */
+    public static final Set<ResolvableType> CACHED_RESPONSE_TYPES = Set.of(
+            ResolvableType.forClassWithGenerics(PageDTO.class, PhoneNumber.class),
+            ResolvableType.forClassWithGenerics(List.class, PhoneNumber.class));
 
+    /**
+     * Async cache mode stores the materialized result of a cached <code>Mono</code>/<code>Flux</code> (the value or the
+     * collected list) as a completed future and replays it to subscribers, instead of caching the publisher itself.
+     * Each cache times its lookups, see {@link MeteredCaffeineCache}. The pages removed from their cache are dropped
+     * from the index of the cache coherence, which is created after the cache manager.
+     *
+     * @param cacheSpecification The Caffeine cache specification, i.e. the size and expiry of each cache.
+     * @param meterRegistry      The actuator meter registry.
+     * @param cacheCoherence     The cache coherence indexing the phone numbers of the cached pages.
+     * @return The cache manager.
+     */
     @Bean
-    public CaffeineCacheManager caffeineCacheManager() {
-        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+    public CaffeineCacheManager caffeineCacheManager(@Value("${spring.cache.caffeine.spec:}") String cacheSpecification,
+                                                     MeterRegistry meterRegistry,
+                                                     ObjectProvider<PhoneNumberCacheCoherence> cacheCoherence) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager() {
+            @Override
+            protected AsyncCache<Object, Object> createAsyncCaffeineCache(String name) {
+                if (!PhoneNumberCacheCoherence.PAGES_CACHE.equals(name)) {
+                    return super.createAsyncCaffeineCache(name);
+                }
+                Caffeine<Object, Object> builder = cacheSpecification.isBlank()
+                        ? Caffeine.newBuilder()
+                        : Caffeine.from(cacheSpecification);
+                return builder
+                        .removalListener((key, page, cause) -> cacheCoherence
+                                .ifAvailable(coherence -> coherence.pageRemoved(key, page, cause)))
+                        .buildAsync();
+            }
+
+            @Override
+            protected Cache adaptCaffeineCache(String name, AsyncCache<Object, Object> cache) {
+                return new MeteredCaffeineCache(name, cache, isAllowNullValues(), meterRegistry);
+            }
+        };
         cacheManager.setAsyncCacheMode(true);
+        if (!cacheSpecification.isBlank()) {
+            cacheManager.setCacheSpecification(cacheSpecification);
+        }
         return cacheManager;
     }
-}
 
+    /**
+     * Caches the encoded JSON bodies of the phone number pages and customer lists, see {@link ResponseBodyCache}. Its
+     * writer is registered as a custom codec, which comes before the default JSON writer.
+     *
+     * @param objectMapper  The application object mapper.
+     * @param maxSize       The maximum size of all the cached bodies.
+     * @param maxEntrySize  The maximum size of a cached body.
+     * @param meterRegistry The actuator meter registry.
+     * @return The codec customizer.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "phone-api.response-cache.enabled", havingValue = "true")
+    public CodecCustomizer responseBodyCacheCodecCustomizer(ObjectMapper objectMapper,
+                                                            @Value("${phone-api.response-cache.max-size:64MB}") DataSize maxSize,
+                                                            @Value("${phone-api.response-cache.max-entry-size:1MB}") DataSize maxEntrySize,
+                                                            MeterRegistry meterRegistry) {
+        ResponseBodyCache responseBodyCache = new ResponseBodyCache(
+                new MeteredJackson2JsonEncoder(objectMapper, meterRegistry),
+                CACHED_RESPONSE_TYPES,
+                maxSize.toBytes(),
+                maxEntrySize.toBytes(),
+                meterRegistry);
+        return configurer -> configurer.customCodecs().register(responseBodyCache);
+    }
+}
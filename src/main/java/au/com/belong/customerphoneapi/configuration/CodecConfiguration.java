@@ -0,0 +1,106 @@
+package au.com.belong.customerphoneapi.configuration;
+
+import au.com.belong.customerphoneapi.controller.PhoneNumberController;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.reactivestreams.Publisher;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.AbstractJackson2Encoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary formats negotiated by the internal callers, <code>application/cbor</code> and
+ * <code>application/x-jackson-smile</code>, encoded and decoded with copies of the application object mapper so they
+ * carry the same SNAKE_CASE property names as the JSON. JSON stays the default, the controller lists it first among
+ * the media types it produces.
+ * The binary bodies are never streamed: a single value is encoded as it is, the elements of a <code>Flux</code> are
+ * collected and encoded as one array, the document the JSON encoder writes for them.
+ */
+@Configuration
+public class CodecConfiguration implements WebFluxConfigurer {
+    private static final MediaType APPLICATION_SMILE = MediaType.parseMediaType(PhoneNumberController.APPLICATION_SMILE_VALUE);
+
+    private final ObjectMapper objectMapper;
+
+    public CodecConfiguration(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        // The media types are given, the encoders and decoders fall back to the JSON ones without them
+        ObjectMapper smileMapper = objectMapper.copyWith(new SmileFactory());
+        configurer.defaultCodecs().jackson2SmileEncoder(new CollectingSmileEncoder(smileMapper));
+        configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smileMapper, APPLICATION_SMILE));
+        // A custom object codec comes after the default JSON one
+        ObjectMapper cborMapper = objectMapper.copyWith(new CBORFactory());
+        configurer.customCodecs().register(new CollectingCborEncoder(cborMapper));
+        configurer.customCodecs().register(new Jackson2CborDecoder(cborMapper, MediaType.APPLICATION_CBOR));
+    }
+
+    private static Flux<DataBuffer> encodeCollected(AbstractJackson2Encoder encoder, Publisher<?> inputStream,
+                                                    DataBufferFactory bufferFactory, ResolvableType elementType,
+                                                    @Nullable MimeType mimeType, @Nullable Map<String, Object> hints) {
+        if (inputStream instanceof Mono) {
+            return Mono.from(inputStream)
+                    .map(value -> encoder.encodeValue(value, bufferFactory, elementType, mimeType, hints))
+                    .flux();
+        }
+        ResolvableType listType = ResolvableType.forClassWithGenerics(List.class, elementType);
+        return Flux.from(inputStream)
+                .collectList()
+                .map(values -> encoder.encodeValue(values, bufferFactory, listType, mimeType, hints))
+                .flux();
+    }
+
+    /**
+     * The CBOR encoder of Spring does not encode a stream of values at all.
+     */
+    static final class CollectingCborEncoder extends Jackson2CborEncoder {
+
+        CollectingCborEncoder(ObjectMapper mapper) {
+            super(mapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                       ResolvableType elementType, @Nullable MimeType mimeType,
+                                       @Nullable Map<String, Object> hints) {
+            return encodeCollected(this, inputStream, bufferFactory, elementType, mimeType, hints);
+        }
+    }
+
+    /**
+     * The Smile encoder of Spring joins the elements of a stream with the bytes of a JSON array.
+     */
+    static final class CollectingSmileEncoder extends Jackson2SmileEncoder {
+
+        CollectingSmileEncoder(ObjectMapper mapper) {
+            super(mapper, APPLICATION_SMILE);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                       ResolvableType elementType, @Nullable MimeType mimeType,
+                                       @Nullable Map<String, Object> hints) {
+            return encodeCollected(this, inputStream, bufferFactory, elementType, mimeType, hints);
+        }
+    }
+}
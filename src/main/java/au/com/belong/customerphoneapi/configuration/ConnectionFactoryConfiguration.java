@@ -0,0 +1,86 @@
+package au.com.belong.customerphoneapi.configuration;
+
+import au.com.belong.customerphoneapi.repository.MeteredConnectionFactory;
+import au.com.belong.customerphoneapi.repository.ReadReplica;
+import au.com.belong.customerphoneapi.repository.ReadReplicaRoutingConnectionFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.PropertyMapper;
+import org.springframework.boot.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+public class ConnectionFactoryConfiguration {
+    private static final String POOL_NAME = "phonenumber-api";
+    private static final String REPLICA_NAME = "replica-";
+    private static final Duration MIN_RETRY_AFTER = Duration.ofSeconds(1);
+
+    /**
+     * The connection pool configured from <code>spring.r2dbc.pool</code>, metered for acquire latency and timeouts.
+     * With <code>phone-api.read-replicas.urls</code> every replica gets a pool configured the same way, named
+     * <code>replica-0</code>, <code>replica-1</code>..., and the read-only queries are routed to them, see
+     * {@link ReadReplicaRoutingConnectionFactory}.
+     *
+     * @param properties     The R2DBC connection and pool properties.
+     * @param replicaUrls    The R2DBC URLs of the read replicas, none to send every query to the primary.
+     * @param maxLag         How far a replica lags at most, when it is not kept in sync by the replication job.
+     * @param replicated     Whether the local replication job keeps the replicas in sync.
+     * @param meterRegistry  The actuator meter registry.
+     * @return The metered connection pool, or the routing connection factory over the pools.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionFactory connectionFactory(R2dbcProperties properties,
+                                               @Value("${phone-api.read-replicas.urls:}") List<String> replicaUrls,
+                                               @Value("${phone-api.read-replicas.max-lag:PT5S}") Duration maxLag,
+                                               @Value("${phone-api.read-replicas.replication.enabled:false}") boolean replicated,
+                                               MeterRegistry meterRegistry) {
+        MeteredConnectionFactory primary = pool(properties, properties.getUrl(), POOL_NAME, meterRegistry);
+        if (replicaUrls.isEmpty()) {
+            return primary;
+        }
+        List<ReadReplica> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            String name = REPLICA_NAME + i;
+            replicas.add(new ReadReplica(name, pool(properties, replicaUrls.get(i), name, meterRegistry), maxLag, replicated,
+                    Clock.systemUTC()));
+        }
+        return new ReadReplicaRoutingConnectionFactory(primary, replicas, meterRegistry);
+    }
+
+    // A pool configured from spring.r2dbc.pool for another database, the replicas and the shards get one each
+    static MeteredConnectionFactory pool(R2dbcProperties properties, String url, String name, MeterRegistry meterRegistry) {
+        PropertyMapper map = PropertyMapper.get().alwaysApplyingWhenNonNull();
+        ConnectionFactoryBuilder connectionFactoryBuilder = ConnectionFactoryBuilder.withUrl(url);
+        map.from(properties.getUsername()).whenHasText().to(connectionFactoryBuilder::username);
+        map.from(properties.getPassword()).whenHasText().to(connectionFactoryBuilder::password);
+        ConnectionFactory connectionFactory = connectionFactoryBuilder.build();
+
+        R2dbcProperties.Pool pool = properties.getPool();
+        ConnectionPoolConfiguration.Builder builder = ConnectionPoolConfiguration.builder(connectionFactory).name(name);
+        map.from(pool.getInitialSize()).to(builder::initialSize);
+        map.from(pool.getMinIdle()).to(builder::minIdle);
+        map.from(pool.getMaxSize()).to(builder::maxSize);
+        map.from(pool.getMaxIdleTime()).to(builder::maxIdleTime);
+        map.from(pool.getMaxLifeTime()).to(builder::maxLifeTime);
+        map.from(pool.getMaxAcquireTime()).to(builder::maxAcquireTime);
+        map.from(pool.getMaxCreateConnectionTime()).to(builder::maxCreateConnectionTime);
+        map.from(pool.getValidationQuery()).whenHasText().to(builder::validationQuery);
+        map.from(pool.getValidationDepth()).to(builder::validationDepth);
+
+        // Waiting for a connection longer than the acquire time is what failed, so retry no sooner than that
+        Duration retryAfter = pool.getMaxAcquireTime() != null && pool.getMaxAcquireTime().compareTo(MIN_RETRY_AFTER) > 0
+                ? pool.getMaxAcquireTime()
+                : MIN_RETRY_AFTER;
+        return new MeteredConnectionFactory(new ConnectionPool(builder.build()), name, retryAfter, meterRegistry);
+    }
+}
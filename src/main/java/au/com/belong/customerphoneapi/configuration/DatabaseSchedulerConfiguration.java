@@ -0,0 +1,77 @@
+package au.com.belong.customerphoneapi.configuration;
+
+import au.com.belong.customerphoneapi.metrics.MeteredScheduler;
+import au.com.belong.customerphoneapi.repository.DatabaseScheduling;
+import au.com.belong.customerphoneapi.repository.RepositorySchedulerInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.RootClassFilter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.data.repository.Repository;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+/**
+ * Runs the database calls on a bounded pool of their own instead of the Netty event loops, see
+ * {@link DatabaseScheduling}. Its queue depth and the wait of the calls for a thread are published as
+ * <code>phone.api.scheduler.queued</code> and <code>phone.api.scheduler.wait</code> with <code>name=database</code>.
+ */
+@Configuration
+public class DatabaseSchedulerConfiguration {
+    private static final String NAME = "database";
+
+    /**
+     * The database scheduler of the R2DBC and sharded backends, sized like the connection pool by default, a call needs a
+     * connection anyway. The JDBC backend brings its own, see <code>phone-api.persistence.backend</code>.
+     *
+     * @param threadCap     The most threads running repository calls.
+     * @param queuedTaskCap The most calls waiting for a thread, the next ones are rejected.
+     * @param meterRegistry The actuator meter registry.
+     * @return The metered database scheduler.
+     */
+    @Bean(destroyMethod = "dispose")
+    @ConditionalOnExpression("'${phone-api.persistence.backend:r2dbc}' != 'jdbc'")
+    public Scheduler databaseScheduler(@Value("${phone-api.database-scheduler.thread-cap:20}") int threadCap,
+                                       @Value("${phone-api.database-scheduler.queued-task-cap:10000}") int queuedTaskCap,
+                                       MeterRegistry meterRegistry) {
+        return new MeteredScheduler(Schedulers.newBoundedElastic(threadCap, queuedTaskCap, NAME), NAME, meterRegistry);
+    }
+
+    /**
+     * Runs the database calls on the database scheduler, the repository calls through the advisor below and the
+     * <code>DatabaseClient</code> statements of the outbox bus and the phone number index through their callers.
+     *
+     * @param databaseScheduler The database scheduler.
+     * @param retryAfter        When to retry a call rejected by a full queue.
+     * @return The scheduling of the database calls.
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static DatabaseScheduling databaseScheduling(ObjectProvider<Scheduler> databaseScheduler,
+                                                        @Value("${phone-api.database-scheduler.retry-after:PT1S}") Duration retryAfter) {
+        return new DatabaseScheduling(databaseScheduler::getObject, retryAfter);
+    }
+
+    /**
+     * Subscribes to the results of every repository on the database scheduler.
+     *
+     * @param databaseScheduling The scheduling of the database calls.
+     * @return The advisor of the repositories.
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor repositorySchedulerAdvisor(DatabaseScheduling databaseScheduling) {
+        return new DefaultPointcutAdvisor(new ComposablePointcut(new RootClassFilter(Repository.class)),
+                new RepositorySchedulerInterceptor(databaseScheduling));
+    }
+}
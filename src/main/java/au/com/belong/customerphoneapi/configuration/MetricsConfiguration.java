@@ -0,0 +1,63 @@
+package au.com.belong.customerphoneapi.configuration;
+
+import au.com.belong.customerphoneapi.metrics.MeteredJackson2JsonEncoder;
+import au.com.belong.customerphoneapi.metrics.ReactiveMethodTimer;
+import au.com.belong.customerphoneapi.service.PhoneNumberService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.RootClassFilter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+/**
+ * The latency timers of the layers that are not timed by the actuator itself. The requests of each endpoint
+ * (<code>http.server.requests</code>) and the repository queries (<code>spring.data.repository.invocations</code>) are,
+ * the service, cache lookups (see {@link au.com.belong.customerphoneapi.cache.MeteredCaffeineCache}), JSON serialization
+ * and event loop delay (see {@link au.com.belong.customerphoneapi.metrics.EventLoopDelayProbe}) are timed here.
+ * Their percentiles and histograms are configured under <code>management.metrics.distribution</code>.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    /**
+     * Times the methods of the phone number service. It is ordered before the caching advice, so a call is timed
+     * whether it is answered from the cache or not.
+     *
+     * @param meterRegistry The actuator meter registry.
+     * @return The advisor of the service timer.
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor phoneNumberServiceTimerAdvisor(ObjectProvider<MeterRegistry> meterRegistry) {
+        ReactiveMethodTimer timer = new ReactiveMethodTimer("phone.api.service.invocations",
+                "Time of a service call from subscription to completion", meterRegistry);
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(
+                new ComposablePointcut(new RootClassFilter(PhoneNumberService.class)), timer);
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+
+    /**
+     * Replaces the JSON encoder set up from the application object mapper with a timed one, so it is ordered after the
+     * customizer of Spring Boot.
+     *
+     * @param objectMapper  The application object mapper.
+     * @param meterRegistry The actuator meter registry.
+     * @return The codec customizer.
+     */
+    @Bean
+    @Order(1)
+    public CodecCustomizer meteredJacksonCodecCustomizer(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        return configurer -> configurer.defaultCodecs()
+                .jackson2JsonEncoder(new MeteredJackson2JsonEncoder(objectMapper, meterRegistry));
+    }
+}
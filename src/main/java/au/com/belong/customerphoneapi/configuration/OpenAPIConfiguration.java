@@ -9,6 +9,6 @@ import org.springframework.context.annotation.Configuration;
         title = "Customer Phone Number Management API",
         version = "1.0",
         description = "Reactive API for managing customer phone numbers in the system"
-))
+    ))
 public class OpenAPIConfiguration {
 }
\ No newline at end of file
@@ -1,9 +1,28 @@
 package au.com.belong.customerphoneapi.configuration;
 
+import au.com.belong.customerphoneapi.repository.PhoneNumberRepository;
+import au.com.belong.customerphoneapi.service.RowCountProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
 
 @Configuration
-@EnableR2dbcRepositories
 public class RepositoryConfiguration {
+
+    @Bean
+    public RowCountProvider phoneNumberRowCountProvider(PhoneNumberRepository repository) {
+        return new RowCountProvider(repository::count);
+    }
+
+    /**
+     * The R2DBC repositories, the default backend. With <code>phone-api.persistence.backend=jdbc</code> the phone number
+     * repository comes from <code>JdbcRepositoryConfiguration</code> instead, and with <code>sharded</code> from
+     * {@link ShardedRepositoryConfiguration}.
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "phone-api.persistence.backend", havingValue = "r2dbc", matchIfMissing = true)
+    @EnableR2dbcRepositories(basePackageClasses = PhoneNumberRepository.class)
+    static class R2dbcRepositoryConfiguration {
+    }
 }
@@ -0,0 +1,167 @@
+package au.com.belong.customerphoneapi.configuration;
+
+import au.com.belong.customerphoneapi.repository.PhoneNumberRepository;
+import au.com.belong.customerphoneapi.repository.PhoneNumberShardKeys;
+import au.com.belong.customerphoneapi.repository.SchemaScripts;
+import au.com.belong.customerphoneapi.repository.ShardAssignment;
+import au.com.belong.customerphoneapi.repository.ShardMap;
+import au.com.belong.customerphoneapi.repository.ShardRebalancer;
+import au.com.belong.customerphoneapi.repository.ShardedPhoneNumberRepository;
+import au.com.belong.customerphoneapi.repository.Shards;
+import au.com.belong.customerphoneapi.repository.ShardsEndpoint;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.ConnectionFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.repository.support.R2dbcRepositoryFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * The sharded backend, selected with <code>phone-api.persistence.backend=sharded</code>. The customers and their phone
+ * numbers are spread over the primary database and the shards of <code>phone-api.persistence.sharding.urls</code> by
+ * the {@link ShardMap}, and the phone number repository routes or fans out every query, see
+ * {@link ShardedPhoneNumberRepository}. Each shard gets a connection pool configured like the primary one, named
+ * <code>shard-1</code>, <code>shard-2</code>..., and an empty shard gets the schema, with identifiers starting at
+ * <code>shard * 2^40 + 1</code> so the rows inserted on different shards never share one.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "phone-api.persistence.backend", havingValue = "sharded")
+public class ShardedRepositoryConfiguration {
+    private static final String SHARD_NAME = "shard-";
+    private static final int ID_RANGE_BITS = 40;
+
+    /**
+     * The primary database and the shards, the shards are created when empty.
+     *
+     * @param primary       The connection pool of the primary database.
+     * @param properties    The R2DBC connection and pool properties, of the shards too.
+     * @param shardUrls     The R2DBC URLs of the shards after the primary.
+     * @param meterRegistry The actuator meter registry.
+     * @return The databases of the shards, the primary first.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Shards shards(ConnectionFactory primary,
+                         R2dbcProperties properties,
+                         @Value("${phone-api.persistence.sharding.urls}") List<String> shardUrls,
+                         MeterRegistry meterRegistry) {
+        List<ConnectionFactory> connectionFactories = new ArrayList<>();
+        connectionFactories.add(primary);
+        for (int shard = 1; shard <= shardUrls.size(); shard++) {
+            ConnectionFactory connectionFactory = ConnectionFactoryConfiguration.pool(
+                    properties, shardUrls.get(shard - 1), SHARD_NAME + shard, meterRegistry);
+            createSchema(connectionFactory, shard).block();
+            connectionFactories.add(connectionFactory);
+        }
+        return new Shards(connectionFactories);
+    }
+
+    /**
+     * The placement of the customers, read by the shard assignment.
+     *
+     * @param shards        The databases of the shards.
+     * @param meterRegistry The actuator meter registry.
+     * @return The placement of the customers on the shards.
+     */
+    @Bean
+    public ShardMap shardMap(Shards shards, MeterRegistry meterRegistry) {
+        ShardMap shardMap = new ShardMap(shards.size(), Map.of());
+        IntStream.range(0, shards.size()).forEach(shard -> Gauge.builder("phone.api.shard.buckets", shardMap,
+                        map -> IntStream.range(0, ShardMap.BUCKETS).filter(bucket -> map.shardOf(bucket) == shard).count())
+                .description("Customer buckets assigned to the shard")
+                .tag("shard", Integer.toString(shard))
+                .register(meterRegistry));
+        return shardMap;
+    }
+
+    /**
+     * The assignment of the buckets written by the moves on any node, read once Flyway created its table before the
+     * repository serves, then every <code>refresh-interval</code>. The writes wait until it was read.
+     *
+     * @param shards       The databases of the shards.
+     * @param shardMap     The placement of the customers.
+     * @param drainTimeout How long the fenced buckets wait for their running writes.
+     * @param nodeTimeout  How long the assignment read is trusted, and a move waits for the nodes to read it.
+     * @return The assignment of this node, named by a random UUID.
+     */
+    @Bean
+    @DependsOn("flywayInitializer")
+    public ShardAssignment shardAssignment(Shards shards, ShardMap shardMap,
+                                           @Value("${phone-api.persistence.sharding.rebalance.drain-timeout:PT10S}") Duration drainTimeout,
+                                           @Value("${phone-api.persistence.sharding.node-timeout:PT15S}") Duration nodeTimeout) {
+        ShardAssignment shardAssignment = new ShardAssignment(shards.getDatabaseClients().get(0), shardMap,
+                UUID.randomUUID().toString(), drainTimeout, nodeTimeout);
+        shardAssignment.refresh().block();
+        return shardAssignment;
+    }
+
+    /**
+     * The sharded phone number repository, it replaces the R2DBC one.
+     *
+     * @param shards            The databases of the shards.
+     * @param shardMap          The placement of the customers.
+     * @param databaseScheduler The database scheduler the queries of each shard run on.
+     * @return The sharded phone number repository.
+     */
+    @Bean
+    @DependsOn("shardAssignment")
+    public PhoneNumberRepository phoneNumberRepository(Shards shards, ShardMap shardMap, Scheduler databaseScheduler) {
+        List<PhoneNumberRepository> repositories = shards.getConnectionFactories().stream()
+                .map(connectionFactory -> new R2dbcRepositoryFactory(new R2dbcEntityTemplate(connectionFactory))
+                        .getRepository(PhoneNumberRepository.class))
+                .toList();
+        return new ShardedPhoneNumberRepository(repositories, shardMap,
+                new PhoneNumberShardKeys(shards.getDatabaseClients()), databaseScheduler);
+    }
+
+    /**
+     * @param shards            The databases of the shards.
+     * @param shardMap          The placement of the customers.
+     * @param shardAssignment   The assignment shared by the nodes.
+     * @param batchSize         The customers copied or deleted by one statement.
+     * @param drainDelay        How long after a move the rows are deleted from the old shard.
+     * @param databaseScheduler The database scheduler the statements of the moves run on.
+     * @return The rebalance of the shards.
+     */
+    @Bean
+    public ShardRebalancer shardRebalancer(Shards shards, ShardMap shardMap, ShardAssignment shardAssignment,
+                                           @Value("${phone-api.persistence.sharding.rebalance.batch-size:500}") int batchSize,
+                                           @Value("${phone-api.persistence.sharding.rebalance.drain-delay:PT5S}") Duration drainDelay,
+                                           Scheduler databaseScheduler) {
+        return new ShardRebalancer(shards.getDatabaseClients(), shardMap, shardAssignment, batchSize, drainDelay, databaseScheduler);
+    }
+
+    @Bean
+    public ShardsEndpoint shardsEndpoint(ShardMap shardMap, ShardRebalancer shardRebalancer) {
+        return new ShardsEndpoint(shardMap, shardRebalancer);
+    }
+
+    private static Mono<Void> createSchema(ConnectionFactory connectionFactory, int shard) {
+        long firstId = ((long) shard << ID_RANGE_BITS) + 1;
+        DatabaseClient databaseClient = DatabaseClient.create(connectionFactory);
+        return SchemaScripts.createIfMissing(connectionFactory)
+                .filter(created -> created)
+                .flatMap(created -> Flux.just("CUSTOMERS", "PHONE_NUMBERS")
+                        .concatMap(table -> databaseClient.sql("ALTER TABLE " + table + " ALTER COLUMN id RESTART WITH " + firstId)
+                                .then())
+                        .then(Mono.fromRunnable(() -> log.info("Created shard {}, identifiers from {}", shard, firstId))))
+                .then();
+    }
+}
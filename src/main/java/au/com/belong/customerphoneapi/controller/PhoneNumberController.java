@@ -1,24 +1,54 @@
 package au.com.belong.customerphoneapi.controller;
 
 import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.BatchUpdateResultDTO;
+import au.com.belong.customerphoneapi.dto.CursorPageDTO;
+import au.com.belong.customerphoneapi.dto.CustomerPhoneNumbersDTO;
 import au.com.belong.customerphoneapi.dto.PageDTO;
+import au.com.belong.customerphoneapi.dto.PhoneNumberOwnerDTO;
 import au.com.belong.customerphoneapi.service.PhoneNumberService;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Arrays;
+import java.util.List;
+
+// JSON is listed first so it stays the default, the binary formats are answered to the callers accepting them only
 @RestController
 @RequiredArgsConstructor
-@RequestMapping("/phone-numbers")
+@RequestMapping(value = "/phone-numbers", produces = {
+    MediaType.APPLICATION_JSON_VALUE,
+    MediaType.APPLICATION_CBOR_VALUE,
+    PhoneNumberController.APPLICATION_SMILE_VALUE})
 public class PhoneNumberController {
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    private static final int MAX_BATCH_SIZE = 10_000;
+    private static final int MAX_SEARCH_LIMIT = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_CUSTOMER_IDS = 100;
+    private static final String CUSTOMER_IDS_PATTERN = "\\d{1,18}(,\\d{1,18}){0," + (MAX_CUSTOMER_IDS - 1) + "}";
+    // 1 to 15 digits, optionally with a leading + and spaces, dashes or parentheses in between
+    private static final String PHONE_NUMBER_PATTERN = "\\+?[ ()-]*(\\d[ ()-]*){1,15}";
+    private static final String RESYNC_MESSAGE = "The changes after the Last-Event-ID are not kept, read the phone numbers again.";
 
     private final PhoneNumberService service;
 
@@ -65,23 +95,83 @@ public class PhoneNumberController {
      * }
      * </pre>
      *
-     * @param page The current page number.
-     * @param size The size of the page.
+     * Pass <code>with_total=false</code> to leave out <code>total_pages</code> and <code>total_records</code>.
+     * The response has an <code>ETag</code>, a request with a matching <code>If-None-Match</code> is answered with
+     * <code>304 Not Modified</code> and no body.
+     *
+     * @param page      The current page number.
+     * @param size      The size of the page.
+     * @param withTotal Whether to include the total pages and records.
      * @return Successful - The paginated phone number response based on the pagination request parameters.
      * <br/>
      * Unsuccessful - The error details with message.
      */
     @GetMapping
-    public Mono<PageDTO<PhoneNumber>> getAllFor(
+    public Mono<ResponseEntity<PageDTO<PhoneNumber>>> getAllFor(
             @RequestParam(defaultValue = "0")
             @Min(value = 0, message = "Page number should be grater than or equal to zero.")
             int page,
             @RequestParam(defaultValue = "10")
             @Min(value = 1, message = "Page size should be grater than or equal to one.")
-            int size) {
+            @Max(value = MAX_PAGE_SIZE, message = "Page size should be less than or equal to " + MAX_PAGE_SIZE + ".")
+            int size,
+            @RequestParam(name = "with_total", defaultValue = "true")
+            boolean withTotal) {
+
+        Mono<PageDTO<PhoneNumber>> response = withTotal
+                ? service.getAllFor(page, size)
+                : service.getAllWithoutTotalFor(page, size);
+        return response.map(content -> ResponseEntity.ok()
+                .eTag(PhoneNumberETags.of(content))
+                .body(content));
+    }
 
-        Mono<PageDTO<PhoneNumber>> response = service.getAllFor(page, size);
-        return response;
+    /**
+     * Get all phone numbers with keyset (cursor) pagination, selected when the <code>after</code> parameter is present.
+     * Each page seeks on the primary key, so deep pages cost the same as the first one.
+     * Pass an empty <code>after</code> to get the first page and the returned <code>next_cursor</code> for the next one.
+     *
+     * <pre>
+     * curl http://localhost:8080/phone-numbers?after=&size=2
+     * </pre>
+     *
+     * <pre>
+     * {
+     *   "content": [
+     *     {
+     *       "id": 1,
+     *       "phone_number": "0488992263",
+     *       "activated": true,
+     *       "customer_id": 1
+     *     },
+     *     {
+     *       "id": 2,
+     *       "phone_number": "0422338899",
+     *       "activated": false,
+     *       "customer_id": 1
+     *     }
+     *   ],
+     *   "size": 2,
+     *   "last": false,
+     *   "next_cursor": "aWQ6Mg"
+     * }
+     * </pre>
+     *
+     * @param after The opaque cursor of the last seen phone number.
+     * @param size  The size of the page.
+     * @return Successful - The phone numbers following the cursor with the cursor of the next page.
+     * <br/>
+     * Unsuccessful - The error details with message.
+     */
+    @GetMapping(params = "after")
+    public Mono<CursorPageDTO<PhoneNumber>> getAllAfter(
+            @RequestParam
+            String after,
+            @RequestParam(defaultValue = "10")
+            @Min(value = 1, message = "Page size should be grater than or equal to one.")
+            @Max(value = MAX_PAGE_SIZE, message = "Page size should be less than or equal to " + MAX_PAGE_SIZE + ".")
+            int size) {
+        return service.getAllAfter(after, size);
     }
 
     /**
@@ -111,6 +201,8 @@ public class PhoneNumberController {
      *   }
      * ]
      * </pre>
+     * The response has an <code>ETag</code>, a request with a matching <code>If-None-Match</code> is answered with
+     * <code>304 Not Modified</code> and no body.
      *
      * @param customerId The customer identifier.
      * @return Successful - The phone numbers associated with the customer identifier.
@@ -118,11 +210,198 @@ public class PhoneNumberController {
      * Unsuccessful - The error details with message.
      */
     @GetMapping("/customers/{customer_id}")
-    public Flux<PhoneNumber> getAllFor(
+    public Mono<ResponseEntity<List<PhoneNumber>>> getAllFor(
             @PathVariable("customer_id")
             @Pattern(regexp = "\\d+", message = "Customer ID must be a numeric.")
             String customerId) {
-        return service.getAllFor(Long.parseLong(customerId));
+        // The ETag is derived from the whole list, the list is cached materialized anyway
+        return service.getAllFor(Long.parseLong(customerId))
+                .collectList()
+                .map(phones -> ResponseEntity.ok()
+                        .eTag(PhoneNumberETags.of(phones))
+                        .body(phones));
+    }
+
+    /**
+     * Get all phone numbers of several customers with one database query, instead of one request per customer.
+     * Customers without phone numbers are returned with an empty list.
+     *
+     * <pre>
+     * curl http://localhost:8080/phone-numbers/customers?ids=2,1
+     * </pre>
+     * <pre>
+     * [
+     *   {
+     *     "customer_id": 2,
+     *     "phone_numbers": [
+     *       {
+     *         "id": 4,
+     *         "phone_number": "0482746027",
+     *         "active": false,
+     *         "customer_id": 2
+     *       }
+     *     ]
+     *   },
+     *   {
+     *     "customer_id": 1,
+     *     "phone_numbers": [
+     *       {
+     *         "id": 1,
+     *         "phone_number": "0488992263",
+     *         "active": true,
+     *         "customer_id": 1
+     *       }
+     *     ]
+     *   }
+     * ]
+     * </pre>
+     *
+     * @param customerIds The comma separated customer identifiers, at most 100.
+     * @return Successful - The phone numbers of each customer identifier, in request order.
+     * <br/>
+     * Unsuccessful - The error details with message.
+     */
+    @GetMapping("/customers")
+    public Flux<CustomerPhoneNumbersDTO> getAllForCustomers(
+            @RequestParam("ids")
+            @Pattern(regexp = CUSTOMER_IDS_PATTERN, message = "Customer IDs must be 1 to " + MAX_CUSTOMER_IDS + " comma separated numerics.")
+            String customerIds) {
+        return service.getAllFor(Arrays.stream(customerIds.split(",")).map(Long::parseLong).toList());
+    }
+
+    /**
+     * Finds who owns a phone number, from an in-process index without a database round trip. The number may be given in
+     * any format, e.g. <code>+61 488 992 263</code>. With <code>prefix=true</code> all the phone numbers starting with
+     * the given digits are returned, up to <code>limit</code>.
+     *
+     * <pre>
+     * curl http://localhost:8080/phone-numbers/search?number=0488992263
+     * </pre>
+     * <pre>
+     * [
+     *   {
+     *     "id": 1,
+     *     "phone_number": "0488992263",
+     *     "customer_id": 1
+     *   }
+     * ]
+     * </pre>
+     *
+     * @param number The phone number or its first digits.
+     * @param prefix Whether to match the phone numbers starting with the number.
+     * @param limit  The maximum number of phone numbers to return.
+     * @return Successful - The matching phone numbers with their customer identifier, empty when none matches.
+     * <br/>
+     * Unsuccessful - The error details with message.
+     */
+    @GetMapping("/search")
+    public Flux<PhoneNumberOwnerDTO> search(
+            @RequestParam
+            @Pattern(regexp = PHONE_NUMBER_PATTERN, message = "Phone number must have 1 to 15 digits.")
+            String number,
+            @RequestParam(defaultValue = "false")
+            boolean prefix,
+            @RequestParam(defaultValue = "10")
+            @Min(value = 1, message = "Limit should be grater than or equal to one.")
+            @Max(value = MAX_SEARCH_LIMIT, message = "Limit should be less than or equal to " + MAX_SEARCH_LIMIT + ".")
+            int limit) {
+        return service.searchFor(number, prefix, limit);
+    }
+
+    /**
+     * Streams every phone number in identifier order as newline delimited JSON, for exports of the whole table.
+     * Rows are read in keyset chunks as the client consumes them, so a slow client slows the export down instead of
+     * making the server buffer the table. Pass the last received identifier as <code>after_id</code> to resume.
+     *
+     * <pre>
+     * curl http://localhost:8080/phone-numbers/export?after_id=2
+     * </pre>
+     * <pre>
+     * {"id":3,"phone_number":"0412772652","active":false,"customer_id":1}
+     * {"id":4,"phone_number":"0482746027","active":false,"customer_id":2}
+     * </pre>
+     *
+     * @param afterId The last received phone number identifier, zero to start from the first one.
+     * @return Successful - The phone numbers following the identifier.
+     * <br/>
+     * Unsuccessful - The error details with message.
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<PhoneNumber> export(
+            @RequestParam(name = "after_id", defaultValue = "0")
+            @Min(value = 0, message = "After ID should be grater than or equal to zero.")
+            long afterId) {
+        return service.exportAfter(afterId);
+    }
+
+    /**
+     * Streams every phone number in identifier order as server-sent events, the id of each event is the phone number
+     * identifier. A reconnecting <code>EventSource</code> resumes after the <code>Last-Event-ID</code> it sends.
+     *
+     * <pre>
+     * curl -H 'Accept: text/event-stream' http://localhost:8080/phone-numbers/export?after_id=3
+     * </pre>
+     * <pre>
+     * id:4
+     * data:{"id":4,"phone_number":"0482746027","active":false,"customer_id":2}
+     * </pre>
+     *
+     * @param afterId     The last received phone number identifier, zero to start from the first one.
+     * @param lastEventId The identifier of the last received event, takes precedence over <code>after_id</code>.
+     * @return Successful - The phone numbers following the identifier.
+     * <br/>
+     * Unsuccessful - The error details with message.
+     */
+    @GetMapping(value = "/export", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<PhoneNumber>> exportEvents(
+            @RequestParam(name = "after_id", defaultValue = "0")
+            @Min(value = 0, message = "After ID should be grater than or equal to zero.")
+            long afterId,
+            @RequestHeader(name = "Last-Event-ID", required = false)
+            @Min(value = 0, message = "Last event ID should be grater than or equal to zero.")
+            Long lastEventId) {
+        return service.exportAfter(lastEventId != null ? lastEventId : afterId)
+                .map(phoneNumber -> ServerSentEvent.builder(phoneNumber)
+                        .id(Long.toString(phoneNumber.getId()))
+                        .build());
+    }
+
+    /**
+     * Streams the activation changes as server-sent events while they are committed, instead of polling the pages.
+     * The latest changes are kept, a reconnecting <code>EventSource</code> first gets the kept changes following the
+     * <code>Last-Event-ID</code> it sends. The event ids are issued by the node serving the stream, a client resuming
+     * after an id of another node or of a restarted node, or after more changes than are kept, first gets a
+     * <code>resync</code> event and reads the phone numbers again. A client that does not keep up is disconnected, or
+     * misses changes with <code>phone-api.change-feed.slow-subscriber-policy=drop</code>.
+     *
+     * <pre>
+     * curl -H 'Accept: text/event-stream' http://localhost:8080/phone-numbers/changes
+     * </pre>
+     * <pre>
+     * id:k3v9x2f1q0ab-1
+     * event:activation
+     * data:{"id":2,"customer_id":1,"active":true}
+     * </pre>
+     *
+     * @param lastEventId The id of the last received event, to resume after it.
+     * @return Successful - The activation changes.
+     * <br/>
+     * Unsuccessful - The error details with message.
+     */
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<?>> changes(
+            @RequestHeader(name = "Last-Event-ID", required = false)
+            String lastEventId) {
+        return service.changesAfter(lastEventId)
+                .map(change -> change.isResync()
+                        ? ServerSentEvent.builder(RESYNC_MESSAGE)
+                                .id(change.getEventId())
+                                .event("resync")
+                                .build()
+                        : ServerSentEvent.builder(change)
+                                .id(change.getEventId())
+                                .event("activation")
+                                .build());
     }
 
     /**
@@ -180,4 +459,74 @@ public class PhoneNumberController {
             String phoneNumberId) {
         return service.updateFor(Long.parseLong(phoneNumberId), false);
     }
-}
\ No newline at end of file
+
+    /**
+     * Activates the given phone numbers with one set-based update per chunk, instead of one PATCH per phone number.
+     * Each identifier gets its own result, <code>ALREADY_IN_STATE</code> is the per-id equivalent of the 409 response.
+     * Send <code>Accept: application/x-ndjson</code> to stream the results of large batches as they are produced.
+     *
+     * <pre>
+     * curl -X POST -H 'Content-Type: application/json' -d '[1, 2, 99]' http://localhost:8080/phone-numbers/activation:batch
+     * </pre>
+     * <pre>
+     * [
+     *   {
+     *     "id": 1,
+     *     "status": "ALREADY_IN_STATE"
+     *   },
+     *   {
+     *     "id": 2,
+     *     "status": "UPDATED"
+     *   },
+     *   {
+     *     "id": 99,
+     *     "status": "NOT_FOUND"
+     *   }
+     * ]
+     * </pre>
+     * @param phoneNumberIds The phone number identifiers to activate.
+     * @return Successful - The result of each phone number identifier.
+     * <br/>
+     * Unsuccessful - The error details with message.
+     */
+    @PostMapping(value = "/activation:batch", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<BatchUpdateResultDTO> activate(
+            @RequestBody
+            @NotEmpty(message = "Phone number IDs should not be empty.")
+            @Size(max = MAX_BATCH_SIZE, message = "Phone number IDs should not be more than " + MAX_BATCH_SIZE + ".")
+            List<@NotNull(message = "Phone number ID must be a numeric.") Long> phoneNumberIds) {
+        return service.updateFor(phoneNumberIds, true);
+    }
+
+    /**
+     * Deactivates the given phone numbers with one set-based update per chunk, instead of one PATCH per phone number.
+     *
+     * <pre>
+     * curl -X POST -H 'Content-Type: application/json' -d '[1, 2]' http://localhost:8080/phone-numbers/deactivation:batch
+     * </pre>
+     * <pre>
+     * [
+     *   {
+     *     "id": 1,
+     *     "status": "UPDATED"
+     *   },
+     *   {
+     *     "id": 2,
+     *     "status": "ALREADY_IN_STATE"
+     *   }
+     * ]
+     * </pre>
+     * @param phoneNumberIds The phone number identifiers to deactivate.
+     * @return Successful - The result of each phone number identifier.
+     * <br/>
+     * Unsuccessful - The error details with message.
+     */
+    @PostMapping(value = "/deactivation:batch", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<BatchUpdateResultDTO> deactivate(
+            @RequestBody
+            @NotEmpty(message = "Phone number IDs should not be empty.")
+            @Size(max = MAX_BATCH_SIZE, message = "Phone number IDs should not be more than " + MAX_BATCH_SIZE + ".")
+            List<@NotNull(message = "Phone number ID must be a numeric.") Long> phoneNumberIds) {
+        return service.updateFor(phoneNumberIds, false);
+    }
+}
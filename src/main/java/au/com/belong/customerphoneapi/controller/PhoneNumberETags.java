@@ -0,0 +1,53 @@
+package au.com.belong.customerphoneapi.controller;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.PageDTO;
+
+import java.util.List;
+
+/**
+ * Derives the ETags of the phone number responses from the identifiers and versions of the phone numbers they contain,
+ * so a response changes its ETag whenever a phone number in it is updated, added or removed. The ETags are computed
+ * from the materialized results, which the cached endpoints hold already, so a poller whose
+ * <code>If-None-Match</code> still matches is answered with a <code>304 Not Modified</code> without a database read
+ * or a serialized body. They are weak, the same phone numbers may be encoded in more than one media type.
+ */
+final class PhoneNumberETags {
+
+    private PhoneNumberETags() {
+    }
+
+    static String of(List<PhoneNumber> phones) {
+        return format(hash(phones, 17L));
+    }
+
+    // The totals are part of the response, a phone number added after this page changes them
+    static String of(PageDTO<PhoneNumber> page) {
+        long hash = mix(17L, page.getTotalRecords() != null ? page.getTotalRecords() : -1L);
+        hash = mix(hash, page.isLast() ? 1L : 0L);
+        return format(hash(page.getContent(), hash));
+    }
+
+    private static long hash(List<PhoneNumber> phones, long seed) {
+        long hash = mix(seed, phones.size());
+        for (PhoneNumber phone : phones) {
+            hash = mix(mix(hash, phone.getId()), phone.getVersion());
+        }
+        return hash;
+    }
+
+    // The 64-bit finalizer of MurmurHash3 applied to the running hash combined with the next value
+    private static long mix(long hash, long value) {
+        long h = hash * 31 + value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static String format(long hash) {
+        return "W/\"" + Long.toHexString(hash) + "\"";
+    }
+}
@@ -1,5 +1,6 @@
 package au.com.belong.customerphoneapi.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.relational.core.mapping.Column;
@@ -17,4 +18,8 @@ public class PhoneNumber {
     private boolean isActive;
     @Column("customer_id")
     private long customerId;
+    // Incremented by every update, only exposed through the ETag of the responses
+    @JsonIgnore
+    @Column("version")
+    private long version;
 }
@@ -0,0 +1,25 @@
+package au.com.belong.customerphoneapi.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class BatchUpdateResultDTO {
+    private final long id;
+    private final Status status;
+
+    public enum Status {
+        UPDATED,
+        // Same semantics as au.com.belong.customerphoneapi.exception.ResourceStateConflictException
+        ALREADY_IN_STATE,
+        NOT_FOUND
+    }
+
+    public static BatchUpdateResultDTO of(long id, Status status) {
+        return BatchUpdateResultDTO.builder()
+                .id(id)
+                .status(status)
+                .build();
+    }
+}
@@ -0,0 +1,69 @@
+package au.com.belong.customerphoneapi.dto;
+
+import au.com.belong.customerphoneapi.exception.InvalidCursorException;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+@Getter
+@Builder
+public class CursorPageDTO<T> {
+    private static final String CURSOR_PREFIX = "id:";
+
+    private final List<T> content;
+    private final int size;
+    private final boolean last;
+    private final String nextCursor;
+
+    /**
+     * Builds a cursor page from a window fetched with one extra row (<code>size + 1</code>), the extra row
+     * only signals that another page exists and is not returned to the client.
+     *
+     * @param window The fetched rows, at most <code>size + 1</code>.
+     * @param size   The requested page size.
+     * @param idFn   The function to extract the primary key of a row.
+     * @return The cursor page with the <code>next_cursor</code> pointing at the last returned row.
+     */
+    public static <R> CursorPageDTO<R> of(List<R> window, int size, ToLongFunction<R> idFn) {
+        boolean last = window.size() <= size;
+        List<R> content = last ? window : window.subList(0, size);
+        return CursorPageDTO
+                .<R>builder()
+                .last(last)
+                .size(size)
+                .content(content)
+                .nextCursor(last ? null : encode(idFn.applyAsLong(content.get(content.size() - 1))))
+                .build();
+    }
+
+    public static String encode(long id) {
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString((CURSOR_PREFIX + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes an opaque cursor token, an empty token starts from the beginning.
+     *
+     * @param cursor The cursor token received from the client.
+     * @return The last seen identifier.
+     */
+    public static long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0L;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!decoded.startsWith(CURSOR_PREFIX)) {
+                throw new InvalidCursorException("Invalid pagination cursor.");
+            }
+            return Long.parseLong(decoded.substring(CURSOR_PREFIX.length()));
+        } catch (IllegalArgumentException exception) {
+            throw new InvalidCursorException("Invalid pagination cursor.");
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package au.com.belong.customerphoneapi.dto;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@Builder
+public class CustomerPhoneNumbersDTO {
+    private final long customerId;
+    private final List<PhoneNumber> phoneNumbers;
+
+    public static CustomerPhoneNumbersDTO of(long customerId, List<PhoneNumber> phoneNumbers) {
+        return CustomerPhoneNumbersDTO.builder()
+                .customerId(customerId)
+                .phoneNumbers(phoneNumbers)
+                .build();
+    }
+}
@@ -1,21 +1,26 @@
 package au.com.belong.customerphoneapi.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Builder;
 import lombok.Getter;
+import lombok.extern.jackson.Jacksonized;
 import org.springframework.data.domain.Page;
 
 import java.util.List;
 
 
 @Getter
-@Builder
+@Builder(toBuilder = true)
+@Jacksonized
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class PageDTO<T> {
     private final List<T> content;
     private final int page;
     private final int size;
     private final boolean last;
-    private final long totalPages;
-    private final long totalRecords;
+    // Left out when the client opted out of totals
+    private final Long totalPages;
+    private final Long totalRecords;
 
     public static <R> PageDTO<R> of(Page<R> page) {
         return PageDTO
@@ -24,8 +29,28 @@ public class PageDTO<T> {
                 .size(page.getSize())
                 .page(page.getNumber())
                 .content(page.getContent())
-                .totalPages(page.getTotalPages())
+                .totalPages((long) page.getTotalPages())
                 .totalRecords(page.getTotalElements())
                 .build();
     }
+
+    /**
+     * Builds a page without totals from a window fetched with one extra row (<code>size + 1</code>), the extra row
+     * only signals that another page exists and is not returned to the client.
+     *
+     * @param window The fetched rows, at most <code>size + 1</code>.
+     * @param page   The requested page number.
+     * @param size   The requested page size.
+     * @return The page, last when the extra row was not found.
+     */
+    public static <R> PageDTO<R> of(List<R> window, int page, int size) {
+        boolean last = window.size() <= size;
+        return PageDTO
+                .<R>builder()
+                .last(last)
+                .size(size)
+                .page(page)
+                .content(last ? window : window.subList(0, size))
+                .build();
+    }
 }
@@ -0,0 +1,21 @@
+package au.com.belong.customerphoneapi.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class PhoneNumberChangeDTO {
+    // The id of the feed of this node and the position of the change in it, sent as the id of its server-sent event
+    @JsonIgnore
+    private final String eventId;
+    @JsonIgnore
+    private final long position;
+    // Not a change: the changes since the last event of the subscriber are not known, it reads the phone numbers again
+    @JsonIgnore
+    private final boolean resync;
+    private final long id;
+    private final long customerId;
+    private final boolean active;
+}
@@ -0,0 +1,21 @@
+package au.com.belong.customerphoneapi.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class PhoneNumberOwnerDTO {
+    private final long id;
+    // Normalized, digits only with the +61 country code replaced by the leading zero
+    private final String phoneNumber;
+    private final long customerId;
+
+    public static PhoneNumberOwnerDTO of(long id, String phoneNumber, long customerId) {
+        return PhoneNumberOwnerDTO.builder()
+                .id(id)
+                .phoneNumber(phoneNumber)
+                .customerId(customerId)
+                .build();
+    }
+}
@@ -0,0 +1,15 @@
+package au.com.belong.customerphoneapi.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+public class ConnectionPoolExhaustedException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public ConnectionPoolExhaustedException(String message, Duration retryAfter, Throwable cause) {
+        super(message, cause);
+        this.retryAfter = retryAfter;
+    }
+}
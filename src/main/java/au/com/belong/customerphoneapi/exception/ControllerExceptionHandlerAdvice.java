@@ -3,13 +3,17 @@ package au.com.belong.customerphoneapi.exception;
 import au.com.belong.customerphoneapi.dto.ErrorDTO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.method.annotation.HandlerMethodValidationException;
 import reactor.core.publisher.Mono;
 
+// The error bodies are JSON whatever the client accepts, the binary formats are only negotiated for the results
 @Slf4j
 @Order(1)  // Highest priority among the controller advices
 @RestControllerAdvice
@@ -21,16 +25,29 @@ public class ControllerExceptionHandlerAdvice {
         log.warn("Handling method argument invalid exception: {}", exception.getMessage());
         ResponseEntity<ErrorDTO> notFoundResponse = ResponseEntity
                 .status(HttpStatus.BAD_REQUEST)
+                .contentType(MediaType.APPLICATION_JSON)
                 .body(ErrorDTO.of(exception));
         return Mono.just(notFoundResponse);
     }
 
+    // Handle au.com.belong.customerphoneapi.exception.InvalidCursorException exceptions
+    @ExceptionHandler(InvalidCursorException.class)
+    public Mono<ResponseEntity<ErrorDTO>> handle(InvalidCursorException exception) {
+        log.warn("Handling invalid cursor exception: {}", exception.getMessage());
+        ResponseEntity<ErrorDTO> badRequestResponse = ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(ErrorDTO.of(exception));
+        return Mono.just(badRequestResponse);
+    }
+
     // Handle au.com.belong.customerphoneapi.exception.ResourceNotFoundException exceptions
     @ExceptionHandler(ResourceNotFoundException.class)
     public Mono<ResponseEntity<ErrorDTO>> handle(ResourceNotFoundException exception) {
         log.warn("Handling resource not found exception: {}", exception.getMessage());
         ResponseEntity<ErrorDTO> notFoundResponse = ResponseEntity
                 .status(HttpStatus.NOT_FOUND)
+                .contentType(MediaType.APPLICATION_JSON)
                 .body(ErrorDTO.of(exception));
         return Mono.just(notFoundResponse);
     }
@@ -42,16 +59,53 @@ public class ControllerExceptionHandlerAdvice {
         log.warn("Handling resource state conflict exception: {}", exception.getMessage());
         ResponseEntity<ErrorDTO> notFoundResponse = ResponseEntity
                 .status(HttpStatus.CONFLICT)
+                .contentType(MediaType.APPLICATION_JSON)
                 .body(ErrorDTO.of(exception));
         return Mono.just(notFoundResponse);
     }
 
+    // Handle au.com.belong.customerphoneapi.exception.ConnectionPoolExhaustedException exceptions
+    @ExceptionHandler(ConnectionPoolExhaustedException.class)
+    public Mono<ResponseEntity<ErrorDTO>> handle(ConnectionPoolExhaustedException exception) {
+        log.warn("Handling connection pool exhausted exception: {}", exception.getMessage());
+        ResponseEntity<ErrorDTO> serviceUnavailableResponse = ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(exception.getRetryAfter().toSeconds()))
+                .body(ErrorDTO.of(exception));
+        return Mono.just(serviceUnavailableResponse);
+    }
+
+    // Handle au.com.belong.customerphoneapi.exception.RateLimitExceededException exceptions, raised for the requests the
+    // rate limit filter rejected. Logged at debug level only, a runaway client would flood the log otherwise
+    @ExceptionHandler(RateLimitExceededException.class)
+    public Mono<ResponseEntity<ErrorDTO>> handle(RateLimitExceededException exception) {
+        log.debug("Handling rate limit exceeded exception: {}", exception.getMessage());
+        ResponseEntity<ErrorDTO> tooManyRequestsResponse = ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(exception.getRetryAfter().toSeconds()))
+                .body(ErrorDTO.of(exception));
+        return Mono.just(tooManyRequestsResponse);
+    }
+
+    // Handle org.springframework.dao.DataAccessResourceFailureException exceptions, Spring wraps the failure to acquire
+    // a connection in it
+    @ExceptionHandler(DataAccessResourceFailureException.class)
+    public Mono<ResponseEntity<ErrorDTO>> handle(DataAccessResourceFailureException exception) {
+        if (exception.getCause() instanceof ConnectionPoolExhaustedException poolExhaustedException) {
+            return handle(poolExhaustedException);
+        }
+        return handle((Throwable) exception);
+    }
+
     // Handle all uncaught exceptions
     @ExceptionHandler(Throwable.class)
     public Mono<ResponseEntity<ErrorDTO>> handle(Throwable exception) {
         log.warn("Handling uncaught exception: {}", exception.getMessage());
         ResponseEntity<ErrorDTO> notFoundResponse = ResponseEntity
                 .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .contentType(MediaType.APPLICATION_JSON)
                 .body(ErrorDTO.of(exception));
         return Mono.just(notFoundResponse);
     }}
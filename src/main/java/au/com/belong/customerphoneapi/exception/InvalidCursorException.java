@@ -0,0 +1,8 @@
+package au.com.belong.customerphoneapi.exception;
+
+public class InvalidCursorException extends RuntimeException {
+
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package au.com.belong.customerphoneapi.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+public class RateLimitExceededException extends RuntimeException {
+    private final Duration retryAfter;
+
+    // A rejection is raised for every request over the limit, it is not a failure and has no stack trace
+    public RateLimitExceededException(String message, Duration retryAfter) {
+        super(message, null, false, false);
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,151 @@
+package au.com.belong.customerphoneapi.filter;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded lock-free ring of access log records, written by the request threads and drained by one writer thread.
+ * The records are allocated once and reused, so recording a request allocates nothing and never waits: a request
+ * claims the next slot with a compare-and-set, and when the writer has fallen a full ring behind the record is dropped
+ * and counted instead.
+ * Each slot has a sequence number telling whose turn it is (a bounded queue in the style of Dmitry Vyukov's): equal
+ * to the position a producer may claim, one past it once the record is published, and a full ring ahead once the
+ * writer has read it.
+ */
+class AccessLogRingBuffer {
+    private final AccessLogRecord[] records;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    // The next position to claim by the request threads
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // The next position to read, only used by the writer thread
+    private long head;
+
+    /**
+     * @param capacity The number of records, a power of two.
+     */
+    AccessLogRingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The access log buffer capacity must be a power of two, got " + capacity);
+        }
+        this.records = new AccessLogRecord[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            records[i] = new AccessLogRecord();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Records a request, or drops it when the ring is full.
+     *
+     * @return Whether the request was recorded.
+     */
+    boolean offer(long timestamp, String method, String path, int status, long latencyNanos, long bytes, String requestId) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    records[index].set(timestamp, method, path, status, latencyNanos, bytes, requestId);
+                    // Publishes the record to the writer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (sequence < position) {
+                // The writer has not read the record a full ring behind yet
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                // Claimed by another request in the meantime
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Appends the published records as JSON lines, in the order they were claimed. Only called by the writer thread.
+     *
+     * @param out        The batch to append to.
+     * @param maxRecords The maximum number of records to append.
+     * @return The number of records appended.
+     */
+    int drainTo(StringBuilder out, int maxRecords) {
+        int drained = 0;
+        while (drained < maxRecords) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            records[index].appendJsonTo(out);
+            out.append('\n');
+            // Hands the slot back to the request threads for the next lap
+            sequences.set(index, head + records.length);
+            head++;
+            drained++;
+        }
+        return drained;
+    }
+
+    int capacity() {
+        return records.length;
+    }
+
+    long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * A reusable record, written by the request that claimed its slot and read by the writer after it was published.
+     */
+    private static final class AccessLogRecord {
+        private long timestamp;
+        private String method;
+        private String path;
+        private int status;
+        private long latencyNanos;
+        private long bytes;
+        private String requestId;
+
+        void set(long timestamp, String method, String path, int status, long latencyNanos, long bytes, String requestId) {
+            this.timestamp = timestamp;
+            this.method = method;
+            this.path = path;
+            this.status = status;
+            this.latencyNanos = latencyNanos;
+            this.bytes = bytes;
+            this.requestId = requestId;
+        }
+
+        void appendJsonTo(StringBuilder out) {
+            out.append("{\"timestamp\":\"").append(Instant.ofEpochMilli(timestamp)).append('"');
+            out.append(",\"method\":\"").append(method).append('"');
+            appendString(out.append(",\"path\":"), path);
+            out.append(",\"status\":").append(status);
+            out.append(",\"latency_us\":").append(latencyNanos / 1_000);
+            out.append(",\"bytes\":").append(bytes);
+            appendString(out.append(",\"request_id\":"), requestId);
+            out.append('}');
+        }
+
+        private static void appendString(StringBuilder out, String value) {
+            out.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    out.append('\\').append(c);
+                } else if (c < 0x20) {
+                    out.append(String.format("\\u%04x", (int) c));
+                } else {
+                    out.append(c);
+                }
+            }
+            out.append('"');
+        }
+    }
+}
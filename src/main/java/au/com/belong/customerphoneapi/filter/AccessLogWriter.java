@@ -0,0 +1,172 @@
+package au.com.belong.customerphoneapi.filter;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains the access log ring buffer to a rolling file on its own thread, so the request threads never wait for the
+ * disk. Records are written in batches and the file is flushed when the buffer runs empty. The records dropped since
+ * the previous batch are reported with a line of their own. When the file would grow over its maximum size it is
+ * rolled to <code>access.log.1</code>, the older files are shifted up and the oldest one is deleted.
+ */
+@Slf4j
+class AccessLogWriter implements Runnable {
+    private final AccessLogRingBuffer buffer;
+    private final Path file;
+    private final long maxFileSize;
+    private final int maxHistory;
+    private final int batchSize;
+    private final long idleNanos;
+    private final StringBuilder batch = new StringBuilder();
+    private final Thread thread;
+    private volatile boolean running;
+    private OutputStream out;
+    private long fileSize;
+    private long reportedDropped;
+
+    /**
+     * @param buffer      The ring buffer to drain.
+     * @param file        The access log file.
+     * @param maxFileSize The size in bytes over which the file is rolled.
+     * @param maxHistory  The number of rolled files kept.
+     * @param batchSize   The maximum number of records per write.
+     * @param idleTime    How long the writer sleeps once the buffer is empty.
+     */
+    AccessLogWriter(AccessLogRingBuffer buffer, Path file, long maxFileSize, int maxHistory, int batchSize, Duration idleTime) {
+        this.buffer = buffer;
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxHistory = maxHistory;
+        this.batchSize = batchSize;
+        this.idleNanos = idleTime.toNanos();
+        this.thread = new Thread(this, "access-log-writer");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops the writer once the records published so far are written.
+     *
+     * @param timeout How long to wait for the writer.
+     */
+    void stop(Duration timeout) throws InterruptedException {
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join(timeout.toMillis());
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            if (writeBatch() == 0) {
+                flush();
+                LockSupport.parkNanos(this, idleNanos);
+            }
+        }
+        while (writeBatch() > 0) {
+            // Writes what was published before the stop
+        }
+        close();
+    }
+
+    /**
+     * Drains and writes one batch. Only called by the writer thread, and by the tests.
+     *
+     * @return The number of records written.
+     */
+    int writeBatch() {
+        batch.setLength(0);
+        int drained = buffer.drainTo(batch, batchSize);
+        long dropped = buffer.dropped();
+        if (dropped > reportedDropped) {
+            batch.append("{\"timestamp\":\"").append(Instant.now()).append('"')
+                    .append(",\"dropped\":").append(dropped - reportedDropped).append("}\n");
+            reportedDropped = dropped;
+        }
+        if (!batch.isEmpty()) {
+            write(batch.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return drained;
+    }
+
+    void flush() {
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException exception) {
+                log.warn("Failed to flush the access log {}: {}", file, exception.getMessage());
+            }
+        }
+    }
+
+    void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException exception) {
+                log.warn("Failed to close the access log {}: {}", file, exception.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    private void write(byte[] bytes) {
+        try {
+            if (out != null && fileSize > 0 && fileSize + bytes.length > maxFileSize) {
+                roll();
+            }
+            if (out == null) {
+                open();
+            }
+            out.write(bytes);
+            fileSize += bytes.length;
+        } catch (IOException exception) {
+            // The batch is lost, the next batch opens the file again
+            log.warn("Failed to write {} bytes to the access log {}: {}", bytes.length, file, exception.getMessage());
+            close();
+        }
+    }
+
+    private void open() throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        fileSize = Files.size(file);
+    }
+
+    private void roll() throws IOException {
+        close();
+        if (maxHistory == 0) {
+            Files.delete(file);
+            return;
+        }
+        Files.deleteIfExists(rolled(maxHistory));
+        for (int i = maxHistory - 1; i >= 1; i--) {
+            Path source = rolled(i);
+            if (Files.exists(source)) {
+                Files.move(source, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path rolled(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+}
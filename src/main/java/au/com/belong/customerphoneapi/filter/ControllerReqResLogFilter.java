@@ -1,27 +1,140 @@
 package au.com.belong.customerphoneapi.filter;
 
-import lombok.extern.slf4j.Slf4j;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.HandlerMapping;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
-@Slf4j
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records an access log line per request: method, path template, status, latency, response bytes and request id.
+ * The request thread only copies the fields into a lock-free ring buffer, a background writer formats and writes them
+ * to a rolling file in batches (see {@link AccessLogWriter}), so the event loop never formats a log line nor waits for
+ * an appender. Successful (2xx) responses are sampled at the configured rate, every other response is recorded. When
+ * the writer falls behind the records are dropped and counted (<code>phone.api.access.log.dropped</code>).
+ */
 @Component
-public class ControllerReqResLogFilter implements WebFilter {
+public class ControllerReqResLogFilter implements WebFilter, Ordered, DisposableBean {
+    /**
+     * First among the filters, so every response is recorded.
+     */
+    public static final int ORDER = Ordered.HIGHEST_PRECEDENCE;
+    // The status of a request cancelled by the client before its response was committed, as nginx logs it
+    private static final int CLIENT_CLOSED_REQUEST = 499;
+
+    private final AccessLogRingBuffer buffer;
+    private final AccessLogWriter writer;
+    private final double successSampleRate;
+
+    public ControllerReqResLogFilter(@Value("${phone-api.access-log.file:./tmp/logs/access.log}") Path file,
+                                     @Value("${phone-api.access-log.max-file-size:100MB}") DataSize maxFileSize,
+                                     @Value("${phone-api.access-log.max-history:5}") int maxHistory,
+                                     @Value("${phone-api.access-log.buffer-capacity:8192}") int bufferCapacity,
+                                     @Value("${phone-api.access-log.batch-size:512}") int batchSize,
+                                     @Value("${phone-api.access-log.idle-time:PT0.1S}") Duration idleTime,
+                                     @Value("${phone-api.access-log.success-sample-rate:1.0}") double successSampleRate,
+                                     ObjectProvider<MeterRegistry> meterRegistry) {
+        this.buffer = new AccessLogRingBuffer(bufferCapacity);
+        this.writer = new AccessLogWriter(buffer, file, maxFileSize.toBytes(), maxHistory, batchSize, idleTime);
+        this.successSampleRate = successSampleRate;
+        meterRegistry.ifAvailable(registry -> FunctionCounter.builder("phone.api.access.log.dropped", buffer,
+                        AccessLogRingBuffer::dropped)
+                .description("Access log records dropped because the access log buffer was full")
+                .register(registry));
+        writer.start();
+    }
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        long start = System.nanoTime();
+        ByteCountingResponse response = new ByteCountingResponse(exchange.getResponse());
+        return chain.filter(exchange.mutate().response(response).build())
+                .doFinally(signal -> record(exchange, response, signal, System.nanoTime() - start));
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        writer.stop(Duration.ofSeconds(5));
+    }
+
+    private void record(ServerWebExchange exchange, ByteCountingResponse response, SignalType signal, long latencyNanos) {
+        int status = status(response, signal);
+        if (status >= 200 && status < 300 && !sampled()) {
+            return;
+        }
         ServerHttpRequest request = exchange.getRequest();
-        log.info("Incoming request: {} {}", request.getMethod(), request.getURI());
+        // The path template keeps the ids out of the path, the raw path is logged for requests no handler matched
+        PathPattern pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String path = pattern != null ? pattern.getPatternString() : request.getPath().value();
+        buffer.offer(System.currentTimeMillis(), request.getMethod().name(), path, status, latencyNanos,
+                response.bytes, request.getId());
+    }
+
+    private boolean sampled() {
+        return successSampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < successSampleRate;
+    }
+
+    private static int status(ServerHttpResponse response, SignalType signal) {
+        HttpStatusCode status = response.getStatusCode();
+        if (signal == SignalType.CANCEL && !response.isCommitted()) {
+            return CLIENT_CLOSED_REQUEST;
+        }
+        if (status != null) {
+            return status.value();
+        }
+        // An error no exception handler answered ends up as a 500
+        return signal == SignalType.ON_ERROR ? 500 : 200;
+    }
+
+    /**
+     * Counts the bytes of the response body as they are written, a streamed response has no content length.
+     */
+    private static final class ByteCountingResponse extends ServerHttpResponseDecorator {
+        // Only written by the response writes, which are serialized
+        private volatile long bytes;
+
+        ByteCountingResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return super.writeWith(Flux.from(body).doOnNext(this::count));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return super.writeAndFlushWith(Flux.from(body).map(part -> Flux.from(part).doOnNext(this::count)));
+        }
 
-        return chain.filter(exchange)
-                .doOnSuccess(aVoid -> {
-                    ServerHttpResponse response = exchange.getResponse();
-                    log.info("Outgoing response status: {}", response.getStatusCode());
-                });
+        private void count(DataBuffer dataBuffer) {
+            bytes += dataBuffer.readableByteCount();
+        }
     }
 }
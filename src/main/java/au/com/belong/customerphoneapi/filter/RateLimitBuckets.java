@@ -0,0 +1,132 @@
+package au.com.belong.customerphoneapi.filter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free token buckets of the clients, one per route and client. A bucket is a single long, the time it is full
+ * again (the generic cell rate algorithm, equivalent to a token bucket): taking a token moves that time one refill
+ * interval later with a compare-and-set, and a request is rejected when it would be more than a full bucket ahead of
+ * now. A rejection writes nothing, so a client flooding a route does not make its bucket contended.
+ * The clients are held in a map bounded by the maximum number of clients: a client whose buckets are all full again
+ * is idle and removed by {@link #evictIdle(long)} without losing anything, and while the map is full the new clients
+ * share one set of buckets, so rotating keys does not escape the limit nor grow the memory.
+ */
+class RateLimitBuckets {
+    private final long[] intervals;
+    private final long[] tolerances;
+    private final int maxClients;
+    private final ConcurrentHashMap<Object, AtomicLongArray> clients = new ConcurrentHashMap<>();
+    private final AtomicLongArray overflow;
+    private final AtomicLong overflowed = new AtomicLong();
+
+    /**
+     * @param limits     The limit of each route, by route index.
+     * @param maxClients The most clients with buckets of their own.
+     */
+    RateLimitBuckets(List<Limit> limits, int maxClients) {
+        if (maxClients < 1) {
+            throw new IllegalArgumentException("The rate limit maximum clients must be positive, got " + maxClients);
+        }
+        this.intervals = new long[limits.size()];
+        this.tolerances = new long[limits.size()];
+        for (int route = 0; route < limits.size(); route++) {
+            Limit limit = limits.get(route);
+            intervals[route] = Math.max(1L, Math.round(1_000_000_000L / limit.refillPerSecond()));
+            tolerances[route] = (limit.capacity() - 1) * intervals[route];
+        }
+        this.maxClients = maxClients;
+        this.overflow = new AtomicLongArray(limits.size());
+    }
+
+    /**
+     * Takes a token from the bucket of the client for the route.
+     *
+     * @param client The client key, compared with equals.
+     * @param route  The route index.
+     * @param now    The current time in nanoseconds, from an origin before the first call.
+     * @return 0 when a token was taken, otherwise the nanoseconds until the next one.
+     */
+    long tryAcquire(Object client, int route, long now) {
+        AtomicLongArray buckets = bucketsOf(client);
+        long interval = intervals[route];
+        long tolerance = tolerances[route];
+        while (true) {
+            long full = buckets.get(route);
+            long start = Math.max(full, now);
+            long wait = start - tolerance - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (buckets.compareAndSet(route, full, start + interval)) {
+                return 0L;
+            }
+        }
+    }
+
+    /**
+     * Removes the clients whose buckets are all full again. A request racing with the removal of its client takes its
+     * token from the removed buckets, at most one token of a full bucket is not counted.
+     *
+     * @param now The current time in nanoseconds.
+     * @return The number of removed clients.
+     */
+    int evictIdle(long now) {
+        int evicted = 0;
+        for (Map.Entry<Object, AtomicLongArray> client : clients.entrySet()) {
+            if (isFull(client.getValue(), now) && clients.remove(client.getKey(), client.getValue())) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    int clients() {
+        return clients.size();
+    }
+
+    /**
+     * The requests of new clients that shared the overflow buckets because the map was full.
+     */
+    long overflowed() {
+        return overflowed.get();
+    }
+
+    // The lookup of a known client does not lock, a new client is inserted once
+    private AtomicLongArray bucketsOf(Object client) {
+        AtomicLongArray buckets = clients.get(client);
+        if (buckets != null) {
+            return buckets;
+        }
+        if (clients.size() >= maxClients) {
+            overflowed.incrementAndGet();
+            return overflow;
+        }
+        return clients.computeIfAbsent(client, key -> new AtomicLongArray(intervals.length));
+    }
+
+    private static boolean isFull(AtomicLongArray buckets, long now) {
+        for (int route = 0; route < buckets.length(); route++) {
+            if (buckets.get(route) > now) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param capacity        The requests a client may burst, the size of the bucket.
+     * @param refillPerSecond The tokens added back per second, the sustained requests per second.
+     */
+    record Limit(int capacity, double refillPerSecond) {
+        Limit {
+            if (capacity < 1 || !(refillPerSecond > 0)) {
+                throw new IllegalArgumentException("A rate limit needs a positive capacity and refill, got "
+                        + capacity + "/" + refillPerSecond);
+            }
+        }
+    }
+}
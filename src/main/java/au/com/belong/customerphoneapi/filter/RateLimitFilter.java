@@ -0,0 +1,296 @@
+package au.com.belong.customerphoneapi.filter;
+
+import au.com.belong.customerphoneapi.dto.ErrorDTO;
+import au.com.belong.customerphoneapi.exception.ControllerExceptionHandlerAdvice;
+import au.com.belong.customerphoneapi.exception.RateLimitExceededException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.result.method.RequestMappingInfo;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import reactor.core.publisher.Mono;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the requests of each client on each route with token buckets (see {@link RateLimitBuckets}), so one runaway
+ * client cannot saturate the database for the others. The client is the value of the API key header, or the remote
+ * address without one; the requests with neither are not limited. The routes are the path templates of the request
+ * mappings, as matched by the {@link RequestMappingHandlerMapping}, the requests matching none share one more route.
+ * A rejected request is not passed on, it is answered with <code>429 Too Many Requests</code> and a
+ * <code>Retry-After</code> header by the {@link ControllerExceptionHandlerAdvice} the way it answers the other errors.
+ * The rejections are counted by route (<code>phone.api.rate.limit.rejected</code>).
+ * <br/>
+ * Off unless <code>phone-api.rate-limit.enabled</code>: behind a proxy, the clients without an API key are only told
+ * apart with a <code>server.forward-headers-strategy</code>, they all share the buckets of the proxy otherwise.
+ */
+@Slf4j
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@ConditionalOnProperty(name = "phone-api.rate-limit.enabled", havingValue = "true")
+public class RateLimitFilter implements WebFilter, Ordered {
+    private static final String OTHER_ROUTE = "other";
+    private static final ResolvableType ERROR_TYPE = ResolvableType.forClass(ErrorDTO.class);
+
+    private final String apiKeyHeader;
+    private final RequestMappingHandlerMapping handlerMapping;
+    private final ControllerExceptionHandlerAdvice advice;
+    private final HttpMessageWriter<ErrorDTO> errorWriter;
+    private final Route[] routes;
+    // The routes of each path template by method, under null for the mappings of any method
+    private final Map<PathPattern, Map<HttpMethod, Integer>> routesByPattern = new HashMap<>();
+    private final RateLimitBuckets buckets;
+    private final AtomicLong[] rejected;
+    // The bucket times are measured from here, so they start positive whatever the value of System.nanoTime()
+    private final long origin = System.nanoTime();
+
+    @Autowired
+    public RateLimitFilter(@Value("${phone-api.rate-limit.api-key-header:X-Api-Key}") String apiKeyHeader,
+                           @Value("${phone-api.rate-limit.capacity:200}") int capacity,
+                           @Value("${phone-api.rate-limit.refill-per-second:100}") double refillPerSecond,
+                           @Value("${phone-api.rate-limit.route-limits:}") List<String> routeLimits,
+                           @Value("${phone-api.rate-limit.max-clients:100000}") int maxClients,
+                           @Qualifier("requestMappingHandlerMapping") RequestMappingHandlerMapping handlerMapping,
+                           ControllerExceptionHandlerAdvice advice,
+                           ServerCodecConfigurer codecs,
+                           ObjectProvider<MeterRegistry> meterRegistry) {
+        this(apiKeyHeader, capacity, refillPerSecond, routeLimits, maxClients, handlerMapping, advice, codecs);
+        meterRegistry.ifAvailable(this::registerMetrics);
+    }
+
+    /**
+     * @param apiKeyHeader    The header holding the API key of the client.
+     * @param capacity        The requests a client may burst on a route.
+     * @param refillPerSecond The sustained requests per second of a client on a route.
+     * @param routeLimits     The routes with another limit, as <code>METHOD /path/template=capacity/refill-per-second</code>.
+     * @param maxClients      The most clients with buckets of their own, the others share one set of buckets.
+     * @param handlerMapping  The request mappings of the controllers, they match the requests to their routes.
+     * @param advice          Answers the rejected requests.
+     * @param codecs          Write the answers of the rejected requests.
+     */
+    public RateLimitFilter(String apiKeyHeader, int capacity, double refillPerSecond, List<String> routeLimits,
+                           int maxClients, RequestMappingHandlerMapping handlerMapping,
+                           ControllerExceptionHandlerAdvice advice, ServerCodecConfigurer codecs) {
+        this.apiKeyHeader = apiKeyHeader;
+        this.handlerMapping = handlerMapping;
+        this.advice = advice;
+        this.errorWriter = errorWriterOf(codecs);
+        this.routes = routesOf(handlerMapping.getHandlerMethods().keySet());
+        for (int route = 0; route < routes.length; route++) {
+            routesByPattern.computeIfAbsent(routes[route].pattern(), pattern -> new HashMap<>())
+                    .put(routes[route].method(), route);
+        }
+        Map<String, RateLimitBuckets.Limit> limitsByRoute = parse(routeLimits);
+        RateLimitBuckets.Limit defaultLimit = new RateLimitBuckets.Limit(capacity, refillPerSecond);
+        List<RateLimitBuckets.Limit> limits = new ArrayList<>();
+        for (Route route : routes) {
+            limits.add(limitsByRoute.getOrDefault(route.name(), defaultLimit));
+            limitsByRoute.remove(route.name());
+        }
+        if (!limitsByRoute.isEmpty()) {
+            throw new IllegalArgumentException("Rate limits of unknown routes " + limitsByRoute.keySet());
+        }
+        limits.add(defaultLimit);
+        this.buckets = new RateLimitBuckets(limits, maxClients);
+        this.rejected = new AtomicLong[limits.size()];
+        for (int route = 0; route < rejected.length; route++) {
+            rejected[route] = new AtomicLong();
+        }
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        Object client = clientOf(exchange.getRequest());
+        if (client == null) {
+            return chain.filter(exchange);
+        }
+        return handlerMapping.getHandler(exchange)
+                .map(handler -> routeOf(exchange))
+                // The requests the controllers do not map, or whose mapping failed, are on the other route
+                .onErrorResume(exception -> Mono.empty())
+                .defaultIfEmpty(routes.length)
+                .flatMap(route -> {
+                    long wait = buckets.tryAcquire(client, route, System.nanoTime() - origin);
+                    return wait > 0 ? reject(exchange, route, wait) : chain.filter(exchange);
+                });
+    }
+
+    // Right after the access log filter, so the rejected requests are logged and do no other work
+    @Override
+    public int getOrder() {
+        return ControllerReqResLogFilter.ORDER + 1;
+    }
+
+    /**
+     * Removes the clients whose buckets are all full again, they have been idle since.
+     */
+    @Scheduled(fixedDelayString = "${phone-api.rate-limit.eviction-interval:PT1M}")
+    public void evictIdleClients() {
+        int evicted = buckets.evictIdle(System.nanoTime() - origin);
+        log.debug("Evicted {} idle clients from the rate limit, {} left", evicted, buckets.clients());
+    }
+
+    // The API key or the remote address as they are, keys of different types are never equal so they cannot collide
+    private Object clientOf(ServerHttpRequest request) {
+        String apiKey = request.getHeaders().getFirst(apiKeyHeader);
+        if (apiKey != null && !apiKey.isEmpty()) {
+            return apiKey;
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null) {
+            return null;
+        }
+        InetAddress address = remoteAddress.getAddress();
+        return address != null ? address : new UnresolvedAddress(remoteAddress.getHostString());
+    }
+
+    // The route of the path template the handler mapping matched, for the method of the request or for any method
+    private int routeOf(ServerWebExchange exchange) {
+        PathPattern pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        Map<HttpMethod, Integer> byMethod = pattern != null ? routesByPattern.get(pattern) : null;
+        if (byMethod == null) {
+            return routes.length;
+        }
+        Integer route = byMethod.get(exchange.getRequest().getMethod());
+        if (route == null) {
+            route = byMethod.get(null);
+        }
+        return route != null ? route : routes.length;
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, int route, long wait) {
+        rejected[route].incrementAndGet();
+        RateLimitExceededException rejection = new RateLimitExceededException(
+                "Too many requests to " + routeName(route) + ", retry later.", retryAfter(wait));
+        return advice.handle(rejection).flatMap(response -> write(exchange.getResponse(), response));
+    }
+
+    // The answer of the advice, written like the dispatcher writes the answers of the controllers
+    private Mono<Void> write(ServerHttpResponse response, ResponseEntity<ErrorDTO> entity) {
+        response.setStatusCode(entity.getStatusCode());
+        response.getHeaders().putAll(entity.getHeaders());
+        return errorWriter.write(Mono.justOrEmpty(entity.getBody()), ERROR_TYPE, entity.getHeaders().getContentType(),
+                response, Map.of());
+    }
+
+    private String routeName(int route) {
+        return route < routes.length ? routes[route].name() : OTHER_ROUTE;
+    }
+
+    private void registerMetrics(MeterRegistry registry) {
+        for (int route = 0; route < rejected.length; route++) {
+            FunctionCounter.builder("phone.api.rate.limit.rejected", rejected[route], AtomicLong::get)
+                    .description("Requests rejected by the rate limit")
+                    .tag("route", routeName(route))
+                    .register(registry);
+        }
+        Gauge.builder("phone.api.rate.limit.clients", buckets, RateLimitBuckets::clients)
+                .description("Clients with rate limit buckets of their own")
+                .register(registry);
+        FunctionCounter.builder("phone.api.rate.limit.overflowed", buckets, RateLimitBuckets::overflowed)
+                .description("Requests of new clients sharing the overflow buckets because max-clients was reached")
+                .register(registry);
+    }
+
+    // Rounded up to whole seconds, the precision of Retry-After
+    private static Duration retryAfter(long waitNanos) {
+        return Duration.ofSeconds((waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpMessageWriter<ErrorDTO> errorWriterOf(ServerCodecConfigurer codecs) {
+        return codecs.getWriters().stream()
+                .filter(writer -> writer.canWrite(ERROR_TYPE, MediaType.APPLICATION_JSON))
+                .map(writer -> (HttpMessageWriter<ErrorDTO>) writer)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No writer of the error bodies as " + MediaType.APPLICATION_JSON));
+    }
+
+    // One route per method and path template
+    private static Route[] routesOf(Collection<RequestMappingInfo> mappings) {
+        Map<String, Route> routes = new LinkedHashMap<>();
+        for (RequestMappingInfo mapping : mappings) {
+            Set<RequestMethod> methods = mapping.getMethodsCondition().getMethods();
+            for (PathPattern pattern : mapping.getPatternsCondition().getPatterns()) {
+                if (methods.isEmpty()) {
+                    Route route = new Route(null, pattern);
+                    routes.putIfAbsent(route.name(), route);
+                }
+                for (RequestMethod method : methods) {
+                    Route route = new Route(method.asHttpMethod(), pattern);
+                    routes.putIfAbsent(route.name(), route);
+                }
+            }
+        }
+        return routes.values().toArray(Route[]::new);
+    }
+
+    private static Map<String, RateLimitBuckets.Limit> parse(List<String> routeLimits) {
+        Map<String, RateLimitBuckets.Limit> limits = new HashMap<>();
+        for (String routeLimit : routeLimits) {
+            if (routeLimit.isBlank()) {
+                continue;
+            }
+            int equals = routeLimit.lastIndexOf('=');
+            int slash = routeLimit.lastIndexOf('/');
+            if (equals < 0 || slash < equals) {
+                throw new IllegalArgumentException("Expected METHOD /path/template=capacity/refill-per-second, got " + routeLimit);
+            }
+            limits.put(routeLimit.substring(0, equals).trim(), new RateLimitBuckets.Limit(
+                    Integer.parseInt(routeLimit.substring(equals + 1, slash).trim()),
+                    Double.parseDouble(routeLimit.substring(slash + 1).trim())));
+        }
+        return limits;
+    }
+
+    /**
+     * @param method  The method of the route, null for any.
+     * @param pattern The path template of the route.
+     */
+    private record Route(HttpMethod method, PathPattern pattern) {
+        String name() {
+            return (method != null ? method.name() : "*") + " " + pattern.getPatternString();
+        }
+    }
+
+    /**
+     * A remote address that could not be resolved, by host name.
+     */
+    private record UnresolvedAddress(String host) {
+    }
+}
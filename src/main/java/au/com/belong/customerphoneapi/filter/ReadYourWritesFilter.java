@@ -0,0 +1,80 @@
+package au.com.belong.customerphoneapi.filter;
+
+import au.com.belong.customerphoneapi.repository.DatabaseRouting;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Lets a client read its own writes while the reads go to the replicas. A successful write answers with a cookie
+ * holding the time it was committed by, and the later requests carrying it only read from the replicas that have caught
+ * up with that time, whichever node serves them (see {@link DatabaseRouting}). The cookie expires after the
+ * read-your-writes window, by then every replica is expected to have caught up.
+ */
+@Component
+@ConditionalOnProperty(name = "phone-api.read-replicas.urls")
+public class ReadYourWritesFilter implements WebFilter {
+    public static final String LAST_WRITE_COOKIE = "phone-api-last-write";
+    private static final Set<HttpMethod> READ_METHODS = Set.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS);
+
+    private final Duration window;
+    private final Clock clock;
+
+    public ReadYourWritesFilter(@Value("${phone-api.read-replicas.read-your-writes-window:PT1M}") Duration window) {
+        this(window, Clock.systemUTC());
+    }
+
+    ReadYourWritesFilter(Duration window, Clock clock) {
+        this.window = window;
+        this.clock = clock;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!READ_METHODS.contains(exchange.getRequest().getMethod())) {
+            ServerHttpResponse response = exchange.getResponse();
+            // The response is committed once the write is, so the time taken here is after the commit
+            response.beforeCommit(() -> {
+                HttpStatusCode status = response.getStatusCode();
+                if (status == null || status.is2xxSuccessful()) {
+                    response.addCookie(ResponseCookie.from(LAST_WRITE_COOKIE, Long.toString(clock.millis()))
+                            .path("/")
+                            .maxAge(window)
+                            .httpOnly(true)
+                            .sameSite("Lax")
+                            .build());
+                }
+                return Mono.empty();
+            });
+        }
+        long lastWrite = lastWrite(exchange.getRequest().getCookies().getFirst(LAST_WRITE_COOKIE));
+        return lastWrite > 0
+                ? chain.filter(exchange).contextWrite(context -> DatabaseRouting.withLastWrite(context, lastWrite))
+                : chain.filter(exchange);
+    }
+
+    // A cookie that is not a time is ignored rather than failing the request
+    private static long lastWrite(HttpCookie cookie) {
+        if (cookie == null) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(cookie.getValue());
+        } catch (NumberFormatException exception) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package au.com.belong.customerphoneapi.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.HttpResources;
+import reactor.netty.resources.LoopResources;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long a task queues on the Netty event loops before it runs, i.e. how long a request or a response
+ * write waits behind the work already on its event loop. A probe task is submitted to every event loop at a fixed rate
+ * and times its own wait, a delay that grows with the load points at blocking or heavy work on the event loops.
+ */
+@Component
+public class EventLoopDelayProbe {
+    private final EventLoopGroup eventLoops;
+    private final Timer delay;
+
+    /**
+     * The server runs on the global Reactor Netty loop resources unless configured otherwise, the probe uses the same
+     * event loops.
+     *
+     * @param meterRegistry The actuator meter registry.
+     */
+    @Autowired
+    public EventLoopDelayProbe(MeterRegistry meterRegistry) {
+        this(HttpResources.get().onServer(LoopResources.DEFAULT_NATIVE), meterRegistry);
+    }
+
+    EventLoopDelayProbe(EventLoopGroup eventLoops, MeterRegistry meterRegistry) {
+        this.eventLoops = eventLoops;
+        this.delay = Timer.builder("phone.api.event.loop.delay")
+                .description("Time a task waits on a Netty event loop before it runs")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Submits a probe task to every event loop.
+     */
+    @Scheduled(fixedRateString = "${phone-api.metrics.event-loop-probe-interval:PT1S}")
+    public void probe() {
+        for (EventExecutor eventLoop : eventLoops) {
+            long start = System.nanoTime();
+            eventLoop.execute(() -> delay.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        }
+    }
+}
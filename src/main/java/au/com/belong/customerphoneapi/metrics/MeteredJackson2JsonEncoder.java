@@ -0,0 +1,78 @@
+package au.com.belong.customerphoneapi.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JSON encoder of the responses, timing the serialization tagged by the type of the serialized value. A single
+ * value (a <code>Mono</code> body or a server-sent event) is timed as a whole, the elements of a <code>Flux</code> body
+ * (a JSON array or newline delimited JSON) are timed one by one as they are written.
+ * The timer of a type is registered on its first response, later responses record without a meter lookup.
+ */
+public class MeteredJackson2JsonEncoder extends Jackson2JsonEncoder {
+    private final MeterRegistry meterRegistry;
+    private final Map<Class<?>, Timer> timersByType = new ConcurrentHashMap<>();
+
+    public MeteredJackson2JsonEncoder(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        super(objectMapper);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                   @Nullable MimeType mimeType, @Nullable Map<String, Object> hints) {
+        // A single value is encoded, and timed, by encodeValue
+        if (inputStream instanceof Mono) {
+            return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+        }
+        Timer timer = timer(elementType.toClass());
+        return Flux.defer(() -> {
+            // An element is encoded synchronously into the next buffer, buffers without an element such as the
+            // brackets of a JSON array are not recorded
+            long[] start = new long[1];
+            return super.encode(Flux.from(inputStream).doOnNext(value -> start[0] = System.nanoTime()),
+                            bufferFactory, elementType, mimeType, hints)
+                    .doOnNext(buffer -> {
+                        if (start[0] != 0) {
+                            timer.record(System.nanoTime() - start[0], TimeUnit.NANOSECONDS);
+                            start[0] = 0;
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory, ResolvableType valueType,
+                                  @Nullable MimeType mimeType, @Nullable Map<String, Object> hints) {
+        long start = System.nanoTime();
+        DataBuffer buffer = super.encodeValue(value, bufferFactory, valueType, mimeType, hints);
+        timer(valueType.toClass()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return buffer;
+    }
+
+    private Timer timer(Class<?> type) {
+        Timer timer = timersByType.get(type);
+        return timer != null ? timer : timersByType.computeIfAbsent(type, this::register);
+    }
+
+    private Timer register(Class<?> type) {
+        return Timer.builder("phone.api.serialization")
+                .description("Time to serialize a response body, a server-sent event or a streamed element to JSON")
+                .tag("type", type.getSimpleName())
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,162 @@
+package au.com.belong.customerphoneapi.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records how long the tasks of a scheduler wait for a thread and how many are waiting, i.e. the queue depth and the
+ * wait time in front of a bounded pool. Delayed and periodic tasks wait on purpose and are not recorded.
+ */
+public class MeteredScheduler implements Scheduler {
+    private final Scheduler scheduler;
+    private final Timer wait;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public MeteredScheduler(Scheduler scheduler, String name, MeterRegistry meterRegistry) {
+        this.scheduler = scheduler;
+        this.wait = Timer.builder("phone.api.scheduler.wait")
+                .description("Time a task waits for a thread of the scheduler")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("phone.api.scheduler.queued", queued, AtomicInteger::get)
+                .description("Tasks waiting for a thread of the scheduler")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Disposable schedule(Runnable task) {
+        MeteredTask meteredTask = new MeteredTask(task);
+        try {
+            return meteredTask.scheduled(scheduler.schedule(meteredTask));
+        } catch (RejectedExecutionException exception) {
+            meteredTask.dequeue();
+            throw exception;
+        }
+    }
+
+    @Override
+    public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+        return scheduler.schedule(task, delay, unit);
+    }
+
+    @Override
+    public Disposable schedulePeriodically(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return scheduler.schedulePeriodically(task, initialDelay, period, unit);
+    }
+
+    @Override
+    public Worker createWorker() {
+        return new MeteredWorker(scheduler.createWorker());
+    }
+
+    @Override
+    public long now(TimeUnit unit) {
+        return scheduler.now(unit);
+    }
+
+    @Override
+    public void init() {
+        scheduler.init();
+    }
+
+    @Override
+    public void dispose() {
+        scheduler.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return scheduler.isDisposed();
+    }
+
+    private final class MeteredWorker implements Worker {
+        private final Worker worker;
+
+        private MeteredWorker(Worker worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        public Disposable schedule(Runnable task) {
+            MeteredTask meteredTask = new MeteredTask(task);
+            try {
+                return meteredTask.scheduled(worker.schedule(meteredTask));
+            } catch (RejectedExecutionException exception) {
+                meteredTask.dequeue();
+                throw exception;
+            }
+        }
+
+        @Override
+        public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+            return worker.schedule(task, delay, unit);
+        }
+
+        @Override
+        public Disposable schedulePeriodically(Runnable task, long initialDelay, long period, TimeUnit unit) {
+            return worker.schedulePeriodically(task, initialDelay, period, unit);
+        }
+
+        @Override
+        public void dispose() {
+            worker.dispose();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return worker.isDisposed();
+        }
+    }
+
+    // Leaves the queue once, when it starts running or when it is disposed before
+    private final class MeteredTask implements Runnable {
+        private final Runnable task;
+        private final long submitted = System.nanoTime();
+        private final AtomicBoolean waiting = new AtomicBoolean(true);
+
+        private MeteredTask(Runnable task) {
+            this.task = task;
+            queued.incrementAndGet();
+        }
+
+        @Override
+        public void run() {
+            if (dequeue()) {
+                wait.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+            }
+            task.run();
+        }
+
+        private boolean dequeue() {
+            if (waiting.compareAndSet(true, false)) {
+                queued.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        private Disposable scheduled(Disposable disposable) {
+            return new Disposable() {
+                @Override
+                public void dispose() {
+                    dequeue();
+                    disposable.dispose();
+                }
+
+                @Override
+                public boolean isDisposed() {
+                    return disposable.isDisposed();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package au.com.belong.customerphoneapi.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.util.ClassUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Times the methods returning a <code>Mono</code> or <code>Flux</code> from the subscription to the completion, error or
+ * cancellation of the result, rather than the assembly of the publisher that a plain method timer would measure.
+ * The timers of a method are registered on its first call, later calls record into them without a meter lookup.
+ * The tags mirror the repository invocation metrics: <code>class</code>, <code>method</code> and <code>state</code>.
+ */
+public class ReactiveMethodTimer implements MethodInterceptor {
+    private static final int SUCCESS = 0;
+    private static final int ERROR = 1;
+    private static final int CANCELED = 2;
+
+    private final String name;
+    private final String description;
+    // Resolved once on first use, an advisor is created before the meter registry is fully configured
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+    private volatile MeterRegistry meterRegistry;
+    private final Map<Method, Timer[]> timersByMethod = new ConcurrentHashMap<>();
+
+    public ReactiveMethodTimer(String name, String description, ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.name = name;
+        this.description = description;
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        if (result instanceof Mono<?> mono) {
+            Timer[] timers = timers(invocation);
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                return mono.doFinally(signal -> record(timers, signal, start));
+            });
+        }
+        if (result instanceof Flux<?> flux) {
+            Timer[] timers = timers(invocation);
+            return Flux.defer(() -> {
+                long start = System.nanoTime();
+                return flux.doFinally(signal -> record(timers, signal, start));
+            });
+        }
+        return result;
+    }
+
+    private Timer[] timers(MethodInvocation invocation) {
+        Timer[] timers = timersByMethod.get(invocation.getMethod());
+        return timers != null
+                ? timers
+                : timersByMethod.computeIfAbsent(invocation.getMethod(), method -> register(invocation, method));
+    }
+
+    private Timer[] register(MethodInvocation invocation, Method method) {
+        String className = ClassUtils.getUserClass(invocation.getThis().getClass()).getSimpleName();
+        // Overloads are told apart by their parameter types, e.g. getAllFor(long) and getAllFor(int,int)
+        String methodName = Arrays.stream(method.getParameterTypes())
+                .map(Class::getSimpleName)
+                .collect(Collectors.joining(",", method.getName() + "(", ")"));
+        Timer[] timers = new Timer[3];
+        timers[SUCCESS] = register(className, methodName, "SUCCESS");
+        timers[ERROR] = register(className, methodName, "ERROR");
+        timers[CANCELED] = register(className, methodName, "CANCELED");
+        return timers;
+    }
+
+    private Timer register(String className, String methodName, String state) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("class", className)
+                .tag("method", methodName)
+                .tag("state", state)
+                .register(meterRegistry());
+    }
+
+    private MeterRegistry meterRegistry() {
+        MeterRegistry registry = meterRegistry;
+        if (registry == null) {
+            registry = meterRegistryProvider.getObject();
+            meterRegistry = registry;
+        }
+        return registry;
+    }
+
+    private static void record(Timer[] timers, SignalType signal, long start) {
+        int state = switch (signal) {
+            case ON_ERROR -> ERROR;
+            case CANCEL -> CANCELED;
+            default -> SUCCESS;
+        };
+        timers[state].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
@@ -1,5 +1,6 @@
 package au.com.belong.customerphoneapi.repository;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.repository.NoRepositoryBean;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
@@ -8,4 +9,14 @@ import reactor.core.publisher.Flux;
 @NoRepositoryBean
 public interface BaseCrudRepository<T> extends ReactiveCrudRepository<T, Long> {
     Flux<T> findAllBy(PageRequest pageRequest);
+
+    /**
+     * Keyset (seek) pagination on the primary key, i.e. <code>WHERE id > :id ORDER BY id LIMIT :limit</code>.
+     * Unlike {@link #findAllBy(PageRequest)} the cost of a page does not grow with its depth.
+     *
+     * @param id    The last seen identifier (exclusive).
+     * @param limit The maximum number of rows to return.
+     * @return The rows following the given identifier in primary key order.
+     */
+    Flux<T> findAllByIdGreaterThanOrderByIdAsc(long id, Limit limit);
 }
@@ -0,0 +1,58 @@
+package au.com.belong.customerphoneapi.repository;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * The Reactor context entries the {@link ReadReplicaRoutingConnectionFactory} routes a connection request by. Queries
+ * run on the primary unless the publisher that issues them is wrapped by {@link #onReplica(Mono)}, and a replica only
+ * serves them once it has caught up with the last write of the client, when the request carries it.
+ */
+public final class DatabaseRouting {
+    private static final String READ_ONLY = DatabaseRouting.class.getName() + ".readOnly";
+    private static final String LAST_WRITE = DatabaseRouting.class.getName() + ".lastWrite";
+
+    private DatabaseRouting() {
+    }
+
+    /**
+     * Lets the queries of a read-only publisher run on a replica.
+     *
+     * @param reads The read-only publisher.
+     * @return The publisher with its queries routed to a replica.
+     */
+    public static <T> Mono<T> onReplica(Mono<T> reads) {
+        return reads.contextWrite(context -> context.put(READ_ONLY, true));
+    }
+
+    /**
+     * Lets the queries of a read-only publisher run on a replica.
+     *
+     * @param reads The read-only publisher.
+     * @return The publisher with its queries routed to a replica.
+     */
+    public static <T> Flux<T> onReplica(Flux<T> reads) {
+        return reads.contextWrite(context -> context.put(READ_ONLY, true));
+    }
+
+    /**
+     * Records the time of the last write of the client, the replicas that have not caught up with it are skipped.
+     *
+     * @param context   The context of the request.
+     * @param lastWrite The time of the last write, in epoch milliseconds.
+     * @return The context with the last write.
+     */
+    public static Context withLastWrite(Context context, long lastWrite) {
+        return context.put(LAST_WRITE, lastWrite);
+    }
+
+    static boolean isReadOnly(ContextView context) {
+        return context.getOrDefault(READ_ONLY, false);
+    }
+
+    static long lastWrite(ContextView context) {
+        return context.getOrDefault(LAST_WRITE, 0L);
+    }
+}
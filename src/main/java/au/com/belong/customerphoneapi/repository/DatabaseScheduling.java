@@ -0,0 +1,59 @@
+package au.com.belong.customerphoneapi.repository;
+
+import au.com.belong.customerphoneapi.exception.ConnectionPoolExhaustedException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs the database calls on the database scheduler: the repository calls through the
+ * {@link RepositorySchedulerInterceptor}, and the statements run with a <code>DatabaseClient</code> outside of a
+ * repository by their callers. The embedded H2 behind <code>r2dbc-h2</code> runs every statement on the subscribing
+ * thread and blocks it on file I/O, on a dedicated pool that blocking cannot stall the Netty event loops and the other
+ * requests they serve. The results are published back on the parallel scheduler, so the operators after the call do
+ * not hold a thread of the pool meant for the statements.
+ * A call rejected because the queue of the pool is full gets a {@link ConnectionPoolExhaustedException}, the database
+ * is as busy as when no connection is available.
+ */
+public class DatabaseScheduling {
+    private final Supplier<Scheduler> scheduler;
+    private final Duration retryAfter;
+
+    /**
+     * @param scheduler  The database scheduler, resolved on each call, an advisor is created before the other beans.
+     * @param retryAfter When to retry a rejected call.
+     */
+    public DatabaseScheduling(Supplier<Scheduler> scheduler, Duration retryAfter) {
+        this.scheduler = scheduler;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @param call The database call.
+     * @return The call, subscribed to on the database scheduler.
+     */
+    public <T> Mono<T> call(Mono<T> call) {
+        return call.subscribeOn(scheduler.get())
+                .publishOn(Schedulers.parallel())
+                .onErrorMap(RejectedExecutionException.class, this::busy);
+    }
+
+    /**
+     * @param call The database call.
+     * @return The call, subscribed to on the database scheduler.
+     */
+    public <T> Flux<T> call(Flux<T> call) {
+        return call.subscribeOn(scheduler.get())
+                .publishOn(Schedulers.parallel())
+                .onErrorMap(RejectedExecutionException.class, this::busy);
+    }
+
+    private ConnectionPoolExhaustedException busy(RejectedExecutionException exception) {
+        return new ConnectionPoolExhaustedException("The database is busy, try again later.", retryAfter, exception);
+    }
+}
@@ -0,0 +1,85 @@
+package au.com.belong.customerphoneapi.repository;
+
+import au.com.belong.customerphoneapi.exception.ConnectionPoolExhaustedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.R2dbcTimeoutException;
+import io.r2dbc.spi.Wrapped;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.pool.PoolAcquirePendingLimitException;
+import reactor.pool.PoolAcquireTimeoutException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long callers wait to acquire a connection from the pool and how often they give up, the pool sizes
+ * (acquired, idle, pending) are published by the actuator from the wrapped pool itself. A caller that could not get a
+ * connection in time gets a {@link ConnectionPoolExhaustedException}, so it can be told to retry later.
+ */
+public class MeteredConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory>, Disposable {
+    private final ConnectionFactory connectionPool;
+    private final Duration retryAfter;
+    private final Timer acquireTimer;
+    private final Counter acquireTimeouts;
+
+    public MeteredConnectionFactory(ConnectionFactory connectionPool, String name, Duration retryAfter, MeterRegistry meterRegistry) {
+        this.connectionPool = connectionPool;
+        this.retryAfter = retryAfter;
+        this.acquireTimer = Timer.builder("r2dbc.pool.acquire")
+                .description("Time to acquire a connection from the pool")
+                .tag("name", name)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.acquireTimeouts = Counter.builder("r2dbc.pool.acquire.timeouts")
+                .description("Connection acquisitions that timed out or were rejected by the pool")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Connection> create() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return Mono.<Connection>from(connectionPool.create())
+                    .doOnSuccess(connection -> acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .onErrorMap(MeteredConnectionFactory::isExhausted, exception -> {
+                        acquireTimeouts.increment();
+                        return new ConnectionPoolExhaustedException("No database connection available, try again later.", retryAfter, exception);
+                    });
+        });
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return connectionPool.getMetadata();
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return connectionPool;
+    }
+
+    @Override
+    public void dispose() {
+        if (connectionPool instanceof Disposable disposable) {
+            disposable.dispose();
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return connectionPool instanceof Disposable disposable && disposable.isDisposed();
+    }
+
+    private static boolean isExhausted(Throwable exception) {
+        return exception instanceof R2dbcTimeoutException
+                || exception instanceof PoolAcquireTimeoutException
+                || exception instanceof PoolAcquirePendingLimitException;
+    }
+}
@@ -1,10 +1,50 @@
 package au.com.belong.customerphoneapi.repository;
 
 import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
 
 @Repository
 public interface PhoneNumberRepository extends BaseCrudRepository<PhoneNumber> {
     Flux<PhoneNumber> findByCustomerId(long customerId);
-}
\ No newline at end of file
+
+    Flux<PhoneNumber> findByCustomerIdIn(Collection<Long> customerIds);
+
+    /**
+     * Sets the activation status of the phone number only if it is not already in that status, in one statement.
+     * Every update increments the version of the changed rows.
+     *
+     * @param id     The phone number identifier.
+     * @param status The activated/deactivated status.
+     * @return The updated phone number, empty when it was already in the status or not found.
+     */
+    @Query("SELECT * FROM FINAL TABLE (UPDATE PHONE_NUMBERS SET is_active = :status, version = version + 1 WHERE id = :id AND is_active <> :status)")
+    Mono<PhoneNumber> updateActiveWhereId(long id, boolean status);
+
+    /**
+     * Sets the activation status of the given phone numbers that are not already in that status, in one set-based
+     * <code>UPDATE</code>. The H2 <code>FINAL TABLE</code> returns the changed rows from the same statement.
+     *
+     * @param ids    The phone number identifiers.
+     * @param status The activated/deactivated status.
+     * @return The updated phone numbers, the identifiers not returned were either already in the status or not found.
+     */
+    @Query("SELECT * FROM FINAL TABLE (UPDATE PHONE_NUMBERS SET is_active = :status, version = version + 1 WHERE id IN (:ids) AND is_active <> :status)")
+    Flux<PhoneNumber> updateActiveWhereIdIn(Collection<Long> ids, boolean status);
+
+    /**
+     * Activates the first phone numbers and deactivates the second ones, the ones not already in that status, in one
+     * set-based <code>UPDATE</code>. A phone number must not be in both.
+     *
+     * @param activateIds   The identifiers of the phone numbers to activate.
+     * @param deactivateIds The identifiers of the phone numbers to deactivate.
+     * @return The updated phone numbers, the identifiers not returned were either already in the status or not found.
+     */
+    @Query("SELECT * FROM FINAL TABLE (UPDATE PHONE_NUMBERS SET is_active = NOT is_active, version = version + 1 "
+            + "WHERE (id IN (:activateIds) AND NOT is_active) OR (id IN (:deactivateIds) AND is_active))")
+    Flux<PhoneNumber> updateActiveWhereIdIn(Collection<Long> activateIds, Collection<Long> deactivateIds);
+}
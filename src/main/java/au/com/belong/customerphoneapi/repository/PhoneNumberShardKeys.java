@@ -0,0 +1,113 @@
+package au.com.belong.customerphoneapi.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The customer of every phone number, so that a phone number identifier is routed to the shard of its customer. The
+ * API never changes the owner of a phone number, so the identifiers are read from the shards once, into two sorted
+ * primitive arrays, 16 bytes per phone number, and the ones learnt later are kept on the side. The identifiers not
+ * known are looked up on every shard by the repository.
+ */
+public class PhoneNumberShardKeys {
+    private static final String SELECT_KEYS = "SELECT id, customer_id FROM PHONE_NUMBERS ORDER BY id";
+
+    private final List<DatabaseClient> shards;
+    private final Map<Long, Long> learnt = new ConcurrentHashMap<>();
+    // Read on first use, and again on the next one when it failed
+    private final Mono<Snapshot> snapshot;
+
+    public PhoneNumberShardKeys(List<DatabaseClient> shards) {
+        this.shards = List.copyOf(shards);
+        this.snapshot = Mono.defer(this::read)
+                .cache(built -> Duration.ofMillis(Long.MAX_VALUE), exception -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+    /**
+     * Looks up the customers of the given phone numbers.
+     *
+     * @param phoneIds The phone number identifiers.
+     * @return The customer of each known phone number, 0 for a phone number without one.
+     */
+    public Mono<Map<Long, Long>> customersOf(Collection<Long> phoneIds) {
+        return snapshot.map(current -> {
+            Map<Long, Long> customers = new HashMap<>();
+            for (Long phoneId : phoneIds) {
+                Long customerId = learnt.get(phoneId);
+                if (customerId == null) {
+                    customerId = current.find(phoneId);
+                }
+                if (customerId != null) {
+                    customers.put(phoneId, customerId);
+                }
+            }
+            return customers;
+        });
+    }
+
+    /**
+     * Records the customer of a phone number saved or found after the identifiers were read.
+     */
+    public void learn(long phoneId, long customerId) {
+        learnt.put(phoneId, customerId);
+    }
+
+    // A bucket being moved has its rows on two shards, the identifiers are merged in order and read once
+    @SuppressWarnings("unchecked")
+    private Mono<Snapshot> read() {
+        List<Flux<long[]>> keysByShard = shards.stream()
+                .map(shard -> shard.sql(SELECT_KEYS)
+                        .map(row -> {
+                            Long customerId = row.get("customer_id", Long.class);
+                            return new long[]{row.get("id", Long.class), customerId == null ? 0L : customerId};
+                        })
+                        .all())
+                .toList();
+        Flux<long[]>[] sources = keysByShard.toArray(Flux[]::new);
+        return Flux.mergeComparing(Comparator.comparingLong((long[] key) -> key[0]), sources)
+                .reduceWith(SnapshotBuilder::new, SnapshotBuilder::add)
+                .map(SnapshotBuilder::build);
+    }
+
+    private record Snapshot(long[] phoneIds, long[] customerIds) {
+
+        Long find(long phoneId) {
+            int position = Arrays.binarySearch(phoneIds, phoneId);
+            return position < 0 ? null : customerIds[position];
+        }
+    }
+
+    private static final class SnapshotBuilder {
+        private long[] phoneIds = new long[1024];
+        private long[] customerIds = new long[1024];
+        private int size;
+
+        SnapshotBuilder add(long[] key) {
+            if (size > 0 && phoneIds[size - 1] == key[0]) {
+                return this;
+            }
+            if (size == phoneIds.length) {
+                phoneIds = Arrays.copyOf(phoneIds, size * 2);
+                customerIds = Arrays.copyOf(customerIds, size * 2);
+            }
+            phoneIds[size] = key[0];
+            customerIds[size] = key[1];
+            size++;
+            return this;
+        }
+
+        Snapshot build() {
+            return new Snapshot(Arrays.copyOf(phoneIds, size), Arrays.copyOf(customerIds, size));
+        }
+    }
+}
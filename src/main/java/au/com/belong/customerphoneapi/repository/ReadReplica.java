@@ -0,0 +1,68 @@
+package au.com.belong.customerphoneapi.repository;
+
+import io.r2dbc.spi.ConnectionFactory;
+import lombok.Getter;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * A read replica and how far it has caught up with the primary. A replica kept in sync by the local replication job
+ * has caught up with the primary as it was when the last synchronization started, and serves nothing before the first
+ * one. Any other replica is assumed to lag by at most <code>maxLag</code>.
+ */
+public class ReadReplica {
+    private static final long NEVER = Long.MIN_VALUE;
+
+    @Getter
+    private final String name;
+    @Getter
+    private final ConnectionFactory connectionFactory;
+    private final long maxLagMillis;
+    private final boolean replicated;
+    private final Clock clock;
+    private volatile long syncedAt = NEVER;
+
+    /**
+     * @param name              The name of the replica in the metrics.
+     * @param connectionFactory The connection pool of the replica.
+     * @param maxLag            How far a replica not kept in sync by the replication job lags at most.
+     * @param replicated        Whether the replication job keeps the replica in sync.
+     * @param clock             The clock of the write times.
+     */
+    public ReadReplica(String name, ConnectionFactory connectionFactory, Duration maxLag, boolean replicated, Clock clock) {
+        this.name = name;
+        this.connectionFactory = connectionFactory;
+        this.maxLagMillis = maxLag.toMillis();
+        this.replicated = replicated;
+        this.clock = clock;
+    }
+
+    /**
+     * The writes committed up to this time are visible on the replica.
+     *
+     * @return The time in epoch milliseconds, {@link Long#MIN_VALUE} for a replica not synchronized yet.
+     */
+    public long caughtUpTo() {
+        return replicated ? syncedAt : clock.millis() - maxLagMillis;
+    }
+
+    /**
+     * Records a synchronization of the replication job.
+     *
+     * @param startedAt When the synchronization started reading the primary, in epoch milliseconds.
+     */
+    public void synced(long startedAt) {
+        syncedAt = startedAt;
+    }
+
+    boolean isCaughtUpWith(long lastWrite) {
+        long caughtUpTo = caughtUpTo();
+        return caughtUpTo != NEVER && caughtUpTo >= lastWrite;
+    }
+
+    // Only known for a replica kept in sync by the replication job, once it has been synchronized
+    double lagMillis() {
+        return !replicated || syncedAt == NEVER ? Double.NaN : Math.max(0, clock.millis() - syncedAt);
+    }
+}
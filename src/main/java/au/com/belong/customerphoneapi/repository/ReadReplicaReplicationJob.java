@@ -0,0 +1,185 @@
+package au.com.belong.customerphoneapi.repository;
+
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Readable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps local read replicas in sync with the primary, so the read/write routing can be tried with two embedded H2
+ * databases: it creates the schema of an empty replica, then copies the new customers and the phone numbers whose
+ * version differs, reading the primary in keyset chunks. A real replica is kept in sync by the database instead.
+ * A synchronization that fails is retried whole at the next interval, the replica keeps its previous position.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "phone-api.read-replicas.replication.enabled", havingValue = "true")
+public class ReadReplicaReplicationJob {
+    private static final String SELECT_LAST_CUSTOMER = "SELECT COALESCE(MAX(id), 0) FROM CUSTOMERS";
+    private static final String SELECT_CUSTOMERS_AFTER = "SELECT id, name FROM CUSTOMERS WHERE id > :after ORDER BY id LIMIT :limit";
+    private static final String MERGE_CUSTOMER = "MERGE INTO CUSTOMERS (id, name) KEY (id) VALUES (:id, :name)";
+    private static final String SELECT_PHONE_NUMBERS_AFTER = "SELECT id, phone_number, is_active, customer_id, version "
+            + "FROM PHONE_NUMBERS WHERE id > :after ORDER BY id LIMIT :limit";
+    private static final String SELECT_VERSIONS_BETWEEN = "SELECT id, version FROM PHONE_NUMBERS WHERE id BETWEEN :first AND :last";
+    private static final String MERGE_PHONE_NUMBER = "MERGE INTO PHONE_NUMBERS (id, phone_number, is_active, customer_id, version) "
+            + "KEY (id) VALUES (:id, :phoneNumber, :active, :customerId, :version)";
+
+    private final DatabaseClient primary;
+    private final List<ReadReplica> replicas;
+    private final int batchSize;
+    private final Clock clock;
+    // The replicas known to have the schema
+    private final Set<String> initialized = ConcurrentHashMap.newKeySet();
+
+    public ReadReplicaReplicationJob(ConnectionFactory connectionFactory,
+                                     @Value("${phone-api.read-replicas.replication.batch-size:500}") int batchSize) {
+        if (!(connectionFactory instanceof ReadReplicaRoutingConnectionFactory routing)) {
+            throw new IllegalStateException("The replication job needs read replicas, see phone-api.read-replicas.urls");
+        }
+        this.primary = DatabaseClient.create(routing.getPrimary());
+        this.replicas = routing.getReplicas();
+        this.batchSize = batchSize;
+        this.clock = Clock.systemUTC();
+    }
+
+    /**
+     * Synchronizes every replica with the primary, one after the other.
+     *
+     * @return Completes when every replica is synchronized or has failed to.
+     */
+    @Scheduled(
+            initialDelayString = "${phone-api.read-replicas.replication.interval:PT1S}",
+            fixedDelayString = "${phone-api.read-replicas.replication.interval:PT1S}")
+    public Mono<Void> synchronize() {
+        return Flux.fromIterable(replicas)
+                .concatMap(this::synchronize)
+                .then();
+    }
+
+    // The writes committed before the first chunk is read are all copied, so that is how far the replica catches up
+    private Mono<Void> synchronize(ReadReplica replica) {
+        return Mono.defer(() -> {
+            long startedAt = clock.millis();
+            DatabaseClient replicaClient = DatabaseClient.create(replica.getConnectionFactory());
+            return createSchema(replica)
+                    .then(copyCustomers(replicaClient))
+                    .then(copyPhoneNumbers(replicaClient))
+                    .doOnSuccess(copied -> {
+                        replica.synced(startedAt);
+                        log.debug("Copied {} changed phone numbers to replica {}", copied, replica.getName());
+                    })
+                    .onErrorResume(exception -> {
+                        log.warn("Failed to synchronize replica {}", replica.getName(), exception);
+                        return Mono.empty();
+                    })
+                    .then();
+        });
+    }
+
+    private Mono<Void> createSchema(ReadReplica replica) {
+        if (initialized.contains(replica.getName())) {
+            return Mono.empty();
+        }
+        return SchemaScripts.createIfMissing(replica.getConnectionFactory())
+                .doOnSuccess(created -> initialized.add(replica.getName()))
+                .then();
+    }
+
+    // Customers are only ever added, the ones after the last one of the replica are new
+    private Mono<Long> copyCustomers(DatabaseClient replicaClient) {
+        return replicaClient.sql(SELECT_LAST_CUSTOMER)
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .flatMapMany(lastId -> readCustomersAfter(lastId)
+                        .expand(chunk -> chunk.size() < batchSize
+                                ? Mono.empty()
+                                : readCustomersAfter(chunk.get(chunk.size() - 1).id())))
+                .concatMapIterable(chunk -> chunk)
+                .concatMap(customer -> replicaClient.sql(MERGE_CUSTOMER)
+                        .bind("id", customer.id())
+                        .bind("name", customer.name())
+                        .fetch()
+                        .rowsUpdated())
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<List<CustomerRow>> readCustomersAfter(long afterId) {
+        return primary.sql(SELECT_CUSTOMERS_AFTER)
+                .bind("after", afterId)
+                .bind("limit", batchSize)
+                .map(row -> new CustomerRow(row.get("id", Long.class), row.get("name", String.class)))
+                .all()
+                .collectList();
+    }
+
+    private Mono<Long> copyPhoneNumbers(DatabaseClient replicaClient) {
+        return readPhoneNumbersAfter(0L)
+                .expand(chunk -> chunk.size() < batchSize
+                        ? Mono.empty()
+                        : readPhoneNumbersAfter(chunk.get(chunk.size() - 1).id()))
+                .concatMap(chunk -> copyChanged(replicaClient, chunk), 1)
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<List<PhoneNumberRow>> readPhoneNumbersAfter(long afterId) {
+        return primary.sql(SELECT_PHONE_NUMBERS_AFTER)
+                .bind("after", afterId)
+                .bind("limit", batchSize)
+                .map(PhoneNumberRow::of)
+                .all()
+                .collectList();
+    }
+
+    // Only the rows missing from the replica or with another version are written
+    private Mono<Long> copyChanged(DatabaseClient replicaClient, List<PhoneNumberRow> chunk) {
+        if (chunk.isEmpty()) {
+            return Mono.just(0L);
+        }
+        return replicaClient.sql(SELECT_VERSIONS_BETWEEN)
+                .bind("first", chunk.get(0).id())
+                .bind("last", chunk.get(chunk.size() - 1).id())
+                .map(row -> Map.entry(row.get("id", Long.class), row.get("version", Long.class)))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .flatMapMany(versions -> Flux.fromIterable(chunk)
+                        .filter(row -> !Objects.equals(versions.get(row.id()), row.version())))
+                .concatMap(row -> {
+                    DatabaseClient.GenericExecuteSpec merge = replicaClient.sql(MERGE_PHONE_NUMBER)
+                            .bind("id", row.id())
+                            .bind("phoneNumber", row.phoneNumber())
+                            .bind("version", row.version());
+                    merge = row.active() != null ? merge.bind("active", row.active()) : merge.bindNull("active", Boolean.class);
+                    merge = row.customerId() != null ? merge.bind("customerId", row.customerId()) : merge.bindNull("customerId", Long.class);
+                    return merge.fetch().rowsUpdated();
+                })
+                .reduce(0L, Long::sum);
+    }
+
+    private record CustomerRow(long id, String name) {
+    }
+
+    // The nullable columns are kept boxed
+    private record PhoneNumberRow(long id, String phoneNumber, Boolean active, Long customerId, long version) {
+        static PhoneNumberRow of(Readable row) {
+            return new PhoneNumberRow(
+                    row.get("id", Long.class),
+                    row.get("phone_number", String.class),
+                    row.get("is_active", Boolean.class),
+                    row.get("customer_id", Long.class),
+                    row.get("version", Long.class));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package au.com.belong.customerphoneapi.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
+import lombok.Getter;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes every connection request to the primary, except the ones of the read-only publishers (see
+ * {@link DatabaseRouting#onReplica(Mono)}), which go to the replicas in turn. A replica that has not caught up with the
+ * last write of the client is skipped, so a client reads its own writes, and the primary serves the read when no replica
+ * has caught up. Every decision is counted by <code>phone.api.database.routes</code> with the <code>target</code> and
+ * the <code>reason</code>: <code>read-write</code> for the queries not marked read-only, <code>read</code>, or
+ * <code>replica-behind</code> for a read sent to the primary. The lag of the replicas kept in sync by the replication
+ * job is published as <code>phone.api.database.replica.lag</code>. It unwraps to the primary, whose pool metrics the actuator publishes.
+ */
+public class ReadReplicaRoutingConnectionFactory extends AbstractRoutingConnectionFactory
+        implements Wrapped<ConnectionFactory>, Disposable {
+    private static final String PRIMARY = "primary";
+
+    @Getter
+    private final ConnectionFactory primary;
+    @Getter
+    private final List<ReadReplica> replicas;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter readWrites;
+    private final Counter readsBehind;
+    private final Map<String, Counter> readsByReplica = new LinkedHashMap<>();
+
+    public ReadReplicaRoutingConnectionFactory(ConnectionFactory primary, List<ReadReplica> replicas, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.readWrites = routes(PRIMARY, "read-write", meterRegistry);
+        this.readsBehind = routes(PRIMARY, "replica-behind", meterRegistry);
+        Map<String, ConnectionFactory> targets = new LinkedHashMap<>();
+        for (ReadReplica replica : this.replicas) {
+            targets.put(replica.getName(), replica.getConnectionFactory());
+            readsByReplica.put(replica.getName(), routes(replica.getName(), "read", meterRegistry));
+            Gauge.builder("phone.api.database.replica.lag", replica, ReadReplica::lagMillis)
+                    .description("How far the replica is behind the primary")
+                    .tag("replica", replica.getName())
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        }
+        setTargetConnectionFactories(targets);
+        setDefaultTargetConnectionFactory(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> Mono.justOrEmpty(route(context)));
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return primary;
+    }
+
+    @Override
+    public void dispose() {
+        dispose(primary);
+        replicas.forEach(replica -> dispose(replica.getConnectionFactory()));
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return primary instanceof Disposable disposable && disposable.isDisposed();
+    }
+
+    // Empty for the primary, the default target, otherwise the name of the first replica in turn that has caught up
+    private String route(ContextView context) {
+        if (!DatabaseRouting.isReadOnly(context)) {
+            readWrites.increment();
+            return null;
+        }
+        long lastWrite = DatabaseRouting.lastWrite(context);
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            ReadReplica replica = replicas.get((start + i) % replicas.size());
+            if (replica.isCaughtUpWith(lastWrite)) {
+                readsByReplica.get(replica.getName()).increment();
+                return replica.getName();
+            }
+        }
+        readsBehind.increment();
+        return null;
+    }
+
+    private static Counter routes(String target, String reason, MeterRegistry meterRegistry) {
+        return Counter.builder("phone.api.database.routes")
+                .description("Connection requests routed to the primary or a replica")
+                .tag("target", target)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static void dispose(ConnectionFactory connectionFactory) {
+        if (connectionFactory instanceof Disposable disposable) {
+            disposable.dispose();
+        }
+    }
+}
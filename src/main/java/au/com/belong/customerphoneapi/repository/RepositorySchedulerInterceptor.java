@@ -0,0 +1,32 @@
+package au.com.belong.customerphoneapi.repository;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Subscribes to the results of the repository calls on the database scheduler, see {@link DatabaseScheduling}.
+ */
+public class RepositorySchedulerInterceptor implements MethodInterceptor {
+    private final DatabaseScheduling databaseScheduling;
+
+    /**
+     * @param databaseScheduling Runs the calls on the database scheduler.
+     */
+    public RepositorySchedulerInterceptor(DatabaseScheduling databaseScheduling) {
+        this.databaseScheduling = databaseScheduling;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        if (result instanceof Mono<?> mono) {
+            return databaseScheduling.call(mono);
+        }
+        if (result instanceof Flux<?> flux) {
+            return databaseScheduling.call(flux);
+        }
+        return result;
+    }
+}
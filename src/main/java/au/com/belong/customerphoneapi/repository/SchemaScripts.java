@@ -0,0 +1,64 @@
+package au.com.belong.customerphoneapi.repository;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Creates the schema of the databases Flyway does not migrate, the embedded read replicas and shards, from the schema
+ * migrations. The data migrations are left out, the rows are copied from the primary.
+ */
+public final class SchemaScripts {
+    private static final String SCHEMA_LOCATION = "classpath:db/migration/schema/*.sql";
+    private static final Pattern MIGRATION_VERSION = Pattern.compile("^V(\\d+)__");
+    private static final String SELECT_SCHEMA = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'PHONE_NUMBERS'";
+    private static final ResourceDatabasePopulator POPULATOR = new ResourceDatabasePopulator(scripts());
+
+    private SchemaScripts() {
+    }
+
+    /**
+     * Runs the schema migrations on a database without the phone number table.
+     *
+     * @param connectionFactory The connections of the database.
+     * @return Whether the schema was created, false when it already existed.
+     */
+    public static Mono<Boolean> createIfMissing(ConnectionFactory connectionFactory) {
+        return DatabaseClient.create(connectionFactory).sql(SELECT_SCHEMA)
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .flatMap(tables -> tables > 0
+                        ? Mono.just(false)
+                        : POPULATOR.populate(connectionFactory).thenReturn(true));
+    }
+
+    // The schema migrations in version order, V10 after V9
+    private static Resource[] scripts() {
+        try {
+            return Arrays.stream(new PathMatchingResourcePatternResolver().getResources(SCHEMA_LOCATION))
+                    .sorted(Comparator.comparingInt(SchemaScripts::migrationVersion))
+                    .toArray(Resource[]::new);
+        } catch (IOException exception) {
+            throw new UncheckedIOException("Failed to list the schema migrations " + SCHEMA_LOCATION, exception);
+        }
+    }
+
+    private static int migrationVersion(Resource script) {
+        Matcher matcher = MIGRATION_VERSION.matcher(Objects.requireNonNull(script.getFilename()));
+        if (!matcher.find()) {
+            throw new IllegalStateException("Not a versioned migration: " + script.getFilename());
+        }
+        return Integer.parseInt(matcher.group(1));
+    }
+}
@@ -0,0 +1,174 @@
+package au.com.belong.customerphoneapi.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Keeps the {@link ShardMap} of this node in line with <code>SHARD_BUCKETS</code> on the primary, where the moves of
+ * {@link ShardRebalancer} on any node write the shard of each bucket and whether it is fenced. Every
+ * <code>refresh-interval</code> the node reads the table, holds the writes of the fenced buckets until the running ones
+ * complete, and records in <code>SHARD_NODES</code> when it read it. A move waits for every node to read each of its
+ * changes, the nodes that have not read the table for <code>node-timeout</code> plus <code>drain-timeout</code> hold
+ * their writes since their lease ended and are not waited for.
+ */
+@Slf4j
+public class ShardAssignment {
+    private static final String SELECT_ASSIGNMENT = "SELECT bucket, shard, fenced, LOCALTIMESTAMP AS read_at FROM SHARD_BUCKETS";
+    private static final String MERGE_NODE = "MERGE INTO SHARD_NODES (node, read_at) KEY (node) VALUES (:node, :readAt)";
+    private static final String FENCE_BUCKET = "UPDATE SHARD_BUCKETS SET fenced = TRUE WHERE bucket = :bucket AND shard = :shard AND NOT fenced";
+    private static final String UNFENCE_BUCKET = "UPDATE SHARD_BUCKETS SET fenced = FALSE WHERE bucket = :bucket AND shard = :shard";
+    private static final String ASSIGN_BUCKET = "UPDATE SHARD_BUCKETS SET shard = :shard, fenced = FALSE WHERE bucket = :bucket";
+    private static final String SELECT_NOW = "SELECT LOCALTIMESTAMP";
+    private static final String COUNT_NODES_BEHIND = "SELECT COUNT(*) FROM SHARD_NODES WHERE read_at <= :since AND read_at > :liveSince";
+    private static final Duration NODES_POLL_INTERVAL = Duration.ofMillis(50);
+
+    private final DatabaseClient primary;
+    private final ShardMap shardMap;
+    private final String node;
+    private final Duration drainTimeout;
+    private final Duration nodeTimeout;
+
+    /**
+     * @param primary      The primary database, it holds the assignment.
+     * @param shardMap     The placement of the customers on the shards of this node.
+     * @param node         The name of this node in <code>SHARD_NODES</code>, unique among the running nodes.
+     * @param drainTimeout How long the node waits for the running writes of a fenced bucket.
+     * @param nodeTimeout  How long the node trusts the assignment it read, and a move waits for the nodes to read it.
+     */
+    public ShardAssignment(DatabaseClient primary, ShardMap shardMap, String node, Duration drainTimeout, Duration nodeTimeout) {
+        this.primary = primary;
+        this.shardMap = shardMap;
+        this.node = node;
+        this.drainTimeout = drainTimeout;
+        this.nodeTimeout = nodeTimeout;
+        // The writes wait for the first read
+        shardMap.renew(System.nanoTime(), Duration.ZERO);
+    }
+
+    /**
+     * Reads the assignment into the shard map, and once the running writes of the fenced buckets completed, records
+     * that this node read it. The refreshes run one after the other, a move only changes the table and waits for them.
+     *
+     * @return Completes when the assignment is applied, or failed to be.
+     */
+    @Scheduled(
+            initialDelayString = "${phone-api.persistence.sharding.refresh-interval:PT1S}",
+            fixedDelayString = "${phone-api.persistence.sharding.refresh-interval:PT1S}")
+    public Mono<Void> refresh() {
+        return Mono.defer(() -> {
+            long startedAt = System.nanoTime();
+            return primary.sql(SELECT_ASSIGNMENT)
+                    .map(row -> new BucketRow(
+                            row.get("bucket", Integer.class),
+                            row.get("shard", Integer.class),
+                            row.get("fenced", Boolean.class),
+                            row.get("read_at", LocalDateTime.class)))
+                    .all()
+                    .collectList()
+                    .filter(rows -> !rows.isEmpty())
+                    .flatMap(rows -> apply(rows, startedAt)
+                            .then(primary.sql(MERGE_NODE)
+                                    .bind("node", node)
+                                    .bind("readAt", rows.get(0).readAt())
+                                    .then()))
+                    .onErrorResume(exception -> {
+                        log.warn("Failed to refresh the shard assignment: {}", exception.getMessage());
+                        return Mono.empty();
+                    });
+        });
+    }
+
+    /**
+     * Claims a bucket for a move, every node holds its writes once it read the claim, see {@link #awaitNodes()}.
+     *
+     * @param bucket The bucket to move.
+     * @param shard  The shard the bucket is on.
+     * @return Completes once claimed, or fails when the bucket is already being moved or was moved by another node.
+     */
+    public Mono<Void> fence(int bucket, int shard) {
+        return primary.sql(FENCE_BUCKET)
+                .bind("bucket", bucket)
+                .bind("shard", shard)
+                .fetch()
+                .rowsUpdated()
+                .flatMap(updated -> updated == 1
+                        ? Mono.<Void>empty()
+                        : Mono.error(new IllegalStateException("Bucket " + bucket + " is already being moved")));
+    }
+
+    /**
+     * Lets the writes of a bucket whose move failed through on the shard it is still on.
+     *
+     * @param bucket The fenced bucket.
+     * @param shard  The shard the bucket is on.
+     * @return Completes once unfenced.
+     */
+    public Mono<Void> unfence(int bucket, int shard) {
+        return primary.sql(UNFENCE_BUCKET)
+                .bind("bucket", bucket)
+                .bind("shard", shard)
+                .then();
+    }
+
+    /**
+     * Assigns a fenced bucket to its new shard and lets its writes through there.
+     *
+     * @param bucket The fenced bucket.
+     * @param shard  The shard of the bucket from now on.
+     * @return Completes once assigned.
+     */
+    public Mono<Void> assign(int bucket, int shard) {
+        return primary.sql(ASSIGN_BUCKET)
+                .bind("bucket", bucket)
+                .bind("shard", shard)
+                .then();
+    }
+
+    /**
+     * Waits for every running node to read the assignment, as changed before the call.
+     *
+     * @return Completes once no node that read the assignment in the last <code>node-timeout</code> plus
+     * <code>drain-timeout</code> has not read it again, or fails after <code>node-timeout</code>.
+     */
+    public Mono<Void> awaitNodes() {
+        return primary.sql(SELECT_NOW)
+                .map(row -> row.get(0, LocalDateTime.class))
+                .one()
+                .flatMap(since -> Flux.interval(Duration.ZERO, NODES_POLL_INTERVAL)
+                        .onBackpressureDrop()
+                        .concatMap(tick -> primary.sql(COUNT_NODES_BEHIND)
+                                .bind("since", since)
+                                .bind("liveSince", since.minus(nodeTimeout).minus(drainTimeout))
+                                .map(row -> row.get(0, Long.class))
+                                .one())
+                        .filter(behind -> behind == 0)
+                        .next()
+                        .timeout(nodeTimeout, Mono.error(() -> new IllegalStateException(
+                                "The nodes did not read the shard assignment within " + nodeTimeout))))
+                .then();
+    }
+
+    // The fenced buckets hold their writes at once, then the running ones are waited for
+    private Mono<Void> apply(List<BucketRow> rows, long startedAt) {
+        rows.stream().filter(row -> !row.fenced()).forEach(row -> shardMap.release(row.bucket(), row.shard()));
+        List<Mono<Void>> fences = rows.stream()
+                .filter(BucketRow::fenced)
+                .map(row -> {
+                    shardMap.assign(row.bucket(), row.shard());
+                    return shardMap.fence(row.bucket(), drainTimeout);
+                })
+                .toList();
+        shardMap.renew(startedAt, nodeTimeout);
+        return Mono.when(fences);
+    }
+
+    private record BucketRow(int bucket, int shard, boolean fenced, LocalDateTime readAt) {
+    }
+}
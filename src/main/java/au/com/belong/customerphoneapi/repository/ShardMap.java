@@ -0,0 +1,200 @@
+package au.com.belong.customerphoneapi.repository;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Places the customers, and their phone numbers, on the shards: a customer falls in one of {@link #BUCKETS} buckets by
+ * a hash of its identifier, and each bucket is assigned to a shard. A rebalance moves whole buckets from a shard to
+ * another, the bucket of a customer never changes. The buckets not assigned are on the first shard, the database
+ * migrated by Flyway. Phone numbers without a customer are in the bucket of customer 0.
+ * <br/>
+ * A bucket being moved is fenced: the writes of its customers wait for the end of the move, then go to its new shard,
+ * and the move waits for the writes already running on its old shard. The assignment and the fences are those of
+ * <code>SHARD_BUCKETS</code>, read by {@link ShardAssignment} on every node. Once leased, a map not read again before
+ * its lease ends holds every write until it is, the moves no longer wait for its node.
+ */
+public class ShardMap {
+    /**
+     * The number of buckets, it can never change once customers are placed.
+     */
+    public static final int BUCKETS = 64;
+    private static final Duration DRAIN_POLL_INTERVAL = Duration.ofMillis(1);
+
+    private final int shards;
+    private final AtomicIntegerArray assignment = new AtomicIntegerArray(BUCKETS);
+    private final AtomicIntegerArray writers = new AtomicIntegerArray(BUCKETS);
+    private final AtomicReferenceArray<Sinks.Empty<Void>> fences = new AtomicReferenceArray<>(BUCKETS);
+    private final AtomicReference<Lease> lease = new AtomicReference<>();
+
+    /**
+     * @param shards     The number of shards.
+     * @param assignment The shard of the buckets not on the first shard.
+     */
+    public ShardMap(int shards, Map<Integer, Integer> assignment) {
+        this.shards = shards;
+        assignment.forEach(this::assign);
+    }
+
+    /**
+     * The bucket of a customer, from the finalizer of MurmurHash3 so consecutive identifiers spread over the buckets.
+     *
+     * @param customerId The customer identifier, 0 for none.
+     * @return The bucket of the customer.
+     */
+    public static int bucketOf(long customerId) {
+        long hash = customerId;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) (hash & (BUCKETS - 1));
+    }
+
+    public int shards() {
+        return shards;
+    }
+
+    public int shardOf(int bucket) {
+        return assignment.get(bucket);
+    }
+
+    public int shardOfCustomer(long customerId) {
+        return shardOf(bucketOf(customerId));
+    }
+
+    /**
+     * Whether the rows of a customer read from a shard are the ones of the shard it is placed on, and not a copy left
+     * over or in the making by a move.
+     */
+    public boolean owns(int shard, long customerId) {
+        return shardOfCustomer(customerId) == shard;
+    }
+
+    /**
+     * The shard of a bucket once rebalanced, the buckets are spread over the shards in turn.
+     */
+    public int balancedShardOf(int bucket) {
+        return bucket % shards;
+    }
+
+    public boolean isMoving(int bucket) {
+        return fences.get(bucket) != null;
+    }
+
+    /**
+     * Runs a write of the customers in the given buckets once none of them is fenced, they stay on their shards until
+     * the write completes.
+     *
+     * @param buckets   The buckets of the written customers.
+     * @param statement The write, the shards of its buckets are looked up when it runs.
+     * @return The results of the write.
+     */
+    public <T> Flux<T> write(Collection<Integer> buckets, Supplier<Flux<T>> statement) {
+        return Flux.defer(() -> {
+            int[] entered = buckets.stream().mapToInt(Integer::intValue).distinct().toArray();
+            // Registered before the fences are read, and the mover fences before it reads the writers, so a write
+            // either sees the fence or is waited for
+            for (int bucket : entered) {
+                writers.incrementAndGet(bucket);
+            }
+            Lease current = lease.get();
+            if (current != null && System.nanoTime() - current.end() > 0) {
+                leave(entered);
+                return current.renewal().asMono().thenMany(write(buckets, statement));
+            }
+            for (int bucket : entered) {
+                Sinks.Empty<Void> fence = fences.get(bucket);
+                if (fence != null) {
+                    leave(entered);
+                    return fence.asMono().thenMany(write(buckets, statement));
+                }
+            }
+            Flux<T> results;
+            try {
+                results = statement.get();
+            } catch (RuntimeException exception) {
+                leave(entered);
+                throw exception;
+            }
+            return results.doFinally(signal -> leave(entered));
+        });
+    }
+
+    /**
+     * Holds the writes of a bucket, unless they already are, and waits for the running ones.
+     *
+     * @param bucket  The bucket to move.
+     * @param timeout How long to wait for the running writes.
+     * @return Completes once no write of the bucket runs, the fence stays until {@link #release(int, int)}.
+     */
+    Mono<Void> fence(int bucket, Duration timeout) {
+        fences.compareAndSet(bucket, null, Sinks.empty());
+        return Flux.interval(Duration.ZERO, DRAIN_POLL_INTERVAL)
+                .filter(tick -> writers.get(bucket) == 0)
+                .next()
+                .timeout(timeout)
+                .then()
+                .doOnError(exception -> release(bucket, shardOf(bucket)));
+    }
+
+    /**
+     * Assigns a fenced bucket to its shard and lets its writes through.
+     *
+     * @param bucket The fenced bucket.
+     * @param shard  The shard of the bucket from now on.
+     */
+    void release(int bucket, int shard) {
+        assign(bucket, shard);
+        Sinks.Empty<Void> fence = fences.getAndSet(bucket, null);
+        if (fence != null) {
+            fence.tryEmitEmpty();
+        }
+    }
+
+    /**
+     * Places a bucket on a shard, its fence is left as it is.
+     *
+     * @param bucket The bucket.
+     * @param shard  The shard of the bucket from now on.
+     */
+    void assign(int bucket, int shard) {
+        if (bucket < 0 || bucket >= BUCKETS || shard < 0 || shard >= shards) {
+            throw new IllegalStateException("Bucket " + bucket + " is assigned to shard " + shard + " of " + shards);
+        }
+        assignment.set(bucket, shard);
+    }
+
+    /**
+     * Extends the lease of the map once it was read, and lets the writes held by an ended lease through.
+     *
+     * @param readAt The {@link System#nanoTime()} before the map was read.
+     * @param length How long the map is trusted after it was read.
+     */
+    void renew(long readAt, Duration length) {
+        Lease previous = lease.getAndSet(new Lease(readAt + length.toNanos(), Sinks.empty()));
+        if (previous != null) {
+            previous.renewal().tryEmitEmpty();
+        }
+    }
+
+    private void leave(int[] entered) {
+        for (int bucket : entered) {
+            writers.decrementAndGet(bucket);
+        }
+    }
+
+    // The end of the lease in System.nanoTime(), the writes held once it ended wait for its renewal
+    private record Lease(long end, Sinks.Empty<Void> renewal) {
+    }
+}
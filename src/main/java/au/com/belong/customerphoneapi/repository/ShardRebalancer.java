@@ -0,0 +1,206 @@
+package au.com.belong.customerphoneapi.repository;
+
+import io.r2dbc.spi.Readable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Moves the buckets of customers between the shards while the application serves them, until each bucket is on its
+ * balanced shard (see {@link ShardMap#balancedShardOf(int)}), e.g. after shards were added. A bucket is moved in steps:
+ * <ol>
+ *     <li>its customers and phone numbers are copied to the new shard, while they are still written on the old one,</li>
+ *     <li>the bucket is fenced in <code>SHARD_BUCKETS</code>, once every node read it its new writes wait and the
+ *     running ones completed,</li>
+ *     <li>the phone numbers whose version changed during the first copy are copied again,</li>
+ *     <li>the bucket is assigned to the new shard in <code>SHARD_BUCKETS</code> and its writes go there,</li>
+ *     <li>once every node read it, and after the drain delay for the reads that started on the old shard, the rows are
+ *     deleted from it.</li>
+ * </ol>
+ * The nodes read <code>SHARD_BUCKETS</code> through their {@link ShardAssignment}, so a rebalance runs on any node
+ * while all of them serve. A move that fails leaves the bucket on its old shard, a copy left on the new one is not
+ * read from it. A bucket is moved by one node at a time, the fence is claimed by a conditional update.
+ */
+@Slf4j
+public class ShardRebalancer {
+    private static final String SELECT_CUSTOMERS = "SELECT id, name FROM CUSTOMERS ORDER BY id";
+    private static final String MERGE_CUSTOMER = "MERGE INTO CUSTOMERS (id, name) KEY (id) VALUES (:id, :name)";
+    private static final String DELETE_CUSTOMERS = "DELETE FROM CUSTOMERS WHERE id IN (:ids)";
+    private static final String PHONE_NUMBER_COLUMNS = "SELECT id, phone_number, is_active, customer_id, version FROM PHONE_NUMBERS ";
+    private static final String OF_CUSTOMERS = "WHERE customer_id IN (:customerIds)";
+    private static final String WITHOUT_CUSTOMER = "WHERE customer_id IS NULL";
+    private static final String MERGE_PHONE_NUMBER = "MERGE INTO PHONE_NUMBERS (id, phone_number, is_active, customer_id, version) "
+            + "KEY (id) VALUES (:id, :phoneNumber, :active, :customerId, :version)";
+    private static final String DELETE_WITHOUT_CUSTOMER = "DELETE FROM PHONE_NUMBERS " + WITHOUT_CUSTOMER;
+    private static final int NO_CUSTOMER_BUCKET = ShardMap.bucketOf(0L);
+
+    private final List<DatabaseClient> shards;
+    private final ShardMap shardMap;
+    private final ShardAssignment assignment;
+    private final int batchSize;
+    private final Duration drainDelay;
+    private final Scheduler scheduler;
+    private final AtomicBoolean rebalancing = new AtomicBoolean();
+
+    /**
+     * @param shards     The databases of the shards, the primary first.
+     * @param shardMap   The placement of the customers on the shards.
+     * @param assignment The assignment shared by the nodes.
+     * @param batchSize  The customers copied or deleted by one statement.
+     * @param drainDelay How long after a move the rows are deleted from the old shard.
+     * @param scheduler  The database scheduler the statements run on.
+     */
+    public ShardRebalancer(List<DatabaseClient> shards, ShardMap shardMap, ShardAssignment assignment, int batchSize,
+                           Duration drainDelay, Scheduler scheduler) {
+        this.shards = List.copyOf(shards);
+        this.shardMap = shardMap;
+        this.assignment = assignment;
+        this.batchSize = batchSize;
+        this.drainDelay = drainDelay;
+        this.scheduler = scheduler;
+    }
+
+    public boolean isRebalancing() {
+        return rebalancing.get();
+    }
+
+    /**
+     * The buckets that are not on their balanced shard.
+     */
+    public List<Integer> unbalancedBuckets() {
+        return IntStream.range(0, ShardMap.BUCKETS)
+                .filter(bucket -> shardMap.shardOf(bucket) != shardMap.balancedShardOf(bucket))
+                .boxed()
+                .toList();
+    }
+
+    /**
+     * Moves every bucket that is not on its balanced shard, one after the other. Only one rebalance runs at a time.
+     *
+     * @return The number of moved buckets.
+     */
+    public Mono<Integer> rebalance() {
+        return Mono.defer(() -> {
+            if (!rebalancing.compareAndSet(false, true)) {
+                return Mono.error(new IllegalStateException("A rebalance is already running"));
+            }
+            return Flux.fromIterable(unbalancedBuckets())
+                    .concatMap(bucket -> move(bucket, shardMap.balancedShardOf(bucket)).thenReturn(bucket))
+                    .count()
+                    .map(Long::intValue)
+                    .doFinally(signal -> rebalancing.set(false));
+        }).subscribeOn(scheduler);
+    }
+
+    private Mono<Void> move(int bucket, int target) {
+        return Mono.defer(() -> {
+            int source = shardMap.shardOf(bucket);
+            log.info("Moving bucket {} from shard {} to shard {}", bucket, source, target);
+            return copy(bucket, source, target)
+                    .then(assignment.fence(bucket, source))
+                    // The waits and the delay complete on timer threads, the statements after them go back to the scheduler
+                    .then(assignment.awaitNodes().publishOn(scheduler)
+                            .then(copy(bucket, source, target))
+                            .flatMap(changed -> assignment.assign(bucket, target).thenReturn(changed))
+                            .onErrorResume(exception -> assignment.unfence(bucket, source)
+                                    .onErrorResume(unfenceException -> Mono.empty())
+                                    .then(Mono.error(exception))))
+                    .doOnNext(changed -> log.info("Moved bucket {} to shard {}, {} phone numbers changed during the move",
+                            bucket, target, changed))
+                    .doOnError(exception -> log.warn("Failed to move bucket {} from shard {} to shard {}",
+                            bucket, source, target, exception))
+                    // The rows stay on the old shard when a node does not read the move, it may still read them there
+                    .then(assignment.awaitNodes().publishOn(scheduler))
+                    .then(Mono.delay(drainDelay).publishOn(scheduler))
+                    .then(delete(bucket, source));
+        });
+    }
+
+    // Copies the customers of the bucket, then their phone numbers missing from the target or with another version
+    private Mono<Long> copy(int bucket, int source, int target) {
+        DatabaseClient from = shards.get(source);
+        DatabaseClient to = shards.get(target);
+        Flux<Long> ofCustomers = customersOf(bucket, from)
+                .buffer(batchSize)
+                .concatMap(customers -> Flux.fromIterable(customers)
+                        .concatMap(customer -> to.sql(MERGE_CUSTOMER)
+                                .bind("id", customer.id())
+                                .bind("name", customer.name())
+                                .then())
+                        .then(copyPhoneNumbers(from.sql(PHONE_NUMBER_COLUMNS + OF_CUSTOMERS).bind("customerIds", ids(customers)),
+                                to.sql("SELECT id, version FROM PHONE_NUMBERS " + OF_CUSTOMERS).bind("customerIds", ids(customers)),
+                                to)));
+        Flux<Long> withoutCustomer = bucket == NO_CUSTOMER_BUCKET
+                ? copyPhoneNumbers(from.sql(PHONE_NUMBER_COLUMNS + WITHOUT_CUSTOMER),
+                        to.sql("SELECT id, version FROM PHONE_NUMBERS " + WITHOUT_CUSTOMER), to).flux()
+                : Flux.empty();
+        return ofCustomers.concatWith(withoutCustomer).reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> copyPhoneNumbers(DatabaseClient.GenericExecuteSpec sourceRows, DatabaseClient.GenericExecuteSpec targetVersions,
+                                        DatabaseClient to) {
+        return targetVersions
+                .map(row -> Map.entry(row.get("id", Long.class), row.get("version", Long.class)))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .flatMapMany(versions -> sourceRows.map(PhoneNumberRow::of)
+                        .all()
+                        .filter(row -> !Objects.equals(versions.get(row.id()), row.version())))
+                .concatMap(row -> {
+                    DatabaseClient.GenericExecuteSpec merge = to.sql(MERGE_PHONE_NUMBER)
+                            .bind("id", row.id())
+                            .bind("phoneNumber", row.phoneNumber())
+                            .bind("version", row.version());
+                    merge = row.active() != null ? merge.bind("active", row.active()) : merge.bindNull("active", Boolean.class);
+                    merge = row.customerId() != null ? merge.bind("customerId", row.customerId()) : merge.bindNull("customerId", Long.class);
+                    return merge.fetch().rowsUpdated();
+                })
+                .count();
+    }
+
+    // Deleting the customers deletes their phone numbers, ON DELETE CASCADE
+    private Mono<Void> delete(int bucket, int source) {
+        DatabaseClient from = shards.get(source);
+        Mono<Void> ofCustomers = customersOf(bucket, from)
+                .buffer(batchSize)
+                .concatMap(customers -> from.sql(DELETE_CUSTOMERS).bind("ids", ids(customers)).then())
+                .then();
+        Mono<Void> withoutCustomer = bucket == NO_CUSTOMER_BUCKET ? from.sql(DELETE_WITHOUT_CUSTOMER).then() : Mono.empty();
+        return ofCustomers.then(withoutCustomer);
+    }
+
+    private Flux<CustomerRow> customersOf(int bucket, DatabaseClient shard) {
+        return shard.sql(SELECT_CUSTOMERS)
+                .map(row -> new CustomerRow(row.get("id", Long.class), row.get("name", String.class)))
+                .all()
+                .filter(customer -> ShardMap.bucketOf(customer.id()) == bucket);
+    }
+
+    private static List<Long> ids(List<CustomerRow> customers) {
+        return customers.stream().map(CustomerRow::id).toList();
+    }
+
+    private record CustomerRow(long id, String name) {
+    }
+
+    // The nullable columns are kept boxed
+    private record PhoneNumberRow(long id, String phoneNumber, Boolean active, Long customerId, long version) {
+        static PhoneNumberRow of(Readable row) {
+            return new PhoneNumberRow(
+                    row.get("id", Long.class),
+                    row.get("phone_number", String.class),
+                    row.get("is_active", Boolean.class),
+                    row.get("customer_id", Long.class),
+                    row.get("version", Long.class));
+        }
+    }
+}
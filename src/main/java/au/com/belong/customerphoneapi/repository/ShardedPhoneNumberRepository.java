@@ -0,0 +1,295 @@
+package au.com.belong.customerphoneapi.repository;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import org.reactivestreams.Publisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The {@link PhoneNumberRepository} contract over several databases, each with the R2DBC repository of its own rows.
+ * The customers and their phone numbers are placed on the shards by the {@link ShardMap}:
+ * <ul>
+ *     <li>the queries by customer run on the shard of each customer,</li>
+ *     <li>the queries by phone number identifier on the shard of the customer of each phone number, looked up in the
+ *     {@link PhoneNumberShardKeys},</li>
+ *     <li>the pages and streams in identifier order read every shard in keyset chunks, and a k-way merge on the
+ *     identifier keeps the first rows of all of them. A shard reads its next chunk only once its previous one was
+ *     taken, so a page of <code>n</code> rows costs one query of <code>n</code> rows per shard, plus one per shard
+ *     whose rows the page took entirely,</li>
+ *     <li>the count is the sum of the counts of the shards, run in parallel.</li>
+ * </ul>
+ * The queries on several shards run in parallel on the database scheduler. The rows of a bucket being moved are on
+ * two shards until the move is over, the pages only keep the ones of the shard the bucket is assigned to, the count
+ * counts them twice.
+ */
+public class ShardedPhoneNumberRepository implements PhoneNumberRepository {
+    private static final Comparator<PhoneNumber> BY_ID = Comparator.comparingLong(PhoneNumber::getId);
+    // The largest chunk read from a shard by one query, for the streams and the pages deeper than it
+    private static final int MAX_CHUNK_SIZE = 1000;
+
+    private final List<PhoneNumberRepository> shards;
+    private final ShardMap shardMap;
+    private final PhoneNumberShardKeys keys;
+    private final Scheduler scheduler;
+
+    /**
+     * @param shards    The R2DBC repository of each shard, in shard order.
+     * @param shardMap  The placement of the customers on the shards.
+     * @param keys      The customers of the phone numbers.
+     * @param scheduler The database scheduler the queries of the shards run on.
+     */
+    public ShardedPhoneNumberRepository(List<PhoneNumberRepository> shards, ShardMap shardMap, PhoneNumberShardKeys keys,
+                                        Scheduler scheduler) {
+        this.shards = List.copyOf(shards);
+        this.shardMap = shardMap;
+        this.keys = keys;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Flux<PhoneNumber> findByCustomerId(long customerId) {
+        return onShard(shardMap.shardOfCustomer(customerId), shard -> shard.findByCustomerId(customerId));
+    }
+
+    @Override
+    public Flux<PhoneNumber> findByCustomerIdIn(Collection<Long> customerIds) {
+        Map<Integer, List<Long>> customerIdsByShard = customerIds.stream()
+                .distinct()
+                .collect(Collectors.groupingBy(shardMap::shardOfCustomer, TreeMap::new, Collectors.toList()));
+        return Flux.fromIterable(customerIdsByShard.entrySet())
+                .flatMap(entry -> onShard(entry.getKey(), shard -> shard.findByCustomerIdIn(entry.getValue())));
+    }
+
+    @Override
+    public Mono<PhoneNumber> updateActiveWhereId(long id, boolean status) {
+        return writeByPhoneIds(List.of(id), (shard, ids) -> shard.updateActiveWhereId(id, status).flux()).next();
+    }
+
+    @Override
+    public Flux<PhoneNumber> updateActiveWhereIdIn(Collection<Long> ids, boolean status) {
+        return writeByPhoneIds(ids, (shard, shardIds) -> shard.updateActiveWhereIdIn(shardIds, status));
+    }
+
+    @Override
+    public Flux<PhoneNumber> updateActiveWhereIdIn(Collection<Long> activateIds, Collection<Long> deactivateIds) {
+        Set<Long> activate = new HashSet<>(activateIds);
+        List<Long> ids = new ArrayList<>(activateIds);
+        ids.addAll(deactivateIds);
+        return writeByPhoneIds(ids, (shard, shardIds) -> {
+            Map<Boolean, List<Long>> byStatus = shardIds.stream().collect(Collectors.partitioningBy(activate::contains));
+            // An empty IN list is not valid SQL
+            if (byStatus.get(false).isEmpty()) {
+                return shard.updateActiveWhereIdIn(byStatus.get(true), true);
+            }
+            if (byStatus.get(true).isEmpty()) {
+                return shard.updateActiveWhereIdIn(byStatus.get(false), false);
+            }
+            return shard.updateActiveWhereIdIn(byStatus.get(true), byStatus.get(false));
+        });
+    }
+
+    /**
+     * A page of the rows in identifier order, the only order of the merged shards. Each shard reads up to
+     * <code>offset + size</code> rows, so the deep pages cost every shard the rows before them.
+     */
+    @Override
+    public Flux<PhoneNumber> findAllBy(PageRequest pageRequest) {
+        Sort sort = pageRequest.getSort();
+        if (sort.isSorted() && !sort.equals(Sort.by("id"))) {
+            throw new IllegalArgumentException("Sharded phone numbers are only paged in identifier order: " + sort);
+        }
+        int chunkSize = (int) Math.min(pageRequest.getOffset() + pageRequest.getPageSize(), MAX_CHUNK_SIZE);
+        return mergeAfter(0L, chunkSize)
+                .skip(pageRequest.getOffset())
+                .take(pageRequest.getPageSize());
+    }
+
+    @Override
+    public Flux<PhoneNumber> findAllByIdGreaterThanOrderByIdAsc(long id, Limit limit) {
+        if (limit.isUnlimited()) {
+            return mergeAfter(id, MAX_CHUNK_SIZE);
+        }
+        return mergeAfter(id, Math.min(limit.max(), MAX_CHUNK_SIZE)).take(limit.max());
+    }
+
+    @Override
+    public <S extends PhoneNumber> Mono<S> save(S entity) {
+        long customerId = entity.getCustomerId();
+        int bucket = ShardMap.bucketOf(customerId);
+        return shardMap.write(List.of(bucket), () -> onShard(shardMap.shardOf(bucket), shard -> shard.save(entity)))
+                .next()
+                .doOnNext(saved -> keys.learn(saved.getId(), customerId));
+    }
+
+    @Override
+    public <S extends PhoneNumber> Flux<S> saveAll(Iterable<S> entities) {
+        return Flux.fromIterable(entities).concatMap(this::save);
+    }
+
+    @Override
+    public <S extends PhoneNumber> Flux<S> saveAll(Publisher<S> entityStream) {
+        return Flux.from(entityStream).concatMap(this::save);
+    }
+
+    @Override
+    public Mono<PhoneNumber> findById(Long id) {
+        return findAllById(List.of(id)).next();
+    }
+
+    @Override
+    public Mono<PhoneNumber> findById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Long id) {
+        return findById(id).hasElement();
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::existsById);
+    }
+
+    @Override
+    public Flux<PhoneNumber> findAll() {
+        return mergeAfter(0L, MAX_CHUNK_SIZE);
+    }
+
+    @Override
+    public Flux<PhoneNumber> findAllById(Iterable<Long> ids) {
+        return customersOf(toList(ids))
+                .flatMapMany(customers -> Flux.fromIterable(byShard(customers).entrySet())
+                        .flatMap(entry -> onShard(entry.getKey(), shard -> shard.findAllById(entry.getValue()))));
+    }
+
+    @Override
+    public Flux<PhoneNumber> findAllById(Publisher<Long> idStream) {
+        return Flux.from(idStream).collectList().flatMapMany(this::findAllById);
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return Flux.range(0, shards.size())
+                .flatMap(shard -> onShard(shard, PhoneNumberRepository::count))
+                .reduce(0L, Long::sum);
+    }
+
+    @Override
+    public Mono<Void> deleteById(Long id) {
+        return deleteAllById(List.of(id));
+    }
+
+    @Override
+    public Mono<Void> deleteById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    public Mono<Void> delete(PhoneNumber entity) {
+        return deleteById(entity.getId());
+    }
+
+    @Override
+    public Mono<Void> deleteAllById(Iterable<? extends Long> ids) {
+        return writeByPhoneIds(toList(ids), (shard, shardIds) -> shard.deleteAllById(shardIds).flux()).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Iterable<? extends PhoneNumber> entities) {
+        return deleteAllById(StreamSupport.stream(entities.spliterator(), false).map(PhoneNumber::getId).toList());
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Publisher<? extends PhoneNumber> entityStream) {
+        return Flux.from(entityStream).collectList().flatMap(this::deleteAll);
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Flux.range(0, shards.size())
+                .flatMap(shard -> onShard(shard, PhoneNumberRepository::deleteAll))
+                .then();
+    }
+
+    /**
+     * Runs a write of the given phone numbers on the shard of each of their customers, once none of their buckets is
+     * being moved. The phone numbers not found on any shard are left out.
+     */
+    private <T> Flux<T> writeByPhoneIds(Collection<Long> phoneIds, BiFunction<PhoneNumberRepository, List<Long>, Flux<T>> statement) {
+        return customersOf(phoneIds).flatMapMany(customers -> {
+            Set<Integer> buckets = customers.values().stream().map(ShardMap::bucketOf).collect(Collectors.toSet());
+            // The shards are looked up once the buckets are entered, they cannot move until the write completes
+            return shardMap.write(buckets, () -> Flux.fromIterable(byShard(customers).entrySet())
+                    .flatMap(entry -> onShard(entry.getKey(), shard -> statement.apply(shard, entry.getValue()))));
+        });
+    }
+
+    // The phone numbers not known yet are looked up on every shard, on the one their customer is placed on
+    private Mono<Map<Long, Long>> customersOf(Collection<Long> phoneIds) {
+        return keys.customersOf(phoneIds).flatMap(customers -> {
+            List<Long> unknownIds = phoneIds.stream().filter(id -> !customers.containsKey(id)).distinct().toList();
+            if (unknownIds.isEmpty()) {
+                return Mono.just(customers);
+            }
+            return Flux.range(0, shards.size())
+                    .flatMap(shard -> onShard(shard, repository -> repository.findAllById(unknownIds))
+                            .filter(phoneNumber -> shardMap.owns(shard, phoneNumber.getCustomerId())))
+                    .doOnNext(phoneNumber -> keys.learn(phoneNumber.getId(), phoneNumber.getCustomerId()))
+                    .collect(() -> customers, (found, phoneNumber) -> found.put(phoneNumber.getId(), phoneNumber.getCustomerId()));
+        });
+    }
+
+    private Map<Integer, List<Long>> byShard(Map<Long, Long> customersByPhoneId) {
+        return customersByPhoneId.entrySet().stream()
+                .collect(Collectors.groupingBy(entry -> shardMap.shardOfCustomer(entry.getValue()), TreeMap::new,
+                        Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+    }
+
+    // One row of each shard is requested at a time, so a shard only reads its next chunk once its rows are taken
+    @SuppressWarnings("unchecked")
+    private Flux<PhoneNumber> mergeAfter(long afterId, int chunkSize) {
+        Flux<PhoneNumber>[] rowsByShard = IntStream.range(0, shards.size())
+                .mapToObj(shard -> streamAfter(shard, afterId, chunkSize))
+                .toArray(Flux[]::new);
+        return Flux.mergeComparing(1, BY_ID, rowsByShard);
+    }
+
+    private Flux<PhoneNumber> streamAfter(int shard, long afterId, int chunkSize) {
+        return onShard(shard, repository -> repository.findAllByIdGreaterThanOrderByIdAsc(afterId, Limit.of(chunkSize)))
+                .collectList()
+                .flatMapMany(chunk -> {
+                    Flux<PhoneNumber> owned = Flux.fromIterable(chunk)
+                            .filter(phoneNumber -> shardMap.owns(shard, phoneNumber.getCustomerId()));
+                    return chunk.size() < chunkSize
+                            ? owned
+                            : owned.concatWith(Flux.defer(() -> streamAfter(shard, chunk.get(chunk.size() - 1).getId(), chunkSize)));
+                });
+    }
+
+    private <T> Flux<T> onShard(int shard, Function<PhoneNumberRepository, Publisher<T>> query) {
+        return Flux.defer(() -> query.apply(shards.get(shard))).subscribeOn(scheduler);
+    }
+
+    private static List<Long> toList(Iterable<? extends Long> ids) {
+        return StreamSupport.stream(ids.spliterator(), false).map(Long.class::cast).toList();
+    }
+}
@@ -0,0 +1,40 @@
+package au.com.belong.customerphoneapi.repository;
+
+import io.r2dbc.spi.ConnectionFactory;
+import lombok.Getter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.Disposable;
+
+import java.util.List;
+
+/**
+ * The databases of the sharded backend. The first shard is the primary database of the application, migrated by Flyway
+ * and holding the tables that are not sharded, the other shards only hold their customers and phone numbers.
+ */
+@Getter
+public class Shards implements Disposable {
+    private final List<ConnectionFactory> connectionFactories;
+    private final List<DatabaseClient> databaseClients;
+
+    /**
+     * @param connectionFactories The connection pools of the shards, the primary first.
+     */
+    public Shards(List<ConnectionFactory> connectionFactories) {
+        this.connectionFactories = List.copyOf(connectionFactories);
+        this.databaseClients = this.connectionFactories.stream().map(DatabaseClient::create).toList();
+    }
+
+    public int size() {
+        return connectionFactories.size();
+    }
+
+    // The primary is the connection factory bean of the application, disposed with it
+    @Override
+    public void dispose() {
+        connectionFactories.stream()
+                .skip(1)
+                .filter(Disposable.class::isInstance)
+                .map(Disposable.class::cast)
+                .forEach(Disposable::dispose);
+    }
+}
@@ -0,0 +1,61 @@
+package au.com.belong.customerphoneapi.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The <code>/actuator/shards</code> endpoint of the sharded backend: reads the buckets of each shard, and starts a
+ * rebalance that runs in the background, see {@link ShardRebalancer}.
+ */
+@Slf4j
+@Endpoint(id = "shards")
+public class ShardsEndpoint {
+    private final ShardMap shardMap;
+    private final ShardRebalancer rebalancer;
+
+    public ShardsEndpoint(ShardMap shardMap, ShardRebalancer rebalancer) {
+        this.shardMap = shardMap;
+        this.rebalancer = rebalancer;
+    }
+
+    @ReadOperation
+    public ShardsDescriptor shards() {
+        List<ShardDescriptor> shards = IntStream.range(0, shardMap.shards())
+                .mapToObj(shard -> new ShardDescriptor(shard, IntStream.range(0, ShardMap.BUCKETS)
+                        .filter(bucket -> shardMap.shardOf(bucket) == shard)
+                        .boxed()
+                        .toList()))
+                .toList();
+        List<Integer> moving = IntStream.range(0, ShardMap.BUCKETS).filter(shardMap::isMoving).boxed().toList();
+        return new ShardsDescriptor(shards, rebalancer.unbalancedBuckets(), moving, rebalancer.isRebalancing());
+    }
+
+    /**
+     * Starts moving the buckets that are not on their balanced shard.
+     *
+     * @return The buckets to move, none when a rebalance is already running.
+     */
+    @WriteOperation
+    public List<Integer> rebalance() {
+        if (rebalancer.isRebalancing()) {
+            return List.of();
+        }
+        List<Integer> unbalanced = rebalancer.unbalancedBuckets();
+        rebalancer.rebalance().subscribe(
+                moved -> log.info("Rebalanced the shards, moved {} buckets", moved),
+                exception -> log.warn("Failed to rebalance the shards", exception));
+        return unbalanced;
+    }
+
+    public record ShardsDescriptor(List<ShardDescriptor> shards, List<Integer> unbalancedBuckets,
+                                   List<Integer> movingBuckets, boolean rebalancing) {
+    }
+
+    public record ShardDescriptor(int shard, List<Integer> buckets) {
+    }
+}
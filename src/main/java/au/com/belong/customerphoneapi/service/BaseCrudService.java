@@ -1,24 +1,36 @@
 package au.com.belong.customerphoneapi.service;
 
+import au.com.belong.customerphoneapi.dto.CursorPageDTO;
 import au.com.belong.customerphoneapi.dto.PageDTO;
 import au.com.belong.customerphoneapi.exception.ResourceNotFoundException;
 import au.com.belong.customerphoneapi.repository.BaseCrudRepository;
+import au.com.belong.customerphoneapi.repository.DatabaseRouting;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
 @Getter
 @RequiredArgsConstructor
 public abstract class BaseCrudService<T, R extends BaseCrudRepository<T>> {
     private final R repository;
+    private final RowCountProvider rowCountProvider;
 
     /**
      * Returns all the matched rows records with a paginated response based on pagination request parameters.
+     * The totals come from the running row count of the {@link RowCountProvider}, not a per-request <code>COUNT(*)</code>.
+     * The rows are read from the primary: the cached pages are kept coherent with the writes, a page read from a replica
+     * behind them would stay stale until it expires.
      *
      * @param page The current page number.
      * @param size The current page size.
@@ -26,7 +38,7 @@ public abstract class BaseCrudService<T, R extends BaseCrudRepository<T>> {
      */
     protected Mono<PageDTO<T>> findAll(int page, int size) {
         PageRequest pageRequest = PageRequest.of(page, size);
-        Mono<Long> totalEntityCount = repository.count();
+        Mono<Long> totalEntityCount = rowCountProvider.getCount();
         Mono<List<T>> paginatedEntities = repository.findAllBy(pageRequest).collectList();
         return paginatedEntities
                 .zipWith(totalEntityCount, (content, count) -> new PageImpl<>(content, pageRequest, count))
@@ -34,17 +46,93 @@ public abstract class BaseCrudService<T, R extends BaseCrudRepository<T>> {
     }
 
     /**
-     * Updates a table record identified by the id with the <code>updateFn</code> lambda function.
+     * Returns all the matched rows records for the given page without the total pages and records.
+     * Without a total, the first row of the next page is fetched too to find out whether the page is the last one. The
+     * rows may be read from a replica.
      *
-     * @param id       The table record identifier.
-     * @param updateFn The lambda function to execute and update the matching table row.
+     * @param page The current page number.
+     * @param size The current page size.
+     * @return All The matched table rows for the given page number and size.
+     */
+    protected Mono<PageDTO<T>> findAllWithoutTotal(int page, int size) {
+        return DatabaseRouting.onReplica(repository.findAllBy(new PageWithNextRowRequest(page, size)).collectList())
+                .map(window -> PageDTO.of(window, page, size));
+    }
+
+    /**
+     * Returns the rows following the cursor using keyset pagination on the primary key.
+     * One extra row is fetched to find out whether a next page exists, so no total count is required. The rows may be
+     * read from a replica.
+     *
+     * @param cursor The opaque cursor of the last seen row, or empty for the first page.
+     * @param size   The current page size.
+     * @param idFn   The function to extract the primary key of a row.
+     * @return The matched table rows with the cursor of the next page.
+     */
+    protected Mono<CursorPageDTO<T>> findAllAfter(String cursor, int size, ToLongFunction<T> idFn) {
+        return Mono.fromCallable(() -> CursorPageDTO.decode(cursor))
+                .flatMap(afterId -> DatabaseRouting.onReplica(
+                        repository.findAllByIdGreaterThanOrderByIdAsc(afterId, Limit.of(size + 1)).collectList()))
+                .map(window -> CursorPageDTO.of(window, size, idFn));
+    }
+
+    /**
+     * Streams all the rows following the given identifier in primary key order, as consecutive keyset queries of
+     * <code>fetchSize</code> rows. One chunk is read ahead while the previous one is emitted, and the chunk after it is
+     * only read once the rows were requested downstream, so at most two chunks are held in memory whatever the size of
+     * the table, and no query ever pays an offset. Each chunk may be read from another replica.
+     *
+     * @param afterId   The last seen identifier (exclusive), zero to start from the first row.
+     * @param fetchSize The number of rows of each query.
+     * @param idFn      The function to extract the primary key of a row.
+     * @return The rows following the given identifier.
+     */
+    protected Flux<T> streamAllAfter(long afterId, int fetchSize, ToLongFunction<T> idFn) {
+        return fetchAfter(afterId, fetchSize)
+                .expand(chunk -> chunk.size() < fetchSize
+                        ? Mono.empty()
+                        : fetchAfter(idFn.applyAsLong(chunk.get(chunk.size() - 1)), fetchSize))
+                // One chunk at a time, the default prefetch would read ahead hundreds of chunks
+                .flatMapIterable(Function.identity(), 1);
+    }
+
+    private Mono<List<T>> fetchAfter(long afterId, int fetchSize) {
+        return DatabaseRouting.onReplica(repository.findAllByIdGreaterThanOrderByIdAsc(afterId, Limit.of(fetchSize)).collectList());
+    }
+
+    /**
+     * Updates a table record identified by the id with a single conditional statement. The
+     * <code>conditionalUpdateFn</code> changes the row only when it is not already in the desired state and returns it,
+     * so concurrent updates cannot both succeed. Only when no row changed, a follow-up lookup tells a missing record
+     * apart from a record already in the desired state.
+     *
+     * @param id                  The table record identifier.
+     * @param conditionalUpdateFn The conditional update of the matching table row, empty when no row changed.
+     * @param conflictFn          The error to signal when the record is already in the desired state.
      * @return The updated table record.
      */
-    protected Mono<T> update(long id, Function<T, Mono<T>> updateFn) {
-        return repository.findById(id)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Record not found with ID " + id)))
-                .flatMap(updateFn)
-                .flatMap(repository::save);
+    protected Mono<T> conditionalUpdate(long id, LongFunction<Mono<T>> conditionalUpdateFn, Supplier<RuntimeException> conflictFn) {
+        return conditionalUpdateFn.apply(id)
+                .switchIfEmpty(Mono.defer(() -> repository.existsById(id))
+                        .flatMap(exists -> Mono.<T>error(exists
+                                ? conflictFn.get()
+                                : new ResourceNotFoundException("Record not found with ID " + id))));
     }
-}
 
+    /**
+     * The rows of a page followed by the first row of the next page: a page one row larger, at the offset of the page.
+     */
+    private static final class PageWithNextRowRequest extends PageRequest {
+        private final long offset;
+
+        private PageWithNextRowRequest(int page, int size) {
+            super(page, size + 1, Sort.unsorted());
+            this.offset = (long) page * size;
+        }
+
+        @Override
+        public long getOffset() {
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package au.com.belong.customerphoneapi.service;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Collects keys into batches and processes each batch with one call, the part shared by the {@link CoalescingLoader}
+ * and the {@link GroupCommitter}. The open batch takes the keys until it is full or its window ends, or until the
+ * subclass closes it earlier, then it is processed and the value of each key, or the error of the call, is emitted to
+ * the sink of the key. The batches are guarded by this, the subclasses add their keys holding it too.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ * @param <B> The batch type.
+ */
+abstract class Batcher<K, V, B extends Batcher.Batch<K, V>> {
+    private static final Runnable NOTHING = () -> { };
+
+    private final Supplier<B> newBatch;
+    private final V missingValue;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final Scheduler scheduler = Schedulers.parallel();
+    private B batch;
+
+    /**
+     * @param newBatch     Creates an empty batch.
+     * @param missingValue The value of the keys left out by the processing of their batch.
+     * @param window       How long a batch takes keys before it is processed.
+     * @param maxBatchSize The number of keys that triggers the processing before the end of the window.
+     */
+    protected Batcher(Supplier<B> newBatch, V missingValue, Duration window, int maxBatchSize) {
+        this.newBatch = newBatch;
+        this.missingValue = missingValue;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.batch = newBatch.get();
+    }
+
+    /**
+     * Processes the keys of a closed batch with one call.
+     *
+     * @param keys The closed batch.
+     * @return The value of each key, keys without a value may be left out.
+     */
+    protected abstract Mono<Map<K, V>> process(B keys);
+
+    /**
+     * Called holding the lock of this once a batch is closed, the next one is open already.
+     *
+     * @param keys The closed batch.
+     */
+    protected void closed(B keys) {
+    }
+
+    /**
+     * Called once the processing of a batch is subscribed.
+     *
+     * @param keys       The batch being processed.
+     * @param processing The processing, disposed to cancel it.
+     */
+    protected void processing(B keys, Disposable processing) {
+    }
+
+    /**
+     * Called once the processing of a batch completed, failed or was cancelled.
+     *
+     * @param keys The processed batch.
+     */
+    protected void processed(B keys) {
+    }
+
+    /**
+     * The batch taking the keys, read and changed holding the lock of this.
+     *
+     * @return The open batch.
+     */
+    protected final B openBatch() {
+        return batch;
+    }
+
+    /**
+     * Drops the open batch without processing it, holding the lock of this.
+     */
+    protected final void dropOpenBatch() {
+        batch = newBatch.get();
+    }
+
+    /**
+     * Called holding the lock of this once a key joined the open batch: closes the batch when it is full or when
+     * <code>closeNow</code>, otherwise makes sure its window is scheduled.
+     *
+     * @param closeNow Whether to close the batch whatever its size.
+     * @return What to run once the lock is released, the processing of the closed batch or the scheduling of a window.
+     */
+    protected final Runnable joined(boolean closeNow) {
+        B current = batch;
+        if (closeNow || current.sinks.size() >= maxBatchSize) {
+            Runnable next = close();
+            return () -> {
+                dispatch(current);
+                next.run();
+            };
+        }
+        return scheduleWindow();
+    }
+
+    // Opens the next batch, its window is scheduled when the closed one left keys to it
+    private Runnable close() {
+        B closed = batch;
+        batch = newBatch.get();
+        closed(closed);
+        return batch.sinks.isEmpty() ? NOTHING : scheduleWindow();
+    }
+
+    private Runnable scheduleWindow() {
+        B current = batch;
+        if (current.scheduled) {
+            return NOTHING;
+        }
+        current.scheduled = true;
+        return () -> scheduler.schedule(() -> closeAtEndOfWindow(current), window.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private void closeAtEndOfWindow(B scheduled) {
+        Runnable next;
+        synchronized (this) {
+            // Already closed when it filled up before the end of its window, or dropped
+            if (batch != scheduled) {
+                return;
+            }
+            next = close();
+        }
+        dispatch(scheduled);
+        next.run();
+    }
+
+    private void dispatch(B keys) {
+        Disposable processing = Mono.defer(() -> process(keys))
+                .defaultIfEmpty(Map.of())
+                .doFinally(signal -> processed(keys))
+                .subscribe(
+                        values -> keys.sinks.forEach((key, sink) -> sink.tryEmitValue(values.getOrDefault(key, missingValue))),
+                        exception -> keys.sinks.forEach((key, sink) -> sink.tryEmitError(exception)));
+        processing(keys, processing);
+    }
+
+    /**
+     * The keys processed with one call and the sinks of their values, guarded by the batcher until it is processed.
+     *
+     * @param <K> The key type.
+     * @param <V> The value type.
+     */
+    static class Batch<K, V> {
+        final Map<K, Sinks.One<V>> sinks = new LinkedHashMap<>();
+        boolean scheduled;
+    }
+}
@@ -0,0 +1,129 @@
+package au.com.belong.customerphoneapi.service;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Collects the keys requested concurrently within a short window, or until a batch is full, and loads them with one
+ * call of the batch function, in the style of a DataLoader. Concurrent requests of the same key share one load.
+ * A key requested while no batch is loading is loaded at once, the keys are only collected while a load is running,
+ * so a lone request does not wait for the window.
+ * A load is cancelled once every caller waiting for one of its keys cancelled.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+@Slf4j
+public class CoalescingLoader<K, V> extends Batcher<K, V, CoalescingLoader.LoadingBatch<K, V>> {
+    private final Function<List<K>, Mono<Map<K, V>>> batchLoadFn;
+    // The batch loading each key, guarded by this
+    private final Map<K, LoadingBatch<K, V>> loading = new HashMap<>();
+
+    /**
+     * @param batchLoadFn  Loads the values of the given keys with one call, keys without a value may be left out.
+     * @param missingValue The value of the keys left out by the batch function.
+     * @param window       How long the keys are collected while a load is running before they are loaded.
+     * @param maxBatchSize The number of keys that triggers the load before the end of the window.
+     */
+    public CoalescingLoader(Function<List<K>, Mono<Map<K, V>>> batchLoadFn, V missingValue, Duration window, int maxBatchSize) {
+        super(LoadingBatch::new, missingValue, window, maxBatchSize);
+        this.batchLoadFn = batchLoadFn;
+    }
+
+    /**
+     * Loads the value of a key together with the other keys requested in the same window.
+     *
+     * @param key The key to load.
+     * @return The value of the key, or the missing value when the batch function left it out.
+     */
+    public Mono<V> load(K key) {
+        return Mono.defer(() -> {
+            LoadingBatch<K, V> keyBatch;
+            Sinks.One<V> sink;
+            Runnable next = null;
+            synchronized (this) {
+                keyBatch = loading.get(key);
+                if (keyBatch == null) {
+                    keyBatch = openBatch();
+                    keyBatch.sinks.computeIfAbsent(key, k -> Sinks.one());
+                    next = joined(loading.isEmpty());
+                }
+                keyBatch.subscribers++;
+                sink = keyBatch.sinks.get(key);
+            }
+            if (next != null) {
+                next.run();
+            }
+            LoadingBatch<K, V> subscribedBatch = keyBatch;
+            return sink.asMono()
+                    .doOnCancel(() -> cancel(subscribedBatch));
+        });
+    }
+
+    @Override
+    protected Mono<Map<K, V>> process(LoadingBatch<K, V> keys) {
+        log.debug("Loading a batch of {} keys", keys.sinks.size());
+        return batchLoadFn.apply(new ArrayList<>(keys.sinks.keySet()));
+    }
+
+    // The keys of the closed batch are loading from now on
+    @Override
+    protected void closed(LoadingBatch<K, V> keys) {
+        keys.sinks.keySet().forEach(key -> loading.put(key, keys));
+    }
+
+    @Override
+    protected void processing(LoadingBatch<K, V> keys, Disposable load) {
+        boolean cancelled;
+        synchronized (this) {
+            keys.load = load;
+            cancelled = keys.cancelled;
+        }
+        if (cancelled) {
+            load.dispose();
+        }
+    }
+
+    @Override
+    protected synchronized void processed(LoadingBatch<K, V> keys) {
+        keys.sinks.keySet().forEach(key -> loading.remove(key, keys));
+    }
+
+    private void cancel(LoadingBatch<K, V> keys) {
+        Disposable load;
+        synchronized (this) {
+            if (--keys.subscribers > 0) {
+                return;
+            }
+            keys.cancelled = true;
+            if (openBatch() == keys) {
+                dropOpenBatch();
+                return;
+            }
+            keys.sinks.keySet().forEach(key -> loading.remove(key, keys));
+            load = keys.load;
+        }
+        // Null while the load is being subscribed, it is disposed once subscribed then
+        if (load != null) {
+            load.dispose();
+        }
+    }
+
+    /**
+     * A batch with the callers waiting for its keys, guarded by the loader.
+     */
+    static final class LoadingBatch<K, V> extends Batcher.Batch<K, V> {
+        private int subscribers;
+        private boolean cancelled;
+        private Disposable load;
+    }
+}
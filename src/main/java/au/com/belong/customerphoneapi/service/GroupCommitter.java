@@ -0,0 +1,95 @@
+package au.com.belong.customerphoneapi.service;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Collects the writes requested concurrently within a short window, or until a group is full, and commits them with one
+ * call of the commit function, so a burst of single row writes costs a few statements and commits instead of one each.
+ * A group holds one write per key: a write of a key already in the group waits for the next group, so concurrent
+ * writes of the same row still run one after the other and each gets its own result.
+ * A write is committed once it joined a group, even when its caller cancels.
+ *
+ * @param <K> The key type.
+ * @param <C> The write command type.
+ * @param <V> The result type.
+ */
+@Slf4j
+public class GroupCommitter<K, C, V> extends Batcher<K, V, GroupCommitter.Group<K, C, V>> {
+    private final Function<Map<K, C>, Mono<Map<K, V>>> commitFn;
+    // The writes of keys already in the open group, guarded by this
+    private List<Write<K, C, V>> deferred = new ArrayList<>();
+
+    /**
+     * @param commitFn     Commits the commands of the given keys with one call and returns the result of each key, keys
+     *                     without a result may be left out.
+     * @param missingValue The result of the keys left out by the commit function.
+     * @param window       How long the writes are collected before they are committed.
+     * @param maxGroupSize The number of writes that triggers the commit before the end of the window.
+     */
+    public GroupCommitter(Function<Map<K, C>, Mono<Map<K, V>>> commitFn, V missingValue, Duration window, int maxGroupSize) {
+        super(Group::new, missingValue, window, maxGroupSize);
+        this.commitFn = commitFn;
+    }
+
+    /**
+     * Commits a write together with the other writes requested in the same window.
+     *
+     * @param key     The key of the written row.
+     * @param command The write command.
+     * @return The result of the write, or the missing value when the commit function left it out.
+     */
+    public Mono<V> write(K key, C command) {
+        return Mono.defer(() -> {
+            Sinks.One<V> sink = Sinks.one();
+            Runnable next;
+            synchronized (this) {
+                add(new Write<>(key, command, sink));
+                next = joined(false);
+            }
+            next.run();
+            return sink.asMono();
+        });
+    }
+
+    @Override
+    protected Mono<Map<K, V>> process(Group<K, C, V> writes) {
+        log.debug("Committing a group of {} writes", writes.commands.size());
+        return commitFn.apply(writes.commands);
+    }
+
+    // Starts the next group with the deferred writes, in the order they were requested
+    @Override
+    protected void closed(Group<K, C, V> writes) {
+        List<Write<K, C, V>> waiting = deferred;
+        deferred = new ArrayList<>();
+        waiting.forEach(this::add);
+    }
+
+    private void add(Write<K, C, V> write) {
+        Group<K, C, V> group = openBatch();
+        if (group.sinks.putIfAbsent(write.key(), write.sink()) == null) {
+            group.commands.put(write.key(), write.command());
+        } else {
+            deferred.add(write);
+        }
+    }
+
+    /**
+     * The commands of a group next to the sinks of their results, guarded by the committer.
+     */
+    static final class Group<K, C, V> extends Batcher.Batch<K, V> {
+        private final Map<K, C> commands = new LinkedHashMap<>();
+    }
+
+    private record Write<K, C, V>(K key, C command, Sinks.One<V> sink) {
+    }
+}
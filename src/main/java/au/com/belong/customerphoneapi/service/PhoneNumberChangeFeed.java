@@ -0,0 +1,192 @@
+package au.com.belong.customerphoneapi.service;
+
+import au.com.belong.customerphoneapi.cache.CacheInvalidationBus;
+import au.com.belong.customerphoneapi.cache.CacheInvalidationEvent;
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.PhoneNumberChangeDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The activation changes of the phone numbers, pushed to every subscriber as they are committed. The changes made on
+ * this node are published by the service, the changes of the other nodes are received from the
+ * {@link CacheInvalidationBus}.
+ * The changes are multicast to the subscribers with a bounded buffer each, so a slow subscriber never holds the others
+ * back: when its buffer is full it is either disconnected, to resume from its last event once it reconnects, or its
+ * oldest buffered changes are dropped. The latest changes are kept for the reconnecting subscribers.
+ * <br/>
+ * The positions of the changes are counted by each node from its start, so an event id is the random id of the feed
+ * followed by the position, e.g. <code>k3v9x2f1q0ab-42</code>. A subscriber resuming after an event of another feed,
+ * of another node or of this node before it restarted, or that missed more changes than are kept, first gets a
+ * resync change telling it to read the phone numbers again, then the live changes.
+ */
+@Component
+public class PhoneNumberChangeFeed {
+    public static final String DISCONNECT = "disconnect";
+    public static final String DROP = "drop";
+
+    private final Sinks.Many<PhoneNumberChangeDTO> sink = Sinks.many().multicast().directBestEffort();
+    private final String id = Long.toString(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), Character.MAX_RADIX);
+    private final int replaySize;
+    private final int subscriberBufferSize;
+    private final boolean disconnectSlowSubscribers;
+    private final Counter overflows;
+    // The latest changes and the position of the last one, guarded by this
+    private final Deque<PhoneNumberChangeDTO> replay = new ArrayDeque<>();
+    private long lastPosition;
+    // The changes not emitted to the sink yet, in position order, emitted by one publishing thread at a time
+    private final Queue<PhoneNumberChangeDTO> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger emitting = new AtomicInteger();
+
+    /**
+     * @param invalidationBus      The bus of the changes made on the other nodes.
+     * @param replaySize           The number of latest changes kept for the reconnecting subscribers.
+     * @param subscriberBufferSize The number of changes buffered for a subscriber that does not keep up.
+     * @param slowSubscriberPolicy {@link #DISCONNECT} or {@link #DROP}, what to do once the buffer of a subscriber is full.
+     * @param meterRegistry        The actuator meter registry.
+     */
+    public PhoneNumberChangeFeed(CacheInvalidationBus invalidationBus,
+                                 @Value("${phone-api.change-feed.replay-size:1000}") int replaySize,
+                                 @Value("${phone-api.change-feed.subscriber-buffer-size:256}") int subscriberBufferSize,
+                                 @Value("${phone-api.change-feed.slow-subscriber-policy:disconnect}") String slowSubscriberPolicy,
+                                 MeterRegistry meterRegistry) {
+        if (!DISCONNECT.equals(slowSubscriberPolicy) && !DROP.equals(slowSubscriberPolicy)) {
+            throw new IllegalArgumentException("The slow subscriber policy must be " + DISCONNECT + " or " + DROP
+                    + ", got " + slowSubscriberPolicy);
+        }
+        this.replaySize = replaySize;
+        this.subscriberBufferSize = subscriberBufferSize;
+        this.disconnectSlowSubscribers = DISCONNECT.equals(slowSubscriberPolicy);
+        this.overflows = Counter.builder("phone.api.change.feed.overflows")
+                .description("Changes dropped, or subscribers disconnected, because a subscriber did not keep up")
+                .tag("policy", slowSubscriberPolicy)
+                .register(meterRegistry);
+        invalidationBus.subscribe(events -> events.forEach(this::publish));
+    }
+
+    /**
+     * The id of this feed, the prefix of its event ids, drawn at random when the node starts.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Pushes a change committed on this node to the subscribers.
+     *
+     * @param updated The updated phone number.
+     */
+    public void publish(PhoneNumber updated) {
+        publish(CacheInvalidationEvent.of(updated));
+    }
+
+    private void publish(CacheInvalidationEvent event) {
+        synchronized (this) {
+            long position = ++lastPosition;
+            PhoneNumberChangeDTO change = PhoneNumberChangeDTO.builder()
+                    .eventId(eventId(position))
+                    .position(position)
+                    .id(event.getPhoneId())
+                    .customerId(event.getCustomerId())
+                    .active(event.isActive())
+                    .build();
+            if (replay.size() == replaySize) {
+                replay.removeFirst();
+            }
+            replay.addLast(change);
+            pending.add(change);
+        }
+        emitPending();
+    }
+
+    // Fans the changes out without holding the monitor: the thread that finds no other one emitting emits the pending
+    // changes, including the ones queued by the other threads meanwhile, so the sink is never called concurrently
+    private void emitPending() {
+        if (emitting.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            PhoneNumberChangeDTO change;
+            while ((change = pending.poll()) != null) {
+                // Fails only without subscribers, every subscriber requests all the changes into its own buffer
+                sink.tryEmitNext(change);
+            }
+        } while (emitting.decrementAndGet() != 0);
+    }
+
+    /**
+     * The changes following the given event, the kept ones first and then the live ones, without a gap in between. A
+     * subscriber that cannot resume after the event gets a resync change first, see {@link PhoneNumberChangeDTO#isResync()}.
+     *
+     * @param afterEventId The id of the last change received, or <code>null</code> for the live changes only.
+     * @return The changes, completed when a slow subscriber is disconnected.
+     */
+    public Flux<PhoneNumberChangeDTO> changesAfter(String afterEventId) {
+        Flux<PhoneNumberChangeDTO> changes = Flux.create(emitter -> {
+            Disposable live;
+            // No change is numbered while the kept changes are replayed and the subscriber joins the live ones. The
+            // kept changes still pending are emitted to it again, and skipped
+            synchronized (this) {
+                long joinedAfter = lastPosition;
+                if (afterEventId != null) {
+                    long afterPosition = resumablePosition(afterEventId);
+                    if (afterPosition < 0) {
+                        emitter.next(PhoneNumberChangeDTO.builder()
+                                .eventId(eventId(joinedAfter))
+                                .position(joinedAfter)
+                                .resync(true)
+                                .build());
+                    } else {
+                        replay.stream()
+                                .filter(change -> change.getPosition() > afterPosition)
+                                .forEach(emitter::next);
+                    }
+                }
+                live = sink.asFlux()
+                        .filter(change -> change.getPosition() > joinedAfter)
+                        .subscribe(emitter::next, emitter::error, emitter::complete);
+            }
+            emitter.onDispose(live);
+        });
+        if (disconnectSlowSubscribers) {
+            return changes
+                    .onBackpressureBuffer(subscriberBufferSize, change -> overflows.increment())
+                    .onErrorResume(Exceptions::isOverflow, exception -> Flux.empty());
+        }
+        return changes.onBackpressureBuffer(subscriberBufferSize, change -> overflows.increment(), BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    private String eventId(long position) {
+        return id + "-" + position;
+    }
+
+    // The position of an event of this feed whose following changes are all kept, or -1. Called holding the monitor
+    private long resumablePosition(String eventId) {
+        int separator = eventId.lastIndexOf('-');
+        if (separator < 0 || !id.equals(eventId.substring(0, separator))) {
+            return -1;
+        }
+        long position;
+        try {
+            position = Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException exception) {
+            return -1;
+        }
+        long firstKept = replay.isEmpty() ? lastPosition + 1 : replay.getFirst().getPosition();
+        return position >= firstKept - 1 && position <= lastPosition ? position : -1;
+    }
+}
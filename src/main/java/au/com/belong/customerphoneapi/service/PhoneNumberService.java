@@ -1,10 +1,17 @@
 package au.com.belong.customerphoneapi.service;
 
 import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.BatchUpdateResultDTO;
+import au.com.belong.customerphoneapi.dto.CursorPageDTO;
+import au.com.belong.customerphoneapi.dto.CustomerPhoneNumbersDTO;
 import au.com.belong.customerphoneapi.dto.PageDTO;
+import au.com.belong.customerphoneapi.dto.PhoneNumberChangeDTO;
+import au.com.belong.customerphoneapi.dto.PhoneNumberOwnerDTO;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface PhoneNumberService {
 
     /**
@@ -15,6 +22,14 @@ public interface PhoneNumberService {
      */
     Flux<PhoneNumber> getAllFor(long customerId);
 
+    /**
+     * Get all phone numbers of the given customers with one query.
+     *
+     * @param customerIds The customer identifiers.
+     * @return The phone numbers of each customer identifier, in request order.
+     */
+    Flux<CustomerPhoneNumbersDTO> getAllFor(List<Long> customerIds);
+
     /**
      * Get all phone numbers with pagination bases on the pagination request parameters.
      *
@@ -24,6 +39,51 @@ public interface PhoneNumberService {
      */
     Mono<PageDTO<PhoneNumber>> getAllFor(int page, int size);
 
+    /**
+     * Get all phone numbers with pagination without the total pages and records.
+     *
+     * @param page The page number.
+     * @param size The page size.
+     * @return The paginated phone numbers without totals.
+     */
+    Mono<PageDTO<PhoneNumber>> getAllWithoutTotalFor(int page, int size);
+
+    /**
+     * Get all phone numbers following the given cursor using keyset pagination.
+     *
+     * @param after The opaque cursor of the last seen phone number, or empty for the first page.
+     * @param size  The page size.
+     * @return The phone numbers with the cursor of the next page.
+     */
+    Mono<CursorPageDTO<PhoneNumber>> getAllAfter(String after, int size);
+
+    /**
+     * Finds the owners of a phone number, or of the phone numbers starting with the given digits.
+     *
+     * @param number The phone number or its first digits, in any format.
+     * @param prefix Whether to match the phone numbers starting with the number instead of the number only.
+     * @param limit  The maximum number of phone numbers to return.
+     * @return The matching phone numbers and their owners, in number order.
+     */
+    Flux<PhoneNumberOwnerDTO> searchFor(String number, boolean prefix, int limit);
+
+    /**
+     * Streams all phone numbers following the given identifier in identifier order, for exports of the whole table.
+     *
+     * @param afterId The last exported phone number identifier, zero to start from the first one.
+     * @return The phone numbers following the identifier.
+     */
+    Flux<PhoneNumber> exportAfter(long afterId);
+
+    /**
+     * Streams the activation changes as they are committed, following the kept changes after the given one, or a resync
+     * change when they are not known.
+     *
+     * @param afterEventId The id of the last change received, or <code>null</code> for the live changes only.
+     * @return The activation changes, completed when the subscriber is disconnected for not keeping up.
+     */
+    Flux<PhoneNumberChangeDTO> changesAfter(String afterEventId);
+
     /**
      * Activates (true) or deactivates (false) a given phone number.
      *
@@ -32,4 +92,13 @@ public interface PhoneNumberService {
      * @return The updated phone number.
      */
     Mono<PhoneNumber> updateFor(long phoneId, boolean status);
+
+    /**
+     * Activates (true) or deactivates (false) the given phone numbers, one set-based update per chunk of identifiers.
+     *
+     * @param phoneIds The phone number identifiers.
+     * @param status   The activated/deactivated status.
+     * @return The result of each phone number identifier, in request order.
+     */
+    Flux<BatchUpdateResultDTO> updateFor(List<Long> phoneIds, boolean status);
 }
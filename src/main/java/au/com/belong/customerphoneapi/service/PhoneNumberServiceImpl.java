@@ -1,51 +1,247 @@
 package au.com.belong.customerphoneapi.service;
 
+import au.com.belong.customerphoneapi.cache.PhoneNumberCacheCoherence;
+import au.com.belong.customerphoneapi.cache.PhoneNumberIndex;
 import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.BatchUpdateResultDTO;
+import au.com.belong.customerphoneapi.dto.CursorPageDTO;
+import au.com.belong.customerphoneapi.dto.CustomerPhoneNumbersDTO;
 import au.com.belong.customerphoneapi.dto.PageDTO;
+import au.com.belong.customerphoneapi.dto.PhoneNumberChangeDTO;
+import au.com.belong.customerphoneapi.dto.PhoneNumberOwnerDTO;
+import au.com.belong.customerphoneapi.exception.ResourceNotFoundException;
 import au.com.belong.customerphoneapi.exception.ResourceStateConflictException;
+import au.com.belong.customerphoneapi.repository.DatabaseRouting;
 import au.com.belong.customerphoneapi.repository.PhoneNumberRepository;
-import org.springframework.cache.annotation.CachePut;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 @Service
 public class PhoneNumberServiceImpl extends BaseCrudService<PhoneNumber, PhoneNumberRepository> implements PhoneNumberService {
 
-    public PhoneNumberServiceImpl(PhoneNumberRepository repository) {
-        super(repository);
+    private final PhoneNumberCacheCoherence cacheCoherence;
+    private final PhoneNumberIndex phoneNumberIndex;
+    private final PhoneNumberChangeFeed changeFeed;
+    private final int batchChunkSize;
+    private final int exportFetchSize;
+    private final CoalescingLoader<Long, List<PhoneNumber>> customerLoader;
+    // Null unless phone-api.group-commit.enabled, the activation changes are then committed in groups
+    private final GroupCommitter<Long, Boolean, ActivationResult> activationCommitter;
+
+    public PhoneNumberServiceImpl(PhoneNumberRepository repository, RowCountProvider rowCountProvider,
+                                  PhoneNumberCacheCoherence cacheCoherence, PhoneNumberIndex phoneNumberIndex,
+                                  PhoneNumberChangeFeed changeFeed,
+                                  @Value("${phone-api.batch-update.chunk-size:500}") int batchChunkSize,
+                                  @Value("${phone-api.export.fetch-size:1000}") int exportFetchSize,
+                                  @Value("${phone-api.customer-loader.window:PT0.002S}") Duration customerLoaderWindow,
+                                  @Value("${phone-api.customer-loader.max-batch-size:100}") int customerLoaderMaxBatchSize,
+                                  @Value("${phone-api.group-commit.enabled:false}") boolean groupCommitEnabled,
+                                  @Value("${phone-api.group-commit.window:PT0.002S}") Duration groupCommitWindow,
+                                  @Value("${phone-api.group-commit.max-group-size:256}") int groupCommitMaxGroupSize) {
+        super(repository, rowCountProvider);
+        this.cacheCoherence = cacheCoherence;
+        this.phoneNumberIndex = phoneNumberIndex;
+        this.changeFeed = changeFeed;
+        this.batchChunkSize = batchChunkSize;
+        this.exportFetchSize = exportFetchSize;
+        this.customerLoader = new CoalescingLoader<>(this::loadByCustomerIds, List.of(), customerLoaderWindow, customerLoaderMaxBatchSize);
+        this.activationCommitter = groupCommitEnabled
+                ? new GroupCommitter<>(this::commitActivations, ActivationResult.NOT_FOUND, groupCommitWindow, groupCommitMaxGroupSize)
+                : null;
     }
 
+    // sync = true shares one in-flight load between concurrent callers of the same key, the cache holds the
+    // materialized page/list (see CacheConfiguration), so a hit is replayed without touching the database.
+    // Loaded pages are registered with the cache coherence, so activation changes can be applied to them in place, and
+    // the pages still loading are evicted by the changes.
     @Override
-    @Cacheable(value = "phoneNumbers")
+    @Cacheable(value = PhoneNumberCacheCoherence.PAGES_CACHE, sync = true)
     public Mono<PageDTO<PhoneNumber>> getAllFor(int page, int size) {
-        return findAll(page, size);
+        return cacheCoherence.loadPage(page, size, findAll(page, size));
+    }
+
+    @Override
+    public Mono<PageDTO<PhoneNumber>> getAllWithoutTotalFor(int page, int size) {
+        return findAllWithoutTotal(page, size);
     }
 
     @Override
-    @Cacheable(value = "customers", key = "#customerId")
+    public Mono<CursorPageDTO<PhoneNumber>> getAllAfter(String after, int size) {
+        return findAllAfter(after, size, PhoneNumber::getId);
+    }
+
+    // Cache misses of concurrent requests for different customers are coalesced into one query by the customer loader.
+    // Read from the primary like the cached pages, the cached lists are kept coherent with the writes.
+    @Override
+    @Cacheable(value = PhoneNumberCacheCoherence.CUSTOMERS_CACHE, key = "#customerId", sync = true)
     public Flux<PhoneNumber> getAllFor(long customerId) {
-        return getRepository().findByCustomerId(customerId);
+        return customerLoader.load(customerId)
+                .flatMapIterable(Function.identity());
+    }
+
+    // Not cached, so it may be read from a replica
+    @Override
+    public Flux<CustomerPhoneNumbersDTO> getAllFor(List<Long> customerIds) {
+        List<Long> distinctIds = List.copyOf(new LinkedHashSet<>(customerIds));
+        return DatabaseRouting.onReplica(loadByCustomerIds(distinctIds))
+                .flatMapIterable(phonesByCustomer -> distinctIds.stream()
+                        .map(id -> CustomerPhoneNumbersDTO.of(id, phonesByCustomer.getOrDefault(id, List.of())))
+                        .toList());
+    }
+
+    // Answered from the in-process index, without a database round trip
+    @Override
+    public Flux<PhoneNumberOwnerDTO> searchFor(String number, boolean prefix, int limit) {
+        return prefix
+                ? phoneNumberIndex.findByPrefix(number, limit).flatMapIterable(owners -> owners)
+                : phoneNumberIndex.find(number).flux();
+    }
+
+    // Not cached, an export reads every row once, from the replicas when there are some
+    @Override
+    public Flux<PhoneNumber> exportAfter(long afterId) {
+        return streamAllAfter(afterId, exportFetchSize, PhoneNumber::getId);
+    }
+
+    @Override
+    public Flux<PhoneNumberChangeDTO> changesAfter(String afterEventId) {
+        return changeFeed.changesAfter(afterEventId);
     }
 
     /**
-     * Updates the phone number activate/deactivate status.
+     * Updates the phone number activate/deactivate status with a single conditional update.
      * If the current state is same as requested, then throw a au.com.belong.customerphoneapi.exception.ResourceStateConflictException exception.
+     * The updated phone number replaces the stale one in the cached pages and customer list that contain it, and the
+     * change is pushed to the subscribers of the change feed.
+     * With <code>phone-api.group-commit.enabled</code> the concurrent updates are committed together
+     * with one statement, each caller still gets the result of its own phone number.
      *
      * @param phoneId   The phone number identifier.
      * @param status The activate/deactivate status.
      * @return The updated phone number.
      */
     @Override
-    @CachePut(value = "phoneNumbers", key = "#phoneId")
     public Mono<PhoneNumber> updateFor(long phoneId, boolean status) {
-        return update(phoneId, phoneNumber -> {
-            if (phoneNumber.isActive() == status) {
-                return Mono.error(new ResourceStateConflictException("Phone number is already in the desired state."));
-            }
-            phoneNumber.setActive(status);
-            return Mono.just(phoneNumber);
-        });
+        Mono<PhoneNumber> updated = activationCommitter != null
+                ? activationCommitter.write(phoneId, status).flatMap(result -> result.toPhoneNumber(phoneId))
+                : conditionalUpdate(
+                        phoneId,
+                        id -> getRepository().updateActiveWhereId(id, status),
+                        PhoneNumberServiceImpl::alreadyInStateException);
+        return updated
+                .doOnNext(cacheCoherence::onUpdated)
+                .doOnNext(changeFeed::publish);
+    }
+
+    /**
+     * Updates the activate/deactivate status of the given phone numbers with one conditional set-based update per chunk.
+     * The identifiers the update did not change are looked up only to tell the ones already in the desired state apart
+     * from the ones not found. Duplicated identifiers are reported once.
+     *
+     * @param phoneIds The phone number identifiers.
+     * @param status   The activate/deactivate status.
+     * @return The result of each phone number identifier, in request order.
+     */
+    @Override
+    public Flux<BatchUpdateResultDTO> updateFor(List<Long> phoneIds, boolean status) {
+        return Flux.fromIterable(new LinkedHashSet<>(phoneIds))
+                .buffer(batchChunkSize)
+                .concatMap(chunk -> updateChunk(chunk, status));
+    }
+
+    // One query for all the customers, the plain equality query when there is only one
+    private Mono<Map<Long, List<PhoneNumber>>> loadByCustomerIds(List<Long> customerIds) {
+        Flux<PhoneNumber> phones = customerIds.size() == 1
+                ? getRepository().findByCustomerId(customerIds.get(0))
+                : getRepository().findByCustomerIdIn(customerIds);
+        return phones.collect(Collectors.groupingBy(PhoneNumber::getCustomerId));
+    }
+
+    private Flux<BatchUpdateResultDTO> updateChunk(List<Long> phoneIds, boolean status) {
+        return getRepository().updateActiveWhereIdIn(phoneIds, status)
+                .doOnNext(cacheCoherence::onUpdated)
+                .doOnNext(changeFeed::publish)
+                .map(PhoneNumber::getId)
+                .collect(Collectors.toSet())
+                .flatMapMany(updatedIds -> findExistingIds(phoneIds, updatedIds)
+                        .flatMapIterable(existingIds -> phoneIds.stream()
+                                .map(id -> BatchUpdateResultDTO.of(id, updatedIds.contains(id)
+                                        ? BatchUpdateResultDTO.Status.UPDATED
+                                        : existingIds.contains(id)
+                                        ? BatchUpdateResultDTO.Status.ALREADY_IN_STATE
+                                        : BatchUpdateResultDTO.Status.NOT_FOUND))
+                                .toList()));
+    }
+
+    // One UPDATE for all the activations and deactivations of the group, the identifiers it did not change are looked up
+    // with one more query to tell the ones already in the desired state apart from the ones not found
+    private Mono<Map<Long, ActivationResult>> commitActivations(Map<Long, Boolean> statusById) {
+        List<Long> phoneIds = List.copyOf(statusById.keySet());
+        Map<Boolean, List<Long>> idsByStatus = phoneIds.stream()
+                .collect(Collectors.partitioningBy(statusById::get));
+        List<Long> activateIds = idsByStatus.get(true);
+        List<Long> deactivateIds = idsByStatus.get(false);
+        Flux<PhoneNumber> updated = deactivateIds.isEmpty()
+                ? getRepository().updateActiveWhereIdIn(activateIds, true)
+                : activateIds.isEmpty()
+                ? getRepository().updateActiveWhereIdIn(deactivateIds, false)
+                : getRepository().updateActiveWhereIdIn(activateIds, deactivateIds);
+        return updated
+                .collectMap(PhoneNumber::getId)
+                .flatMap(updatedById -> findExistingIds(phoneIds, updatedById.keySet())
+                        .map(existingIds -> phoneIds.stream()
+                                .collect(Collectors.toMap(Function.identity(), id -> updatedById.containsKey(id)
+                                        ? ActivationResult.updated(updatedById.get(id))
+                                        : existingIds.contains(id)
+                                        ? ActivationResult.ALREADY_IN_STATE
+                                        : ActivationResult.NOT_FOUND))));
+    }
+
+    private static RuntimeException alreadyInStateException() {
+        return new ResourceStateConflictException("Phone number is already in the desired state.");
+    }
+
+    private Mono<Set<Long>> findExistingIds(List<Long> phoneIds, Set<Long> updatedIds) {
+        List<Long> notUpdatedIds = phoneIds.stream()
+                .filter(id -> !updatedIds.contains(id))
+                .toList();
+        if (notUpdatedIds.isEmpty()) {
+            return Mono.just(Set.of());
+        }
+        return getRepository().findAllById(notUpdatedIds)
+                .map(PhoneNumber::getId)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * The outcome of a group committed activation change, the updated phone number or why it was not changed.
+     */
+    private record ActivationResult(BatchUpdateResultDTO.Status status, PhoneNumber updated) {
+        static final ActivationResult ALREADY_IN_STATE = new ActivationResult(BatchUpdateResultDTO.Status.ALREADY_IN_STATE, null);
+        static final ActivationResult NOT_FOUND = new ActivationResult(BatchUpdateResultDTO.Status.NOT_FOUND, null);
+
+        static ActivationResult updated(PhoneNumber updated) {
+            return new ActivationResult(BatchUpdateResultDTO.Status.UPDATED, updated);
+        }
+
+        // The same errors as the single conditional update
+        Mono<PhoneNumber> toPhoneNumber(long phoneId) {
+            return switch (status) {
+                case UPDATED -> Mono.just(updated);
+                case ALREADY_IN_STATE -> Mono.error(alreadyInStateException());
+                case NOT_FOUND -> Mono.error(new ResourceNotFoundException("Record not found with ID " + phoneId));
+            };
+        }
     }
 }
@@ -0,0 +1,53 @@
+package au.com.belong.customerphoneapi.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a running total of the rows of a table so that paginated listings do not run a full table
+ * <code>COUNT(*)</code> on every request. The total is loaded once on first use and periodically re-synced with the
+ * database, the API neither inserts nor deletes rows so it only drifts by the rows written outside of the API.
+ */
+@Slf4j
+public class RowCountProvider {
+    private static final long UNKNOWN = -1L;
+
+    private final Supplier<Mono<Long>> countSource;
+    private final AtomicLong count = new AtomicLong(UNKNOWN);
+
+    public RowCountProvider(Supplier<Mono<Long>> countSource) {
+        this.countSource = countSource;
+    }
+
+    /**
+     * Returns the current running total, loading it from the database if not yet known.
+     *
+     * @return The (approximate) number of table rows.
+     */
+    public Mono<Long> getCount() {
+        long current = count.get();
+        return current == UNKNOWN ? resync() : Mono.just(current);
+    }
+
+    /**
+     * Re-syncs the running total with the database.
+     *
+     * @return The number of table rows.
+     */
+    @Scheduled(
+            initialDelayString = "${phone-api.row-count.resync-interval:PT5M}",
+            fixedDelayString = "${phone-api.row-count.resync-interval:PT5M}")
+    public Mono<Long> resync() {
+        return Mono.defer(countSource)
+                .doOnNext(total -> {
+                    long previous = count.getAndSet(total);
+                    if (previous != UNKNOWN && previous != total) {
+                        log.debug("Row count re-synced from {} to {}", previous, total);
+                    }
+                });
+    }
+}
@@ -0,0 +1,86 @@
+package au.com.belong.customerphoneapi.configuration;
+
+import au.com.belong.customerphoneapi.metrics.MeteredScheduler;
+import au.com.belong.customerphoneapi.repository.JdbcPhoneNumberRepository;
+import au.com.belong.customerphoneapi.repository.PhoneNumberRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+/**
+ * The JDBC backend, selected with <code>phone-api.persistence.backend=jdbc</code> and only built with the
+ * <code>java21</code> Maven profile. The phone number repository runs its statements on a Hikari connection pool, and
+ * the database scheduler the {@link au.com.belong.customerphoneapi.repository.RepositorySchedulerInterceptor}
+ * subscribes the repository calls on starts a virtual thread per call instead of queueing them for a bounded pool:
+ * a call blocked on JDBC parks its virtual thread and frees the carrier thread, the connection pool is the only limit.
+ * The cache invalidation outbox and the phone number index keep reading through R2DBC.
+ */
+@Configuration
+@ConditionalOnProperty(name = "phone-api.persistence.backend", havingValue = "jdbc")
+public class JdbcRepositoryConfiguration {
+    private static final String NAME = "database";
+    private static final String POOL_NAME = "phonenumber-api-jdbc";
+
+    /**
+     * The JDBC connection pool, its sizes and acquire times are published by the actuator as <code>hikaricp.*</code>.
+     *
+     * @param url               The JDBC URL of the database.
+     * @param username          The database user, the one of the R2DBC connections.
+     * @param password          The database password.
+     * @param maximumPoolSize   The most connections.
+     * @param connectionTimeout How long a call waits for a connection before it is answered with a 503.
+     * @return The connection pool.
+     */
+    @Bean(destroyMethod = "close")
+    public HikariDataSource dataSource(@Value("${phone-api.persistence.jdbc.url}") String url,
+                                       @Value("${spring.r2dbc.username:}") String username,
+                                       @Value("${spring.r2dbc.password:}") String password,
+                                       @Value("${phone-api.persistence.jdbc.maximum-pool-size:20}") int maximumPoolSize,
+                                       @Value("${phone-api.persistence.jdbc.connection-timeout:PT3S}") Duration connectionTimeout) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName(POOL_NAME);
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        dataSource.setConnectionTimeout(connectionTimeout.toMillis());
+        return dataSource;
+    }
+
+    /**
+     * The phone number repository on JDBC, it replaces the R2DBC one.
+     *
+     * @param dataSource        The connection pool.
+     * @param connectionTimeout How long a call waits for a connection, the earliest worth retrying one that timed out.
+     * @return The JDBC phone number repository.
+     */
+    @Bean
+    public PhoneNumberRepository phoneNumberRepository(
+            HikariDataSource dataSource,
+            @Value("${phone-api.persistence.jdbc.connection-timeout:PT3S}") Duration connectionTimeout) {
+        return new JdbcPhoneNumberRepository(new NamedParameterJdbcTemplate(dataSource), connectionTimeout);
+    }
+
+    /**
+     * The database scheduler of the JDBC backend, a virtual thread per repository call. Its tasks never wait in a
+     * queue, so <code>phone.api.scheduler.wait</code> only measures the start of the virtual threads.
+     *
+     * @param meterRegistry The actuator meter registry.
+     * @return The metered virtual thread scheduler.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler databaseScheduler(MeterRegistry meterRegistry) {
+        return new MeteredScheduler(Schedulers.fromExecutorService(
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(NAME + "-", 0).factory()), NAME),
+                NAME, meterRegistry);
+    }
+}
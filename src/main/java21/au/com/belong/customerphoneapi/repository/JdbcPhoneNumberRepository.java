@@ -0,0 +1,270 @@
+package au.com.belong.customerphoneapi.repository;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.exception.ConnectionPoolExhaustedException;
+import org.reactivestreams.Publisher;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * The {@link PhoneNumberRepository} contract on plain JDBC and a connection pool, with the same statements as the
+ * R2DBC repository. Every call blocks the thread it runs on, so the returned publishers are cold and only run their
+ * statement when subscribed, on the database scheduler of the JDBC backend, which starts a virtual thread per call
+ * (see <code>JdbcRepositoryConfiguration</code>). A {@link Flux} reads all its rows before emitting the first one, the
+ * callers never ask for more than a page or a chunk of ids.
+ */
+public class JdbcPhoneNumberRepository implements PhoneNumberRepository {
+    private static final String SELECT = "SELECT * FROM PHONE_NUMBERS";
+    private static final Map<String, String> COLUMNS = Map.of(
+            "id", "id",
+            "phoneNumber", "phone_number",
+            "active", "is_active",
+            "customerId", "customer_id",
+            "version", "version");
+    private static final RowMapper<PhoneNumber> ROW_MAPPER = (resultSet, rowNum) -> {
+        PhoneNumber phoneNumber = new PhoneNumber();
+        phoneNumber.setId(resultSet.getLong("id"));
+        phoneNumber.setPhoneNumber(resultSet.getString("phone_number"));
+        phoneNumber.setActive(resultSet.getBoolean("is_active"));
+        phoneNumber.setCustomerId(resultSet.getLong("customer_id"));
+        phoneNumber.setVersion(resultSet.getLong("version"));
+        return phoneNumber;
+    };
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Duration retryAfter;
+
+    /**
+     * @param jdbcTemplate The template over the pooled data source.
+     * @param retryAfter   When to retry a call that could not get a connection in time.
+     */
+    public JdbcPhoneNumberRepository(NamedParameterJdbcTemplate jdbcTemplate, Duration retryAfter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.retryAfter = retryAfter;
+    }
+
+    @Override
+    public Flux<PhoneNumber> findByCustomerId(long customerId) {
+        return query(SELECT + " WHERE customer_id = :customerId", new MapSqlParameterSource("customerId", customerId));
+    }
+
+    @Override
+    public Flux<PhoneNumber> findByCustomerIdIn(Collection<Long> customerIds) {
+        if (customerIds.isEmpty()) {
+            return Flux.empty();
+        }
+        return query(SELECT + " WHERE customer_id IN (:customerIds)", new MapSqlParameterSource("customerIds", customerIds));
+    }
+
+    @Override
+    public Mono<PhoneNumber> updateActiveWhereId(long id, boolean status) {
+        return query("SELECT * FROM FINAL TABLE (UPDATE PHONE_NUMBERS SET is_active = :status, version = version + 1 "
+                        + "WHERE id = :id AND is_active <> :status)",
+                new MapSqlParameterSource("id", id).addValue("status", status))
+                .next();
+    }
+
+    @Override
+    public Flux<PhoneNumber> updateActiveWhereIdIn(Collection<Long> ids, boolean status) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return query("SELECT * FROM FINAL TABLE (UPDATE PHONE_NUMBERS SET is_active = :status, version = version + 1 "
+                        + "WHERE id IN (:ids) AND is_active <> :status)",
+                new MapSqlParameterSource("ids", ids).addValue("status", status));
+    }
+
+    @Override
+    public Flux<PhoneNumber> updateActiveWhereIdIn(Collection<Long> activateIds, Collection<Long> deactivateIds) {
+        if (activateIds.isEmpty()) {
+            return updateActiveWhereIdIn(deactivateIds, false);
+        }
+        if (deactivateIds.isEmpty()) {
+            return updateActiveWhereIdIn(activateIds, true);
+        }
+        return query("SELECT * FROM FINAL TABLE (UPDATE PHONE_NUMBERS SET is_active = NOT is_active, version = version + 1 "
+                        + "WHERE (id IN (:activateIds) AND NOT is_active) OR (id IN (:deactivateIds) AND is_active))",
+                new MapSqlParameterSource("activateIds", activateIds).addValue("deactivateIds", deactivateIds));
+    }
+
+    @Override
+    public Flux<PhoneNumber> findAllBy(PageRequest pageRequest) {
+        return query(SELECT + orderBy(pageRequest.getSort()) + " LIMIT :limit OFFSET :offset",
+                new MapSqlParameterSource("limit", pageRequest.getPageSize()).addValue("offset", pageRequest.getOffset()));
+    }
+
+    @Override
+    public Flux<PhoneNumber> findAllByIdGreaterThanOrderByIdAsc(long id, Limit limit) {
+        if (limit.isUnlimited()) {
+            return query(SELECT + " WHERE id > :id ORDER BY id", new MapSqlParameterSource("id", id));
+        }
+        return query(SELECT + " WHERE id > :id ORDER BY id LIMIT :limit",
+                new MapSqlParameterSource("id", id).addValue("limit", limit.max()));
+    }
+
+    // Inserts a phone number with no identifier yet, like the R2DBC repository does, and updates every column otherwise
+    @Override
+    public <S extends PhoneNumber> Mono<S> save(S entity) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource("id", entity.getId())
+                .addValue("phoneNumber", entity.getPhoneNumber())
+                .addValue("active", entity.isActive())
+                .addValue("customerId", entity.getCustomerId())
+                .addValue("version", entity.getVersion());
+        if (entity.getId() == 0) {
+            return query("SELECT * FROM FINAL TABLE (INSERT INTO PHONE_NUMBERS (phone_number, is_active, customer_id, version) "
+                    + "VALUES (:phoneNumber, :active, :customerId, :version))", parameters)
+                    .next()
+                    .map(inserted -> {
+                        entity.setId(inserted.getId());
+                        return entity;
+                    });
+        }
+        return call(() -> jdbcTemplate.update("UPDATE PHONE_NUMBERS SET phone_number = :phoneNumber, is_active = :active, "
+                + "customer_id = :customerId, version = :version WHERE id = :id", parameters))
+                .flatMap(rows -> rows == 0
+                        ? Mono.error(new TransientDataAccessResourceException(
+                                "Failed to update table [PHONE_NUMBERS]; Row with Id [" + entity.getId() + "] does not exist"))
+                        : Mono.just(entity));
+    }
+
+    @Override
+    public <S extends PhoneNumber> Flux<S> saveAll(Iterable<S> entities) {
+        return Flux.fromIterable(entities).concatMap(this::save);
+    }
+
+    @Override
+    public <S extends PhoneNumber> Flux<S> saveAll(Publisher<S> entityStream) {
+        return Flux.from(entityStream).concatMap(this::save);
+    }
+
+    @Override
+    public Mono<PhoneNumber> findById(Long id) {
+        return query(SELECT + " WHERE id = :id", new MapSqlParameterSource("id", id)).next();
+    }
+
+    @Override
+    public Mono<PhoneNumber> findById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Long id) {
+        return call(() -> jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM PHONE_NUMBERS WHERE id = :id)",
+                new MapSqlParameterSource("id", id), Boolean.class));
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::existsById);
+    }
+
+    @Override
+    public Flux<PhoneNumber> findAll() {
+        return query(SELECT, new MapSqlParameterSource());
+    }
+
+    @Override
+    public Flux<PhoneNumber> findAllById(Iterable<Long> ids) {
+        List<Long> idList = toList(ids);
+        if (idList.isEmpty()) {
+            return Flux.empty();
+        }
+        return query(SELECT + " WHERE id IN (:ids)", new MapSqlParameterSource("ids", idList));
+    }
+
+    @Override
+    public Flux<PhoneNumber> findAllById(Publisher<Long> idStream) {
+        return Flux.from(idStream).collectList().flatMapMany(this::findAllById);
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return call(() -> jdbcTemplate.queryForObject("SELECT COUNT(*) FROM PHONE_NUMBERS", new MapSqlParameterSource(), Long.class));
+    }
+
+    @Override
+    public Mono<Void> deleteById(Long id) {
+        return deleteAllById(List.of(id));
+    }
+
+    @Override
+    public Mono<Void> deleteById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    public Mono<Void> delete(PhoneNumber entity) {
+        return deleteById(entity.getId());
+    }
+
+    @Override
+    public Mono<Void> deleteAllById(Iterable<? extends Long> ids) {
+        List<Long> idList = toList(ids);
+        if (idList.isEmpty()) {
+            return Mono.empty();
+        }
+        return call(() -> jdbcTemplate.update("DELETE FROM PHONE_NUMBERS WHERE id IN (:ids)", new MapSqlParameterSource("ids", idList)))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Iterable<? extends PhoneNumber> entities) {
+        return deleteAllById(StreamSupport.stream(entities.spliterator(), false).map(PhoneNumber::getId).toList());
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Publisher<? extends PhoneNumber> entityStream) {
+        return Flux.from(entityStream).collectList().flatMap(this::deleteAll);
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return call(() -> jdbcTemplate.update("DELETE FROM PHONE_NUMBERS", new MapSqlParameterSource())).then();
+    }
+
+    private Flux<PhoneNumber> query(String sql, MapSqlParameterSource parameters) {
+        return call(() -> jdbcTemplate.query(sql, parameters, ROW_MAPPER)).flatMapIterable(rows -> rows);
+    }
+
+    // Runs the statement on the subscribing thread, a pool that could not hand out a connection in time is a busy database
+    private <R> Mono<R> call(Callable<R> statement) {
+        return Mono.fromCallable(statement)
+                .onErrorMap(CannotGetJdbcConnectionException.class, exception -> new ConnectionPoolExhaustedException(
+                        "No database connection available, try again later.", retryAfter, exception));
+    }
+
+    private static String orderBy(Sort sort) {
+        if (sort.isUnsorted()) {
+            return "";
+        }
+        return sort.stream()
+                .map(order -> {
+                    String column = COLUMNS.get(order.getProperty());
+                    if (column == null) {
+                        throw new IllegalArgumentException("Unknown phone number property: " + order.getProperty());
+                    }
+                    return column + " " + order.getDirection().name();
+                })
+                .collect(Collectors.joining(", ", " ORDER BY ", ""));
+    }
+
+    private static List<Long> toList(Iterable<? extends Long> ids) {
+        return StreamSupport.stream(ids.spliterator(), false).map(Long.class::cast).toList();
+    }
+}
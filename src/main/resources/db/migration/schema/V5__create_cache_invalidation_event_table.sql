@@ -0,0 +1,9 @@
+CREATE TABLE CACHE_INVALIDATION_EVENTS
+(
+    seq         BIGINT AUTO_INCREMENT PRIMARY KEY,
+    phone_id    BIGINT      NOT NULL,
+    customer_id BIGINT      NOT NULL,
+    is_active   BOOLEAN     NOT NULL,
+    origin      VARCHAR(36) NOT NULL,
+    created_at  TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,11 @@
+-- Phone numbers of a customer, PhoneNumberRepository.findByCustomerId
+CREATE INDEX IDX_PHONE_NUMBERS_CUSTOMER_ID ON PHONE_NUMBERS (customer_id);
+
+-- Digits only, with the +61 country code replaced by the leading zero, so that '+61 488 992 263' and '0488992263'
+-- are the same phone number
+ALTER TABLE PHONE_NUMBERS
+    ADD COLUMN phone_number_normalized VARCHAR(15)
+        GENERATED ALWAYS AS (REGEXP_REPLACE(REGEXP_REPLACE(phone_number, '[^0-9]', ''), '^61', '0'));
+
+-- A phone number belongs to one customer only, and lookups by phone number use this index
+CREATE UNIQUE INDEX UX_PHONE_NUMBERS_PHONE_NUMBER_NORMALIZED ON PHONE_NUMBERS (phone_number_normalized);
@@ -0,0 +1,7 @@
+-- Incremented by every update of a phone number, the ETags of the phone number responses are derived from it
+ALTER TABLE PHONE_NUMBERS
+    ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
+
+-- The version of the phone number after the change, so that the other nodes update it in their caches too
+ALTER TABLE CACHE_INVALIDATION_EVENTS
+    ADD COLUMN row_version BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,7 @@
+-- The shard of each customer bucket with the sharded persistence backend, see ShardMap. A bucket without a row is on
+-- the first shard, the database migrated by Flyway
+CREATE TABLE SHARD_BUCKETS
+(
+    bucket INT PRIMARY KEY,
+    shard  INT NOT NULL
+);
@@ -0,0 +1,16 @@
+-- A bucket being moved is fenced, every node holds its writes until it is assigned to its new shard. Every bucket gets
+-- a row, so a move claims it with a conditional update
+ALTER TABLE SHARD_BUCKETS
+    ADD COLUMN fenced BOOLEAN DEFAULT FALSE NOT NULL;
+
+INSERT INTO SHARD_BUCKETS (bucket, shard)
+SELECT X, 0
+FROM SYSTEM_RANGE(0, 63)
+WHERE X NOT IN (SELECT bucket FROM SHARD_BUCKETS);
+
+-- When each node last read SHARD_BUCKETS and applied it, a move waits for every node to read its changes
+CREATE TABLE SHARD_NODES
+(
+    node    VARCHAR(64) PRIMARY KEY,
+    read_at TIMESTAMP NOT NULL
+);
@@ -0,0 +1,175 @@
+package au.com.belong.customerphoneapi.cache;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.PageDTO;
+import au.com.belong.customerphoneapi.repository.DatabaseScheduling;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs several in-process nodes, each with its own caches and bus, against the shared test database.
+ */
+@DataR2dbcTest
+@ActiveProfiles("test")
+public class OutboxCacheInvalidationBusTest {
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    private Node nodeA, nodeB, nodeC;
+
+    @BeforeEach
+    void beforeEachTest() {
+        nodeA = new Node(databaseClient);
+        nodeB = new Node(databaseClient);
+        nodeC = new Node(databaseClient);
+        // the first poll only records the end of the event log
+        List.of(nodeA, nodeB, nodeC).forEach(node -> StepVerifier.create(node.bus.poll()).verifyComplete());
+    }
+
+    @Test
+    void testing_change_on_one_node_is_applied_to_the_caches_of_the_other_nodes() {
+        List.of(nodeA, nodeB, nodeC).forEach(node -> node.cache(createPhoneNumber(2L, false, 1L)));
+
+        nodeA.coherence.onUpdated(createPhoneNumber(2L, true, 1L, 1L));
+        StepVerifier.create(nodeA.bus.synchronize()).verifyComplete();
+        StepVerifier.create(nodeB.bus.synchronize()).verifyComplete();
+        StepVerifier.create(nodeC.bus.synchronize()).verifyComplete();
+
+        List.of(nodeA, nodeB, nodeC).forEach(node -> {
+            assertTrue(node.cachedCustomerPhone().isActive());
+            assertTrue(node.cachedPagePhone().isActive());
+        });
+    }
+
+    @Test
+    void testing_node_does_not_apply_its_own_changes_from_the_event_log() {
+        nodeA.cache(createPhoneNumber(2L, false, 1L));
+
+        nodeA.bus.publish(CacheInvalidationEvent.of(createPhoneNumber(2L, true, 1L, 1L)));
+        StepVerifier.create(nodeA.bus.synchronize()).verifyComplete();
+
+        assertFalse(nodeA.cachedCustomerPhone().isActive());
+    }
+
+    @Test
+    void testing_changes_of_a_phone_number_are_coalesced_to_the_latest_one() {
+        long before = lastVersion();
+        nodeB.cache(createPhoneNumber(2L, false, 1L));
+
+        nodeA.coherence.onUpdated(createPhoneNumber(2L, true, 1L, 1L));
+        nodeA.coherence.onUpdated(createPhoneNumber(2L, false, 1L, 2L));
+        nodeA.coherence.onUpdated(createPhoneNumber(2L, true, 1L, 3L));
+        nodeA.coherence.onUpdated(createPhoneNumber(3L, true, 1L, 1L));
+        StepVerifier.create(nodeA.bus.flush()).verifyComplete();
+
+        assertEquals(2L, lastVersion() - before);
+        StepVerifier.create(nodeB.bus.poll()).verifyComplete();
+        assertTrue(nodeB.cachedCustomerPhone().isActive());
+    }
+
+    @Test
+    void testing_change_committed_after_a_higher_sequence_number_is_still_applied() {
+        nodeB.cache(createPhoneNumber(2L, false, 1L));
+        insertRemoteEvent(2L);
+        long gap = lastVersion();
+        insertRemoteEvent(3L);
+
+        // The event taking the lower sequence number is not committed yet when the higher one is polled
+        StepVerifier.create(databaseClient.sql("DELETE FROM CACHE_INVALIDATION_EVENTS WHERE seq = :seq")
+                        .bind("seq", gap)
+                        .fetch()
+                        .rowsUpdated())
+                .expectNext(1L)
+                .verifyComplete();
+        StepVerifier.create(nodeB.bus.poll()).verifyComplete();
+        assertFalse(nodeB.cachedCustomerPhone().isActive());
+
+        StepVerifier.create(databaseClient.sql("INSERT INTO CACHE_INVALIDATION_EVENTS (seq, phone_id, customer_id, is_active, row_version, origin) "
+                                + "VALUES (:seq, 2, 1, TRUE, 1, 'another-node')")
+                        .bind("seq", gap)
+                        .fetch()
+                        .rowsUpdated())
+                .expectNext(1L)
+                .verifyComplete();
+        StepVerifier.create(nodeB.bus.poll()).verifyComplete();
+        assertTrue(nodeB.cachedCustomerPhone().isActive());
+    }
+
+    private void insertRemoteEvent(long phoneId) {
+        StepVerifier.create(databaseClient.sql("INSERT INTO CACHE_INVALIDATION_EVENTS (phone_id, customer_id, is_active, row_version, origin) "
+                                + "VALUES (:phoneId, 1, TRUE, 1, 'another-node')")
+                        .bind("phoneId", phoneId)
+                        .fetch()
+                        .rowsUpdated())
+                .expectNext(1L)
+                .verifyComplete();
+    }
+
+    private long lastVersion() {
+        return databaseClient.sql("SELECT COALESCE(MAX(seq), 0) FROM CACHE_INVALIDATION_EVENTS")
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .blockOptional()
+                .orElse(0L);
+    }
+
+    private static PhoneNumber createPhoneNumber(long phoneId, boolean active, long customerId) {
+        return createPhoneNumber(phoneId, active, customerId, 0L);
+    }
+
+    private static PhoneNumber createPhoneNumber(long phoneId, boolean active, long customerId, long version) {
+        PhoneNumber phone = new PhoneNumber();
+        phone.setVersion(version);
+        phone.setId(phoneId);
+        phone.setActive(active);
+        phone.setCustomerId(customerId);
+        phone.setPhoneNumber("04" + phoneId);
+        return phone;
+    }
+
+    private static class Node {
+        private final CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        private final OutboxCacheInvalidationBus bus;
+        private final PhoneNumberCacheCoherence coherence;
+
+        Node(DatabaseClient databaseClient) {
+            cacheManager.setAsyncCacheMode(true);
+            bus = new OutboxCacheInvalidationBus(databaseClient,
+                    new DatabaseScheduling(Schedulers::boundedElastic, Duration.ofSeconds(1)), 500, Duration.ofMinutes(10));
+            coherence = new PhoneNumberCacheCoherence(cacheManager, bus);
+        }
+
+        void cache(PhoneNumber phone) {
+            PageDTO<PhoneNumber> page = PageDTO.of(List.of(phone), 0, 1);
+            coherence.registerPage(0, 1, page);
+            cacheManager.getCache(PhoneNumberCacheCoherence.PAGES_CACHE).put(PhoneNumberCacheCoherence.pageKey(0, 1), page);
+            cacheManager.getCache(PhoneNumberCacheCoherence.CUSTOMERS_CACHE).put(phone.getCustomerId(), List.of(phone));
+        }
+
+        @SuppressWarnings("unchecked")
+        PhoneNumber cachedCustomerPhone() {
+            return ((List<PhoneNumber>) cacheManager.getCache(PhoneNumberCacheCoherence.CUSTOMERS_CACHE).get(1L).get()).get(0);
+        }
+
+        @SuppressWarnings("unchecked")
+        PhoneNumber cachedPagePhone() {
+            return ((PageDTO<PhoneNumber>) cacheManager.getCache(PhoneNumberCacheCoherence.PAGES_CACHE)
+                    .get(PhoneNumberCacheCoherence.pageKey(0, 1)).get()).getContent().get(0);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package au.com.belong.customerphoneapi.cache;
+
+import au.com.belong.customerphoneapi.configuration.CacheConfiguration;
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.PageDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The index of the cached pages kept by the cache coherence, pruned by the removal listener of the pages cache, and the
+ * pages loading or holding a newer version while a change is applied.
+ */
+public class PhoneNumberCacheCoherenceTest {
+    private PhoneNumberCacheCoherence coherence;
+    private Cache pages;
+
+    @BeforeEach
+    void beforeEachTest() {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        CaffeineCacheManager cacheManager = new CacheConfiguration().caffeineCacheManager("maximumSize=100",
+                new SimpleMeterRegistry(), beanFactory.getBeanProvider(PhoneNumberCacheCoherence.class));
+        coherence = new PhoneNumberCacheCoherence(cacheManager, new LocalCacheInvalidationBus());
+        beanFactory.addBean("phoneNumberCacheCoherence", coherence);
+        pages = cacheManager.getCache(PhoneNumberCacheCoherence.PAGES_CACHE);
+    }
+
+    @Test
+    void testing_evicted_pages_are_dropped_from_the_index() {
+        cachePage(0, createPhoneNumber(1L), createPhoneNumber(2L));
+        cachePage(1, createPhoneNumber(3L));
+        assertEquals(3, coherence.indexedPhoneNumbers());
+
+        pages.evict(PhoneNumberCacheCoherence.pageKey(0, 2));
+        assertIndexed(1);
+
+        pages.clear();
+        assertIndexed(0);
+    }
+
+    @Test
+    void testing_page_cached_again_stays_in_the_index() {
+        cachePage(0, createPhoneNumber(1L));
+        cachePage(1, createPhoneNumber(2L));
+        cachePage(0, createPhoneNumber(1L));
+        pages.evict(PhoneNumberCacheCoherence.pageKey(1, 2));
+        assertIndexed(1);
+
+        coherence.apply(CacheInvalidationEvent.of(createPhoneNumber(1L)));
+        assertEquals(1, coherence.indexedPhoneNumbers());
+    }
+
+    @Test
+    void testing_page_loading_while_an_update_is_applied_is_not_cached() {
+        Object pageKey = PhoneNumberCacheCoherence.pageKey(0, 2);
+        Sinks.One<PageDTO<PhoneNumber>> query = Sinks.one();
+        CompletableFuture<PageDTO<PhoneNumber>> loaded = pages.retrieve(pageKey,
+                () -> coherence.loadPage(0, 2, query.asMono()).toFuture());
+
+        PhoneNumber deactivated = createPhoneNumber(1L);
+        deactivated.setActive(false);
+        coherence.apply(CacheInvalidationEvent.of(deactivated));
+        // The query read the phone number before the update
+        query.tryEmitValue(PageDTO.of(List.of(createPhoneNumber(1L)), 0, 2));
+
+        assertTrue(loaded.join().getContent().get(0).isActive());
+        assertNull(pages.retrieve(pageKey));
+        assertIndexed(0);
+    }
+
+    @Test
+    void testing_page_loaded_without_update_is_cached() {
+        Object pageKey = PhoneNumberCacheCoherence.pageKey(0, 2);
+        Sinks.One<PageDTO<PhoneNumber>> query = Sinks.one();
+        pages.retrieve(pageKey, () -> coherence.loadPage(0, 2, query.asMono()).toFuture());
+
+        query.tryEmitValue(PageDTO.of(List.of(createPhoneNumber(1L)), 0, 2));
+
+        assertNotNull(pages.retrieve(pageKey));
+        assertEquals(1, coherence.indexedPhoneNumbers());
+    }
+
+    @Test
+    void testing_changes_applied_out_of_order_keep_the_newest_state() {
+        cachePage(0, createPhoneNumber(1L));
+        PhoneNumber deactivated = createPhoneNumber(1L);
+        deactivated.setActive(false);
+        deactivated.setVersion(2L);
+        PhoneNumber activated = createPhoneNumber(1L);
+        activated.setVersion(1L);
+
+        coherence.apply(CacheInvalidationEvent.of(deactivated));
+        coherence.apply(CacheInvalidationEvent.of(activated));
+
+        PageDTO<?> cached = (PageDTO<?>) pages.get(PhoneNumberCacheCoherence.pageKey(0, 2)).get();
+        PhoneNumber phone = (PhoneNumber) cached.getContent().get(0);
+        assertFalse(phone.isActive());
+        assertEquals(2L, phone.getVersion());
+    }
+
+    private void cachePage(int page, PhoneNumber... phones) {
+        PageDTO<PhoneNumber> content = PageDTO.of(List.of(phones), page, 2);
+        coherence.registerPage(page, 2, content);
+        pages.put(PhoneNumberCacheCoherence.pageKey(page, 2), content);
+    }
+
+    // The removal listener is notified on the common pool
+    private void assertIndexed(int expected) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coherence.indexedPhoneNumbers() != expected && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(expected, coherence.indexedPhoneNumbers());
+    }
+
+    private static PhoneNumber createPhoneNumber(long phoneId) {
+        PhoneNumber phone = new PhoneNumber();
+        phone.setId(phoneId);
+        phone.setActive(true);
+        phone.setCustomerId(1L);
+        phone.setPhoneNumber("04" + phoneId);
+        return phone;
+    }
+}
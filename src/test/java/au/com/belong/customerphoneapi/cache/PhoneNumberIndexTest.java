@@ -0,0 +1,120 @@
+package au.com.belong.customerphoneapi.cache;
+
+import au.com.belong.customerphoneapi.dto.PhoneNumberOwnerDTO;
+import au.com.belong.customerphoneapi.repository.DatabaseScheduling;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataR2dbcTest
+@ActiveProfiles("test")
+public class PhoneNumberIndexTest {
+    private static final DatabaseScheduling DATABASE_SCHEDULING =
+            new DatabaseScheduling(Schedulers::boundedElastic, Duration.ofSeconds(1));
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private PhoneNumberIndex phoneNumberIndex;
+
+    @BeforeEach
+    void beforeEachTest() {
+        meterRegistry = new SimpleMeterRegistry();
+        phoneNumberIndex = new PhoneNumberIndex(databaseClient, DATABASE_SCHEDULING, meterRegistry);
+        StepVerifier.create(phoneNumberIndex.rebuild())
+                .expectNext(4)
+                .verifyComplete();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0488992263", "0488 992 263", "+61 488 992 263", "(04) 8899-2263"})
+    void testing_find_normalizes_the_phone_number(String phoneNumber) {
+        StepVerifier.create(phoneNumberIndex.find(phoneNumber))
+                .assertNext(owner -> {
+                    assertEquals(1L, owner.getId());
+                    assertEquals("0488992263", owner.getPhoneNumber());
+                    assertEquals(1L, owner.getCustomerId());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_find_unknown_phone_number_is_empty() {
+        StepVerifier.create(phoneNumberIndex.find("0400000000"))
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_find_by_prefix_returns_matches_in_number_order_up_to_the_limit() {
+        StepVerifier.create(phoneNumberIndex.findByPrefix("048", 10))
+                .assertNext(owners -> assertEquals(List.of("0482746027", "0488992263"),
+                        owners.stream().map(PhoneNumberOwnerDTO::getPhoneNumber).toList()))
+                .verifyComplete();
+        StepVerifier.create(phoneNumberIndex.findByPrefix("04", 2))
+                .assertNext(owners -> assertEquals(List.of("0412772652", "0422338899"),
+                        owners.stream().map(PhoneNumberOwnerDTO::getPhoneNumber).toList()))
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_find_by_prefix_longer_than_the_numbers_does_not_match_shorter_numbers() {
+        StepVerifier.create(phoneNumberIndex.findByPrefix("04889922630", 10))
+                .assertNext(owners -> assertTrue(owners.isEmpty()))
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_lookups_before_the_first_build_query_the_table() {
+        PhoneNumberIndex notBuilt = new PhoneNumberIndex(databaseClient, DATABASE_SCHEDULING, new SimpleMeterRegistry());
+
+        StepVerifier.create(notBuilt.find("+61 488 992 263"))
+                .assertNext(owner -> {
+                    assertEquals(1L, owner.getId());
+                    assertEquals("0488992263", owner.getPhoneNumber());
+                    assertEquals(1L, owner.getCustomerId());
+                })
+                .verifyComplete();
+        StepVerifier.create(notBuilt.find("0400000000"))
+                .verifyComplete();
+        StepVerifier.create(notBuilt.findByPrefix("04", 2))
+                .assertNext(owners -> assertEquals(List.of("0412772652", "0422338899"),
+                        owners.stream().map(PhoneNumberOwnerDTO::getPhoneNumber).toList()))
+                .verifyComplete();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "0488992263", "131313", "000000000000001", "999999999999999"})
+    void testing_encoded_key_decodes_to_the_same_digits(String digits) {
+        assertEquals(digits, PhoneNumberIndex.decode(PhoneNumberIndex.encode(digits)));
+    }
+
+    @Test
+    void testing_encoded_keys_sort_like_the_digit_strings() {
+        List<String> sorted = List.of("04", "040", "0400", "0412772652", "049", "05", "131313");
+        List<Long> keys = sorted.stream().map(PhoneNumberIndex::encode).toList();
+
+        assertEquals(keys.stream().sorted().toList(), keys);
+    }
+
+    @Test
+    void testing_memory_gauge_reports_24_bytes_per_phone_number() {
+        assertEquals(4.0, meterRegistry.get("phone.number.index.entries").gauge().value());
+        assertEquals(4.0 * 24, meterRegistry.get("phone.number.index.memory").gauge().value());
+    }
+}
@@ -0,0 +1,95 @@
+package au.com.belong.customerphoneapi.cache;
+
+import au.com.belong.customerphoneapi.dto.PageDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResponseBodyCacheTest {
+    private static final ResolvableType PAGE_TYPE = ResolvableType.forClassWithGenerics(PageDTO.class, Integer.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ResponseBodyCache responseBodyCache = new ResponseBodyCache(
+            new Jackson2JsonEncoder(new ObjectMapper()), Set.of(PAGE_TYPE), 1024 * 1024, 1024, meterRegistry);
+
+    @Test
+    void testing_body_with_unchanged_etag_is_written_from_the_cache() {
+        assertEquals("{\"content\":[1,2],\"page\":0,\"size\":2,\"last\":false}",
+                write("/phone-numbers?page=0&size=2", "W/\"1\"", page(1, 2)));
+        // A different value under the same ETag proves the body was not encoded again
+        assertEquals("{\"content\":[1,2],\"page\":0,\"size\":2,\"last\":false}",
+                write("/phone-numbers?page=0&size=2", "W/\"1\"", page(3, 4)));
+
+        assertEquals(1.0, meterRegistry.get("phone.api.response.cache").tag("result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("phone.api.response.cache").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void testing_body_with_changed_etag_is_encoded_again() {
+        write("/phone-numbers?page=0&size=2", "W/\"1\"", page(1, 2));
+
+        assertTrue(write("/phone-numbers?page=0&size=2", "W/\"2\"", page(3, 4)).startsWith("{\"content\":[3,4]"));
+        assertTrue(write("/phone-numbers?page=0&size=2", "W/\"2\"", page(5, 6)).startsWith("{\"content\":[3,4]"));
+    }
+
+    @Test
+    void testing_bodies_of_different_parameters_are_cached_apart() {
+        write("/phone-numbers?page=0&size=2", "W/\"1\"", page(1, 2));
+
+        assertTrue(write("/phone-numbers?page=1&size=2", "W/\"1\"", page(3, 4)).startsWith("{\"content\":[3,4]"));
+    }
+
+    @Test
+    void testing_bodies_without_etag_or_over_the_entry_size_are_not_cached() {
+        write("/phone-numbers?page=0&size=2", null, page(1, 2));
+        assertTrue(write("/phone-numbers?page=0&size=2", null, page(3, 4)).startsWith("{\"content\":[3,4]"));
+
+        Integer[] large = new Integer[500];
+        Arrays.fill(large, 1000);
+        write("/phone-numbers?page=0&size=500", "W/\"1\"", page(large));
+        assertTrue(write("/phone-numbers?page=0&size=500", "W/\"1\"", page(3, 4)).startsWith("{\"content\":[3,4]"));
+    }
+
+    @Test
+    void testing_only_the_cached_types_are_written() {
+        assertTrue(responseBodyCache.canWrite(PAGE_TYPE, MediaType.APPLICATION_JSON));
+        assertFalse(responseBodyCache.canWrite(ResolvableType.forClass(String.class), MediaType.APPLICATION_JSON));
+        assertFalse(responseBodyCache.canWrite(ResolvableType.forClassWithGenerics(PageDTO.class, String.class), MediaType.APPLICATION_JSON));
+    }
+
+    private String write(String uri, String eTag, PageDTO<Integer> page) {
+        MockServerHttpRequest request = MockServerHttpRequest.get(uri).build();
+        MockServerHttpResponse response = new MockServerHttpResponse();
+        if (eTag != null) {
+            response.getHeaders().setETag(eTag);
+        }
+        StepVerifier.create(responseBodyCache.write(Mono.just(page), PAGE_TYPE, PAGE_TYPE, MediaType.APPLICATION_JSON,
+                        request, response, Map.of()))
+                .verifyComplete();
+        return response.getBodyAsString().block();
+    }
+
+    private static PageDTO<Integer> page(Integer... content) {
+        return PageDTO.<Integer>builder()
+                .content(List.of(content))
+                .page(0)
+                .size(content.length)
+                .build();
+    }
+}
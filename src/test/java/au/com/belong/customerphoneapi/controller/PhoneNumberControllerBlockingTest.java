@@ -0,0 +1,123 @@
+package au.com.belong.customerphoneapi.controller;
+
+import au.com.belong.customerphoneapi.service.PhoneNumberChangeFeed;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.blockhound.BlockHound;
+import reactor.blockhound.BlockingOperationError;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Calls every endpoint of the controller against the real database with BlockHound installed, so a blocking call on a
+ * Netty event loop or a Reactor parallel thread fails the test, even when the error it raises is swallowed on the way.
+ * Run with the <code>blockhound</code> profile, which adds the JVM flag BlockHound needs.
+ */
+@Tag("blockhound")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class PhoneNumberControllerBlockingTest {
+    private static final List<String> BLOCKING_CALLS = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private PhoneNumberChangeFeed changeFeed;
+
+    @BeforeAll
+    static void installBlockHound() {
+        BlockHound.install(builder -> builder
+                // The console appender of the test logging, the application logs to it from every thread
+                .allowBlockingCallsInside("ch.qos.logback.classic.Logger", "callAppenders")
+                .blockingMethodCallback(method -> {
+                    BLOCKING_CALLS.add(method + " on " + Thread.currentThread().getName());
+                    throw new BlockingOperationError(method);
+                }));
+    }
+
+    @BeforeEach
+    void beforeEachTest() {
+        BLOCKING_CALLS.clear();
+    }
+
+    @AfterEach
+    void afterEachTest() {
+        assertTrue(BLOCKING_CALLS.isEmpty(), () -> "Blocking calls on non-blocking threads: " + BLOCKING_CALLS);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "/phone-numbers?page=0&size=2",
+            "/phone-numbers?page=1&size=2&with_total=false",
+            "/phone-numbers?after=&size=2",
+            "/phone-numbers/customers/1",
+            "/phone-numbers/customers?ids=1,2",
+            "/phone-numbers/search?number=04&prefix=true"})
+    void testing_get_endpoints_do_not_block_non_blocking_threads(String uri) {
+        webTestClient.get()
+                .uri(uri)
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    void testing_export_does_not_block_non_blocking_threads(String mediaType) {
+        webTestClient.get()
+                .uri("/phone-numbers/export")
+                .accept(MediaType.parseMediaType(mediaType))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class);
+    }
+
+    // The activation endpoints answer 409 when the phone number is already in the state, both are fine here
+    @ParameterizedTest
+    @ValueSource(strings = {"deactivation", "activation"})
+    void testing_activation_endpoints_do_not_block_non_blocking_threads(String action) {
+        webTestClient.patch()
+                .uri("/phone-numbers/2/" + action)
+                .exchange()
+                .expectStatus().value(status -> assertTrue(status == 200 || status == 409));
+        webTestClient.post()
+                .uri("/phone-numbers/" + action + ":batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(3L, 4L, 999L))
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    // One of the two updates changes the phone number, so its change is kept for the stream resumed from the start
+    @Test
+    void testing_changes_do_not_block_non_blocking_threads() {
+        testing_activation_endpoints_do_not_block_non_blocking_threads("deactivation");
+        testing_activation_endpoints_do_not_block_non_blocking_threads("activation");
+
+        StepVerifier.create(webTestClient.get()
+                        .uri("/phone-numbers/changes")
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .header("Last-Event-ID", changeFeed.getId() + "-0")
+                        .exchange()
+                        .expectStatus().isOk()
+                        .returnResult(String.class)
+                        .getResponseBody()
+                        .take(1))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+}
@@ -1,9 +1,22 @@
 package au.com.belong.customerphoneapi.controller;
 
 
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.BatchUpdateResultDTO;
+import au.com.belong.customerphoneapi.dto.CursorPageDTO;
+import au.com.belong.customerphoneapi.dto.CustomerPhoneNumbersDTO;
+import au.com.belong.customerphoneapi.dto.PageDTO;
+import au.com.belong.customerphoneapi.dto.PhoneNumberChangeDTO;
+import au.com.belong.customerphoneapi.dto.PhoneNumberOwnerDTO;
+import au.com.belong.customerphoneapi.exception.ConnectionPoolExhaustedException;
+import au.com.belong.customerphoneapi.exception.InvalidCursorException;
 import au.com.belong.customerphoneapi.exception.ResourceNotFoundException;
 import au.com.belong.customerphoneapi.exception.ResourceStateConflictException;
 import au.com.belong.customerphoneapi.service.PhoneNumberService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -12,19 +25,31 @@ import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
 import java.util.stream.Stream;
 
 import static au.com.belong.customerphoneapi.PhoneNumberFixtures.CUST_ONE_PHONE_ONE;
 import static au.com.belong.customerphoneapi.PhoneNumberFixtures.CUST_ONE_PHONE_TWO;
+import static au.com.belong.customerphoneapi.PhoneNumberFixtures.CUST_TWO_PHONE_ONE;
 import static au.com.belong.customerphoneapi.PhoneNumberFixtures.getPhoneNumbersAsFluxForCustomer;
 import static au.com.belong.customerphoneapi.PhoneNumberFixtures.getPhoneNumbersAsPageFor;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -89,6 +114,58 @@ class PhoneNumberControllerTest {
         verify(phoneNumberService).getAllFor(0, 10);
     }
 
+    @Test
+    void testing_get_phone_numbers_is_json_by_default() {
+        when(phoneNumberService.getAllFor(0, 10)).thenReturn(getPhoneNumbersAsPageFor(0, 10));
+
+        webTestClient.get()
+                .uri("/phone-numbers")
+                .accept(MediaType.ALL)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody().jsonPath("$.total_records").isEqualTo(5);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {MediaType.APPLICATION_CBOR_VALUE, PhoneNumberController.APPLICATION_SMILE_VALUE})
+    void testing_get_phone_numbers_with_binary_media_type_returns_snake_case_binary_page(String mediaType) throws IOException {
+        when(phoneNumberService.getAllFor(0, 10)).thenReturn(getPhoneNumbersAsPageFor(0, 10));
+
+        byte[] body = webTestClient.get()
+                .uri("/phone-numbers")
+                .accept(MediaType.parseMediaType(mediaType))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(mediaType)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+
+        ObjectMapper binaryMapper = new ObjectMapper(MediaType.APPLICATION_CBOR_VALUE.equals(mediaType) ? new CBORFactory() : new SmileFactory());
+        JsonNode page = binaryMapper.readTree(body);
+        assertEquals(5, page.get("content").size());
+        assertEquals(5, page.get("total_records").asLong());
+        assertEquals(CUST_ONE_PHONE_ONE.getPhoneNumber(), page.get("content").get(0).get("phone_number").asText());
+    }
+
+    @Test
+    void testing_get_phone_numbers_without_total_leaves_out_total_pages_and_records() {
+        when(phoneNumberService.getAllWithoutTotalFor(0, 10)).thenReturn(Mono.just(PageDTO.of(List.of(CUST_ONE_PHONE_ONE), 0, 10)));
+
+        webTestClient.get()
+                .uri("/phone-numbers?with_total=false")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.content.length()").isEqualTo(1)
+                .jsonPath("$.last").isEqualTo(true)
+                .jsonPath("$.total_pages").doesNotExist()
+                .jsonPath("$.total_records").doesNotExist();
+
+        verify(phoneNumberService, never()).getAllFor(anyInt(), anyInt());
+    }
+
     @ParameterizedTest
     @ValueSource(ints = {-1, 0})
     void testing_get_phone_numbers_with_invalid_size_pagination_parameter_value_returns_bad_request_response(int size) {
@@ -108,6 +185,23 @@ class PhoneNumberControllerTest {
         verify(phoneNumberService, never()).getAllFor(anyInt(), anyInt());
     }
 
+    // The cursor page reads one phone number more than its size, which overflowed into a negative limit
+    @ParameterizedTest
+    @ValueSource(strings = {"page=0", "after="})
+    void testing_get_phone_numbers_with_too_large_size_pagination_parameter_value_returns_bad_request_response(String query) {
+        webTestClient.get()
+                .uri("/phone-numbers?" + query + "&size=" + Integer.MAX_VALUE)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Validation errors found.")
+                .jsonPath("$.errors.length()").isEqualTo(1)
+                .jsonPath("$.errors[0]").isEqualTo("Page size should be less than or equal to 1000.");
+
+        verify(phoneNumberService, never()).getAllFor(anyInt(), anyInt());
+        verify(phoneNumberService, never()).getAllAfter(anyString(), anyInt());
+    }
+
     @Test
     void testing_get_phone_numbers_with_invalid_page_pagination_parameter_value_returns_bad_request_response() {
         webTestClient.get()
@@ -122,6 +216,55 @@ class PhoneNumberControllerTest {
         verify(phoneNumberService, never()).getAllFor(anyInt(), anyInt());
     }
 
+    @Test
+    void testing_get_phone_numbers_with_cursor_parameter_returns_ok_response_with_next_cursor() {
+        String after = CursorPageDTO.encode(CUST_ONE_PHONE_ONE.getId());
+        CursorPageDTO<PhoneNumber> cursorPage = CursorPageDTO.of(List.of(CUST_ONE_PHONE_TWO, CUST_TWO_PHONE_ONE), 1, PhoneNumber::getId);
+        when(phoneNumberService.getAllAfter(after, 1)).thenReturn(Mono.just(cursorPage));
+
+        webTestClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/phone-numbers")
+                        .queryParam("after", after)
+                        .queryParam("size", 1)
+                        .build()
+                )  // Path
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.content.length()").isEqualTo(1)
+                .jsonPath("$.last").isEqualTo(false)
+                .jsonPath("$.next_cursor").isEqualTo(CursorPageDTO.encode(CUST_ONE_PHONE_TWO.getId()));
+
+        verify(phoneNumberService, never()).getAllFor(anyInt(), anyInt());
+    }
+
+    @Test
+    void testing_get_phone_numbers_with_empty_cursor_parameter_returns_first_page() {
+        when(phoneNumberService.getAllAfter("", 10)).thenReturn(Mono.just(CursorPageDTO.of(List.of(CUST_ONE_PHONE_ONE), 10, PhoneNumber::getId)));
+
+        webTestClient.get()
+                .uri("/phone-numbers?after=")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.content.length()").isEqualTo(1)
+                .jsonPath("$.last").isEqualTo(true)
+                .jsonPath("$.next_cursor").doesNotExist();
+    }
+
+    @Test
+    void testing_get_phone_numbers_with_invalid_cursor_parameter_returns_bad_request_response() {
+        when(phoneNumberService.getAllAfter(anyString(), anyInt())).thenReturn(Mono.error(new InvalidCursorException("Invalid pagination cursor.")));
+
+        webTestClient.get()
+                .uri("/phone-numbers?after=not-a-cursor")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Invalid pagination cursor.");
+    }
+
     @ParameterizedTest
     @MethodSource("getCustomerIdInputs")
     void testing_get_phone_numbers_by_customer_id_with_valid_records_in_database_returns_ok_response(long customerId, int expectedRecordsLength) {
@@ -162,6 +305,62 @@ class PhoneNumberControllerTest {
         verify(phoneNumberService, never()).getAllFor(anyInt());
     }
 
+    @Test
+    void testing_get_phone_numbers_by_customer_id_with_matching_etag_returns_not_modified_response() {
+        long customerId = 1;
+        when(phoneNumberService.getAllFor(customerId)).thenReturn(getPhoneNumbersAsFluxForCustomer(customerId));
+
+        String eTag = webTestClient.get()
+                .uri("/phone-numbers/customers/" + customerId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists(HttpHeaders.ETAG)
+                .returnResult(String.class)
+                .getResponseHeaders()
+                .getETag();
+
+        webTestClient.get()
+                .uri("/phone-numbers/customers/" + customerId)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void testing_get_phone_numbers_by_customer_id_with_stale_etag_returns_ok_response() {
+        long customerId = 1;
+        String staleETag = PhoneNumberETags.of(getPhoneNumbersAsFluxForCustomer(customerId).collectList().block());
+        PhoneNumber updated = new PhoneNumber();
+        updated.setId(CUST_ONE_PHONE_ONE.getId());
+        updated.setCustomerId(customerId);
+        updated.setActive(false);
+        updated.setVersion(CUST_ONE_PHONE_ONE.getVersion() + 1);
+        when(phoneNumberService.getAllFor(customerId)).thenReturn(Flux.just(updated, CUST_ONE_PHONE_TWO));
+
+        webTestClient.get()
+                .uri("/phone-numbers/customers/" + customerId)
+                .header(HttpHeaders.IF_NONE_MATCH, staleETag)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2);
+    }
+
+    @Test
+    void testing_get_phone_numbers_with_matching_etag_returns_not_modified_response() {
+        when(phoneNumberService.getAllFor(0, 10)).thenReturn(getPhoneNumbersAsPageFor(0, 10));
+        String eTag = PhoneNumberETags.of(getPhoneNumbersAsPageFor(0, 10).block());
+
+        webTestClient.get()
+                .uri("/phone-numbers")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, eTag)
+                .expectBody().isEmpty();
+    }
+
     @Test
     void testing_activate_phone_numbers_with_valid_input_returns_ok_response() {
         long phoneId = 1;
@@ -285,4 +484,247 @@ class PhoneNumberControllerTest {
 
         verify(phoneNumberService, never()).updateFor(anyLong(), anyBoolean());
     }
+
+    @Test
+    void testing_batch_activate_phone_numbers_returns_ok_response_with_result_per_id() {
+        when(phoneNumberService.updateFor(List.of(1L, 2L, 99L), true)).thenReturn(Flux.just(
+                BatchUpdateResultDTO.of(1L, BatchUpdateResultDTO.Status.ALREADY_IN_STATE),
+                BatchUpdateResultDTO.of(2L, BatchUpdateResultDTO.Status.UPDATED),
+                BatchUpdateResultDTO.of(99L, BatchUpdateResultDTO.Status.NOT_FOUND)));
+
+        webTestClient.post()
+                .uri("/phone-numbers/activation:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[1, 2, 99]")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[0].status").isEqualTo("ALREADY_IN_STATE")
+                .jsonPath("$[1].status").isEqualTo("UPDATED")
+                .jsonPath("$[2].id").isEqualTo(99)
+                .jsonPath("$[2].status").isEqualTo("NOT_FOUND");
+    }
+
+    @Test
+    void testing_batch_deactivate_phone_numbers_streams_results_as_ndjson() {
+        when(phoneNumberService.updateFor(List.of(1L, 2L), false)).thenReturn(Flux.just(
+                BatchUpdateResultDTO.of(1L, BatchUpdateResultDTO.Status.UPDATED),
+                BatchUpdateResultDTO.of(2L, BatchUpdateResultDTO.Status.UPDATED)));
+
+        webTestClient.post()
+                .uri("/phone-numbers/deactivation:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue("[1, 2]")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .value(body -> assertEquals(2, body.lines().count()));
+    }
+
+    @Test
+    void testing_get_phone_numbers_by_customer_ids_returns_phone_numbers_per_customer() {
+        when(phoneNumberService.getAllFor(List.of(2L, 1L))).thenReturn(Flux.just(
+                CustomerPhoneNumbersDTO.of(2L, List.of(CUST_TWO_PHONE_ONE)),
+                CustomerPhoneNumbersDTO.of(1L, List.of(CUST_ONE_PHONE_ONE, CUST_ONE_PHONE_TWO))));
+
+        webTestClient.get()
+                .uri("/phone-numbers/customers?ids=2,1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].customer_id").isEqualTo(2)
+                .jsonPath("$[0].phone_numbers.length()").isEqualTo(1)
+                .jsonPath("$[1].phone_numbers.length()").isEqualTo(2);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "1,a", "1,,2", "-1"})
+    void testing_get_phone_numbers_by_customer_ids_with_invalid_ids_returns_bad_request_response(String customerIds) {
+        webTestClient.get()
+                .uri("/phone-numbers/customers?ids=" + customerIds)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        verify(phoneNumberService, never()).getAllFor(anyList());
+    }
+
+    @Test
+    void testing_search_phone_number_returns_owner() {
+        when(phoneNumberService.searchFor("+61 411 993 721", false, 10))
+                .thenReturn(Flux.just(PhoneNumberOwnerDTO.of(1L, "0411993721", 1L)));
+
+        webTestClient.get()
+                // A URI variable is encoded strictly, the '+' of a literal query parameter would be decoded as a space
+                .uri(uriBuilder -> uriBuilder.path("/phone-numbers/search").queryParam("number", "{number}").build("+61 411 993 721"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].phone_number").isEqualTo("0411993721")
+                .jsonPath("$[0].customer_id").isEqualTo(1);
+    }
+
+    @Test
+    void testing_search_phone_number_prefix_returns_every_match() {
+        when(phoneNumberService.searchFor("0411", true, 5)).thenReturn(Flux.just(
+                PhoneNumberOwnerDTO.of(2L, "0411566778", 1L),
+                PhoneNumberOwnerDTO.of(1L, "0411993721", 1L)));
+
+        webTestClient.get()
+                .uri("/phone-numbers/search?number=0411&prefix=true&limit=5")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].id").isEqualTo(2);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"number=abc", "number=", "number=0411993721&limit=101", "number=1234567890123456"})
+    void testing_search_phone_number_with_invalid_parameters_returns_bad_request_response(String query) {
+        webTestClient.get()
+                .uri("/phone-numbers/search?" + query)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        verify(phoneNumberService, never()).searchFor(anyString(), anyBoolean(), anyInt());
+    }
+
+    @Test
+    void testing_export_phone_numbers_streams_ndjson_after_the_given_id() {
+        when(phoneNumberService.exportAfter(1L)).thenReturn(Flux.just(CUST_ONE_PHONE_TWO, CUST_TWO_PHONE_ONE));
+
+        webTestClient.get()
+                .uri("/phone-numbers/export?after_id=1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .value(body -> assertEquals(2, body.lines().count()));
+    }
+
+    @Test
+    void testing_export_phone_numbers_as_server_sent_events_resumes_after_last_event_id() {
+        when(phoneNumberService.exportAfter(2L)).thenReturn(Flux.just(CUST_TWO_PHONE_ONE));
+
+        webTestClient.get()
+                .uri("/phone-numbers/export")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", "2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .expectBody(String.class)
+                .value(body -> assertTrue(body.contains("id:" + CUST_TWO_PHONE_ONE.getId())));
+    }
+
+    @Test
+    void testing_changes_are_streamed_as_server_sent_events_after_last_event_id() {
+        PhoneNumberChangeDTO change = PhoneNumberChangeDTO.builder()
+                .eventId("k3v9x2f1q0ab-8")
+                .position(8L)
+                .id(CUST_ONE_PHONE_TWO.getId())
+                .customerId(CUST_ONE_PHONE_TWO.getCustomerId())
+                .active(true)
+                .build();
+        when(phoneNumberService.changesAfter("k3v9x2f1q0ab-7")).thenReturn(Flux.just(change));
+
+        webTestClient.get()
+                .uri("/phone-numbers/changes")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", "k3v9x2f1q0ab-7")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .expectBody(String.class)
+                .value(body -> {
+                    assertTrue(body.contains("id:k3v9x2f1q0ab-8"));
+                    assertTrue(body.contains("event:activation"));
+                    assertTrue(body.contains("\"customer_id\":" + CUST_ONE_PHONE_TWO.getCustomerId()));
+                    assertFalse(body.contains("event_id"));
+                    assertFalse(body.contains("position"));
+                });
+    }
+
+    @Test
+    void testing_changes_start_with_a_resync_event_when_the_last_event_id_is_not_known() {
+        PhoneNumberChangeDTO resync = PhoneNumberChangeDTO.builder()
+                .eventId("k3v9x2f1q0ab-8")
+                .position(8L)
+                .resync(true)
+                .build();
+        when(phoneNumberService.changesAfter("7")).thenReturn(Flux.just(resync));
+
+        webTestClient.get()
+                .uri("/phone-numbers/changes")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", "7")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .value(body -> {
+                    assertTrue(body.contains("id:k3v9x2f1q0ab-8"));
+                    assertTrue(body.contains("event:resync"));
+                    assertTrue(body.contains("data:The changes after the Last-Event-ID are not kept"));
+                    assertFalse(body.contains("event:activation"));
+                });
+    }
+
+    @Test
+    void testing_export_phone_numbers_with_negative_after_id_returns_bad_request_response() {
+        webTestClient.get()
+                .uri("/phone-numbers/export?after_id=-1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        verify(phoneNumberService, never()).exportAfter(anyLong());
+    }
+
+    @Test
+    void testing_batch_activate_with_empty_phone_number_ids_returns_bad_request_response() {
+        webTestClient.post()
+                .uri("/phone-numbers/activation:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[]")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Validation errors found.")
+                .jsonPath("$.errors[0]").isEqualTo("Phone number IDs should not be empty.");
+
+        verify(phoneNumberService, never()).updateFor(anyList(), anyBoolean());
+    }
+
+    @Test
+    void testing_get_phone_numbers_when_connection_pool_exhausted_returns_service_unavailable_response_with_retry_after() {
+        ConnectionPoolExhaustedException poolExhausted = new ConnectionPoolExhaustedException(
+                "No database connection available, try again later.", Duration.ofSeconds(3), null);
+        when(phoneNumberService.getAllFor(anyInt(), anyInt()))
+                .thenReturn(Mono.error(new DataAccessResourceFailureException("Failed to obtain R2DBC Connection", poolExhausted)));
+
+        webTestClient.get()
+                .uri("/phone-numbers")
+                .exchange()
+                .expectStatus().isEqualTo(503)
+                .expectHeader().valueEquals("Retry-After", "3")
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("No database connection available, try again later.");
+    }
+
+    @Test
+    void testing_get_phone_numbers_when_database_unreachable_returns_internal_server_error_response() {
+        when(phoneNumberService.getAllFor(anyInt(), anyInt()))
+                .thenReturn(Mono.error(new DataAccessResourceFailureException("Failed to obtain R2DBC Connection")));
+
+        webTestClient.get()
+                .uri("/phone-numbers")
+                .exchange()
+                .expectStatus().isEqualTo(500);
+    }
 }
@@ -0,0 +1,118 @@
+package au.com.belong.customerphoneapi.filter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AccessLogRingBufferTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testing_records_are_drained_as_json_lines_in_order() {
+        AccessLogRingBuffer buffer = new AccessLogRingBuffer(4);
+        assertTrue(buffer.offer(0L, "GET", "/phone-numbers", 200, 1_500_000L, 42L, "a1"));
+        assertTrue(buffer.offer(0L, "PUT", "/phone-numbers/{id}/\"activate\"", 404, 2_000L, 0L, "a2"));
+
+        StringBuilder out = new StringBuilder();
+        assertEquals(2, buffer.drainTo(out, 10));
+        assertEquals("{\"timestamp\":\"1970-01-01T00:00:00Z\",\"method\":\"GET\",\"path\":\"/phone-numbers\",\"status\":200,"
+                        + "\"latency_us\":1500,\"bytes\":42,\"request_id\":\"a1\"}\n"
+                        + "{\"timestamp\":\"1970-01-01T00:00:00Z\",\"method\":\"PUT\",\"path\":\"/phone-numbers/{id}/\\\"activate\\\"\","
+                        + "\"status\":404,\"latency_us\":2,\"bytes\":0,\"request_id\":\"a2\"}\n",
+                out.toString());
+        assertEquals(0, buffer.drainTo(out, 10));
+    }
+
+    @Test
+    void testing_records_over_the_capacity_are_dropped_until_drained() {
+        AccessLogRingBuffer buffer = new AccessLogRingBuffer(2);
+        assertTrue(buffer.offer(0L, "GET", "/", 200, 0L, 0L, "1"));
+        assertTrue(buffer.offer(0L, "GET", "/", 200, 0L, 0L, "2"));
+        assertFalse(buffer.offer(0L, "GET", "/", 200, 0L, 0L, "3"));
+        assertEquals(1, buffer.dropped());
+
+        assertEquals(1, buffer.drainTo(new StringBuilder(), 1));
+        assertTrue(buffer.offer(0L, "GET", "/", 200, 0L, 0L, "4"));
+
+        StringBuilder out = new StringBuilder();
+        assertEquals(2, buffer.drainTo(out, 10));
+        assertTrue(out.toString().contains("\"request_id\":\"2\""));
+        assertTrue(out.toString().contains("\"request_id\":\"4\""));
+    }
+
+    @Test
+    void testing_capacity_must_be_a_power_of_two() {
+        assertThrows(IllegalArgumentException.class, () -> new AccessLogRingBuffer(100));
+    }
+
+    @Test
+    void testing_concurrent_requests_are_recorded_or_counted_as_dropped() throws Exception {
+        AccessLogRingBuffer buffer = new AccessLogRingBuffer(1024);
+        Path file = directory.resolve("access.log");
+        AccessLogWriter writer = new AccessLogWriter(buffer, file, Long.MAX_VALUE, 1, 64, Duration.ofMillis(1));
+        writer.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch done = new CountDownLatch(4);
+        IntStream.range(0, 4).forEach(thread -> executor.execute(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                buffer.offer(0L, "GET", "/phone-numbers", 200, 0L, 0L, thread + "-" + i);
+            }
+            done.countDown();
+        }));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        writer.stop(Duration.ofSeconds(5));
+
+        List<String> lines = Files.readAllLines(file);
+        long recorded = lines.stream().filter(line -> line.contains("\"request_id\"")).count();
+        long reportedDropped = lines.stream()
+                .filter(line -> line.contains("\"dropped\""))
+                .mapToLong(line -> Long.parseLong(line.replaceAll(".*\"dropped\":(\\d+).*", "$1")))
+                .sum();
+        assertEquals(40_000, recorded + buffer.dropped());
+        assertEquals(buffer.dropped(), reportedDropped);
+    }
+
+    @Test
+    void testing_file_is_rolled_over_its_maximum_size() throws IOException {
+        AccessLogRingBuffer buffer = new AccessLogRingBuffer(4);
+        Path file = directory.resolve("access.log");
+        AccessLogWriter writer = new AccessLogWriter(buffer, file, 150, 2, 1, Duration.ofMillis(1));
+
+        for (int i = 0; i < 4; i++) {
+            buffer.offer(0L, "GET", "/phone-numbers", 200, 0L, 0L, String.valueOf(i));
+            writer.writeBatch();
+        }
+        writer.close();
+
+        // Each line is over half the maximum size, so every file holds one line and the oldest one is deleted
+        assertEquals(List.of("3"), requestIds(file));
+        assertEquals(List.of("2"), requestIds(directory.resolve("access.log.1")));
+        assertEquals(List.of("1"), requestIds(directory.resolve("access.log.2")));
+        assertFalse(Files.exists(directory.resolve("access.log.3")));
+    }
+
+    private static List<String> requestIds(Path file) throws IOException {
+        return Files.readAllLines(file).stream()
+                .map(line -> line.replaceAll(".*\"request_id\":\"([^\"]*)\".*", "$1"))
+                .toList();
+    }
+}
@@ -0,0 +1,99 @@
+package au.com.belong.customerphoneapi.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RateLimitBucketsTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testing_client_bursts_its_capacity_then_waits_for_the_refill() {
+        RateLimitBuckets buckets = new RateLimitBuckets(List.of(new RateLimitBuckets.Limit(3, 2)), 10);
+        long now = SECOND;
+
+        assertEquals(0L, buckets.tryAcquire("a", 0, now));
+        assertEquals(0L, buckets.tryAcquire("a", 0, now));
+        assertEquals(0L, buckets.tryAcquire("a", 0, now));
+        assertEquals(SECOND / 2, buckets.tryAcquire("a", 0, now));
+        assertEquals(SECOND / 4, buckets.tryAcquire("a", 0, now + SECOND / 4));
+
+        assertEquals(0L, buckets.tryAcquire("a", 0, now + SECOND / 2));
+        assertTrue(buckets.tryAcquire("a", 0, now + SECOND / 2) > 0);
+    }
+
+    @Test
+    void testing_clients_and_routes_have_buckets_of_their_own() {
+        RateLimitBuckets buckets = new RateLimitBuckets(
+                List.of(new RateLimitBuckets.Limit(1, 1), new RateLimitBuckets.Limit(1, 1)), 10);
+
+        assertEquals(0L, buckets.tryAcquire("a", 0, SECOND));
+        assertTrue(buckets.tryAcquire("a", 0, SECOND) > 0);
+        assertEquals(0L, buckets.tryAcquire("a", 1, SECOND));
+        assertEquals(0L, buckets.tryAcquire("b", 0, SECOND));
+    }
+
+    @Test
+    void testing_new_clients_share_overflow_buckets_once_maximum_is_reached() {
+        RateLimitBuckets buckets = new RateLimitBuckets(List.of(new RateLimitBuckets.Limit(1, 1)), 1);
+
+        assertEquals(0L, buckets.tryAcquire("a", 0, SECOND));
+        assertEquals(0L, buckets.tryAcquire("b", 0, SECOND));
+        assertTrue(buckets.tryAcquire("c", 0, SECOND) > 0);
+        assertEquals(1, buckets.clients());
+        assertEquals(2L, buckets.overflowed());
+    }
+
+    @Test
+    void testing_only_clients_with_refilled_buckets_are_evicted() {
+        RateLimitBuckets buckets = new RateLimitBuckets(List.of(new RateLimitBuckets.Limit(2, 1)), 10);
+        buckets.tryAcquire("idle", 0, SECOND);
+        buckets.tryAcquire("busy", 0, 2 * SECOND);
+
+        assertEquals(1, buckets.evictIdle(2 * SECOND));
+        assertEquals(1, buckets.clients());
+
+        // The client evicted with full buckets gets its whole capacity back, as it would have
+        assertEquals(0L, buckets.tryAcquire("idle", 0, 2 * SECOND));
+        assertEquals(0L, buckets.tryAcquire("idle", 0, 2 * SECOND));
+        assertEquals(0L, buckets.tryAcquire("busy", 0, 2 * SECOND));
+        assertTrue(buckets.tryAcquire("busy", 0, 2 * SECOND) > 0);
+    }
+
+    @Test
+    void testing_limit_must_have_positive_capacity_and_refill() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimitBuckets.Limit(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimitBuckets.Limit(1, 0));
+    }
+
+    @Test
+    void testing_concurrent_requests_never_take_more_than_the_capacity() throws InterruptedException {
+        RateLimitBuckets buckets = new RateLimitBuckets(List.of(new RateLimitBuckets.Limit(1000, 1)), 10);
+        AtomicInteger allowed = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch done = new CountDownLatch(8);
+        IntStream.range(0, 8).forEach(thread -> executor.execute(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                if (buckets.tryAcquire("a", 0, SECOND) == 0L) {
+                    allowed.incrementAndGet();
+                }
+            }
+            done.countDown();
+        }));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(1000, allowed.get());
+    }
+}
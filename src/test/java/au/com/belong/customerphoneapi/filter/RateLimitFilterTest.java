@@ -0,0 +1,112 @@
+package au.com.belong.customerphoneapi.filter;
+
+import au.com.belong.customerphoneapi.controller.PhoneNumberController;
+import au.com.belong.customerphoneapi.service.PhoneNumberService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.util.UUID;
+
+import static au.com.belong.customerphoneapi.PhoneNumberFixtures.getPhoneNumbersAsFluxForCustomer;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * The rate limit in front of the controller, 2 requests per client and route that are not refilled within a test.
+ */
+@WebFluxTest(controllers = PhoneNumberController.class, properties = {
+        "phone-api.rate-limit.enabled=true",
+        "phone-api.rate-limit.capacity=2",
+        "phone-api.rate-limit.refill-per-second=0.01",
+        "phone-api.rate-limit.route-limits="})
+class RateLimitFilterTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private PhoneNumberService phoneNumberService;
+
+    // Each test is a new client, the buckets are kept by the filter for the whole context
+    private String apiKey;
+
+    @BeforeEach
+    void beforeEachTest() {
+        apiKey = UUID.randomUUID().toString();
+        when(phoneNumberService.getAllFor(anyLong())).thenReturn(getPhoneNumbersAsFluxForCustomer(1L));
+        when(phoneNumberService.searchFor(anyString(), anyBoolean(), anyInt())).thenReturn(Flux.empty());
+    }
+
+    @Test
+    void testing_requests_over_the_limit_are_answered_with_too_many_requests_and_retry_after() {
+        getCustomer(apiKey).expectStatus().isOk();
+        getCustomer(apiKey).expectStatus().isOk();
+
+        getCustomer(apiKey)
+                .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "100")
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Too many requests to GET /phone-numbers/customers/{customer_id}, retry later.")
+                .jsonPath("$.request_id").exists();
+    }
+
+    @Test
+    void testing_limit_applies_per_client_and_route() {
+        getCustomer(apiKey).expectStatus().isOk();
+        getCustomer(apiKey).expectStatus().isOk();
+        getCustomer(apiKey).expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+
+        webTestClient.get()
+                .uri("/phone-numbers/search?number=0488992263")
+                .header("X-Api-Key", apiKey)
+                .exchange()
+                .expectStatus().isOk();
+        getCustomer(UUID.randomUUID().toString()).expectStatus().isOk();
+    }
+
+    @Test
+    void testing_encoded_path_counts_on_the_route_of_its_template() {
+        getSearch("/phone-numbers/search").expectStatus().isOk();
+        getSearch("/phone-numbers/search").expectStatus().isOk();
+
+        getSearch("/phone-numbers/%73earch")
+                .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Too many requests to GET /phone-numbers/search, retry later.");
+    }
+
+    @Test
+    void testing_requests_without_client_key_are_not_limited() {
+        for (int i = 0; i < 5; i++) {
+            webTestClient.get()
+                    .uri("/phone-numbers/customers/1")
+                    .exchange()
+                    .expectStatus().isOk();
+        }
+    }
+
+    private WebTestClient.ResponseSpec getSearch(String path) {
+        return webTestClient.get()
+                .uri(URI.create(path + "?number=0488992263"))
+                .header("X-Api-Key", apiKey)
+                .exchange();
+    }
+
+    private WebTestClient.ResponseSpec getCustomer(String apiKey) {
+        return webTestClient.get()
+                .uri("/phone-numbers/customers/1")
+                .header("X-Api-Key", apiKey)
+                .exchange();
+    }
+}
@@ -0,0 +1,124 @@
+package au.com.belong.customerphoneapi.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReactiveMethodTimerTest {
+
+    public interface Lookup {
+        Mono<String> find(long id);
+
+        Flux<Long> findAll(int count);
+
+        Flux<Long> findAll(String ids);
+
+        String name();
+    }
+
+    static class SlowLookup implements Lookup {
+
+        @Override
+        public Mono<String> find(long id) {
+            return id > 0
+                    ? Mono.just("phone-" + id).delayElement(Duration.ofMillis(50))
+                    : Mono.error(new IllegalArgumentException("Invalid ID"));
+        }
+
+        @Override
+        public Flux<Long> findAll(int count) {
+            return Flux.interval(Duration.ofMillis(10)).take(count);
+        }
+
+        @Override
+        public Flux<Long> findAll(String ids) {
+            return Flux.just(ids.split(",")).map(Long::parseLong);
+        }
+
+        @Override
+        public String name() {
+            return "slow";
+        }
+    }
+
+    private MeterRegistry meterRegistry;
+
+    private Lookup lookup;
+
+    @BeforeEach
+    void beforeEachTest() {
+        meterRegistry = new SimpleMeterRegistry();
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        ProxyFactory proxyFactory = new ProxyFactory(new SlowLookup());
+        proxyFactory.addAdvice(new ReactiveMethodTimer("lookup.invocations", "Lookups", beanFactory.getBeanProvider(MeterRegistry.class)));
+        lookup = (Lookup) proxyFactory.getProxy();
+    }
+
+    @Test
+    void testing_mono_is_timed_from_subscription_to_completion() {
+        Mono<String> assembled = lookup.find(1L);
+        assertEquals(0, meterRegistry.find("lookup.invocations").tag("state", "SUCCESS").timer().count());
+
+        StepVerifier.create(assembled)
+                .expectNext("phone-1")
+                .verifyComplete();
+
+        Timer timer = timer("find(long)", "SUCCESS");
+        assertEquals(1, timer.count());
+        assertTrue(timer.totalTime(TimeUnit.MILLISECONDS) >= 50);
+    }
+
+    @Test
+    void testing_errors_and_cancellations_are_timed_by_state() {
+        StepVerifier.create(lookup.find(0L))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(lookup.findAll(100))
+                .expectNextCount(2)
+                .thenCancel()
+                .verify();
+
+        assertEquals(1, timer("find(long)", "ERROR").count());
+        assertEquals(1, timer("findAll(int)", "CANCELED").count());
+        assertEquals(0, timer("findAll(int)", "SUCCESS").count());
+    }
+
+    @Test
+    void testing_overloaded_methods_are_timed_apart() {
+        StepVerifier.create(lookup.findAll(2)).expectNextCount(2).verifyComplete();
+        StepVerifier.create(lookup.findAll("1,2,3")).expectNextCount(3).verifyComplete();
+        StepVerifier.create(lookup.findAll("4")).expectNextCount(1).verifyComplete();
+
+        assertEquals(1, timer("findAll(int)", "SUCCESS").count());
+        assertEquals(2, timer("findAll(String)", "SUCCESS").count());
+    }
+
+    @Test
+    void testing_non_reactive_methods_are_not_timed() {
+        assertEquals("slow", lookup.name());
+
+        assertTrue(meterRegistry.getMeters().isEmpty());
+    }
+
+    private Timer timer(String method, String state) {
+        return meterRegistry.get("lookup.invocations")
+                .tag("class", "SlowLookup")
+                .tag("method", method)
+                .tag("state", state)
+                .timer();
+    }
+}
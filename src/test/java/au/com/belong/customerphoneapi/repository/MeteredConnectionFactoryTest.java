@@ -0,0 +1,77 @@
+package au.com.belong.customerphoneapi.repository;
+
+import au.com.belong.customerphoneapi.exception.ConnectionPoolExhaustedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.R2dbcTimeoutException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.doReturn;
+
+@ExtendWith(MockitoExtension.class)
+public class MeteredConnectionFactoryTest {
+
+    @Mock
+    private ConnectionFactory connectionPool;
+
+    @Mock
+    private Connection connection;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private MeteredConnectionFactory connectionFactory;
+
+    @BeforeEach
+    void beforeEachTest() {
+        meterRegistry = new SimpleMeterRegistry();
+        connectionFactory = new MeteredConnectionFactory(connectionPool, "test", Duration.ofSeconds(3), meterRegistry);
+    }
+
+    @Test
+    void testing_acquiring_connection_records_acquire_latency() {
+        doReturn(Mono.just(connection)).when(connectionPool).create();
+
+        StepVerifier.create(connectionFactory.create())
+                .expectNext(connection)
+                .verifyComplete();
+
+        assertEquals(1L, meterRegistry.get("r2dbc.pool.acquire").tag("name", "test").timer().count());
+        assertEquals(0.0, meterRegistry.get("r2dbc.pool.acquire.timeouts").counter().count());
+    }
+
+    @Test
+    void testing_acquire_timeout_counts_timeout_and_signals_pool_exhausted_error() {
+        doReturn(Mono.error(new R2dbcTimeoutException("Connection acquisition timed out"))).when(connectionPool).create();
+
+        StepVerifier.create(connectionFactory.create())
+                .expectErrorMatches(ex -> ex instanceof ConnectionPoolExhaustedException exhausted
+                        && Duration.ofSeconds(3).equals(exhausted.getRetryAfter()))
+                .verify();
+
+        assertEquals(1.0, meterRegistry.get("r2dbc.pool.acquire.timeouts").tag("name", "test").counter().count());
+        assertEquals(0L, meterRegistry.get("r2dbc.pool.acquire").timer().count());
+    }
+
+    @Test
+    void testing_other_connection_errors_are_not_counted_as_timeouts() {
+        RuntimeException databaseUnreachableError = new RuntimeException("Database unreachable");
+        doReturn(Mono.error(databaseUnreachableError)).when(connectionPool).create();
+
+        StepVerifier.create(connectionFactory.create())
+                // verifying same exception instance
+                .expectErrorMatches(ex -> databaseUnreachableError == ex)
+                .verify();
+
+        assertEquals(0.0, meterRegistry.get("r2dbc.pool.acquire.timeouts").counter().count());
+    }
+}
@@ -0,0 +1,155 @@
+package au.com.belong.customerphoneapi.repository;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Statement;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.support.R2dbcRepositoryFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Runs every derived query of {@link PhoneNumberRepository}, captures the SQL it sends to the database and fails when
+ * the H2 plan of a filtering query falls back to a table scan, i.e. a query is missing an index migration.
+ * Queries without a <code>WHERE</code> clause read the whole table by design and are not checked.
+ */
+@DataR2dbcTest
+@ActiveProfiles("test")
+public class PhoneNumberRepositoryQueryPlanTest {
+    private static final Set<Class<?>> REPOSITORY_INTERFACES = Set.of(PhoneNumberRepository.class, BaseCrudRepository.class);
+    private static final Map<Class<?>, Object> SAMPLE_ARGUMENTS = Map.of(
+            long.class, 1L,
+            String.class, "0488992263",
+            Collection.class, List.of(1L, 2L),
+            Limit.class, Limit.of(10),
+            PageRequest.class, PageRequest.of(0, 10));
+    private static final Pattern BIND_MARKER = Pattern.compile("\\$(\\d+)");
+
+    @Autowired
+    private ConnectionFactory connectionFactory;
+
+    @Test
+    void testing_derived_queries_use_an_index_instead_of_a_table_scan() throws Exception {
+        List<RecordedStatement> statements = new CopyOnWriteArrayList<>();
+        PhoneNumberRepository repository = new R2dbcRepositoryFactory(new R2dbcEntityTemplate(recording(connectionFactory, statements)))
+                .getRepository(PhoneNumberRepository.class);
+
+        for (Method method : derivedQueryMethods()) {
+            statements.clear();
+            Object[] arguments = Arrays.stream(method.getParameterTypes()).map(PhoneNumberRepositoryQueryPlanTest::sampleOf).toArray();
+            Flux.from((Publisher<?>) method.invoke(repository, arguments)).then().block();
+
+            assertFalse(statements.isEmpty(), method.getName() + " did not run any statement");
+            for (RecordedStatement statement : statements) {
+                String sql = statement.inlined();
+                if (sql.toUpperCase().contains(" WHERE ")) {
+                    String plan = explain(sql);
+                    assertFalse(plan.contains("tableScan"), method.getName() + " scans the table: " + plan);
+                }
+            }
+        }
+    }
+
+    private List<Method> derivedQueryMethods() {
+        return Arrays.stream(PhoneNumberRepository.class.getMethods())
+                .filter(method -> REPOSITORY_INTERFACES.contains(method.getDeclaringClass()))
+                .filter(method -> !method.isDefault() && !method.isAnnotationPresent(Query.class))
+                .toList();
+    }
+
+    private static Object sampleOf(Class<?> type) {
+        Object sample = SAMPLE_ARGUMENTS.get(type);
+        assertNotNull(sample, "No sample argument for " + type + ", add one to check the query plan");
+        return sample;
+    }
+
+    private String explain(String sql) {
+        return DatabaseClient.create(connectionFactory)
+                .sql("EXPLAIN " + sql)
+                .map(row -> row.get(0, String.class))
+                .one()
+                .block();
+    }
+
+    // Records the SQL and the bind values of every statement created on the connections of the factory
+    private static ConnectionFactory recording(ConnectionFactory target, List<RecordedStatement> statements) {
+        return proxy(ConnectionFactory.class, target, (method, args, result) -> "create".equals(method.getName())
+                ? Mono.from((Publisher<Connection>) result).map(connection -> proxy(Connection.class, connection,
+                        (connectionMethod, connectionArgs, statement) -> "createStatement".equals(connectionMethod.getName())
+                                ? recording((String) connectionArgs[0], (Statement) statement, statements)
+                                : statement))
+                : result);
+    }
+
+    private static Statement recording(String sql, Statement target, List<RecordedStatement> statements) {
+        RecordedStatement recorded = new RecordedStatement(sql, new TreeMap<>());
+        Statement[] self = new Statement[1];
+        self[0] = proxy(Statement.class, target, (method, args, result) -> {
+            if ("bind".equals(method.getName()) && args[0] instanceof Integer index) {
+                recorded.bindings().put(index, args[1]);
+            }
+            if ("execute".equals(method.getName())) {
+                statements.add(recorded);
+            }
+            return result == target ? self[0] : result;
+        });
+        return self[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, Interceptor interceptor) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            try {
+                return interceptor.intercept(method, args, method.invoke(target, args));
+            } catch (InvocationTargetException exception) {
+                throw exception.getCause();
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface Interceptor {
+        Object intercept(Method method, Object[] args, Object result);
+    }
+
+    private record RecordedStatement(String sql, Map<Integer, Object> bindings) {
+
+        // The SQL with the $n bind markers replaced by the bound values, so that it can be explained on its own
+        String inlined() {
+            Matcher matcher = BIND_MARKER.matcher(sql);
+            StringBuilder inlined = new StringBuilder();
+            while (matcher.find()) {
+                Object value = bindings.get(Integer.parseInt(matcher.group(1)) - 1);
+                String literal = value instanceof CharSequence ? "'" + value.toString().replace("'", "''") + "'" : String.valueOf(value);
+                matcher.appendReplacement(inlined, Matcher.quoteReplacement(literal));
+            }
+            matcher.appendTail(inlined);
+            return inlined.toString();
+        }
+    }
+}
@@ -4,11 +4,15 @@ import au.com.belong.customerphoneapi.domain.PhoneNumber;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 
+import java.util.Comparator;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -34,6 +38,33 @@ public class PhoneNumberRepositoryTest {
                 .verifyComplete();
     }
 
+    @Test
+    void testing_fetching_phone_numbers_of_several_customers_from_db_with_one_query() {
+        Mono<List<PhoneNumber>> phoneNumbersStream = repository
+                .findByCustomerIdIn(List.of(1L, 2L, 99L))
+                .collectList();
+
+        StepVerifier
+                .create(phoneNumbersStream)
+                .assertNext(phones -> {
+                    assertEquals(4, phones.size());
+                    assertEquals(3, phones.stream().filter(phone -> phone.getCustomerId() == 1L).count());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_fetching_phone_numbers_after_id_from_db_with_keyset_pagination() {
+        Mono<List<PhoneNumber>> phoneNumbersStream = repository
+                .findAllByIdGreaterThanOrderByIdAsc(1L, Limit.of(2))
+                .collectList();
+
+        StepVerifier
+                .create(phoneNumbersStream)
+                .assertNext(phones -> assertEquals(List.of(2L, 3L), phones.stream().map(PhoneNumber::getId).toList()))
+                .verifyComplete();
+    }
+
     @Test
     void testing_updating_phone_number_activation_storing_to_db() {
         Mono<PhoneNumber> phoneNumberMono = repository.findById(1L)
@@ -63,4 +94,93 @@ public class PhoneNumberRepositoryTest {
                 .assertNext(phone -> assertFalse(phone.isActive()))
                 .verifyComplete();
     }
+
+    @Test
+    void testing_batch_updating_phone_number_activation_returns_only_changed_rows() {
+        Mono<List<Long>> updatedIds = repository.updateActiveWhereIdIn(List.of(3L, 4L, 999L), true)
+                .thenMany(repository.updateActiveWhereIdIn(List.of(3L, 4L, 999L), false))
+                .map(PhoneNumber::getId)
+                .sort()
+                .collectList();
+
+        StepVerifier
+                .create(updatedIds)
+                .assertNext(ids -> assertEquals(List.of(3L, 4L), ids))
+                .verifyComplete();
+
+        StepVerifier
+                .create(repository.updateActiveWhereIdIn(List.of(3L, 4L), false))
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_mixed_activation_and_deactivation_returns_only_changed_rows_in_their_new_state() {
+        Mono<List<PhoneNumber>> updated = repository.updateActiveWhereIdIn(List.of(3L, 4L), false)
+                .thenMany(repository.updateActiveWhereIdIn(List.of(4L, 999L), List.of(3L)))
+                .thenMany(repository.updateActiveWhereIdIn(List.of(3L), List.of(4L, 999L)))
+                .sort(Comparator.comparingLong(PhoneNumber::getId))
+                .collectList();
+
+        StepVerifier
+                .create(updated)
+                .assertNext(phones -> {
+                    assertEquals(List.of(3L, 4L), phones.stream().map(PhoneNumber::getId).toList());
+                    assertTrue(phones.get(0).isActive());
+                    assertFalse(phones.get(1).isActive());
+                })
+                .verifyComplete();
+
+        StepVerifier
+                .create(repository.updateActiveWhereIdIn(List.of(3L), false).count())
+                .expectNext(1L)
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_conditional_update_of_phone_number_activation_changes_row_once_under_parallel_toggles() {
+        long phoneId = 4L;
+        Mono<Long> changedRows = repository.updateActiveWhereId(phoneId, false)
+                .then(Flux.range(0, 32)
+                        .flatMap(i -> Mono.defer(() -> repository.updateActiveWhereId(phoneId, true))
+                                .subscribeOn(Schedulers.boundedElastic()))
+                        .count());
+
+        StepVerifier
+                .create(changedRows)
+                .expectNext(1L)
+                .verifyComplete();
+
+        StepVerifier
+                .create(repository.updateActiveWhereId(phoneId, false))
+                .assertNext(phone -> assertFalse(phone.isActive()))
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_conditional_update_of_phone_number_activation_increments_its_version() {
+        long phoneId = 2L;
+        Mono<List<Long>> versions = repository.findById(phoneId)
+                .flatMapMany(phone -> Flux.concat(
+                        Mono.just(phone),
+                        repository.updateActiveWhereId(phoneId, !phone.isActive()),
+                        repository.updateActiveWhereId(phoneId, phone.isActive())))
+                .map(PhoneNumber::getVersion)
+                .collectList();
+
+        StepVerifier
+                .create(versions)
+                .assertNext(phoneVersions -> {
+                    assertEquals(3, phoneVersions.size());
+                    assertEquals(phoneVersions.get(0) + 1, phoneVersions.get(1));
+                    assertEquals(phoneVersions.get(0) + 2, phoneVersions.get(2));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_conditional_update_of_phone_number_activation_returns_empty_when_not_found() {
+        StepVerifier
+                .create(repository.updateActiveWhereId(999L, true))
+                .verifyComplete();
+    }
 }
@@ -0,0 +1,137 @@
+package au.com.belong.customerphoneapi.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+
+@ExtendWith(MockitoExtension.class)
+public class ReadReplicaRoutingConnectionFactoryTest {
+    private static final Clock CLOCK = Clock.fixed(Instant.ofEpochMilli(10_000), ZoneOffset.UTC);
+
+    @Mock
+    private ConnectionFactory primary;
+
+    @Mock
+    private ConnectionFactory firstReplicaPool;
+
+    @Mock
+    private ConnectionFactory secondReplicaPool;
+
+    @Mock
+    private Connection primaryConnection;
+
+    @Mock
+    private Connection firstReplicaConnection;
+
+    @Mock
+    private Connection secondReplicaConnection;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ReadReplica firstReplica;
+
+    private ReadReplica secondReplica;
+
+    private ReadReplicaRoutingConnectionFactory connectionFactory;
+
+    @BeforeEach
+    void beforeEachTest() {
+        meterRegistry = new SimpleMeterRegistry();
+        firstReplica = new ReadReplica("replica-0", firstReplicaPool, Duration.ofSeconds(5), true, CLOCK);
+        secondReplica = new ReadReplica("replica-1", secondReplicaPool, Duration.ofSeconds(5), true, CLOCK);
+        connectionFactory = new ReadReplicaRoutingConnectionFactory(primary, List.of(firstReplica, secondReplica), meterRegistry);
+    }
+
+    @Test
+    void testing_queries_not_marked_read_only_run_on_primary() {
+        firstReplica.synced(9_000);
+        secondReplica.synced(9_000);
+        doReturn(Mono.just(primaryConnection)).when(primary).create();
+
+        StepVerifier.create(Mono.from(connectionFactory.create()))
+                .expectNext(primaryConnection)
+                .verifyComplete();
+
+        assertEquals(1.0, routes("primary", "read-write"));
+    }
+
+    @Test
+    void testing_read_only_queries_run_on_replicas_in_turn() {
+        firstReplica.synced(9_000);
+        secondReplica.synced(9_000);
+        doReturn(Mono.just(firstReplicaConnection)).when(firstReplicaPool).create();
+        doReturn(Mono.just(secondReplicaConnection)).when(secondReplicaPool).create();
+
+        StepVerifier.create(DatabaseRouting.onReplica(Mono.from(connectionFactory.create())))
+                .expectNext(firstReplicaConnection)
+                .verifyComplete();
+        StepVerifier.create(DatabaseRouting.onReplica(Mono.from(connectionFactory.create())))
+                .expectNext(secondReplicaConnection)
+                .verifyComplete();
+
+        assertEquals(1.0, routes("replica-0", "read"));
+        assertEquals(1.0, routes("replica-1", "read"));
+    }
+
+    @Test
+    void testing_read_only_queries_skip_replicas_behind_last_write_of_client() {
+        firstReplica.synced(8_000);
+        secondReplica.synced(9_500);
+        doReturn(Mono.just(secondReplicaConnection)).when(secondReplicaPool).create();
+
+        StepVerifier.create(DatabaseRouting.onReplica(Mono.from(connectionFactory.create()))
+                        .contextWrite(context -> DatabaseRouting.withLastWrite(context, 9_000)))
+                .expectNext(secondReplicaConnection)
+                .verifyComplete();
+
+        assertEquals(0.0, routes("replica-0", "read"));
+        assertEquals(1.0, routes("replica-1", "read"));
+    }
+
+    @Test
+    void testing_read_only_queries_run_on_primary_when_no_replica_caught_up() {
+        firstReplica.synced(8_000);
+        doReturn(Mono.just(primaryConnection)).when(primary).create();
+
+        StepVerifier.create(DatabaseRouting.onReplica(Mono.from(connectionFactory.create()))
+                        .contextWrite(context -> DatabaseRouting.withLastWrite(context, 9_000)))
+                .expectNext(primaryConnection)
+                .verifyComplete();
+
+        assertEquals(1.0, routes("primary", "replica-behind"));
+    }
+
+    @Test
+    void testing_replica_lag_is_published_once_synchronized() {
+        assertTrue(Double.isNaN(lag("replica-0")));
+
+        firstReplica.synced(9_000);
+
+        assertEquals(1_000.0, lag("replica-0"));
+    }
+
+    private double routes(String target, String reason) {
+        return meterRegistry.get("phone.api.database.routes").tag("target", target).tag("reason", reason).counter().count();
+    }
+
+    private double lag(String replica) {
+        return meterRegistry.get("phone.api.database.replica.lag").tag("replica", replica).gauge().value();
+    }
+}
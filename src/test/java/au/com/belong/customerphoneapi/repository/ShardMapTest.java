@@ -0,0 +1,96 @@
+package au.com.belong.customerphoneapi.repository;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardMapTest {
+
+    @Test
+    void testing_consecutive_customers_spread_over_all_buckets() {
+        long usedBuckets = LongStream.rangeClosed(1, 1000).map(ShardMap::bucketOf).distinct().count();
+
+        assertEquals(ShardMap.BUCKETS, usedBuckets);
+    }
+
+    @Test
+    void testing_unassigned_buckets_are_on_first_shard() {
+        ShardMap shardMap = new ShardMap(3, Map.of(5, 2));
+
+        assertEquals(0, shardMap.shardOf(4));
+        assertEquals(2, shardMap.shardOf(5));
+        assertEquals(2, shardMap.balancedShardOf(5));
+        assertEquals(0, shardMap.balancedShardOf(6));
+    }
+
+    @Test
+    void testing_assignment_to_unknown_shard_is_rejected() {
+        assertThrows(IllegalStateException.class, () -> new ShardMap(2, Map.of(5, 2)));
+    }
+
+    @Test
+    void testing_fenced_bucket_holds_its_writes_until_released_to_new_shard() {
+        ShardMap shardMap = new ShardMap(2, Map.of());
+        StepVerifier.create(shardMap.fence(7, Duration.ofSeconds(1))).verifyComplete();
+        assertTrue(shardMap.isMoving(7));
+
+        StepVerifier.create(shardMap.write(List.of(7), () -> Flux.just(shardMap.shardOf(7))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(50))
+                .then(() -> shardMap.release(7, 1))
+                .expectNext(1)
+                .verifyComplete();
+        assertFalse(shardMap.isMoving(7));
+    }
+
+    @Test
+    void testing_fence_waits_for_running_writes_of_bucket() {
+        ShardMap shardMap = new ShardMap(2, Map.of());
+        Sinks.Empty<Void> runningWrite = Sinks.empty();
+        shardMap.write(List.of(7), () -> runningWrite.asMono().flux()).subscribe();
+
+        StepVerifier.create(shardMap.fence(7, Duration.ofSeconds(1)))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(50))
+                .then(runningWrite::tryEmitEmpty)
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_fence_gives_up_and_releases_bucket_when_writes_do_not_complete() {
+        ShardMap shardMap = new ShardMap(2, Map.of());
+        shardMap.write(List.of(7), () -> Sinks.<Void>empty().asMono().flux()).subscribe();
+
+        StepVerifier.create(shardMap.fence(7, Duration.ofMillis(50)))
+                .verifyError();
+        assertFalse(shardMap.isMoving(7));
+        assertEquals(0, shardMap.shardOf(7));
+    }
+
+    @Test
+    void testing_writes_wait_for_the_renewal_of_an_ended_lease() {
+        ShardMap shardMap = new ShardMap(2, Map.of());
+        shardMap.renew(System.nanoTime(), Duration.ZERO);
+
+        StepVerifier.create(shardMap.write(List.of(7), () -> Flux.just(shardMap.shardOf(7))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(50))
+                .then(() -> {
+                    shardMap.assign(7, 1);
+                    shardMap.renew(System.nanoTime(), Duration.ofMinutes(1));
+                })
+                .expectNext(1)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,229 @@
+package au.com.belong.customerphoneapi.repository;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The sharded backend over three in-memory H2 databases, the primary and two shards, of its own so the moves of the
+ * customers do not change the database of the other tests. Once rebalanced, customer 1 is on the third shard and
+ * customer 2 on the first one. The other nodes are the rows of their own in <code>SHARD_NODES</code>.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {
+                "phone-api.persistence.backend=sharded",
+                "spring.r2dbc.url=r2dbc:h2:mem:///belong_sharded_test?options=DB_CLOSE_DELAY=-1",
+                "spring.flyway.url=jdbc:h2:mem:belong_sharded_test;DB_CLOSE_DELAY=-1",
+                "phone-api.persistence.sharding.urls=r2dbc:h2:mem:///belong_sharded_test_shard1?options=DB_CLOSE_DELAY=-1,"
+                        + "r2dbc:h2:mem:///belong_sharded_test_shard2?options=DB_CLOSE_DELAY=-1",
+                "phone-api.persistence.sharding.refresh-interval=PT0.1S",
+                "phone-api.persistence.sharding.node-timeout=PT2S",
+                "phone-api.persistence.sharding.rebalance.drain-delay=PT0S"})
+@ActiveProfiles("test")
+public class ShardedPhoneNumberRepositoryTest {
+
+    @Autowired
+    private PhoneNumberRepository repository;
+
+    @Autowired
+    private ShardRebalancer rebalancer;
+
+    @Autowired
+    private ShardMap shardMap;
+
+    @Autowired
+    private Shards shards;
+
+    @BeforeEach
+    void beforeEachTest() {
+        rebalancer.rebalance().block();
+    }
+
+    @Test
+    void testing_sharded_backend_replaces_the_r2dbc_repository() {
+        assertEquals(ShardedPhoneNumberRepository.class, AopUtils.getTargetClass(repository));
+    }
+
+    @Test
+    void testing_rebalance_moves_customers_to_the_shard_of_their_bucket() {
+        assertTrue(rebalancer.unbalancedBuckets().isEmpty());
+        assertEquals(2, shardMap.shardOfCustomer(1L));
+        assertEquals(0, shardMap.shardOfCustomer(2L));
+
+        StepVerifier
+                .create(Flux.range(0, shards.size()).concatMap(this::customersOf).collectList())
+                .assertNext(customersByShard -> assertEquals(List.of(List.of(2L), List.<Long>of(), List.of(1L)), customersByShard))
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_move_is_read_by_every_node() {
+        int bucket = unassignEmptyBucket();
+        ShardMap otherShardMap = new ShardMap(shards.size(), Map.of());
+        ShardAssignment other = new ShardAssignment(primary(), otherShardMap, "other", Duration.ofSeconds(1), Duration.ofSeconds(2));
+        Disposable refreshes = Flux.interval(Duration.ZERO, Duration.ofMillis(100))
+                .onBackpressureDrop()
+                .concatMap(tick -> other.refresh())
+                .subscribe();
+        try {
+            StepVerifier.create(rebalancer.rebalance()).expectNext(1).verifyComplete();
+
+            assertEquals(shardMap.balancedShardOf(bucket), otherShardMap.shardOf(bucket));
+        } finally {
+            refreshes.dispose();
+            deleteNode("other");
+        }
+    }
+
+    @Test
+    void testing_move_is_undone_when_a_node_does_not_read_its_fence() {
+        int bucket = unassignEmptyBucket();
+        primary().sql("INSERT INTO SHARD_NODES (node, read_at) VALUES ('stalled', LOCALTIMESTAMP)").then().block();
+        try {
+            StepVerifier.create(rebalancer.rebalance()).verifyError(IllegalStateException.class);
+
+            StepVerifier
+                    .create(primary().sql("SELECT shard, fenced FROM SHARD_BUCKETS WHERE bucket = :bucket")
+                            .bind("bucket", bucket)
+                            .map(row -> Map.entry(row.get("shard", Integer.class), row.get("fenced", Boolean.class)))
+                            .one())
+                    .expectNext(Map.entry(0, false))
+                    .verifyComplete();
+        } finally {
+            deleteNode("stalled");
+        }
+    }
+
+    @Test
+    void testing_fetching_all_phone_numbers_with_pagination_merges_shards_in_id_order() {
+        StepVerifier
+                .create(repository.findAllBy(PageRequest.of(0, 10)).map(PhoneNumber::getId).collectList()
+                        .zipWith(repository.findAllBy(PageRequest.of(1, 2)).map(PhoneNumber::getId).collectList()))
+                .assertNext(pages -> {
+                    assertEquals(List.of(1L, 2L, 3L, 4L), pages.getT1());
+                    assertEquals(List.of(3L, 4L), pages.getT2());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_fetching_phone_numbers_after_id_with_keyset_pagination_merges_shards() {
+        StepVerifier
+                .create(repository.findAllByIdGreaterThanOrderByIdAsc(2L, Limit.of(2)).collectList())
+                .assertNext(phones -> assertEquals(List.of(3L, 4L), phones.stream().map(PhoneNumber::getId).toList()))
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_count_sums_the_shards() {
+        StepVerifier
+                .create(repository.count())
+                .expectNext(4L)
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_fetching_phone_numbers_of_several_customers_from_their_shards() {
+        StepVerifier
+                .create(repository.findByCustomerIdIn(List.of(1L, 2L, 99L)).collectList()
+                        .zipWith(repository.findByCustomerId(1L).count()))
+                .assertNext(phones -> {
+                    assertEquals(4, phones.getT1().size());
+                    assertEquals(3L, phones.getT2());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_mixed_activation_and_deactivation_on_several_shards_returns_only_changed_rows() {
+        Mono<List<PhoneNumber>> updated = repository.updateActiveWhereIdIn(List.of(3L, 4L), false)
+                .thenMany(repository.updateActiveWhereIdIn(List.of(3L, 4L), List.of(999L)))
+                .sort(Comparator.comparingLong(PhoneNumber::getId))
+                .collectList();
+
+        StepVerifier
+                .create(updated)
+                .assertNext(phones -> {
+                    assertEquals(List.of(3L, 4L), phones.stream().map(PhoneNumber::getId).toList());
+                    assertTrue(phones.stream().allMatch(PhoneNumber::isActive));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_conditional_update_of_phone_number_activation_increments_its_version_once() {
+        long phoneId = 4L;
+        Mono<List<Long>> versions = repository.findById(phoneId)
+                .flatMapMany(phone -> Flux.concat(
+                        Mono.just(phone),
+                        repository.updateActiveWhereId(phoneId, !phone.isActive()),
+                        repository.updateActiveWhereId(phoneId, !phone.isActive())))
+                .map(PhoneNumber::getVersion)
+                .collectList();
+
+        StepVerifier
+                .create(versions)
+                .assertNext(phoneVersions -> assertEquals(List.of(phoneVersions.get(0), phoneVersions.get(0) + 1), phoneVersions))
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_existence_of_phone_numbers_on_any_shard() {
+        StepVerifier
+                .create(repository.existsById(1L).zipWith(repository.existsById(999L)))
+                .assertNext(exists -> {
+                    assertTrue(exists.getT1());
+                    assertFalse(exists.getT2());
+                })
+                .verifyComplete();
+    }
+
+    // Places a bucket without customers back on the first shard, and waits for this node to read it
+    private int unassignEmptyBucket() {
+        int bucket = IntStream.range(0, ShardMap.BUCKETS)
+                .filter(candidate -> shardMap.balancedShardOf(candidate) != 0)
+                .filter(candidate -> LongStream.of(0L, 1L, 2L).noneMatch(customerId -> ShardMap.bucketOf(customerId) == candidate))
+                .findFirst()
+                .orElseThrow();
+        primary().sql("UPDATE SHARD_BUCKETS SET shard = 0 WHERE bucket = :bucket").bind("bucket", bucket).then().block();
+        Flux.interval(Duration.ofMillis(10)).filter(tick -> shardMap.shardOf(bucket) == 0).blockFirst(Duration.ofSeconds(5));
+        return bucket;
+    }
+
+    private void deleteNode(String node) {
+        primary().sql("DELETE FROM SHARD_NODES WHERE node = :node").bind("node", node).then().block();
+    }
+
+    private DatabaseClient primary() {
+        return shards.getDatabaseClients().get(0);
+    }
+
+    private Mono<List<Long>> customersOf(int shard) {
+        return shards.getDatabaseClients().get(shard).sql("SELECT id FROM CUSTOMERS ORDER BY id")
+                .map(row -> row.get("id", Long.class))
+                .all()
+                .collectList();
+    }
+}
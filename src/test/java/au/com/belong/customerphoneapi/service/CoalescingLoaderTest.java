@@ -0,0 +1,125 @@
+package au.com.belong.customerphoneapi.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CoalescingLoaderTest {
+    private final List<List<Long>> batches = new CopyOnWriteArrayList<>();
+
+    // Loads the square of every key except 0
+    private Mono<Map<Long, Long>> squares(List<Long> keys) {
+        batches.add(keys);
+        return Mono.just(keys.stream()
+                .filter(key -> key != 0)
+                .collect(Collectors.toMap(Function.identity(), key -> key * key)));
+    }
+
+    // The keys requested while the first batch is loading are collected
+    private Mono<Map<Long, Long>> slowSquares(List<Long> keys) {
+        return squares(keys).delayElement(Duration.ofMillis(200));
+    }
+
+    @Test
+    void testing_lone_load_is_not_held_back_by_the_window() {
+        CoalescingLoader<Long, Long> loader = new CoalescingLoader<>(this::squares, -1L, Duration.ofSeconds(10), 100);
+
+        StepVerifier.create(loader.load(3L))
+                .expectNext(9L)
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        assertEquals(List.of(List.of(3L)), batches);
+    }
+
+    @Test
+    void testing_concurrent_loads_within_the_window_are_loaded_with_one_batch() {
+        CoalescingLoader<Long, Long> loader = new CoalescingLoader<>(this::slowSquares, -1L, Duration.ofMillis(50), 100);
+
+        StepVerifier.create(Flux.range(1, 10).flatMap(key -> loader.load((long) key)).collectList())
+                .assertNext(values -> assertEquals(385L, values.stream().mapToLong(Long::longValue).sum()))
+                .verifyComplete();
+
+        // The first key is loaded at once, the others while it is loading
+        assertEquals(List.of(List.of(1L), List.of(2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L)), batches);
+    }
+
+    @Test
+    void testing_full_batch_is_loaded_before_the_end_of_the_window() {
+        CoalescingLoader<Long, Long> loader = new CoalescingLoader<>(this::slowSquares, -1L, Duration.ofSeconds(10), 4);
+
+        StepVerifier.create(Flux.range(1, 9).flatMap(key -> loader.load((long) key)).collectList())
+                .assertNext(values -> assertEquals(9, values.size()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(List.of(List.of(1L), List.of(2L, 3L, 4L, 5L), List.of(6L, 7L, 8L, 9L)), batches);
+    }
+
+    @Test
+    void testing_same_key_requested_concurrently_is_loaded_once() {
+        CoalescingLoader<Long, Long> loader = new CoalescingLoader<>(this::slowSquares, -1L, Duration.ofMillis(50), 100);
+
+        StepVerifier.create(Flux.range(1, 5).flatMap(i -> loader.load(3L)).collectList())
+                .assertNext(values -> assertEquals(List.of(9L, 9L, 9L, 9L, 9L), values))
+                .verifyComplete();
+
+        assertEquals(List.of(List.of(3L)), batches);
+    }
+
+    @Test
+    void testing_load_is_cancelled_once_every_caller_cancelled() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        CoalescingLoader<Long, Long> loader = new CoalescingLoader<>(
+                keys -> Mono.<Map<Long, Long>>never().doOnCancel(() -> cancelled.set(true)), -1L, Duration.ofMillis(50), 100);
+
+        Disposable first = loader.load(1L).subscribe();
+        Disposable second = loader.load(1L).subscribe();
+        first.dispose();
+        assertFalse(cancelled.get());
+
+        second.dispose();
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void testing_key_left_out_by_the_batch_gets_the_missing_value() {
+        CoalescingLoader<Long, Long> loader = new CoalescingLoader<>(this::squares, -1L, Duration.ofMillis(1), 100);
+
+        StepVerifier.create(loader.load(0L))
+                .expectNext(-1L)
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_batch_error_is_signalled_to_every_key_of_the_batch() {
+        RuntimeException databaseUnreachableError = new RuntimeException("Database unreachable");
+        CoalescingLoader<Long, Long> loader = new CoalescingLoader<>(keys -> {
+            batches.add(keys);
+            return Mono.<Map<Long, Long>>error(databaseUnreachableError).delaySubscription(Duration.ofMillis(200));
+        }, -1L, Duration.ofMillis(50), 100);
+
+        // Counts the keys that got the error instance of their batch
+        StepVerifier.create(Flux.range(1, 3)
+                        .flatMap(key -> loader.load((long) key).onErrorResume(ex -> Mono.just(ex == databaseUnreachableError ? 1L : 0L)))
+                        .reduce(Long::sum))
+                .expectNext(3L)
+                .verifyComplete();
+
+        assertEquals(List.of(List.of(1L), List.of(2L, 3L)), batches);
+    }
+}
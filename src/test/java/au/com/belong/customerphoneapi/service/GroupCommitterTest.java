@@ -0,0 +1,79 @@
+package au.com.belong.customerphoneapi.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class GroupCommitterTest {
+    private final List<Map<Long, Boolean>> groups = new CopyOnWriteArrayList<>();
+    private final Map<Long, Boolean> rows = new HashMap<>(Map.of(1L, false, 2L, false, 3L, false, 4L, false));
+
+    // Sets the status of the existing rows not already in it, like the conditional update, and returns whether it did
+    private synchronized Mono<Map<Long, Boolean>> commit(Map<Long, Boolean> statusById) {
+        groups.add(statusById);
+        Map<Long, Boolean> changed = new HashMap<>();
+        statusById.forEach((id, status) -> {
+            if (rows.containsKey(id)) {
+                changed.put(id, rows.put(id, status) != status);
+            }
+        });
+        return Mono.just(changed);
+    }
+
+    @Test
+    void testing_concurrent_writes_within_the_window_are_committed_with_one_group() {
+        GroupCommitter<Long, Boolean, Boolean> committer = new GroupCommitter<>(this::commit, false, Duration.ofMillis(50), 100);
+
+        StepVerifier.create(Flux.range(1, 5).flatMap(id -> committer.write((long) id, true)).collectList())
+                .assertNext(results -> assertEquals(4, results.stream().filter(changed -> changed).count()))
+                .verifyComplete();
+
+        assertEquals(1, groups.size());
+        assertEquals(5, groups.get(0).size());
+    }
+
+    @Test
+    void testing_full_group_is_committed_before_the_end_of_the_window() {
+        GroupCommitter<Long, Boolean, Boolean> committer = new GroupCommitter<>(this::commit, false, Duration.ofSeconds(10), 2);
+
+        StepVerifier.create(Flux.range(1, 4).flatMap(id -> committer.write((long) id, true)).collectList())
+                .assertNext(results -> assertEquals(List.of(true, true, true, true), results))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(List.of(Map.of(1L, true, 2L, true), Map.of(3L, true, 4L, true)), groups);
+    }
+
+    @Test
+    void testing_concurrent_writes_of_the_same_key_are_committed_one_group_after_the_other() {
+        GroupCommitter<Long, Boolean, Boolean> committer = new GroupCommitter<>(this::commit, false, Duration.ofMillis(50), 100);
+
+        StepVerifier.create(Flux.just(true, true, false).flatMapSequential(status -> committer.write(1L, status)).collectList())
+                .assertNext(results -> assertEquals(List.of(true, false, true), results))
+                .verifyComplete();
+
+        assertEquals(List.of(Map.of(1L, true), Map.of(1L, true), Map.of(1L, false)), groups);
+    }
+
+    @Test
+    void testing_commit_error_is_signalled_to_every_write_of_the_group() {
+        GroupCommitter<Long, Boolean, Boolean> committer = new GroupCommitter<>(
+                statusById -> Mono.error(new RuntimeException("Database unreachable")), false, Duration.ofMillis(20), 100);
+
+        StepVerifier.create(Flux.range(1, 3).flatMap(id -> committer.write((long) id, true).onErrorReturn(false)).collectList())
+                .assertNext(results -> assertEquals(List.of(false, false, false), results))
+                .verifyComplete();
+        StepVerifier.create(committer.write(1L, true))
+                .expectErrorMessage("Database unreachable")
+                .verify();
+    }
+}
@@ -0,0 +1,180 @@
+package au.com.belong.customerphoneapi.service;
+
+import au.com.belong.customerphoneapi.cache.LocalCacheInvalidationBus;
+import au.com.belong.customerphoneapi.dto.PhoneNumberChangeDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static au.com.belong.customerphoneapi.PhoneNumberFixtures.CUST_ONE_PHONE_ONE;
+import static au.com.belong.customerphoneapi.PhoneNumberFixtures.CUST_ONE_PHONE_TWO;
+import static au.com.belong.customerphoneapi.PhoneNumberFixtures.CUST_TWO_PHONE_ONE;
+import static au.com.belong.customerphoneapi.PhoneNumberFixtures.CUST_TWO_PHONE_TWO;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PhoneNumberChangeFeedTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private PhoneNumberChangeFeed feed(int replaySize, int subscriberBufferSize, String slowSubscriberPolicy) {
+        return new PhoneNumberChangeFeed(new LocalCacheInvalidationBus(), replaySize, subscriberBufferSize,
+                slowSubscriberPolicy, meterRegistry);
+    }
+
+    @Test
+    void testing_changes_are_pushed_to_every_subscriber() {
+        PhoneNumberChangeFeed feed = feed(10, 10, PhoneNumberChangeFeed.DISCONNECT);
+
+        StepVerifier first = StepVerifier.create(feed.changesAfter(null))
+                .assertNext(change -> {
+                    assertEquals(feed.getId() + "-1", change.getEventId());
+                    assertEquals(1L, change.getPosition());
+                    assertEquals(CUST_ONE_PHONE_ONE.getId(), change.getId());
+                    assertEquals(CUST_ONE_PHONE_ONE.getCustomerId(), change.getCustomerId());
+                    assertEquals(CUST_ONE_PHONE_ONE.isActive(), change.isActive());
+                })
+                .thenCancel()
+                .verifyLater();
+        StepVerifier second = StepVerifier.create(feed.changesAfter(null).map(PhoneNumberChangeDTO::getPosition))
+                .expectNext(1L)
+                .thenCancel()
+                .verifyLater();
+
+        feed.publish(CUST_ONE_PHONE_ONE);
+
+        first.verify(Duration.ofSeconds(5));
+        second.verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testing_resumed_subscriber_gets_the_kept_changes_after_its_last_event_then_the_live_ones() {
+        PhoneNumberChangeFeed feed = feed(2, 10, PhoneNumberChangeFeed.DISCONNECT);
+        feed.publish(CUST_ONE_PHONE_ONE);
+        feed.publish(CUST_ONE_PHONE_TWO);
+        feed.publish(CUST_TWO_PHONE_ONE);
+
+        StepVerifier.create(feed.changesAfter(feed.getId() + "-2").map(PhoneNumberChangeDTO::getPosition))
+                .expectNext(3L)
+                .then(() -> feed.publish(CUST_TWO_PHONE_TWO))
+                .expectNext(4L)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        // A new subscriber gets the live changes only
+        StepVerifier.create(feed.changesAfter(null))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(50))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testing_resumed_subscriber_gets_a_resync_when_the_changes_after_its_last_event_are_not_kept() {
+        PhoneNumberChangeFeed feed = feed(2, 10, PhoneNumberChangeFeed.DISCONNECT);
+        feed.publish(CUST_ONE_PHONE_ONE);
+        feed.publish(CUST_ONE_PHONE_TWO);
+        feed.publish(CUST_TWO_PHONE_ONE);
+
+        // Only the latest two changes are kept
+        StepVerifier.create(feed.changesAfter(feed.getId() + "-0"))
+                .assertNext(change -> {
+                    assertTrue(change.isResync());
+                    assertEquals(feed.getId() + "-3", change.getEventId());
+                })
+                .then(() -> feed.publish(CUST_TWO_PHONE_TWO))
+                .assertNext(change -> assertEquals(4L, change.getPosition()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testing_resumed_subscriber_gets_a_resync_after_an_event_this_feed_did_not_issue() {
+        PhoneNumberChangeFeed feed = feed(10, 10, PhoneNumberChangeFeed.DISCONNECT);
+        feed.publish(CUST_ONE_PHONE_ONE);
+        // Of another node, or of this node before it restarted
+        String otherNodeEventId = feed(10, 10, PhoneNumberChangeFeed.DISCONNECT).getId() + "-0";
+
+        for (String lastEventId : List.of(otherNodeEventId, feed.getId() + "-2", feed.getId() + "-x", "7")) {
+            StepVerifier.create(feed.changesAfter(lastEventId))
+                    .assertNext(change -> {
+                        assertTrue(change.isResync());
+                        assertEquals(feed.getId() + "-1", change.getEventId());
+                    })
+                    .expectNoEvent(Duration.ofMillis(50))
+                    .thenCancel()
+                    .verify(Duration.ofSeconds(5));
+        }
+    }
+
+    @Test
+    void testing_slow_subscriber_is_disconnected_when_its_buffer_is_full() {
+        PhoneNumberChangeFeed feed = feed(10, 2, PhoneNumberChangeFeed.DISCONNECT);
+
+        StepVerifier.create(feed.changesAfter(null), 0)
+                .then(() -> {
+                    feed.publish(CUST_ONE_PHONE_ONE);
+                    feed.publish(CUST_ONE_PHONE_TWO);
+                    feed.publish(CUST_TWO_PHONE_ONE);
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .thenConsumeWhile(change -> true)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(1.0, meterRegistry.get("phone.api.change.feed.overflows").counter().count());
+    }
+
+    @Test
+    void testing_slow_subscriber_misses_the_oldest_changes_when_its_buffer_is_full() {
+        PhoneNumberChangeFeed feed = feed(10, 2, PhoneNumberChangeFeed.DROP);
+
+        StepVerifier.create(feed.changesAfter(null).map(PhoneNumberChangeDTO::getPosition), 0)
+                .then(() -> {
+                    feed.publish(CUST_ONE_PHONE_ONE);
+                    feed.publish(CUST_ONE_PHONE_TWO);
+                    feed.publish(CUST_TWO_PHONE_ONE);
+                    feed.publish(CUST_TWO_PHONE_TWO);
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .expectNext(3L, 4L)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(2.0, meterRegistry.get("phone.api.change.feed.overflows").counter().count());
+    }
+
+    @Test
+    void testing_concurrent_changes_reach_a_resuming_subscriber_once_and_in_order() throws InterruptedException {
+        PhoneNumberChangeFeed feed = feed(4000, 4000, PhoneNumberChangeFeed.DISCONNECT);
+        feed.publish(CUST_ONE_PHONE_ONE);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch done = new CountDownLatch(4);
+        IntStream.range(0, 4).forEach(thread -> executor.execute(() -> {
+            for (int i = 0; i < 500; i++) {
+                feed.publish(CUST_ONE_PHONE_TWO);
+            }
+            done.countDown();
+        }));
+        // Joins while the other threads publish, the changes kept and the live ones follow each other without a gap
+        StepVerifier.create(feed.changesAfter(feed.getId() + "-0").map(PhoneNumberChangeDTO::getPosition).take(2001))
+                .expectNextSequence(LongStream.rangeClosed(1, 2001).boxed().toList())
+                .verifyComplete();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    void testing_unknown_slow_subscriber_policy_is_rejected() {
+        assertThrows(IllegalArgumentException.class, () -> feed(10, 10, "block"));
+    }
+}
@@ -0,0 +1,243 @@
+package au.com.belong.customerphoneapi.service;
+
+import au.com.belong.customerphoneapi.cache.LocalCacheInvalidationBus;
+import au.com.belong.customerphoneapi.cache.PhoneNumberCacheCoherence;
+import au.com.belong.customerphoneapi.cache.PhoneNumberIndex;
+import au.com.belong.customerphoneapi.configuration.CacheConfiguration;
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.repository.PhoneNumberRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static au.com.belong.customerphoneapi.PhoneNumberFixtures.CUST_TWO_PHONE_ONE;
+import static au.com.belong.customerphoneapi.PhoneNumberFixtures.CUST_TWO_PHONE_TWO;
+import static au.com.belong.customerphoneapi.PhoneNumberFixtures.getPhoneNumbersAsFluxFor;
+import static au.com.belong.customerphoneapi.PhoneNumberFixtures.getPhoneNumbersAsFluxForCustomer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringJUnitConfig(PhoneNumberServiceCachingTest.TestConfiguration.class)
+@TestPropertySource(properties = "spring.cache.caffeine.spec=maximumSize=100")
+class PhoneNumberServiceCachingTest {
+
+    @Autowired
+    private PhoneNumberService phoneNumberService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockBean
+    private PhoneNumberRepository repository;
+
+    @MockBean
+    private PhoneNumberIndex phoneNumberIndex;
+
+    @BeforeEach
+    void beforeEachTest() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    void testing_get_all_for_customer_id_cache_hit_does_not_call_repository() {
+        when(repository.findByCustomerId(1L)).thenReturn(getPhoneNumbersAsFluxForCustomer(1L));
+
+        StepVerifier.create(phoneNumberService.getAllFor(1L).collectList())
+                .assertNext(phones -> assertEquals(2, phones.size()))
+                .verifyComplete();
+        StepVerifier.create(phoneNumberService.getAllFor(1L).collectList())
+                .assertNext(phones -> assertEquals(2, phones.size()))
+                .verifyComplete();
+
+        verify(repository, times(1)).findByCustomerId(1L);
+    }
+
+    @Test
+    void testing_get_all_for_customer_id_concurrent_misses_share_one_repository_call() {
+        when(repository.findByCustomerId(2L))
+                .thenReturn(getPhoneNumbersAsFluxForCustomer(2L).delaySubscription(Duration.ofMillis(200)));
+
+        Mono<List<List<PhoneNumber>>> concurrentCalls = Flux.range(0, 10)
+                .flatMap(i -> phoneNumberService.getAllFor(2L).collectList())
+                .collectList();
+
+        StepVerifier.create(concurrentCalls)
+                .assertNext(results -> results.forEach(phones -> assertEquals(2, phones.size())))
+                .verifyComplete();
+
+        verify(repository, times(1)).findByCustomerId(2L);
+    }
+
+    @Test
+    void testing_get_all_for_customer_id_does_not_cache_repository_errors() {
+        when(repository.findByCustomerId(3L))
+                .thenReturn(Flux.error(new RuntimeException("Database unreachable")))
+                .thenReturn(getPhoneNumbersAsFluxForCustomer(3L));
+
+        StepVerifier.create(phoneNumberService.getAllFor(3L))
+                .expectErrorMessage("Database unreachable")
+                .verify();
+        StepVerifier.create(phoneNumberService.getAllFor(3L).collectList())
+                .assertNext(phones -> assertEquals(1, phones.size()))
+                .verifyComplete();
+
+        verify(repository, times(2)).findByCustomerId(3L);
+    }
+
+    // A new context, the row count is kept by the provider once loaded
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void testing_get_all_for_page_cache_hit_does_not_call_repository() {
+        when(repository.count()).thenReturn(Mono.just(5L));
+        when(repository.findAllBy(PageRequest.of(0, 3))).thenReturn(getPhoneNumbersAsFluxFor(3));
+
+        StepVerifier.create(phoneNumberService.getAllFor(0, 3))
+                .assertNext(page -> assertEquals(3, page.getContent().size()))
+                .verifyComplete();
+        StepVerifier.create(phoneNumberService.getAllFor(0, 3))
+                .assertNext(page -> assertEquals(3, page.getContent().size()))
+                .verifyComplete();
+
+        verify(repository, times(1)).findAllBy(PageRequest.of(0, 3));
+        verify(repository, times(1)).count();
+    }
+
+    @Test
+    void testing_cache_lookups_are_timed_by_hit_or_miss() {
+        when(repository.count()).thenReturn(Mono.just(5L));
+        when(repository.findAllBy(PageRequest.of(2, 1))).thenReturn(Flux.just(CUST_TWO_PHONE_TWO));
+        // The timers are registered with the cache, on its first use
+        cacheManager.getCache(PhoneNumberCacheCoherence.PAGES_CACHE);
+        long hits = lookups("hit");
+        long misses = lookups("miss");
+
+        StepVerifier.create(phoneNumberService.getAllFor(2, 1)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(phoneNumberService.getAllFor(2, 1)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(phoneNumberService.getAllFor(2, 1)).expectNextCount(1).verifyComplete();
+
+        assertEquals(misses + 1, lookups("miss"));
+        assertEquals(hits + 2, lookups("hit"));
+    }
+
+    @Test
+    void testing_update_for_replaces_phone_number_in_cached_pages_and_customer_list_that_contain_it() {
+        when(repository.count()).thenReturn(Mono.just(5L));
+        when(repository.findAllBy(PageRequest.of(0, 2))).thenReturn(getPhoneNumbersAsFluxFor(2));
+        when(repository.findAllBy(PageRequest.of(1, 2))).thenReturn(Flux.just(CUST_TWO_PHONE_ONE, CUST_TWO_PHONE_TWO));
+        when(repository.findByCustomerId(1L)).thenReturn(getPhoneNumbersAsFluxForCustomer(1L));
+        PhoneNumber activated = createPhoneNumber(2L, true, 1L);
+        activated.setVersion(1L);
+        when(repository.updateActiveWhereId(2L, true)).thenReturn(Mono.just(activated));
+
+        // warm up the caches
+        StepVerifier.create(phoneNumberService.getAllFor(0, 2)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(phoneNumberService.getAllFor(1, 2)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(phoneNumberService.getAllFor(1L)).expectNextCount(2).verifyComplete();
+
+        StepVerifier.create(phoneNumberService.updateFor(2L, true))
+                .assertNext(phone -> assertTrue(phone.isActive()))
+                .verifyComplete();
+
+        StepVerifier.create(phoneNumberService.getAllFor(0, 2))
+                .assertNext(page -> {
+                    assertEquals(2, page.getContent().size());
+                    assertTrue(page.getContent().get(1).isActive());
+                    assertEquals(5L, page.getTotalRecords());
+                })
+                .verifyComplete();
+        StepVerifier.create(phoneNumberService.getAllFor(1, 2))
+                .assertNext(page -> assertEquals(List.of(CUST_TWO_PHONE_ONE, CUST_TWO_PHONE_TWO), page.getContent()))
+                .verifyComplete();
+        StepVerifier.create(phoneNumberService.getAllFor(1L).collectList())
+                .assertNext(phones -> {
+                    assertEquals(2, phones.size());
+                    assertTrue(phones.get(1).isActive());
+                })
+                .verifyComplete();
+
+        // served from the updated entries, not reloaded
+        verify(repository, times(1)).findAllBy(PageRequest.of(0, 2));
+        verify(repository, times(1)).findAllBy(PageRequest.of(1, 2));
+        verify(repository, times(1)).findByCustomerId(1L);
+    }
+
+    @Test
+    void testing_update_for_does_not_cache_customer_list_that_was_not_cached() {
+        when(repository.updateActiveWhereId(5L, false)).thenReturn(Mono.just(createPhoneNumber(5L, false, 3L)));
+        when(repository.findByCustomerId(3L)).thenReturn(Flux.just(createPhoneNumber(5L, false, 3L)));
+
+        StepVerifier.create(phoneNumberService.updateFor(5L, false))
+                .assertNext(phone -> assertFalse(phone.isActive()))
+                .verifyComplete();
+        StepVerifier.create(phoneNumberService.getAllFor(3L).collectList())
+                .assertNext(phones -> assertFalse(phones.get(0).isActive()))
+                .verifyComplete();
+
+        verify(repository, times(1)).findByCustomerId(3L);
+    }
+
+    private long lookups(String result) {
+        return meterRegistry.get("phone.api.cache.lookups")
+                .tag("cache", PhoneNumberCacheCoherence.PAGES_CACHE)
+                .tag("result", result)
+                .timer()
+                .count();
+    }
+
+    private static PhoneNumber createPhoneNumber(long phoneId, boolean active, long customerId) {
+        PhoneNumber phone = new PhoneNumber();
+        phone.setId(phoneId);
+        phone.setActive(active);
+        phone.setCustomerId(customerId);
+        phone.setPhoneNumber("04" + phoneId);
+        return phone;
+    }
+
+    @Configuration
+    @Import({CacheConfiguration.class, LocalCacheInvalidationBus.class, PhoneNumberCacheCoherence.class, PhoneNumberChangeFeed.class,
+            PhoneNumberServiceImpl.class})
+    static class TestConfiguration {
+
+        // Converts the Duration properties as Spring Boot does
+        @Bean
+        static ConversionService conversionService() {
+            return ApplicationConversionService.getSharedInstance();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        RowCountProvider rowCountProvider(PhoneNumberRepository repository) {
+            return new RowCountProvider(repository::count);
+        }
+    }
+}
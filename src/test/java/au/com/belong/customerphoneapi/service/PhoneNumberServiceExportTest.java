@@ -0,0 +1,115 @@
+package au.com.belong.customerphoneapi.service;
+
+import au.com.belong.customerphoneapi.cache.LocalCacheInvalidationBus;
+import au.com.belong.customerphoneapi.cache.PhoneNumberCacheCoherence;
+import au.com.belong.customerphoneapi.cache.PhoneNumberIndex;
+import au.com.belong.customerphoneapi.repository.DatabaseScheduling;
+import au.com.belong.customerphoneapi.repository.PhoneNumberRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Exports a multi-million row table through the service. It runs in its own surefire execution with a heap far smaller
+ * than the exported rows (see the <code>small-heap</code> execution in <code>pom.xml</code>), so it fails with an
+ * <code>OutOfMemoryError</code> if the export ever holds more than a few chunks in memory.
+ * The rows live in a database file of their own, so the other repository tests keep their small data set.
+ */
+@Tag("small-heap")
+@DataR2dbcTest(properties = {
+        "spring.r2dbc.url=r2dbc:h2:file:///./target/h2db/belong_export_db;",
+        "spring.flyway.url=jdbc:h2:file:./target/h2db/belong_export_db;"
+})
+@ActiveProfiles("test")
+public class PhoneNumberServiceExportTest {
+    private static final long EXPORTED_ROWS = 3_000_000L;
+    private static final long SEED_CHUNK = 500_000L;
+    private static final String COUNT_ROWS = "SELECT COUNT(*) FROM PHONE_NUMBERS";
+    // Numbers starting with 05 cannot collide with the seeded 04 mobile numbers of the test data
+    private static final String INSERT_ROWS = "INSERT INTO PHONE_NUMBERS (phone_number, is_active, customer_id) "
+            + "SELECT '05' || LPAD(CAST(X AS VARCHAR), 8, '0'), MOD(X, 2) = 0, 1 FROM SYSTEM_RANGE(:from, :to)";
+
+    @Autowired
+    private PhoneNumberRepository repository;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    private PhoneNumberService phoneNumberService;
+
+    @BeforeEach
+    void beforeEachTest() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setAsyncCacheMode(true);
+        phoneNumberService = new PhoneNumberServiceImpl(repository, new RowCountProvider(repository::count),
+                new PhoneNumberCacheCoherence(cacheManager, new LocalCacheInvalidationBus()),
+                new PhoneNumberIndex(databaseClient,
+                        new DatabaseScheduling(Schedulers::boundedElastic, Duration.ofSeconds(1)), new SimpleMeterRegistry()),
+                new PhoneNumberChangeFeed(new LocalCacheInvalidationBus(), 1000, 256, PhoneNumberChangeFeed.DISCONNECT, new SimpleMeterRegistry()),
+                500, 1000, Duration.ofMillis(2), 100, false, Duration.ZERO, 1);
+
+        // The database file outlives the test run, the rows are only seeded once
+        if (countRows() < EXPORTED_ROWS) {
+            Flux.range(0, (int) (EXPORTED_ROWS / SEED_CHUNK))
+                    .concatMap(chunk -> databaseClient.sql(INSERT_ROWS)
+                            .bind("from", chunk * SEED_CHUNK + 1)
+                            .bind("to", (chunk + 1) * SEED_CHUNK)
+                            .fetch()
+                            .rowsUpdated())
+                    .blockLast();
+        }
+    }
+
+    @Test
+    void testing_export_after_streams_every_row_in_id_order_with_a_small_heap() {
+        long rows = countRows();
+        AtomicLong exported = new AtomicLong();
+        AtomicLong lastId = new AtomicLong();
+
+        StepVerifier
+                .create(phoneNumberService.exportAfter(0L).limitRate(256))
+                .thenConsumeWhile(phone -> {
+                    exported.incrementAndGet();
+                    return phone.getId() > lastId.getAndSet(phone.getId());
+                })
+                .verifyComplete();
+
+        assertTrue(rows >= EXPORTED_ROWS);
+        assertEquals(rows, exported.get());
+    }
+
+    @Test
+    void testing_export_after_resumes_after_the_last_exported_id() {
+        long lastId = databaseClient.sql("SELECT MAX(id) FROM PHONE_NUMBERS")
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .block();
+
+        StepVerifier
+                .create(phoneNumberService.exportAfter(lastId - 1))
+                .expectNextMatches(phone -> phone.getId() == lastId)
+                .verifyComplete();
+    }
+
+    private long countRows() {
+        return databaseClient.sql(COUNT_ROWS)
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .block();
+    }
+}
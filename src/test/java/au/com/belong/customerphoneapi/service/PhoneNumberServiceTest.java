@@ -1,6 +1,12 @@
 package au.com.belong.customerphoneapi.service;
 
+import au.com.belong.customerphoneapi.cache.PhoneNumberCacheCoherence;
+import au.com.belong.customerphoneapi.cache.PhoneNumberIndex;
 import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import au.com.belong.customerphoneapi.dto.BatchUpdateResultDTO;
+import au.com.belong.customerphoneapi.dto.CursorPageDTO;
+import au.com.belong.customerphoneapi.dto.PhoneNumberOwnerDTO;
+import au.com.belong.customerphoneapi.exception.InvalidCursorException;
 import au.com.belong.customerphoneapi.exception.ResourceNotFoundException;
 import au.com.belong.customerphoneapi.exception.ResourceStateConflictException;
 import au.com.belong.customerphoneapi.repository.PhoneNumberRepository;
@@ -11,11 +17,15 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.PageRequest;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
+import java.util.List;
+
 import static au.com.belong.customerphoneapi.PhoneNumberFixtures.CUST_ONE_PHONE_ONE;
 import static au.com.belong.customerphoneapi.PhoneNumberFixtures.CUST_ONE_PHONE_TWO;
 import static au.com.belong.customerphoneapi.PhoneNumberFixtures.CUST_THREE_PHONE_ONE;
@@ -25,7 +35,19 @@ import static au.com.belong.customerphoneapi.PhoneNumberFixtures.getPhoneNumbers
 import static au.com.belong.customerphoneapi.PhoneNumberFixtures.getPhoneNumbersAsFluxForCustomer;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,11 +56,26 @@ public class PhoneNumberServiceTest {
     @Mock
     private PhoneNumberRepository repository;
 
+    @Mock
+    private PhoneNumberCacheCoherence cacheCoherence;
+
+    @Mock
+    private PhoneNumberIndex phoneNumberIndex;
+
+    @Mock
+    private PhoneNumberChangeFeed changeFeed;
+
+    private RowCountProvider rowCountProvider;
+
     private PhoneNumberService phoneNumberService;
 
     @BeforeEach
     void beforeEachTest() {
-        phoneNumberService = new PhoneNumberServiceImpl(repository);
+        rowCountProvider = new RowCountProvider(repository::count);
+        phoneNumberService = new PhoneNumberServiceImpl(repository, rowCountProvider, cacheCoherence, phoneNumberIndex, changeFeed, 2, 2, Duration.ofMillis(20), 100,
+                false, Duration.ZERO, 1);
+        // The page loads run as they are, the coherence is not under test here
+        lenient().when(cacheCoherence.loadPage(anyInt(), anyInt(), any())).thenAnswer(invocation -> invocation.getArgument(2));
     }
 
     // Mono<PageDTO<PhoneNumber>> getPhoneNumbers(int page, int size)
@@ -156,6 +193,195 @@ public class PhoneNumberServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    void testing_get_all_for_counts_table_rows_once_and_serves_the_running_total_afterwards() {
+        int size = 3;
+
+        when(repository.count()).thenReturn(Mono.just(5L));
+        when(repository.findAllBy(PageRequest.of(0, size))).thenReturn(getPhoneNumbersAsFluxFor(3));
+        when(repository.findAllBy(PageRequest.of(1, size))).thenReturn(Flux.just(CUST_TWO_PHONE_TWO, CUST_THREE_PHONE_ONE));
+
+        StepVerifier
+                .create(phoneNumberService.getAllFor(0, size))
+                .assertNext(dto -> assertEquals(5L, dto.getTotalRecords()))
+                .verifyComplete();
+        StepVerifier
+                .create(phoneNumberService.getAllFor(1, size))
+                .assertNext(dto -> {
+                    assertTrue(dto.isLast());
+                    assertEquals(2L, dto.getTotalPages());
+                    assertEquals(5L, dto.getTotalRecords());
+                })
+                .verifyComplete();
+
+        verify(repository, times(1)).count();
+    }
+
+    @Test
+    void testing_get_all_for_keeps_running_total_until_resync() {
+        int size = 3;
+
+        when(repository.count()).thenReturn(Mono.just(5L), Mono.just(7L));
+        when(repository.findAllBy(PageRequest.of(0, size))).thenReturn(getPhoneNumbersAsFluxFor(3));
+
+        StepVerifier.create(rowCountProvider.getCount()).expectNext(5L).verifyComplete();
+        StepVerifier.create(phoneNumberService.getAllFor(0, size))
+                .assertNext(dto -> assertEquals(5L, dto.getTotalRecords()))
+                .verifyComplete();
+        StepVerifier.create(rowCountProvider.resync()).expectNext(7L).verifyComplete();
+        StepVerifier.create(rowCountProvider.getCount()).expectNext(7L).verifyComplete();
+    }
+
+    // Mono<PageDTO<PhoneNumber>> getAllWithoutTotalFor(int page, int size)
+
+    @Test
+    void testing_get_all_without_total_for_does_not_count_table_rows() {
+        int page = 0;
+        int size = 3;
+
+        when(repository.findAllBy(pageWithNextRow(page, size))).thenReturn(getPhoneNumbersAsFluxFor(size + 1));
+
+        StepVerifier
+                .create(phoneNumberService.getAllWithoutTotalFor(page, size))
+                .assertNext(dto -> {
+                    assertFalse(dto.isLast());
+                    assertEquals(3, dto.getContent().size());
+                    assertNull(dto.getTotalPages());
+                    assertNull(dto.getTotalRecords());
+                })
+                .verifyComplete();
+
+        verify(repository, never()).count();
+    }
+
+    @Test
+    void testing_get_all_without_total_for_full_final_page_is_last() {
+        int page = 1;
+        int size = 2;
+
+        when(repository.findAllBy(pageWithNextRow(page, size))).thenReturn(Flux.just(CUST_TWO_PHONE_ONE, CUST_TWO_PHONE_TWO));
+
+        StepVerifier
+                .create(phoneNumberService.getAllWithoutTotalFor(page, size))
+                .assertNext(dto -> {
+                    assertTrue(dto.isLast());
+                    assertEquals(2, dto.getContent().size());
+                })
+                .verifyComplete();
+    }
+
+    // Mono<CursorPageDTO<PhoneNumber>> getAllAfter(String after, int size)
+
+    @Test
+    void testing_get_all_after_with_empty_cursor_seeks_from_the_first_record() {
+        int size = 3;
+
+        when(repository.findAllByIdGreaterThanOrderByIdAsc(0L, Limit.of(size + 1))).thenReturn(getPhoneNumbersAsFluxFor(size + 1));
+
+        StepVerifier
+                .create(phoneNumberService.getAllAfter("", size))
+                .assertNext(dto -> {
+                    assertFalse(dto.isLast());
+                    assertEquals(3, dto.getSize());
+                    assertEquals(3, dto.getContent().size());
+                    assertEquals(CursorPageDTO.encode(CUST_TWO_PHONE_ONE.getId()), dto.getNextCursor());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_get_all_after_with_cursor_when_records_less_than_page_size() {
+        int size = 3;
+        String after = CursorPageDTO.encode(CUST_TWO_PHONE_ONE.getId());
+
+        when(repository.findAllByIdGreaterThanOrderByIdAsc(CUST_TWO_PHONE_ONE.getId(), Limit.of(size + 1)))
+                .thenReturn(Flux.just(CUST_TWO_PHONE_TWO, CUST_THREE_PHONE_ONE));
+
+        StepVerifier
+                .create(phoneNumberService.getAllAfter(after, size))
+                .assertNext(dto -> {
+                    assertTrue(dto.isLast());
+                    assertEquals(2, dto.getContent().size());
+                    assertNull(dto.getNextCursor());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_get_all_after_with_malformed_cursor_throws_invalid_cursor_error() {
+        StepVerifier
+                .create(phoneNumberService.getAllAfter("aWQ6b25l", 3)) // "id:one"
+                .expectErrorMatches(ex -> ex instanceof InvalidCursorException)
+                .verify();
+
+        verify(repository, never()).findAllByIdGreaterThanOrderByIdAsc(anyLong(), any());
+    }
+
+    // Flux<PhoneNumberOwnerDTO> searchFor(String number, boolean prefix, int limit)
+
+    @Test
+    void testing_search_for_exact_number_uses_the_index_only() {
+        PhoneNumberOwnerDTO owner = PhoneNumberOwnerDTO.of(1L, "0411993721", 1L);
+        when(phoneNumberIndex.find("0411 993 721")).thenReturn(Mono.just(owner));
+
+        StepVerifier
+                .create(phoneNumberService.searchFor("0411 993 721", false, 10))
+                .expectNext(owner)
+                .verifyComplete();
+
+        verify(repository, never()).findByCustomerId(anyLong());
+    }
+
+    @Test
+    void testing_search_for_prefix_emits_every_match() {
+        PhoneNumberOwnerDTO first = PhoneNumberOwnerDTO.of(1L, "0411993721", 1L);
+        PhoneNumberOwnerDTO second = PhoneNumberOwnerDTO.of(2L, "0411566778", 1L);
+        when(phoneNumberIndex.findByPrefix("0411", 10)).thenReturn(Mono.just(List.of(second, first)));
+
+        StepVerifier
+                .create(phoneNumberService.searchFor("0411", true, 10))
+                .expectNext(second, first)
+                .verifyComplete();
+    }
+
+    // Flux<PhoneNumber> exportAfter(long afterId)
+
+    @Test
+    void testing_export_after_chains_keyset_queries_until_a_short_chunk() {
+        when(repository.findAllByIdGreaterThanOrderByIdAsc(0L, Limit.of(2))).thenReturn(Flux.just(CUST_ONE_PHONE_ONE, CUST_ONE_PHONE_TWO));
+        when(repository.findAllByIdGreaterThanOrderByIdAsc(2L, Limit.of(2))).thenReturn(Flux.just(CUST_TWO_PHONE_ONE, CUST_TWO_PHONE_TWO));
+        when(repository.findAllByIdGreaterThanOrderByIdAsc(4L, Limit.of(2))).thenReturn(Flux.just(CUST_THREE_PHONE_ONE));
+
+        StepVerifier
+                .create(phoneNumberService.exportAfter(0L))
+                .expectNext(CUST_ONE_PHONE_ONE, CUST_ONE_PHONE_TWO, CUST_TWO_PHONE_ONE, CUST_TWO_PHONE_TWO, CUST_THREE_PHONE_ONE)
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_export_after_does_not_read_beyond_the_requested_rows() {
+        when(repository.findAllByIdGreaterThanOrderByIdAsc(0L, Limit.of(2))).thenReturn(Flux.just(CUST_ONE_PHONE_ONE, CUST_ONE_PHONE_TWO));
+        when(repository.findAllByIdGreaterThanOrderByIdAsc(2L, Limit.of(2))).thenReturn(Flux.just(CUST_TWO_PHONE_ONE, CUST_TWO_PHONE_TWO));
+
+        StepVerifier
+                .create(phoneNumberService.exportAfter(0L), 1)
+                .expectNext(CUST_ONE_PHONE_ONE)
+                .thenCancel()
+                .verify();
+
+        // The second chunk is read ahead, the third one is not read until the second one is requested
+        verify(repository, never()).findAllByIdGreaterThanOrderByIdAsc(4L, Limit.of(2));
+    }
+
+    @Test
+    void testing_export_after_with_no_rows_left_completes_empty() {
+        when(repository.findAllByIdGreaterThanOrderByIdAsc(5L, Limit.of(2))).thenReturn(Flux.empty());
+
+        StepVerifier
+                .create(phoneNumberService.exportAfter(5L))
+                .verifyComplete();
+    }
+
     // Flux<PhoneNumber> getPhoneNumbers(long customerId)
 
     @Test
@@ -197,7 +423,58 @@ public class PhoneNumberServiceTest {
                 .verifyComplete();
     }
 
-    // Mono<PhoneNumber> updatePhoneNumberActiveStatus(long phoneId, boolean status)
+    @Test
+    void testing_get_all_for_concurrent_customer_ids_are_loaded_with_one_query() {
+        // The first customer is loaded at once, the others are collected while its query runs
+        when(repository.findByCustomerId(1L)).thenReturn(getPhoneNumbersAsFluxForCustomer(1L).delaySubscription(Duration.ofMillis(100)));
+        when(repository.findByCustomerIdIn(List.of(2L, 3L))).thenReturn(Flux.just(
+                CUST_TWO_PHONE_ONE, CUST_TWO_PHONE_TWO, CUST_THREE_PHONE_ONE));
+
+        StepVerifier
+                .create(Flux.just(1L, 2L, 3L).flatMap(customerId -> phoneNumberService.getAllFor(customerId).collectList()).collectList())
+                .assertNext(phonesPerCustomer -> assertEquals(5, phonesPerCustomer.stream().mapToInt(List::size).sum()))
+                .verifyComplete();
+
+        verify(repository, times(1)).findByCustomerIdIn(anyCollection());
+        verify(repository, times(1)).findByCustomerId(anyLong());
+    }
+
+    // Flux<CustomerPhoneNumbersDTO> getAllFor(List<Long> customerIds)
+
+    @Test
+    void testing_get_all_for_customer_ids_groups_phone_numbers_per_customer_in_request_order() {
+        when(repository.findByCustomerIdIn(List.of(2L, 1L, 9L))).thenReturn(Flux.just(
+                CUST_ONE_PHONE_ONE, CUST_ONE_PHONE_TWO, CUST_TWO_PHONE_ONE, CUST_TWO_PHONE_TWO));
+
+        StepVerifier
+                .create(phoneNumberService.getAllFor(List.of(2L, 1L, 9L, 2L)))
+                .assertNext(customer -> {
+                    assertEquals(2L, customer.getCustomerId());
+                    assertEquals(List.of(CUST_TWO_PHONE_ONE, CUST_TWO_PHONE_TWO), customer.getPhoneNumbers());
+                })
+                .assertNext(customer -> {
+                    assertEquals(1L, customer.getCustomerId());
+                    assertEquals(List.of(CUST_ONE_PHONE_ONE, CUST_ONE_PHONE_TWO), customer.getPhoneNumbers());
+                })
+                .assertNext(customer -> {
+                    assertEquals(9L, customer.getCustomerId());
+                    assertTrue(customer.getPhoneNumbers().isEmpty());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_get_all_for_customer_ids_when_repository_throws_error() {
+        RuntimeException databaseUnreachableError = new RuntimeException("Database unreachable");
+        when(repository.findByCustomerIdIn(List.of(1L, 2L))).thenReturn(Flux.error(databaseUnreachableError));
+
+        StepVerifier
+                .create(phoneNumberService.getAllFor(List.of(1L, 2L)))
+                .expectErrorMatches(ex -> databaseUnreachableError == ex)
+                .verify();
+    }
+
+    // Mono<PhoneNumber> updateFor(long phoneId, boolean status)
 
     @ParameterizedTest
     @ValueSource(booleans = {true, false})
@@ -205,7 +482,7 @@ public class PhoneNumberServiceTest {
         long phoneId = 1;
 
         RuntimeException databaseUnreachableError = new RuntimeException("Database unreachable");
-        when(repository.findById(phoneId)).thenReturn(Mono.error(databaseUnreachableError));
+        when(repository.updateActiveWhereId(phoneId, isActive)).thenReturn(Mono.error(databaseUnreachableError));
 
         StepVerifier
                 .create(phoneNumberService.updateFor(phoneId, isActive))
@@ -219,7 +496,8 @@ public class PhoneNumberServiceTest {
     void testing_update_for_phone_number_and_status_throws_not_found_error_when_repository_has_not_phone_record(boolean isActive) {
         long phoneId = 100;
 
-        when(repository.findById(phoneId)).thenReturn(Mono.empty());
+        when(repository.updateActiveWhereId(phoneId, isActive)).thenReturn(Mono.empty());
+        when(repository.existsById(phoneId)).thenReturn(Mono.just(false));
 
         StepVerifier
                 .create(phoneNumberService.updateFor(phoneId, isActive))
@@ -235,7 +513,9 @@ public class PhoneNumberServiceTest {
         long phoneId = CUST_ONE_PHONE_ONE.getId();
         boolean newStatus = CUST_ONE_PHONE_ONE.isActive();
 
-        when(repository.findById(phoneId)).thenReturn(Mono.just(CUST_ONE_PHONE_ONE));
+        // no row changed, the record exists
+        when(repository.updateActiveWhereId(phoneId, newStatus)).thenReturn(Mono.empty());
+        when(repository.existsById(phoneId)).thenReturn(Mono.just(true));
 
         StepVerifier
                 // same status as persisted record
@@ -245,6 +525,9 @@ public class PhoneNumberServiceTest {
                         ex instanceof ResourceStateConflictException &&
                         "Phone number is already in the desired state.".equals(ex.getMessage()))
                 .verify();
+
+        verify(cacheCoherence, never()).onUpdated(any());
+        verify(changeFeed, never()).publish(any());
     }
 
     @ParameterizedTest
@@ -252,15 +535,103 @@ public class PhoneNumberServiceTest {
     void testing_update_for_phone_number_and_status_should_sucessfully_update_when_repository_has_phone_record_not_in_desired_state(boolean currentStatus) {
         boolean newStatus = !currentStatus;
         long phoneId = CUST_ONE_PHONE_ONE.getId();
-        CUST_ONE_PHONE_ONE.setActive(currentStatus);
+        CUST_ONE_PHONE_ONE.setActive(newStatus);
 
-        when(repository.findById(phoneId)).thenReturn(Mono.just(CUST_ONE_PHONE_ONE));
-        when(repository.save(CUST_ONE_PHONE_ONE)).thenReturn(Mono.just(CUST_ONE_PHONE_ONE));
+        when(repository.updateActiveWhereId(phoneId, newStatus)).thenReturn(Mono.just(CUST_ONE_PHONE_ONE));
 
         StepVerifier
                 .create(phoneNumberService.updateFor(phoneId, newStatus))
                 // verifying same state instance
                 .assertNext(phone -> assertEquals(newStatus, phone.isActive()))
                 .verifyComplete();
+
+        // a single round trip on success
+        verify(repository, never()).existsById(anyLong());
+        verify(repository, never()).findById(anyLong());
+        verify(repository, never()).save(any());
+        verify(cacheCoherence).onUpdated(CUST_ONE_PHONE_ONE);
+        verify(changeFeed).publish(CUST_ONE_PHONE_ONE);
+    }
+
+    @Test
+    void testing_group_committed_updates_are_written_with_one_statement_and_each_get_their_own_result() {
+        PhoneNumberService groupCommitService = new PhoneNumberServiceImpl(repository, rowCountProvider, cacheCoherence,
+                phoneNumberIndex, changeFeed, 2, 2, Duration.ofMillis(20), 100, true, Duration.ofMillis(50), 100);
+        when(repository.updateActiveWhereIdIn(List.of(1L, 100L, 3L), List.of(2L))).thenReturn(Flux.just(CUST_ONE_PHONE_ONE));
+        when(repository.findAllById(List.of(2L, 100L, 3L))).thenReturn(Flux.just(CUST_ONE_PHONE_TWO, CUST_TWO_PHONE_ONE));
+
+        StepVerifier
+                .create(Mono.zip(
+                        groupCommitService.updateFor(1L, true).materialize(),
+                        groupCommitService.updateFor(2L, false).materialize(),
+                        groupCommitService.updateFor(100L, true).materialize(),
+                        groupCommitService.updateFor(3L, true).materialize()))
+                .assertNext(results -> {
+                    assertEquals(CUST_ONE_PHONE_ONE, results.getT1().get());
+                    assertTrue(results.getT2().getThrowable() instanceof ResourceStateConflictException);
+                    assertTrue(results.getT3().getThrowable() instanceof ResourceNotFoundException);
+                    assertTrue(results.getT4().getThrowable() instanceof ResourceStateConflictException);
+                })
+                .verifyComplete();
+
+        verify(repository, never()).updateActiveWhereId(anyLong(), anyBoolean());
+        verify(cacheCoherence).onUpdated(CUST_ONE_PHONE_ONE);
+        verify(changeFeed).publish(CUST_ONE_PHONE_ONE);
+    }
+
+    // Flux<BatchUpdateResultDTO> updateFor(List<Long> phoneIds, boolean status)
+
+    @Test
+    void testing_batch_update_for_reports_updated_already_in_state_and_not_found_in_request_order() {
+        when(repository.updateActiveWhereIdIn(List.of(2L, 1L), true)).thenReturn(Flux.just(CUST_ONE_PHONE_TWO));
+        when(repository.findAllById(List.of(1L))).thenReturn(Flux.just(CUST_ONE_PHONE_ONE));
+        when(repository.updateActiveWhereIdIn(List.of(100L), true)).thenReturn(Flux.empty());
+        when(repository.findAllById(List.of(100L))).thenReturn(Flux.empty());
+
+        StepVerifier
+                .create(phoneNumberService.updateFor(List.of(2L, 1L, 100L, 2L), true))
+                .assertNext(result -> assertResult(2L, BatchUpdateResultDTO.Status.UPDATED, result))
+                .assertNext(result -> assertResult(1L, BatchUpdateResultDTO.Status.ALREADY_IN_STATE, result))
+                .assertNext(result -> assertResult(100L, BatchUpdateResultDTO.Status.NOT_FOUND, result))
+                .verifyComplete();
+
+        verify(cacheCoherence).onUpdated(CUST_ONE_PHONE_TWO);
+        verify(repository, never()).findById(anyLong());
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void testing_batch_update_for_does_not_look_up_phone_numbers_when_all_updated() {
+        when(repository.updateActiveWhereIdIn(List.of(1L, 2L), false)).thenReturn(Flux.just(CUST_ONE_PHONE_ONE, CUST_ONE_PHONE_TWO));
+
+        StepVerifier
+                .create(phoneNumberService.updateFor(List.of(1L, 2L), false))
+                .assertNext(result -> assertResult(1L, BatchUpdateResultDTO.Status.UPDATED, result))
+                .assertNext(result -> assertResult(2L, BatchUpdateResultDTO.Status.UPDATED, result))
+                .verifyComplete();
+
+        verify(repository, never()).findAllById(anyIterable());
+    }
+
+    @Test
+    void testing_batch_update_for_when_repository_throws_error() {
+        RuntimeException databaseUnreachableError = new RuntimeException("Database unreachable");
+        when(repository.updateActiveWhereIdIn(anyCollection(), anyBoolean())).thenReturn(Flux.error(databaseUnreachableError));
+
+        StepVerifier
+                .create(phoneNumberService.updateFor(List.of(1L), true))
+                // verifying same exception instance
+                .expectErrorMatches(ex -> databaseUnreachableError == ex)
+                .verify();
+    }
+
+    private static void assertResult(long expectedId, BatchUpdateResultDTO.Status expectedStatus, BatchUpdateResultDTO result) {
+        assertEquals(expectedId, result.getId());
+        assertEquals(expectedStatus, result.getStatus());
+    }
+
+    // The page request of a page without totals, one row larger than the page at the offset of the page
+    private static PageRequest pageWithNextRow(int page, int size) {
+        return argThat(request -> request.getOffset() == (long) page * size && request.getPageSize() == size + 1);
     }
 }
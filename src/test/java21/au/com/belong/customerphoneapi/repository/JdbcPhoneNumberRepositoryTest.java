@@ -0,0 +1,129 @@
+package au.com.belong.customerphoneapi.repository;
+
+import au.com.belong.customerphoneapi.domain.PhoneNumber;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = "phone-api.persistence.backend=jdbc")
+@ActiveProfiles("test")
+public class JdbcPhoneNumberRepositoryTest {
+
+    @Autowired
+    private PhoneNumberRepository repository;
+
+    @Test
+    void testing_jdbc_backend_replaces_the_r2dbc_repository() {
+        assertEquals(JdbcPhoneNumberRepository.class, AopUtils.getTargetClass(repository));
+    }
+
+    @Test
+    void testing_jdbc_backend_runs_repository_calls_on_virtual_threads() {
+        StepVerifier
+                .create(repository.count().map(count -> Thread.currentThread().isVirtual()))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_fetching_all_phone_numbers_from_db_with_pagination() {
+        StepVerifier
+                .create(repository.findAllBy(PageRequest.of(0, 10)).collectList())
+                .assertNext(pages -> assertEquals(4, pages.size()))
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_fetching_phone_numbers_of_several_customers_from_db_with_one_query() {
+        StepVerifier
+                .create(repository.findByCustomerIdIn(List.of(1L, 2L, 99L)).collectList())
+                .assertNext(phones -> {
+                    assertEquals(4, phones.size());
+                    assertEquals(3, phones.stream().filter(phone -> phone.getCustomerId() == 1L).count());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_fetching_phone_numbers_after_id_from_db_with_keyset_pagination() {
+        StepVerifier
+                .create(repository.findAllByIdGreaterThanOrderByIdAsc(1L, Limit.of(2)).collectList())
+                .assertNext(phones -> assertEquals(List.of(2L, 3L), phones.stream().map(PhoneNumber::getId).toList()))
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_updating_phone_number_activation_storing_to_db() {
+        Mono<PhoneNumber> phoneNumberMono = repository.findById(1L)
+                .map(phone -> {
+                    phone.setActive(true);
+                    return phone;
+                })
+                .flatMap(phone -> repository.save(phone))
+                .then(repository.findById(1L));
+
+        StepVerifier
+                .create(phoneNumberMono)
+                .assertNext(phone -> assertTrue(phone.isActive()))
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_mixed_activation_and_deactivation_returns_only_changed_rows_in_their_new_state() {
+        Mono<List<PhoneNumber>> updated = repository.updateActiveWhereIdIn(List.of(3L, 4L), false)
+                .thenMany(repository.updateActiveWhereIdIn(List.of(3L), List.of(4L, 999L)))
+                .sort(Comparator.comparingLong(PhoneNumber::getId))
+                .collectList();
+
+        StepVerifier
+                .create(updated)
+                .assertNext(phones -> {
+                    assertEquals(List.of(3L), phones.stream().map(PhoneNumber::getId).toList());
+                    assertTrue(phones.get(0).isActive());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_conditional_update_of_phone_number_activation_increments_its_version_once() {
+        long phoneId = 2L;
+        Mono<List<Long>> versions = repository.findById(phoneId)
+                .flatMapMany(phone -> Flux.concat(
+                        Mono.just(phone),
+                        repository.updateActiveWhereId(phoneId, !phone.isActive()),
+                        repository.updateActiveWhereId(phoneId, !phone.isActive())))
+                .map(PhoneNumber::getVersion)
+                .collectList();
+
+        StepVerifier
+                .create(versions)
+                .assertNext(phoneVersions -> assertEquals(List.of(phoneVersions.get(0), phoneVersions.get(0) + 1), phoneVersions))
+                .verifyComplete();
+    }
+
+    @Test
+    void testing_existence_of_phone_numbers_from_db() {
+        StepVerifier
+                .create(repository.existsById(1L).zipWith(repository.existsById(999L)))
+                .assertNext(exists -> {
+                    assertTrue(exists.getT1());
+                    assertFalse(exists.getT2());
+                })
+                .verifyComplete();
+    }
+}